@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vergere.bootstrapper;
+
+import org.jboss.errai.codegen.AnnotationEncoder;
+import org.jboss.errai.codegen.Context;
+import org.jboss.errai.codegen.InterningCallback;
+import org.jboss.errai.codegen.Modifier;
+import org.jboss.errai.codegen.Statement;
+import org.jboss.errai.codegen.builder.ClassStructureBuilder;
+import org.jboss.errai.codegen.literal.ArrayLiteral;
+import org.jboss.errai.codegen.literal.LiteralFactory;
+import org.jboss.errai.codegen.literal.LiteralValue;
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.util.PrivateAccessUtil;
+import org.jboss.errai.codegen.util.Refs;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interns the annotation literals of a generated class into private fields of that class, so each annotation is
+ * instantiated once per class rather than once per use. The fields are numbered in the order the annotations are
+ * first used, so their names do not depend on the hash codes of the annotations.
+ */
+class AnnotationInterningCallback implements InterningCallback {
+  private final ClassStructureBuilder<?> classStructureBuilder;
+  private final Context buildContext;
+  private final MetaClass Annotation_MC = MetaClassFactory.get(Annotation.class);
+  private final Map<Annotation, String> cachedAnnotations = new HashMap<Annotation, String>();
+  private final Map<Set<Annotation>, String> cachedArrays = new HashMap<Set<Annotation>, String>();
+  private int fieldCount;
+
+  private AnnotationInterningCallback(final ClassStructureBuilder<?> classStructureBuilder) {
+    this.classStructureBuilder = classStructureBuilder;
+    this.buildContext = classStructureBuilder.getClassDefinition().getContext();
+  }
+
+  /**
+   * Registers a new callback on the context of the specified class.
+   */
+  static void register(final ClassStructureBuilder<?> classStructureBuilder) {
+    final AnnotationInterningCallback callback = new AnnotationInterningCallback(classStructureBuilder);
+    callback.buildContext.addInterningCallback(callback);
+  }
+
+  @Override
+  public Statement intern(final LiteralValue<?> literalValue) {
+    if (literalValue.getValue() == null) {
+      return null;
+    }
+
+    if (literalValue.getValue() instanceof Annotation) {
+      final Annotation annotation = (Annotation) literalValue.getValue();
+
+      if (cachedAnnotations.containsKey(annotation)) {
+        return Refs.get(cachedAnnotations.get(annotation));
+      }
+
+      final Class<? extends Annotation> aClass = annotation.annotationType();
+      final String fieldName = PrivateAccessUtil.condensify(aClass.getPackage().getName()) +
+          aClass.getSimpleName() + "_" + (++fieldCount);
+
+      classStructureBuilder.privateField(fieldName, annotation.annotationType())
+          .modifiers(Modifier.Final).initializesWith(AnnotationEncoder.encode(annotation))
+          .finish();
+
+      cachedAnnotations.put(annotation, fieldName);
+
+      return Refs.get(fieldName);
+    }
+    else if (literalValue.getType().isArray()
+        && Annotation_MC.isAssignableFrom(literalValue.getType().getOuterComponentType())) {
+
+      // the literals of the array are rendered in the order they appear in it, so they are numbered in that order.
+      final Set<Annotation> annotationSet
+          = new LinkedHashSet<Annotation>(Arrays.asList((Annotation[]) literalValue.getValue()));
+
+      if (cachedArrays.containsKey(annotationSet)) {
+        return Refs.get(cachedArrays.get(annotationSet));
+      }
+
+      final MetaClass type = literalValue.getType().getOuterComponentType();
+      final String fieldName = "arrayOf" + PrivateAccessUtil.condensify(type.getPackageName()) +
+          type.getName().replaceAll("\\.", "_") + "_" + (++fieldCount);
+
+      // force rendering of literals in this array first.
+      for (final Annotation a : annotationSet) {
+        LiteralFactory.getLiteral(a).generate(buildContext);
+      }
+
+      classStructureBuilder.privateField(fieldName, literalValue.getType())
+          .modifiers(Modifier.Final).initializesWith(new Statement() {
+        @Override
+        public String generate(final Context context) {
+          return new ArrayLiteral(literalValue.getValue()).getCanonicalString(context);
+        }
+
+        @Override
+        public MetaClass getType() {
+          return literalValue.getType();
+        }
+      }).finish();
+
+      cachedArrays.put(annotationSet, fieldName);
+
+      return Refs.get(fieldName);
+    }
+
+    return null;
+  }
+}
@@ -19,17 +19,12 @@ package org.jboss.vergere.bootstrapper;
 
 import static org.jboss.errai.codegen.util.Stmt.loadVariable;
 
-import org.jboss.errai.codegen.AnnotationEncoder;
 import org.jboss.errai.codegen.Context;
-import org.jboss.errai.codegen.InterningCallback;
 import org.jboss.errai.codegen.Modifier;
 import org.jboss.errai.codegen.Statement;
 import org.jboss.errai.codegen.builder.BlockBuilder;
 import org.jboss.errai.codegen.builder.ClassStructureBuilder;
 import org.jboss.errai.codegen.builder.impl.BlockBuilderImpl;
-import org.jboss.errai.codegen.literal.ArrayLiteral;
-import org.jboss.errai.codegen.literal.LiteralFactory;
-import org.jboss.errai.codegen.literal.LiteralValue;
 import org.jboss.errai.codegen.meta.MetaClass;
 import org.jboss.errai.codegen.meta.MetaClassFactory;
 import org.jboss.errai.codegen.meta.MetaField;
@@ -38,10 +33,10 @@ import org.jboss.errai.codegen.meta.impl.build.BuildMetaClass;
 import org.jboss.errai.codegen.util.Implementations;
 import org.jboss.errai.codegen.util.PrivateAccessType;
 import org.jboss.errai.codegen.util.PrivateAccessUtil;
-import org.jboss.errai.codegen.util.Refs;
 import org.jboss.errai.codegen.util.Stmt;
 import org.jboss.vergere.client.Bootstrapper;
 import org.jboss.vergere.client.BootstrapperInjectionContext;
+import org.jboss.vergere.client.BootstrapperPartition;
 import org.jboss.vergere.client.api.CodeDecorator;
 import org.jboss.vergere.client.api.IOCBootstrapTask;
 import org.jboss.vergere.client.api.IOCProvider;
@@ -51,9 +46,11 @@ import org.jboss.vergere.client.container.CreationalContext;
 import org.jboss.vergere.client.container.IOCBeanManagerLifecycle;
 import org.jboss.vergere.extension.IOCDecoratorExtension;
 import org.jboss.vergere.extension.IOCExtensionConfigurator;
+import org.jboss.vergere.injector.InjectUtil;
 import org.jboss.vergere.injector.api.InjectionContext;
 import org.jboss.vergere.injector.api.WiringElementType;
 import org.jboss.vergere.metadata.QualifyingMetadataFactory;
+import org.jboss.vergere.util.BootstrapReport;
 import org.jboss.vergere.util.ClassScanner;
 import org.jboss.vergere.util.EnvUtil;
 import org.jboss.vergere.util.IOCBootstrapMaker;
@@ -76,10 +73,9 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -94,139 +90,195 @@ public class IOCBootstrapGenerator {
 
   private final List<MetaClass> beforeTasks = new ArrayList<MetaClass>();
   private final List<MetaClass> afterTasks = new ArrayList<MetaClass>();
+  private BlockBuilder<?> bootstrapMethod;
+  private PartitionClassCache partitionClassCache;
+  private final Map<String, String> partitionFingerprints = new LinkedHashMap<String, String>();
 
   public static final String QUALIFYING_METADATA_FACTORY_PROPERTY = "errai.ioc.QualifyingMetaDataFactory";
   public static final String ENABLED_ALTERNATIVES_PROPERTY = "errai.ioc.enabled.alternatives";
+
+  /**
+   * Whether reachable, unannotated types which qualify as dependent beans are added to the container. On unless the
+   * property is set to <tt>false</tt>; only scanned types are ever inferred to be beans.
+   */
   public static final String EXPERIMENTAL_INFER_DEPENDENT_BY_REACHABILITY
       = "errai.ioc.experimental.infer_dependent_by_reachability";
+  public static final String EXPERIMENTAL_PARALLEL_PARTITIONS = "vergere.ioc.experimental.parallel_partitions";
+
+  /**
+   * The number of bean graph units above which the bootstrapper is split into partition classes, each of which holds
+   * independent partitions of the bean graph with up to this many units.
+   */
+  public static final String PARTITION_CLASS_SIZE_PROPERTY = "vergere.ioc.partition_class_size";
+  public static final int DEFAULT_PARTITION_CLASS_SIZE = 250;
 
   private static final Logger log = LoggerFactory.getLogger(IOCBootstrapGenerator.class);
 
+  private static final int MAX_STATEMENTS_PER_METHOD = 500;
+
   // production mode cache only -- used so work is only done in one permutation
-  private static volatile String _bootstrapperCache;
+  private static volatile Map<String, String> _bootstrapperCache;
   private static final Object generatorLock = new Object();
 
 
-  public String generate(final String packageName, final String className) {
+  /**
+   * Generates the bootstrapper class, and the partition classes it orchestrates if the bean graph is too large for
+   * a single class.
+   *
+   * @return a map of fully qualified class names to Java sources, the bootstrapper first.
+   */
+  public Map<String, String> generateSources(final String packageName, final String className) {
+    return generateSources(packageName, className, null);
+  }
+
+  /**
+   * Generates the bootstrapper class, and those of its partition classes which are not found in the specified cache.
+   * The fingerprints of all partition classes are then returned by {@link #getPartitionFingerprints()}.
+   *
+   * @param partitionClassCache
+   *     the partition classes compiled in a previous run, or null to generate all classes. The sources generated with
+   *     a cache are not cached themselves.
+   *
+   * @return a map of fully qualified class names to Java sources, the bootstrapper first.
+   */
+  public Map<String, String> generateSources(final String packageName,
+                                             final String className,
+                                             final PartitionClassCache partitionClassCache) {
     synchronized (generatorLock) {
 
-      if (_bootstrapperCache != null) {
+      if (_bootstrapperCache != null && partitionClassCache == null) {
         return _bootstrapperCache;
       }
 
+      this.partitionClassCache = partitionClassCache;
+
       final File fileCacheDir = VergereUtils.getApplicationCacheDirectory();
-      final File cacheFile = new File(fileCacheDir.getAbsolutePath() + "/" + className + ".java");
 
-      final String gen;
+      final Map<String, String> gen;
 
 
       log.info("generating IOC bootstrapping class...");
       final long st = System.currentTimeMillis();
-      gen = _generate(packageName, className);
-      log.info("generated IOC bootstrapping class in " + (System.currentTimeMillis() - st) + "ms "
-          + "(" + MetaClassFactory.getAllCachedClasses().size() + " beans processed)");
 
-      ThreadUtil.execute(new Runnable() {
-        @Override
-        public void run() {
-          VergereUtils.writeStringToFile(cacheFile, gen);
-        }
-      });
+      // names start over for every bootstrapper, so generating the same bootstrapper again gives the same sources.
+      InjectUtil.beginNameScope("");
+      try {
+        gen = Collections.unmodifiableMap(_generate(packageName, className));
+      }
+      finally {
+        InjectUtil.endNameScope();
+      }
+      log.info("generated IOC bootstrapping class in " + (System.currentTimeMillis() - st) + "ms "
+          + "(" + MetaClassFactory.getAllCachedClasses().size() + " beans processed, "
+          + (gen.size() - 1) + " partition classes generated, "
+          + (partitionFingerprints.size() - (gen.size() - 1)) + " reused)");
+
+      if (VergereUtils.isWriteGeneratedSources()) {
+        ThreadUtil.execute(new Runnable() {
+          @Override
+          public void run() {
+            for (final Map.Entry<String, String> entry : gen.entrySet()) {
+              final String name = entry.getKey().substring(entry.getKey().lastIndexOf('.') + 1);
+              VergereUtils.writeStringToFile(new File(fileCacheDir.getAbsolutePath() + "/" + name + ".java"),
+                  entry.getValue());
+            }
+          }
+        });
 
-      log.info("using IOC bootstrapping code at: " + cacheFile.getAbsolutePath());
+        log.info("using IOC bootstrapping code at: " + fileCacheDir.getAbsolutePath());
+      }
 
+      if (partitionClassCache != null) {
+        return gen;
+      }
       return _bootstrapperCache = gen;
     }
   }
 
-  private String _generate(final String packageName, final String className) {
-    final ReachableTypes allDeps = EnvUtil.getAllReachableClasses();
-
-    final ClassStructureBuilder<?> classStructureBuilder =
-        Implementations.implement(Bootstrapper.class, packageName, className);
-
-
-    final BuildMetaClass bootStrapClass = classStructureBuilder.getClassDefinition();
-    final Context buildContext = bootStrapClass.getContext();
-
-    final MetaClass Annotation_MC = MetaClassFactory.get(Annotation.class);
-
-    buildContext.addInterningCallback(new InterningCallback() {
-      private final Map<Set<Annotation>, String> cachedArrays = new HashMap<Set<Annotation>, String>();
-
-      @Override
-      public Statement intern(final LiteralValue<?> literalValue) {
-        if (literalValue.getValue() == null) {
-          return null;
-        }
-
-        if (literalValue.getValue() instanceof Annotation) {
-          final Annotation annotation = (Annotation) literalValue.getValue();
+  /**
+   * Returns the fingerprints of the partition classes of the bootstrapper generated by this generator, by fully
+   * qualified class name, including those reused from the {@link PartitionClassCache}.
+   */
+  public Map<String, String> getPartitionFingerprints() {
+    return Collections.unmodifiableMap(partitionFingerprints);
+  }
 
-          final Class<? extends Annotation> aClass = annotation.annotationType();
-          final String fieldName = PrivateAccessUtil.condensify(aClass.getPackage().getName()) +
-              aClass.getSimpleName() + "_" + String.valueOf(literalValue.getValue().hashCode()).replaceFirst("\\-", "_");
+  /**
+   * Discards the sources cached by {@link #generateSources}, so they are generated again the next time.
+   */
+  static void clearCache() {
+    synchronized (generatorLock) {
+      _bootstrapperCache = null;
+    }
+  }
 
-          classStructureBuilder.privateField(fieldName, annotation.annotationType())
-              .modifiers(Modifier.Final).initializesWith(AnnotationEncoder.encode(annotation))
-              .finish();
+  /**
+   * Processes the beans of the application as {@link #generateSources} does, without rendering the sources of a
+   * bootstrapper. The processed injectors are left in the returned {@link InjectionContext}, and the bootstrap tasks in
+   * {@link #getBeforeTasks()} and {@link #getAfterTasks()}.
+   */
+  InjectionContext processBeans(final String packageName, final String className) {
+    synchronized (generatorLock) {
+      InjectUtil.beginNameScope("");
+      try {
+        final IOCProcessorFactory procFactory = prepare(packageName, className);
+        procFactory.process(procFactory.getInjectionContext().getProcessingContext());
+        return procFactory.getInjectionContext();
+      }
+      finally {
+        InjectUtil.endNameScope();
+      }
+    }
+  }
 
-          return Refs.get(fieldName);
-        }
-        else if (literalValue.getType().isArray()
-            && Annotation_MC.isAssignableFrom(literalValue.getType().getOuterComponentType())) {
+  List<MetaClass> getBeforeTasks() {
+    return Collections.unmodifiableList(beforeTasks);
+  }
 
-          final Set<Annotation> annotationSet
-              = new HashSet<Annotation>(Arrays.asList((Annotation[]) literalValue.getValue()));
+  List<MetaClass> getAfterTasks() {
+    return Collections.unmodifiableList(afterTasks);
+  }
 
-          if (cachedArrays.containsKey(annotationSet)) {
-            return Refs.get(cachedArrays.get(annotationSet));
-          }
+  private Map<String, String> _generate(final String packageName, final String className) {
+    final IOCProcessorFactory procFactory = prepare(packageName, className);
+    final IOCProcessingContext procContext = procFactory.getInjectionContext().getProcessingContext();
 
-          final MetaClass type = literalValue.getType().getOuterComponentType();
-          final String fieldName = "arrayOf" + PrivateAccessUtil.condensify(type.getPackageName()) +
-              type.getName().replaceAll("\\.", "_") + "_"
-              + String.valueOf(literalValue.getValue().hashCode()).replaceAll("\\-", "_");
+    final Map<String, String> sources = new LinkedHashMap<String, String>();
+    generateExtensions(procContext, procFactory, sources, procContext.getBootstrapBuilder(), bootstrapMethod);
 
-          // force rendering of literals in this array first.
-          for (final Annotation a : annotationSet) {
-            LiteralFactory.getLiteral(a).generate(buildContext);
-          }
+    // close generated class
+    return sources;
+  }
 
-          classStructureBuilder.privateField(fieldName, literalValue.getType())
-              .modifiers(Modifier.Final).initializesWith(new Statement() {
-            @Override
-            public String generate(final Context context) {
-              return new ArrayLiteral(literalValue.getValue()).getCanonicalString(context);
-            }
+  /**
+   * Sets up the processing of the beans for a bootstrapper of the specified name, and processes the extensions.
+   */
+  private IOCProcessorFactory prepare(final String packageName, final String className) {
+    final long reachabilityStart = BootstrapReport.begin();
+    final ReachableTypes allDeps = EnvUtil.getAllReachableClasses();
+    BootstrapReport.end(BootstrapReport.Phase.Reachability, reachabilityStart);
 
-            @Override
-            public MetaClass getType() {
-              return literalValue.getType();
-            }
-          }).finish();
+    final ClassStructureBuilder<?> classStructureBuilder =
+        Implementations.implement(Bootstrapper.class, packageName, className);
 
-          cachedArrays.put(annotationSet, fieldName);
 
-          return Refs.get(fieldName);
-        }
+    final BuildMetaClass bootStrapClass = classStructureBuilder.getClassDefinition();
+    final Context buildContext = bootStrapClass.getContext();
 
-        return null;
-      }
-    });
+    AnnotationInterningCallback.register(classStructureBuilder);
 
-    final BlockBuilder<?> blockBuilder =
-        classStructureBuilder.publicMethod(BootstrapperInjectionContext.class, "bootstrapContainer")
-            .methodComment("The main IOC bootstrap method.");
+    bootstrapMethod = classStructureBuilder.publicMethod(BootstrapperInjectionContext.class, "bootstrapContainer")
+        .methodComment("The main IOC bootstrap method.");
 
 
     final IOCProcessingContext.Builder iocProcContextBuilder
         = IOCProcessingContext.Builder.create();
 
-    iocProcContextBuilder.blockBuilder(blockBuilder);
+    iocProcContextBuilder.blockBuilder(bootstrapMethod);
     iocProcContextBuilder.context(buildContext);
     iocProcContextBuilder.bootstrapClassInstance(bootStrapClass);
     iocProcContextBuilder.bootstrapBuilder(classStructureBuilder);
+    iocProcContextBuilder.partitionClassCache(partitionClassCache);
 
     final InjectionContext.Builder injectionContextBuilder
         = InjectionContext.Builder.create();
@@ -275,21 +327,18 @@ public class IOCBootstrapGenerator {
 
     defaultConfigureProcessor(injectionContext);
 
-    final StringBuilder sourceWriter = new StringBuilder();
-
     // generator constructor source code
     final IOCProcessorFactory procFactory = new IOCProcessorFactory(injectionContext);
+    final long extensionsStart = BootstrapReport.begin();
     processExtensions(procContext, injectionContext, procFactory, beforeTasks, afterTasks);
-    generateExtensions(procContext, procFactory, injectionContext, sourceWriter, classStructureBuilder, blockBuilder);
+    BootstrapReport.end(BootstrapReport.Phase.ExtensionProcessing, extensionsStart);
 
-    // close generated class
-    return sourceWriter.toString();
+    return procFactory;
   }
 
   private void generateExtensions(final IOCProcessingContext procContext,
                                   final IOCProcessorFactory procFactory,
-                                  final InjectionContext injectionContext,
-                                  final StringBuilder sourceWriter,
+                                  final Map<String, String> sources,
                                   final ClassStructureBuilder<?> classBuilder,
                                   final BlockBuilder<?> blockBuilder) {
 
@@ -308,48 +357,110 @@ public class IOCBootstrapGenerator {
 
     procFactory.process(procContext);
 
-    int i = 0;
+    // the bootstrapper loads its partition classes by name, so every generated class can be compiled on its own. all
+    // partitions are instantiated and wired before the beans of any partition are declared.
+    final List<IOCProcessingContext.GeneratedClass> partitionClasses = procContext.getPartitionClasses();
+    final List<String> partitionVars = new ArrayList<String>(partitionClasses.size());
+    for (final IOCProcessingContext.GeneratedClass partitionClass : partitionClasses) {
+      final String varName = "partition" + partitionVars.size();
+      blockBuilder.append(Stmt.declareFinalVariable(varName, BootstrapperPartition.class,
+          Stmt.invokeStatic(BootstrapperPartition.class, "load", Stmt.loadVariable("this"),
+              partitionClass.getClassDefinition().getFullyQualifiedName(),
+              loadVariable(procContext.getContextVariableReference()))));
+      partitionVars.add(varName);
+    }
+
+    for (final String varName : partitionVars) {
+      blockBuilder.append(loadVariable(varName).invoke(IOCProcessingContext.CREATE_BEANS_METHOD));
+    }
+
+    declareBeans(procContext.getBootstrapper(), blockBuilder);
+
+    for (final String varName : partitionVars) {
+      blockBuilder.append(loadVariable(varName).invoke(IOCProcessingContext.DECLARE_BEANS_METHOD));
+    }
+
+    addPrivateAccessStubs(procContext.getBootstrapper());
+
+    _doRunnableTasks(afterTasks, blockBuilder);
+
+    blockBuilder.append(loadVariable(procContext.getContextVariableReference()).returnValue());
+
+    blockBuilder.finish();
+
+    sources.put(classBuilder.getClassDefinition().getFullyQualifiedName(), classBuilder.toJavaString());
+
+    for (final IOCProcessingContext.GeneratedClass partitionClass : partitionClasses) {
+      partitionFingerprints.put(partitionClass.getClassDefinition().getFullyQualifiedName(),
+          partitionClass.getFingerprint());
+      if (partitionClass.isReused()) continue;
+
+      final ClassStructureBuilder<?> partitionBuilder = partitionClass.getClassBuilder();
+
+      final BlockBuilder<?> declareBeansBody
+          = partitionBuilder.publicMethod(void.class, IOCProcessingContext.DECLARE_BEANS_METHOD).body();
+      declareBeans(partitionClass, declareBeansBody);
+      declareBeansBody.finish();
+
+      addPrivateAccessStubs(partitionClass);
+
+      partitionClass.getBody().finish();
+
+      sources.put(partitionClass.getClassDefinition().getFullyQualifiedName(), partitionBuilder.toJavaString());
+    }
+  }
+
+  /**
+   * Moves the statements declaring the beans of a generated class into private methods of that class, and calls the
+   * methods from the specified block. The declarations of each independent partition of the bean graph are kept
+   * within one method where possible: small partitions are packed together, and a partition which does not fit into
+   * the rest of the current method starts a new one. Only a partition larger than the statement limit is split.
+   */
+  private static void declareBeans(final IOCProcessingContext.GeneratedClass generatedClass,
+                                   final BlockBuilder<?> caller) {
     int beanDeclareMethodCount = 0;
+    int statementsInMethod = 0;
     BlockBuilder<? extends ClassStructureBuilder<?>> declareBeanBody = null;
 
-    for (final Statement stmt : procContext.getAppendToEnd()) {
-      if (declareBeanBody == null || (i % 500) == 0) {
-        if (declareBeanBody != null) {
-          declareBeanBody.finish();
-        }
-        final String methodName = "declareBeans_" + beanDeclareMethodCount++;
-
-        declareBeanBody = classBuilder.privateMethod(void.class, methodName).body();
-        blockBuilder.append(Stmt.loadVariable("this").invoke(methodName));
+    for (final List<Statement> partition : generatedClass.getAppendToEndByPartition()) {
+      if (declareBeanBody != null && statementsInMethod + partition.size() > MAX_STATEMENTS_PER_METHOD) {
+        declareBeanBody.finish();
+        declareBeanBody = null;
       }
 
-      declareBeanBody.append(stmt);
+      for (final Statement stmt : partition) {
+        if (declareBeanBody == null || statementsInMethod == MAX_STATEMENTS_PER_METHOD) {
+          if (declareBeanBody != null) {
+            declareBeanBody.finish();
+          }
+          final String methodName = "declareBeans_" + beanDeclareMethodCount++;
 
-      i++;
+          declareBeanBody = generatedClass.getClassBuilder().privateMethod(void.class, methodName).body();
+          caller.append(Stmt.loadVariable("this").invoke(methodName));
+          statementsInMethod = 0;
+        }
+
+        declareBeanBody.append(stmt);
+        statementsInMethod++;
+      }
     }
 
     if (declareBeanBody != null) {
       declareBeanBody.finish();
     }
+  }
 
-    final Map<MetaField, PrivateAccessType> privateFields = injectionContext.getPrivateFieldsToExpose();
+  private static void addPrivateAccessStubs(final IOCProcessingContext.GeneratedClass generatedClass) {
+    final Map<MetaField, PrivateAccessType> privateFields = generatedClass.getPrivateFieldsToExpose();
     for (final Map.Entry<MetaField, PrivateAccessType> f : privateFields.entrySet()) {
-      PrivateAccessUtil.addPrivateAccessStubs(f.getValue(), "reflection", classBuilder, f.getKey());
+      PrivateAccessUtil.addPrivateAccessStubs(f.getValue(), "reflection", generatedClass.getClassBuilder(), f.getKey());
     }
 
-    final Collection<MetaMethod> privateMethods = injectionContext.getPrivateMethodsToExpose();
+    final Collection<MetaMethod> privateMethods = generatedClass.getPrivateMethodsToExpose();
 
     for (final MetaMethod m : privateMethods) {
-      PrivateAccessUtil.addPrivateAccessStubs("reflection", classBuilder, m);
+      PrivateAccessUtil.addPrivateAccessStubs("reflection", generatedClass.getClassBuilder(), m);
     }
-
-    _doRunnableTasks(afterTasks, blockBuilder);
-
-    blockBuilder.append(loadVariable(procContext.getContextVariableReference()).returnValue());
-
-    blockBuilder.finish();
-
-    sourceWriter.append(classBuilder.toJavaString());
   }
 
   private static void _doRunnableTasks(final Collection<MetaClass> classes, final BlockBuilder<?> blockBuilder) {
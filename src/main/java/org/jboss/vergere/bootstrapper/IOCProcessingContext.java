@@ -17,55 +17,83 @@
 package org.jboss.vergere.bootstrapper;
 
 import org.jboss.errai.codegen.Context;
+import org.jboss.errai.codegen.Modifier;
+import org.jboss.errai.codegen.Parameter;
 import org.jboss.errai.codegen.Statement;
 import org.jboss.errai.codegen.Variable;
 import org.jboss.errai.codegen.VariableReference;
 import org.jboss.errai.codegen.builder.BlockBuilder;
 import org.jboss.errai.codegen.builder.ClassStructureBuilder;
+import org.jboss.errai.codegen.builder.impl.ClassBuilder;
 import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
 import org.jboss.errai.codegen.meta.impl.build.BuildMetaClass;
+import org.jboss.errai.codegen.util.PrivateAccessType;
+import org.jboss.errai.codegen.util.PrivateAccessUtil;
+import org.jboss.errai.codegen.util.Stmt;
 import org.jboss.errai.common.client.framework.Assert;
 import org.jboss.vergere.client.BootstrapperInjectionContext;
+import org.jboss.vergere.client.BootstrapperPartition;
+import org.jboss.vergere.client.container.CreationalContext;
 import org.jboss.vergere.injector.api.InjectionPoint;
 import org.jboss.vergere.injector.api.TypeDiscoveryListener;
 import org.jboss.vergere.metadata.JSR330QualifyingMetadataFactory;
 import org.jboss.vergere.metadata.QualifyingMetadataFactory;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Mike Brock <cbrock@redhat.com>
  */
 public class IOCProcessingContext {
-   protected final Context context;
-  protected final BuildMetaClass bootstrapClass;
-  protected final ClassStructureBuilder bootstrapBuilder;
+  /**
+   * The name of the method of a partition class which wires its beans.
+   */
+  public static final String CREATE_BEANS_METHOD = "createBeans";
 
-  protected final Stack<BlockBuilder<?>> blockBuilder;
+  /**
+   * The name of the method of a partition class which registers its beans with the bean manager.
+   */
+  public static final String DECLARE_BEANS_METHOD = "declareBeans";
+
+  protected final GeneratedClass bootstrapper;
+  protected final List<GeneratedClass> partitionClasses = new ArrayList<GeneratedClass>();
+  protected GeneratedClass currentClass;
 
-  protected final List<Statement> appendToEnd;
   protected final List<TypeDiscoveryListener> typeDiscoveryListeners;
-  protected final Set<MetaClass> discovered = new HashSet<MetaClass>();
+  protected final Set<MetaClass> discovered = Collections.newSetFromMap(new ConcurrentHashMap<MetaClass, Boolean>());
+
+  /**
+   * The partition class the current thread emits into, if partition classes are generated in parallel.
+   */
+  private final ThreadLocal<GeneratedClass> threadClass = new ThreadLocal<GeneratedClass>();
 
   protected final Variable contextVariable = Variable.create("injContext", BootstrapperInjectionContext.class);
 
   protected final QualifyingMetadataFactory qualifyingMetadataFactory;
 
-  private IOCProcessingContext(final Builder builder) {
-    this.context = builder.context;
-    this.bootstrapClass = builder.bootstrapClassInstance;
-    this.bootstrapBuilder = builder.bootstrapBuilder;
+  private final PartitionClassCache partitionClassCache;
 
-    this.blockBuilder = new Stack<BlockBuilder<?>>();
-    this.blockBuilder.push(builder.blockBuilder);
+  private IOCProcessingContext(final Builder builder) {
+    this.bootstrapper = new GeneratedClass(builder.bootstrapBuilder, builder.bootstrapClassInstance, builder.context,
+        builder.blockBuilder);
+    this.currentClass = bootstrapper;
 
-    this.appendToEnd = new ArrayList<Statement>();
-    this.typeDiscoveryListeners = new ArrayList<TypeDiscoveryListener>();
+    this.typeDiscoveryListeners = new CopyOnWriteArrayList<TypeDiscoveryListener>();
     this.qualifyingMetadataFactory = builder.qualifyingMetadataFactory;
+    this.partitionClassCache = builder.partitionClassCache;
   }
 
   public static class Builder {
@@ -74,6 +102,7 @@ public class IOCProcessingContext {
     private ClassStructureBuilder bootstrapBuilder;
     private BlockBuilder<?> blockBuilder;
     private QualifyingMetadataFactory qualifyingMetadataFactory;
+    private PartitionClassCache partitionClassCache;
 
     public static Builder create() {
       return new Builder();
@@ -104,6 +133,11 @@ public class IOCProcessingContext {
       return this;
     }
 
+    public Builder partitionClassCache(PartitionClassCache partitionClassCache) {
+      this.partitionClassCache = partitionClassCache;
+      return this;
+    }
+
 
     public IOCProcessingContext build() {
       Assert.notNull("context cannot be null", context);
@@ -120,7 +154,7 @@ public class IOCProcessingContext {
   }
 
   public BlockBuilder<?> getBlockBuilder() {
-    return blockBuilder.peek();
+    return getBlockBuilderStack().peek();
   }
 
   public BlockBuilder<?> append(Statement statement) {
@@ -128,43 +162,308 @@ public class IOCProcessingContext {
   }
 
   public void globalInsertBefore(Statement statement) {
-    blockBuilder.get(0).insertBefore(statement);
+    current().blockBuilder.get(0).insertBefore(statement);
   }
 
   public BlockBuilder<?> globalAppend(Statement statement) {
-    return blockBuilder.get(0).append(statement);
+    return current().blockBuilder.get(0).append(statement);
   }
 
   public void pushBlockBuilder(BlockBuilder<?> blockBuilder) {
-    this.blockBuilder.push(blockBuilder);
+    getBlockBuilderStack().push(blockBuilder);
   }
 
   public void popBlockBuilder() {
-    this.blockBuilder.pop();
+    final Stack<BlockBuilder<?>> stack = getBlockBuilderStack();
+    stack.pop();
 
-    if (this.blockBuilder.size() == 0) {
+    if (stack.size() == 0) {
       throw new AssertionError("block builder was over popped! something is wrong.");
     }
   }
 
+  private Stack<BlockBuilder<?>> getBlockBuilderStack() {
+    return current().blockBuilder;
+  }
+
+  /**
+   * Returns the class the generated code of the current thread is emitted into.
+   */
+  private GeneratedClass current() {
+    final GeneratedClass generatedClass = threadClass.get();
+    return generatedClass != null ? generatedClass : currentClass;
+  }
+
   public void appendToEnd(Statement statement) {
-    appendToEnd.add(statement);
+    current().appendToEnd(statement);
   }
 
+  /**
+   * Returns the statements appended to the end of the class the generated code is currently emitted into.
+   */
   public List<Statement> getAppendToEnd() {
-    return appendToEnd;
+    return current().appendToEnd;
+  }
+
+  /**
+   * Removes a statement appended to the end, from whichever class it was appended to.
+   */
+  public void removeFromEnd(Statement statement) {
+    bootstrapper.removeFromEnd(statement);
+    for (final GeneratedClass partitionClass : partitionClasses) {
+      partitionClass.removeFromEnd(statement);
+    }
+  }
+
+  /**
+   * Starts a new independent partition of the bean graph. All statements appended to the end from now on are
+   * attributed to the new partition.
+   */
+  public void beginPartition() {
+    current().currentPartition++;
+  }
+
+  /**
+   * Starts emitting the generated code into a new partition class of the bootstrapper. The partition class gets its
+   * own fields, inner classes, private accessors and statements appended to the end, and is instantiated and run by
+   * the bootstrapper, in the order the partition classes were begun. Everything is emitted into the bootstrapper again
+   * once the partition class is {@link #endPartitionClass ended}.
+   *
+   * @see BootstrapperPartition
+   */
+  public void beginPartitionClass() {
+    currentClass = addPartitionClass();
+  }
+
+  /**
+   * Adds a new partition class to the bootstrapper, without emitting anything into it. The code of the partition
+   * class can then be generated on a thread of its own, between {@link #enterPartitionClass} and
+   * {@link #exitPartitionClass}.
+   */
+  public GeneratedClass addPartitionClass() {
+    final BuildMetaClass bootstrapClass = bootstrapper.getClassDefinition();
+    final String className = bootstrapClass.getFullyQualifiedName() + "_Partition" + partitionClasses.size();
+
+    final ClassStructureBuilder<?> classBuilder = ClassBuilder.define(className, BootstrapperPartition.class)
+        .publicScope().body();
+
+    AnnotationInterningCallback.register(classBuilder);
+
+    classBuilder.publicConstructor(Parameter.of(BootstrapperInjectionContext.class, "injectionContext"))
+        .callSuper(Stmt.loadVariable("injectionContext")).finish();
+
+    // the fields are initialized from the superclass, as field initializers run before the constructor body.
+    classBuilder.privateField(contextVariable.getName(), contextVariable.getType()).modifiers(Modifier.Final)
+        .initializesWith(new Statement() {
+          @Override
+          public String generate(final Context context) {
+            return "getInjectionContext()";
+          }
+
+          @Override
+          public MetaClass getType() {
+            return MetaClassFactory.get(BootstrapperInjectionContext.class);
+          }
+        }).finish();
+
+    classBuilder.privateField("context", CreationalContext.class).modifiers(Modifier.Final)
+        .initializesWith(Stmt.loadVariable(contextVariable.getName()).invoke("getRootContext")).finish();
+
+    final BuildMetaClass classDefinition = classBuilder.getClassDefinition();
+    final GeneratedClass partitionClass = new GeneratedClass(classBuilder, classDefinition,
+        classDefinition.getContext(), classBuilder.publicMethod(void.class, CREATE_BEANS_METHOD).body());
+
+    partitionClasses.add(partitionClass);
+    return partitionClass;
+  }
+
+  /**
+   * Stops emitting the generated code into the current partition class.
+   */
+  public void endPartitionClass() {
+    currentClass = bootstrapper;
+  }
+
+  /**
+   * Emits the code generated on the current thread into the specified partition class, until the thread
+   * {@link #exitPartitionClass exits} it. Each thread must emit into a partition class of its own, as the builders of
+   * a class are not thread-safe.
+   */
+  public void enterPartitionClass(final GeneratedClass partitionClass) {
+    threadClass.set(partitionClass);
+  }
+
+  /**
+   * Stops emitting the code generated on the current thread into the partition class it entered.
+   */
+  public void exitPartitionClass() {
+    threadClass.remove();
+  }
+
+  /**
+   * Records the fingerprint of the group of bean graph partitions a partition class is generated from, and looks the
+   * class up in the {@link PartitionClassCache}, if there is one.
+   *
+   * @return true if the class files of the partition class are reused from a previous run, in which case nothing is
+   *         generated into it.
+   */
+  public boolean reusePartitionClass(final GeneratedClass partitionClass, final String fingerprint) {
+    partitionClass.fingerprint = fingerprint;
+    partitionClass.reused = partitionClassCache != null
+        && partitionClassCache.isCached(partitionClass.getClassDefinition().getFullyQualifiedName(), fingerprint);
+    return partitionClass.reused;
+  }
+
+  /**
+   * Returns the bootstrapper class.
+   */
+  public GeneratedClass getBootstrapper() {
+    return bootstrapper;
+  }
+
+  /**
+   * Returns the partition classes of the bootstrapper, in the order they were begun.
+   */
+  public List<GeneratedClass> getPartitionClasses() {
+    return Collections.unmodifiableList(partitionClasses);
+  }
+
+  /**
+   * A class the generated code is emitted into: the bootstrapper itself, or one of its partition classes.
+   */
+  public static final class GeneratedClass {
+    private final ClassStructureBuilder<?> classBuilder;
+    private final BuildMetaClass classDefinition;
+    private final Context context;
+    private final BlockBuilder<?> body;
+    private final Stack<BlockBuilder<?>> blockBuilder = new Stack<BlockBuilder<?>>();
+
+    private final List<Statement> appendToEnd = new ArrayList<Statement>();
+    private final Map<Statement, Integer> appendToEndPartitions = new IdentityHashMap<Statement, Integer>();
+    private int currentPartition;
+
+    private final Map<MetaField, PrivateAccessType> privateFieldsToExpose
+        = new LinkedHashMap<MetaField, PrivateAccessType>();
+    private final Map<String, MetaMethod> privateMethodsToExpose = new LinkedHashMap<String, MetaMethod>();
+
+    private String fingerprint;
+    private boolean reused;
+
+    private GeneratedClass(final ClassStructureBuilder<?> classBuilder,
+                           final BuildMetaClass classDefinition,
+                           final Context context,
+                           final BlockBuilder<?> body) {
+      this.classBuilder = classBuilder;
+      this.classDefinition = classDefinition;
+      this.context = context;
+      this.body = body;
+      this.blockBuilder.push(body);
+    }
+
+    public ClassStructureBuilder<?> getClassBuilder() {
+      return classBuilder;
+    }
+
+    public BuildMetaClass getClassDefinition() {
+      return classDefinition;
+    }
+
+    /**
+     * Returns the fingerprint of the group of bean graph partitions this partition class is generated from, or null
+     * for the bootstrapper.
+     */
+    public String getFingerprint() {
+      return fingerprint;
+    }
+
+    /**
+     * Returns true if the class files of this partition class are reused from a previous run, and the class is not
+     * generated.
+     */
+    public boolean isReused() {
+      return reused;
+    }
+
+    /**
+     * Returns the method body the generated code of this class is emitted into.
+     */
+    public BlockBuilder<?> getBody() {
+      return body;
+    }
+
+    /**
+     * Returns the statements to be appended to the end, grouped by the bean graph partition they were appended in.
+     * Partitions are returned in the order they were processed, and statements keep their original order within
+     * their partition.
+     */
+    public synchronized List<List<Statement>> getAppendToEndByPartition() {
+      final Map<Integer, List<Statement>> partitions = new LinkedHashMap<Integer, List<Statement>>();
+      for (final Statement statement : appendToEnd) {
+        final Integer partition = appendToEndPartitions.get(statement);
+        List<Statement> statements = partitions.get(partition);
+        if (statements == null) {
+          partitions.put(partition, statements = new ArrayList<Statement>());
+        }
+        statements.add(statement);
+      }
+      return new ArrayList<List<Statement>>(partitions.values());
+    }
+
+    private synchronized void appendToEnd(final Statement statement) {
+      appendToEnd.add(statement);
+      appendToEndPartitions.put(statement, currentPartition);
+    }
+
+    private synchronized void removeFromEnd(final Statement statement) {
+      if (appendToEndPartitions.remove(statement) != null) {
+        appendToEnd.remove(statement);
+      }
+    }
+
+    /**
+     * Records a private field whose accessors must be generated into this class.
+     */
+    public synchronized void exposeField(final MetaField field, final PrivateAccessType accessType) {
+      final PrivateAccessType exposed = privateFieldsToExpose.get(field);
+      privateFieldsToExpose.put(field, exposed == null || exposed == accessType ? accessType : PrivateAccessType.Both);
+    }
+
+    /**
+     * Records a private method whose accessor must be generated into this class.
+     */
+    public synchronized void exposeMethod(final MetaMethod method) {
+      final String methodSignature = PrivateAccessUtil.getPrivateMethodName(method);
+      if (!privateMethodsToExpose.containsKey(methodSignature)) {
+        privateMethodsToExpose.put(methodSignature, method);
+      }
+    }
+
+    public synchronized Map<MetaField, PrivateAccessType> getPrivateFieldsToExpose() {
+      return new LinkedHashMap<MetaField, PrivateAccessType>(privateFieldsToExpose);
+    }
+
+    public synchronized Collection<MetaMethod> getPrivateMethodsToExpose() {
+      return new ArrayList<MetaMethod>(privateMethodsToExpose.values());
+    }
+  }
+
+  /**
+   * Returns the class the generated code is currently emitted into.
+   */
+  public GeneratedClass getCurrentClass() {
+    return current();
   }
 
   public BuildMetaClass getBootstrapClass() {
-    return bootstrapClass;
+    return current().classDefinition;
   }
 
   public ClassStructureBuilder getBootstrapBuilder() {
-    return bootstrapBuilder;
+    return current().classBuilder;
   }
 
   public Context getContext() {
-    return context;
+    return current().context;
   }
 
   public VariableReference getContextVariableReference() {
@@ -180,10 +479,9 @@ public class IOCProcessingContext {
   }
 
   public void handleDiscoveryOfType(InjectionPoint injectionPoint) {
-    if (discovered.contains(injectionPoint.getType())) return;
+    if (!discovered.add(injectionPoint.getType())) return;
     for (TypeDiscoveryListener listener : typeDiscoveryListeners) {
       listener.onDiscovery(this, injectionPoint);
     }
-    discovered.add(injectionPoint.getType());
   }
 }
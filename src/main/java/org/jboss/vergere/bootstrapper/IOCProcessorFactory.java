@@ -19,6 +19,7 @@ package org.jboss.vergere.bootstrapper;
 import static org.jboss.vergere.injector.api.InjectableInstance.getInjectedInstance;
 import static org.jboss.vergere.injector.api.InjectableInstance.getMethodInjectedInstance;
 
+import com.google.common.io.ByteStreams;
 import org.jboss.errai.codegen.meta.MetaClass;
 import org.jboss.errai.codegen.meta.MetaClassFactory;
 import org.jboss.errai.codegen.meta.MetaClassMember;
@@ -40,6 +41,7 @@ import org.jboss.vergere.graph.GraphBuilder;
 import org.jboss.vergere.graph.GraphSort;
 import org.jboss.vergere.graph.SortUnit;
 import org.jboss.vergere.injector.ContextualProviderInjector;
+import org.jboss.vergere.injector.InjectUtil;
 import org.jboss.vergere.injector.Injector;
 import org.jboss.vergere.injector.ProducerInjector;
 import org.jboss.vergere.injector.ProviderInjector;
@@ -47,21 +49,29 @@ import org.jboss.vergere.injector.TypeInjector;
 import org.jboss.vergere.injector.api.InjectableInstance;
 import org.jboss.vergere.injector.api.InjectionContext;
 import org.jboss.vergere.injector.api.WiringElementType;
+import org.jboss.vergere.util.BootstrapReport;
 import org.jboss.vergere.util.ClassScanner;
+import org.jboss.vergere.util.ThreadUtil;
 import org.jboss.vergere.util.VergereUtils;
 
 import javax.enterprise.context.Dependent;
-import javax.enterprise.context.NormalScope;
 import javax.enterprise.inject.Stereotype;
 import javax.inject.Provider;
-import javax.inject.Scope;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -70,6 +80,10 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
 public class IOCProcessorFactory {
@@ -81,6 +95,10 @@ public class IOCProcessorFactory {
     this.injectionContext = injectionContext;
   }
 
+  public InjectionContext getInjectionContext() {
+    return injectionContext;
+  }
+
   public void registerHandler(final Class<? extends Annotation> annotation,
                               final AnnotationHandler handler) {
 
@@ -155,6 +173,32 @@ public class IOCProcessorFactory {
     }
   }
 
+  /**
+   * Makes each public supertype of a provided type depend on it. The injector of the provider is registered for those
+   * types too, so a bean injecting one of them gets the provider, and must be in the same partition of the bean graph.
+   */
+  private static void addSuperTypeDependencies(final GraphBuilder graphBuilder, final MetaClass providedType) {
+    final Set<String> visited = new HashSet<String>();
+    final Stack<MetaClass> toVisit = new Stack<MetaClass>();
+    toVisit.push(providedType);
+
+    while (!toVisit.isEmpty()) {
+      final MetaClass type = toVisit.pop();
+      final List<MetaClass> superTypes = new ArrayList<MetaClass>(Arrays.asList(type.getInterfaces()));
+      if (type.getSuperClass() != null) {
+        superTypes.add(type.getSuperClass());
+      }
+
+      for (final MetaClass superType : superTypes) {
+        if (superType.isPublic() && !superType.getFullyQualifiedName().equals("java.lang.Object")
+            && visited.add(superType.getFullyQualifiedName())) {
+          graphBuilder.addDependency(superType.getErased(), Dependency.on(providedType));
+          toVisit.push(superType);
+        }
+      }
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private void inferHandlers() {
     for (final Map.Entry<WiringElementType, Class<? extends Annotation>> entry : injectionContext.getAllElementMappings()) {
@@ -235,6 +279,7 @@ public class IOCProcessorFactory {
               }
 
               injectionContext.getGraphBuilder().addDependency(providedType, Dependency.on(providerClassType));
+              addSuperTypeDependencies(injectionContext.getGraphBuilder(), providedType);
 
               control.masqueradeAs(providedType);
               super.getDependencies(control, instance, annotation, context);
@@ -419,37 +464,13 @@ public class IOCProcessorFactory {
               }
 
               if (annoClass.equals(Dependent.class)
-                  && Boolean.getBoolean(IOCBootstrapGenerator.EXPERIMENTAL_INFER_DEPENDENT_BY_REACHABILITY)
+                  && Boolean.parseBoolean(
+                      System.getProperty(IOCBootstrapGenerator.EXPERIMENTAL_INFER_DEPENDENT_BY_REACHABILITY, "true"))
                   && injectionContext.getAllReachableTypes() != null) {
 
-                System.out.println("******************************************************************************");
-                System.out.println("*** EXPERIMENTAL FEATURE ENABLED                                           ***");
-                System.out.println("*** You have enabled support for inferred dependent scope by reachability. ***");
-                System.out.println("***                                                                        ***");
-                System.out.println("*** This feature is designed to allow the @Dependent scope to work         ***");
-                System.out.println("*** as per the JSR-299 specification, without imposing the overhead of     ***");
-                System.out.println("*** adding all translatable beans to the container -- but rather, just     ***");
-                System.out.println("*** those which are reachable within your application.                     ***");
-                System.out.println("***                                                                        ***");
-                System.out.println("*** This feature is only experimental, and may be removed in a future      ***");
-                System.out.println("*** version without notice.                                                ***");
-                System.out.println("******************************************************************************");
-
                 classes = new ArrayList<MetaClass>(classes);
 
-                Scan: for (final String type : injectionContext.getAllReachableTypes()) {
-                  final MetaClass metaClass = MetaClassFactory.get(type);
-                  if (metaClass.isDefaultInstantiable() && metaClass.isPublic() && metaClass.isConcrete()) {
-                    for (final Annotation anno : metaClass.getAnnotations()) {
-                      if (anno.annotationType().isAnnotationPresent(Scope.class)
-                          || anno.annotationType().isAnnotationPresent(NormalScope.class)) {
-                        continue Scan;
-                      }
-                    }
-
-                    classes.add(metaClass);
-                  }
-                }
+                classes.addAll(ClassScanner.getInferredDependentTypes(injectionContext.getAllReachableTypes()));
 
                 classes = Collections.unmodifiableCollection(classes);
               }
@@ -491,8 +512,16 @@ public class IOCProcessorFactory {
     }
     while (!processingTasksStack.isEmpty());
 
+    final long graphStart = BootstrapReport.begin();
     final List<SortUnit> toSort = injectionContext.getGraphBuilder().build();
-    final List<SortUnit> list = GraphSort.sortGraph(toSort);
+    final Set<List<SortUnit>> partitions = GraphSort.sortAndPartitionGraph(toSort);
+
+    // the partitions share no units, so they make up a topological order of the whole graph one after the other.
+    final List<SortUnit> list = new ArrayList<SortUnit>(toSort.size());
+    for (final List<SortUnit> partition : partitions) {
+      list.addAll(partition);
+    }
+    BootstrapReport.end(BootstrapReport.Phase.GraphSort, graphStart);
 
     final File dotFile = new File(VergereUtils.getApplicationCacheDirectory().getAbsolutePath() + "/beangraph.gv");
 
@@ -502,22 +531,230 @@ public class IOCProcessorFactory {
             "//\n\n" +
             GraphBuilder.toDOTRepresentation(list));
 
+    // the members of each cycle are its strongly connected component, which the sort has already found. each
+    // component is recorded once, through its first member; a bean which depends on itself is a cycle of its own.
     for (final SortUnit unit : list) {
-      if (unit.isCyclicGraph()) {
+      final List<SortUnit> component = unit.getComponent();
+      if (component.get(0) != unit) continue;
+
+      if (component.size() > 1) {
         final Set<String> knownCycles = new HashSet<String>();
-        knownCycles.add(unit.getType().getFullyQualifiedName());
+        for (final SortUnit member : component) {
+          knownCycles.add(member.getType().getFullyQualifiedName());
+        }
+        injectionContext.addKnownTypesWithCycles(knownCycles);
+      }
+      else if (unit.getDependencies().contains(unit)) {
+        injectionContext.addKnownTypesWithCycles(Collections.singleton(unit.getType().getFullyQualifiedName()));
+      }
+    }
+
+    // process each independent subgraph on its own, so the code emitted for it can be kept together.
+    final List<List<List<SortUnit>>> groups = groupPartitions(partitions, getPartitionClassSize());
+
+    // a bootstrapper small enough to fit into a single partition class is generated as one class.
+    if (groups.size() == 1) {
+      processGroup(context, groups.get(0));
+      return;
+    }
+
+    // every group is fingerprinted before any is processed, so a fingerprint depends only on the classes and the
+    // injectors of its group. a partition class whose fingerprint is unchanged is reused from the previous run.
+    final List<IOCProcessingContext.GeneratedClass> partitionClasses
+        = new ArrayList<IOCProcessingContext.GeneratedClass>(groups.size());
+    final List<Integer> toProcess = new ArrayList<Integer>(groups.size());
+    final Map<String, String> classFileDigests = new HashMap<String, String>();
+    for (int i = 0; i < groups.size(); i++) {
+      final IOCProcessingContext.GeneratedClass partitionClass = context.addPartitionClass();
+      partitionClasses.add(partitionClass);
+      if (!context.reusePartitionClass(partitionClass, fingerprintGroup(i, groups.get(i), classFileDigests))) {
+        toProcess.add(i);
+      }
+    }
+
+    if (toProcess.size() > 1 && Boolean.getBoolean(IOCBootstrapGenerator.EXPERIMENTAL_PARALLEL_PARTITIONS)) {
+      processGroupsInParallel(context, injectionContext, groups, partitionClasses, toProcess);
+    }
+    else {
+      for (final int i : toProcess) {
+        context.enterPartitionClass(partitionClasses.get(i));
+        InjectUtil.beginNameScope(partitionNamePrefix(i));
+        try {
+          processGroup(context, groups.get(i));
+        }
+        finally {
+          InjectUtil.endNameScope();
+          context.exitPartitionClass();
+        }
+      }
+    }
+  }
 
-        for (final SortUnit dep : unit.getDependencies()) {
-          if (dep.isCyclicGraph()) {
-            knownCycles.add(dep.getType().getFullyQualifiedName());
+  /**
+   * Fingerprints a group of partitions of the bean graph: the position of the group, which the names in its
+   * partition class depend on, and for each unit of each partition, the class files of the bean type and its
+   * superclasses, the types it depends on, and the injectors resolved for it.
+   *
+   * @param classFileDigests
+   *     the digests of the class files read so far, shared between the groups.
+   */
+  private String fingerprintGroup(final int index,
+                                  final List<List<SortUnit>> group,
+                                  final Map<String, String> classFileDigests) {
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-256");
+      update(md, "group " + index);
+
+      for (final List<SortUnit> partition : group) {
+        update(md, "partition");
+
+        for (final SortUnit unit : partition) {
+          update(md, "unit " + unit.getType().getFullyQualifiedName() + " " + unit.getItems().size());
+          updateClassFiles(md, unit.getType(), classFileDigests);
+
+          final Set<String> dependencies = new TreeSet<String>();
+          for (final SortUnit dependency : unit.getDependencies()) {
+            dependencies.add(dependency.getType().getFullyQualifiedName());
+          }
+          update(md, "dependencies " + dependencies);
+
+          for (final Injector injector : injectionContext.getInjectors(unit.getType())) {
+            update(md, describeInjector(injector));
+            if (injector.getEnclosingType() != null) {
+              updateClassFiles(md, injector.getEnclosingType(), classFileDigests);
+            }
           }
         }
+      }
+      return VergereUtils.hashToHexString(md.digest());
+    }
+    catch (IOException e) {
+      throw new RuntimeException("failed to fingerprint bean graph partitions", e);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("failed to fingerprint bean graph partitions", e);
+    }
+  }
 
-        injectionContext.addKnownTypesWithCycles(knownCycles);
+  private static String describeInjector(final Injector injector) {
+    final List<String> qualifiers = new ArrayList<String>();
+    for (final Annotation qualifier : injector.getQualifyingMetadata().getQualifiers()) {
+      // only the annotations read from class files describe their members; the built-in ones are anonymous classes.
+      qualifiers.add(Proxy.isProxyClass(qualifier.getClass())
+          ? qualifier.toString() : qualifier.annotationType().getName());
+    }
+    Collections.sort(qualifiers);
+
+    return "injector " + injector.getClass().getName()
+        + " " + injector.getInjectedType().getFullyQualifiedName()
+        + " qualifiers " + qualifiers
+        + " name " + injector.getBeanName()
+        + " enclosing " + (injector.getEnclosingType() == null ? null
+        : injector.getEnclosingType().getFullyQualifiedName())
+        + " enabled " + injector.isEnabled()
+        + " alternative " + injector.isAlternative()
+        + " singleton " + injector.isSingleton()
+        + " dependent " + injector.isDependent()
+        + " provider " + injector.isProvider()
+        + " static " + injector.isStatic()
+        + " pseudo " + injector.isPseudo()
+        + " testmock " + injector.isTestmock();
+  }
+
+  /**
+   * Adds the class files of a type and of its superclasses outside the JDK to a digest. A class without a class file
+   * contributes its name only.
+   */
+  private static void updateClassFiles(final MessageDigest md,
+                                       final MetaClass type,
+                                       final Map<String, String> classFileDigests) throws IOException {
+    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    for (MetaClass visit = type; visit != null && !visit.getFullyQualifiedName().startsWith("java.");
+         visit = visit.getSuperClass()) {
+      final String binaryName = visit.getErased().asClass().getName();
+
+      String digest = classFileDigests.get(binaryName);
+      if (digest == null) {
+        final InputStream inputStream = classLoader.getResourceAsStream(binaryName.replace('.', '/') + ".class");
+        if (inputStream == null) {
+          digest = "none";
+        }
+        else {
+          try {
+            digest = VergereUtils.hashToHexString(digestOf(ByteStreams.toByteArray(inputStream)));
+          }
+          finally {
+            inputStream.close();
+          }
+        }
+        classFileDigests.put(binaryName, digest);
       }
+      update(md, "class " + binaryName + " " + digest);
+    }
+  }
+
+  private static byte[] digestOf(final byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
     }
+  }
 
-    for (final SortUnit unit : list) {
+  private static void update(final MessageDigest md, final String value) {
+    try {
+      md.update(value.getBytes("UTF-8"));
+      md.update((byte) '\n');
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static int getPartitionClassSize() {
+    return Integer.getInteger(IOCBootstrapGenerator.PARTITION_CLASS_SIZE_PROPERTY,
+        IOCBootstrapGenerator.DEFAULT_PARTITION_CLASS_SIZE);
+  }
+
+  /**
+   * Packs consecutive partitions of the bean graph into groups of at most the specified number of units, each of
+   * which is generated into a partition class of its own. A partition is never split across groups, so a partition
+   * larger than the limit makes up a group on its own.
+   */
+  static List<List<List<SortUnit>>> groupPartitions(final Collection<List<SortUnit>> partitions, final int maxUnits) {
+    final List<List<List<SortUnit>>> groups = new ArrayList<List<List<SortUnit>>>();
+    List<List<SortUnit>> group = null;
+    int unitsInGroup = 0;
+
+    for (final List<SortUnit> partition : partitions) {
+      if (group == null || (unitsInGroup != 0 && unitsInGroup + partition.size() > maxUnits)) {
+        groups.add(group = new ArrayList<List<SortUnit>>());
+        unitsInGroup = 0;
+      }
+      group.add(partition);
+      unitsInGroup += partition.size();
+    }
+    return groups;
+  }
+
+  /**
+   * Returns the prefix which makes the names given in the partition class of a group unique. The names depend only
+   * on the position of the group, so the classes are generated the same way on any thread.
+   */
+  private static String partitionNamePrefix(final int group) {
+    return "_" + group + "_";
+  }
+
+  private static void processGroup(final IOCProcessingContext context, final List<List<SortUnit>> group) {
+    for (final List<SortUnit> partition : group) {
+      context.beginPartition();
+      processPartition(partition);
+    }
+  }
+
+  private static void processPartition(final List<SortUnit> partition) {
+    for (final SortUnit unit : partition) {
       for (final Object item : unit.getItems()) {
         if (item instanceof ProcessingDelegate) {
           ((ProcessingDelegate) item).process();
@@ -526,6 +763,94 @@ public class IOCProcessorFactory {
     }
   }
 
+  /**
+   * Generates the partition classes of the groups of partitions of the bean graph on the worker threads of the
+   * {@link ThreadUtil}. The partition classes are added on the calling thread, in the order of the groups, and each
+   * group is emitted into the partition class of its own, with names of its own. The state each group adds to the
+   * {@link InjectionContext} is kept in a partition of the context, and the partitions are merged on the calling thread
+   * in the order of the groups, so the generated classes and the context are the same as those of processing the groups
+   * one after the other.
+   * <p/>
+   * This relies on the injectors and extensions of one group not sharing any mutable state with those of another,
+   * beyond the context, and on the {@link MetaClassResolver} resolving the types the groups reflect on beforehand.
+   */
+  private static void processGroupsInParallel(final IOCProcessingContext context,
+                                              final InjectionContext injectionContext,
+                                              final List<List<List<SortUnit>>> groups,
+                                              final List<IOCProcessingContext.GeneratedClass> partitionClasses,
+                                              final List<Integer> toProcess) {
+    final List<MetaClass> types = new ArrayList<MetaClass>();
+    for (final int i : toProcess) {
+      for (final List<SortUnit> partition : groups.get(i)) {
+        for (final SortUnit unit : partition) {
+          types.add(unit.getType());
+          for (final Injector injector : injectionContext.getInjectors(unit.getType())) {
+            types.add(injector.getInjectedType());
+            if (injector.getEnclosingType() != null) {
+              types.add(injector.getEnclosingType());
+            }
+          }
+        }
+      }
+    }
+    MetaClassResolver.resolve(types);
+
+    // the workers take the groups in order, and keep the partition of the context of each in its slot.
+    final InjectionContext.Partition[] partitions = new InjectionContext.Partition[toProcess.size()];
+    final AtomicInteger nextGroup = new AtomicInteger();
+
+    final int workers = Math.min(toProcess.size(), Runtime.getRuntime().availableProcessors());
+    final List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+    for (int w = 0; w < workers; w++) {
+      futures.add(ThreadUtil.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          int next;
+          while ((next = nextGroup.getAndIncrement()) < partitions.length) {
+            final int i = toProcess.get(next);
+
+            context.enterPartitionClass(partitionClasses.get(i));
+            partitions[next] = injectionContext.enterPartition();
+            InjectUtil.beginNameScope(partitionNamePrefix(i));
+            try {
+              processGroup(context, groups.get(i));
+            }
+            finally {
+              InjectUtil.endNameScope();
+              injectionContext.exitPartition();
+              context.exitPartitionClass();
+            }
+          }
+          return null;
+        }
+      }));
+    }
+
+    try {
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException("failed to process bean graph partition", e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while processing bean graph partitions", e);
+    }
+    finally {
+      // the workers which are still running stop once they are done with their current group.
+      nextGroup.set(partitions.length);
+    }
+
+    for (final InjectionContext.Partition partition : partitions) {
+      injectionContext.mergePartition(partition);
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private void handleType(final ProcessingEntry entry,
                           final DependencyControl dependencyControl,
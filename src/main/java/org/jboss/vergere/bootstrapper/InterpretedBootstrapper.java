@@ -0,0 +1,758 @@
+/*
+ * Copyright 2011 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vergere.bootstrapper;
+
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.MetaClassMember;
+import org.jboss.errai.codegen.meta.MetaConstructor;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.codegen.meta.MetaParameter;
+import org.jboss.errai.codegen.meta.MetaParameterizedType;
+import org.jboss.errai.codegen.meta.MetaType;
+import org.jboss.vergere.client.Bootstrapper;
+import org.jboss.vergere.client.BootstrapperInjectionContext;
+import org.jboss.vergere.client.QualifierEqualityFactory;
+import org.jboss.vergere.client.QualifierEqualityFactoryProvider;
+import org.jboss.vergere.client.QualifierUtil;
+import org.jboss.vergere.client.ReflectiveQualifierEqualityFactory;
+import org.jboss.vergere.client.api.CodeDecorator;
+import org.jboss.vergere.client.api.ContextualTypeProvider;
+import org.jboss.vergere.client.api.IOCExtension;
+import org.jboss.vergere.client.container.CreationalCallback;
+import org.jboss.vergere.client.container.CreationalContext;
+import org.jboss.vergere.client.container.DestructionCallback;
+import org.jboss.vergere.client.container.InitializationCallback;
+import org.jboss.vergere.exception.InjectionFailure;
+import org.jboss.vergere.injector.ContextualProviderInjector;
+import org.jboss.vergere.injector.InjectUtil;
+import org.jboss.vergere.injector.Injector;
+import org.jboss.vergere.injector.ProducerInjector;
+import org.jboss.vergere.injector.ProviderInjector;
+import org.jboss.vergere.injector.QualifiedTypeInjectorDelegate;
+import org.jboss.vergere.injector.TypeInjector;
+import org.jboss.vergere.injector.api.InjectionContext;
+import org.jboss.vergere.injector.api.WiringElementType;
+import org.jboss.vergere.metadata.QualifyingMetadataFactory;
+import org.jboss.vergere.util.ClassScanner;
+import org.jboss.vergere.util.IOCBootstrapMaker;
+import org.mvel2.util.ReflectionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Provider;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Bootstrapper} which wires the container reflectively at runtime, rather than by compiling the generated
+ * bootstrapper class. The beans are processed by the same {@link IOCProcessorFactory} run as when the bootstrapper is
+ * generated, so the interpreted container declares the beans of the generated one, with the same qualifiers, names and
+ * scopes, including the dependent beans inferred by reachability, alternatives and specializations. Only the code
+ * rendered by the processing is left unused.
+ * <p/>
+ * The beans are declared, and the singletons created, in the order in which the processor registered them while it
+ * walked the sorted bean graph, and each injection point is resolved through the processed {@link InjectionContext}.
+ * The constructors, fields and methods which wire a bean type are looked up and made accessible once, and kept for the
+ * bootstraps which follow.
+ * <p/>
+ * Code decorators and IOC extensions contribute code which cannot be interpreted: when any is found, the bootstrapper
+ * is generated instead.
+ */
+public class InterpretedBootstrapper implements Bootstrapper {
+  private static final Logger log = LoggerFactory.getLogger(InterpretedBootstrapper.class);
+
+  /**
+   * The name of the bootstrapper class the beans are processed for. No such class is ever rendered.
+   */
+  private static final String PROCESSED_CLASS_NAME = "InterpretedBootstrapperImpl";
+
+  private static final Map<Class<?>, BeanMembers> membersCache = new ConcurrentHashMap<Class<?>, BeanMembers>();
+
+  private final Map<Injector, BeanDefinition> definitions = new HashMap<Injector, BeanDefinition>();
+
+  private final ThreadLocal<Set<BeanDefinition>> creationStack = new ThreadLocal<Set<BeanDefinition>>() {
+    @Override
+    protected Set<BeanDefinition> initialValue() {
+      return new HashSet<BeanDefinition>();
+    }
+  };
+
+  private InjectionContext processedContext;
+  private QualifyingMetadataFactory qualifyingMetadataFactory;
+  private BootstrapperInjectionContext injectionContext;
+
+  @Override
+  public BootstrapperInjectionContext bootstrapContainer() {
+    if (!ClassScanner.getTypesAnnotatedWith(CodeDecorator.class).isEmpty()
+        || !ClassScanner.getTypesAnnotatedWith(IOCExtension.class).isEmpty()) {
+      log.info("code decorators and IOC extensions contribute generated code: generating the bootstrapper instead "
+          + "of wiring the container reflectively");
+      return bootstrapGenerated();
+    }
+
+    final long st = System.currentTimeMillis();
+
+    QualifierUtil.initFromFactoryProvider(new QualifierEqualityFactoryProvider() {
+      @Override
+      public QualifierEqualityFactory provide() {
+        return new ReflectiveQualifierEqualityFactory();
+      }
+    });
+
+    final IOCBootstrapGenerator generator = new IOCBootstrapGenerator();
+    processedContext = generator.processBeans(Bootstrapper.class.getPackage().getName(), PROCESSED_CLASS_NAME);
+    qualifyingMetadataFactory = processedContext.getProcessingContext().getQualifyingMetadataFactory();
+    injectionContext = new BootstrapperInjectionContext();
+
+    runTasks(generator.getBeforeTasks());
+
+    final List<Injector> registered = new ArrayList<Injector>(InjectUtil.getBeanInjectionTrackStore(processedContext));
+
+    // as in the generated bootstrapper, whose fields hold them, the singletons are created before any bean is declared.
+    final CreationalContext rootContext = injectionContext.getRootContext();
+    for (final Injector injector : registered) {
+      if (injector instanceof TypeInjector && injector.isEnabled() && injector.isSingleton()) {
+        getDefinition(injector).getInstance(rootContext);
+      }
+    }
+
+    int declared = 0;
+    for (final Injector injector : registered) {
+      if (declareBean(injector)) {
+        declared++;
+      }
+    }
+
+    runTasks(generator.getAfterTasks());
+
+    log.info("wired IOC container reflectively in " + (System.currentTimeMillis() - st) + "ms "
+        + "(" + declared + " beans declared)");
+
+    return injectionContext;
+  }
+
+  private static BootstrapperInjectionContext bootstrapGenerated() {
+    try {
+      return new IOCBootstrapMaker().generate().newInstance().bootstrapContainer();
+    }
+    catch (InstantiationException e) {
+      throw new RuntimeException("could not instantiate the generated bootstrapper", e);
+    }
+    catch (IllegalAccessException e) {
+      throw new RuntimeException("could not instantiate the generated bootstrapper", e);
+    }
+  }
+
+  private static void runTasks(final List<MetaClass> tasks) {
+    for (final MetaClass task : tasks) {
+      if (!task.isAssignableTo(Runnable.class)) {
+        throw new RuntimeException("annotated @IOCBootstrap task: " + task.getName() + " is not of type: "
+            + Runnable.class.getName());
+      }
+
+      try {
+        ((Runnable) task.asClass().newInstance()).run();
+      }
+      catch (InstantiationException e) {
+        throw new RuntimeException("could not instantiate bootstrap task: " + task.getFullyQualifiedName(), e);
+      }
+      catch (IllegalAccessException e) {
+        throw new RuntimeException("could not instantiate bootstrap task: " + task.getFullyQualifiedName(), e);
+      }
+    }
+  }
+
+  /**
+   * Declares a bean registered by the processor with the bean manager, as the generated bootstrapper declares it.
+   *
+   * @return true if the bean was declared; false if its injector was disabled after it was registered.
+   */
+  private boolean declareBean(final Injector injector) {
+    if (injector instanceof QualifiedTypeInjectorDelegate) {
+      final QualifiedTypeInjectorDelegate delegate = (QualifiedTypeInjectorDelegate) injector;
+      final BeanDefinition bean = getDefinition(delegate.getDelegate());
+
+      injectionContext.addBean(delegate.getQualifiedType().asClass(), bean.getType(), bean, bean.getDeclaredInstance(),
+          bean.getQualifiers(), null, false);
+      return true;
+    }
+
+    if (!injector.isEnabled()) {
+      return false;
+    }
+
+    final BeanDefinition bean = getDefinition(injector);
+    injectionContext.addBean(bean.getType(), bean.getType(), bean, bean.getDeclaredInstance(), bean.getQualifiers(),
+        injector.getBeanName(), true);
+
+    if (injector instanceof ProducerInjector) {
+      final Injector enclosing = processedContext.getInjector(injector.getEnclosingType());
+      if (enclosing.isDependent()) {
+        // the generated bootstrapper creates an instance of a dependent bean as it declares the beans it produces.
+        getDefinition(enclosing).getInstance(injectionContext.getRootContext());
+      }
+    }
+    return true;
+  }
+
+  private synchronized BeanDefinition getDefinition(final Injector injector) {
+    BeanDefinition bean = definitions.get(injector);
+    if (bean == null) {
+      if (injector instanceof ProducerInjector) {
+        bean = new ProducerBean((ProducerInjector) injector);
+      }
+      else if (injector instanceof TypeInjector && !(injector instanceof ProviderInjector)
+          && !(injector instanceof ContextualProviderInjector)) {
+        bean = new TypeBean((TypeInjector) injector);
+      }
+      else {
+        throw new InjectionFailure("the interpreted container cannot wire the bean of: " + injector);
+      }
+      definitions.put(injector, bean);
+    }
+    return bean;
+  }
+
+  private static BeanMembers getMembers(final MetaClass type, final InjectionContext context) {
+    final Class<?> beanClass = type.asClass();
+    final Set<Class<? extends Annotation>> injectionPoints = new HashSet<Class<? extends Annotation>>(
+        context.getAnnotationsForElementType(WiringElementType.InjectionPoint));
+
+    BeanMembers members = membersCache.get(beanClass);
+    if (members == null || !members.injectionPoints.equals(injectionPoints)) {
+      membersCache.put(beanClass, members = new BeanMembers(type, injectionPoints, context));
+    }
+    return members;
+  }
+
+  private static <T extends AccessibleObject> T accessible(final T member) {
+    member.setAccessible(true);
+    return member;
+  }
+
+  private static Method toMethod(final MetaMethod method) {
+    try {
+      return accessible(method.getDeclaringClass().asClass().getDeclaredMethod(method.getName(),
+          MetaClassFactory.asClassArray(method.getParameters())));
+    }
+    catch (NoSuchMethodException e) {
+      throw new InjectionFailure("could not resolve method: " + method.getDeclaringClass().getFullyQualifiedName()
+          + "." + method.getName());
+    }
+  }
+
+  private static Field toField(final MetaField field) {
+    try {
+      return accessible(field.getDeclaringClass().asClass().getDeclaredField(field.getName()));
+    }
+    catch (NoSuchFieldException e) {
+      throw new InjectionFailure("could not resolve field: " + field.getDeclaringClass().getFullyQualifiedName()
+          + "." + field.getName());
+    }
+  }
+
+  private static Object invoke(final Method method, final Object instance, final Object... args) {
+    try {
+      return method.invoke(instance, args);
+    }
+    catch (InvocationTargetException e) {
+      throw new RuntimeException("error invoking: " + method, e.getCause());
+    }
+    catch (IllegalAccessException e) {
+      throw new RuntimeException("error invoking: " + method, e);
+    }
+  }
+
+  private static boolean isInjectionPoint(final Set<Class<? extends Annotation>> injectionPoints,
+                                          final Annotation[] annotations) {
+    for (final Annotation annotation : annotations) {
+      if (injectionPoints.contains(annotation.annotationType())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The members which wire the beans of a type, found the way the code generator finds them, and made accessible.
+   */
+  private static class BeanMembers {
+    private final Set<Class<? extends Annotation>> injectionPoints;
+
+    private final Constructor<?> constructor;
+    private final MetaParameter[] constructorParameters;
+
+    private final List<InjectedMember> injectedMembers = new ArrayList<InjectedMember>();
+
+    private final List<Method> postConstructMethods;
+    private final List<Method> preDestroyMethods;
+
+    private BeanMembers(final MetaClass type,
+                        final Set<Class<? extends Annotation>> injectionPoints,
+                        final InjectionContext context) {
+      this.injectionPoints = injectionPoints;
+
+      final List<MetaConstructor> injectionConstructors = new ArrayList<MetaConstructor>();
+      for (final MetaConstructor c : type.getConstructors()) {
+        if (context.isElementType(WiringElementType.InjectionPoint, c)) {
+          injectionConstructors.add(c);
+        }
+      }
+
+      final MetaConstructor metaConstructor;
+      if (injectionConstructors.size() > 1) {
+        throw new InjectionFailure("more than one constructor in "
+            + type.getFullyQualifiedName() + " is marked as the injection point!");
+      }
+      else if (injectionConstructors.size() == 1) {
+        metaConstructor = injectionConstructors.get(0);
+      }
+      else if ((metaConstructor = type.getConstructor(new MetaClass[0])) == null) {
+        throw new InjectionFailure("there is no public default constructor or suitable injection constructor for type: "
+            + type.getFullyQualifiedName());
+      }
+
+      try {
+        this.constructor = accessible(type.asClass().getDeclaredConstructor(
+            MetaClassFactory.asClassArray(metaConstructor.getParameters())));
+      }
+      catch (NoSuchMethodException e) {
+        throw new InjectionFailure("could not resolve the constructor of: " + type.getFullyQualifiedName());
+      }
+      this.constructorParameters = metaConstructor.getParameters();
+
+      // subclass members are injected before superclass members, as in the generated bootstrapper.
+      MetaClass visit = type;
+      do {
+        for (final MetaField field : visit.getDeclaredFields()) {
+          if (!isInjectionPoint(injectionPoints, field.getAnnotations())) continue;
+
+          if (field.isStatic()) {
+            throw new InjectionFailure("attempt to inject bean into a static field: "
+                + field.getDeclaringClass().getFullyQualifiedName() + "." + field.getName());
+          }
+
+          final MetaMethod setter = field.isPublic()
+              ? null : visit.getMethod(ReflectionUtil.getSetter(field.getName()), field.getType());
+          if (setter == null) {
+            injectedMembers.add(new InjectedMember(field, toField(field), null, null));
+          }
+          else {
+            injectedMembers.add(new InjectedMember(setter, null, toMethod(setter), setter.getParameters()));
+          }
+        }
+
+        for (final MetaMethod method : visit.getDeclaredMethods()) {
+          if (isInjectionPoint(injectionPoints, method.getAnnotations())) {
+            injectedMembers.add(new InjectedMember(method, null, toMethod(method), method.getParameters()));
+          }
+        }
+      }
+      while ((visit = visit.getSuperClass()) != null);
+
+      this.postConstructMethods = getLifecycleMethods(type, PostConstruct.class);
+      this.preDestroyMethods = getLifecycleMethods(type, PreDestroy.class);
+    }
+
+    private static List<Method> getLifecycleMethods(final MetaClass type,
+                                                    final Class<? extends Annotation> annotation) {
+      final List<Method> methods = new ArrayList<Method>();
+      for (final MetaMethod method : InjectUtil.scanForAnnotatedMethod(type, annotation)) {
+        if (method.getParameters().length != 0) {
+          throw new InjectionFailure(annotation.getCanonicalName() + " method must contain no parameters: "
+              + type.getFullyQualifiedName() + "." + method.getName());
+        }
+        methods.add(toMethod(method));
+      }
+      return Collections.unmodifiableList(methods);
+    }
+  }
+
+  /**
+   * A field injected directly, or a method injected with its parameters.
+   */
+  private static class InjectedMember {
+    private final MetaClassMember member;
+    private final Field field;
+    private final Method method;
+    private final MetaParameter[] parameters;
+
+    private InjectedMember(final MetaClassMember member,
+                           final Field field,
+                           final Method method,
+                           final MetaParameter[] parameters) {
+      this.member = member;
+      this.field = field;
+      this.method = method;
+      this.parameters = parameters;
+    }
+  }
+
+  private InjectionSite[] getSites(final MetaParameter[] parameters, final String description) {
+    final InjectionSite[] sites = new InjectionSite[parameters.length];
+    for (int i = 0; i < parameters.length; i++) {
+      sites[i] = new InjectionSite(parameters[i].getType(), parameters[i].getAnnotations(),
+          description + " (parameter " + i + ")");
+    }
+    return sites;
+  }
+
+  private static Object[] getValues(final InjectionSite[] sites, final CreationalContext context) {
+    final Object[] values = new Object[sites.length];
+    for (int i = 0; i < sites.length; i++) {
+      values[i] = sites[i].getValue(context);
+    }
+    return values;
+  }
+
+  /**
+   * An injection point, such as a field or a parameter. The injector it resolves to is looked up in the processed
+   * injection context once, on first use.
+   */
+  private class InjectionSite {
+    private final MetaClass type;
+    private final Annotation[] qualifiers;
+    private final String description;
+
+    private volatile Injector resolved;
+
+    private InjectionSite(final MetaClass type, final Annotation[] annotations, final String description) {
+      this.type = type;
+      this.qualifiers = InjectUtil.getQualifiersFromAnnotationsAsArray(annotations);
+      this.description = description;
+    }
+
+    private Injector getInjector() {
+      if (resolved == null) {
+        Injector injector;
+        try {
+          injector = processedContext.getQualifiedInjector(type, qualifyingMetadataFactory.createFrom(qualifiers));
+        }
+        catch (InjectionFailure e) {
+          throw new InjectionFailure(e.getMessage() + "; at injection point: " + description);
+        }
+
+        while (injector instanceof QualifiedTypeInjectorDelegate) {
+          injector = ((QualifiedTypeInjectorDelegate) injector).getDelegate();
+        }
+        resolved = injector;
+      }
+      return resolved;
+    }
+
+    private Class<?>[] getTypeArguments() {
+      final MetaParameterizedType parameterizedType = type.getParameterizedType();
+      if (parameterizedType == null) {
+        return new Class<?>[0];
+      }
+
+      final MetaType[] typeParameters = parameterizedType.getTypeParameters();
+      final Class<?>[] typeArguments = new Class<?>[typeParameters.length];
+      for (int i = 0; i < typeParameters.length; i++) {
+        MetaType typeParameter = typeParameters[i];
+        if (typeParameter instanceof MetaParameterizedType) {
+          typeParameter = ((MetaParameterizedType) typeParameter).getRawType();
+        }
+        typeArguments[i] = typeParameter instanceof MetaClass ? ((MetaClass) typeParameter).asClass() : Object.class;
+      }
+      return typeArguments;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object getValue(final CreationalContext context) {
+      final Injector injector = getInjector();
+
+      if (injector instanceof ContextualProviderInjector) {
+        final Object provider
+            = getDefinition(((ContextualProviderInjector) injector).getProviderInjector()).getInstance(context);
+        return ((ContextualTypeProvider) provider).provide(getTypeArguments(),
+            qualifiers.length != 0 ? qualifiers : null);
+      }
+      else if (injector instanceof ProviderInjector) {
+        final Object provider = getDefinition(((ProviderInjector) injector).getProviderInjector()).getInstance(context);
+        return ((Provider) provider).get();
+      }
+
+      return getDefinition(injector).getInstance(context);
+    }
+  }
+
+  /**
+   * A bean declared by the interpreted container. A bean definition is also the {@link CreationalCallback} used by the
+   * bean manager to obtain new instances of the bean.
+   */
+  private abstract class BeanDefinition implements CreationalCallback<Object> {
+    private final Class<?> type;
+    private final Annotation[] qualifiers;
+    private final boolean singleton;
+
+    private volatile Object instance;
+
+    private BeanDefinition(final Injector injector) {
+      this.type = injector.getInjectedType().asClass();
+      this.qualifiers = injector.getQualifyingMetadata().getQualifiers();
+      this.singleton = injector.isSingleton();
+    }
+
+    public Class<?> getType() {
+      return type;
+    }
+
+    public Annotation[] getQualifiers() {
+      return qualifiers;
+    }
+
+    public boolean isSingleton() {
+      return singleton;
+    }
+
+    /**
+     * Returns the instance the bean is declared with, if it is declared as a singleton.
+     */
+    public Object getDeclaredInstance() {
+      return null;
+    }
+
+    @Override
+    public Object getInstance(final CreationalContext context) {
+      if (singleton && instance != null) {
+        return instance;
+      }
+
+      final Set<BeanDefinition> stack = creationStack.get();
+      if (!stack.add(this)) {
+        throw new InjectionFailure("unresolvable cycle on " + type.getName() + ": cycles must pass through field or "
+            + "method injection of a singleton bean when the container is interpreted");
+      }
+
+      try {
+        return create(singleton ? injectionContext.getRootContext() : context);
+      }
+      finally {
+        stack.remove(this);
+      }
+    }
+
+    /**
+     * Called by implementations as soon as the bean has been instantiated, and before it is injected, so that
+     * singleton beans may be injected into beans which they depend on.
+     */
+    protected void constructed(final CreationalContext context, final Object bean) {
+      if (singleton) {
+        instance = bean;
+      }
+
+      if (bean != null) {
+        context.addBean(context.getBeanReference(type, qualifiers), bean);
+      }
+    }
+
+    protected abstract Object create(CreationalContext context);
+
+    @Override
+    public String toString() {
+      return type.getName();
+    }
+  }
+
+  /**
+   * A bean backed by a class, wired through its constructor, fields and methods.
+   */
+  private class TypeBean extends BeanDefinition {
+    private final BeanMembers members;
+    private final InjectionSite[] constructorSites;
+    private final List<InjectionSite[]> memberSites = new ArrayList<InjectionSite[]>();
+
+    private TypeBean(final TypeInjector injector) {
+      super(injector);
+
+      this.members = getMembers(injector.getInjectedType(), processedContext);
+      this.constructorSites = getSites(members.constructorParameters, members.constructor.toString());
+
+      for (final InjectedMember injected : members.injectedMembers) {
+        if (injected.field != null) {
+          final MetaField field = (MetaField) injected.member;
+          memberSites.add(new InjectionSite[]{
+              new InjectionSite(field.getType(), field.getAnnotations(), injected.field.toString())});
+        }
+        else {
+          memberSites.add(getSites(injected.parameters, injected.method.toString()));
+        }
+      }
+    }
+
+    @Override
+    public Object getDeclaredInstance() {
+      return isSingleton() ? getInstance(injectionContext.getRootContext()) : null;
+    }
+
+    @Override
+    protected Object create(final CreationalContext context) {
+      final Object bean;
+      try {
+        bean = members.constructor.newInstance(getValues(constructorSites, context));
+      }
+      catch (InvocationTargetException e) {
+        throw new RuntimeException("error constructing bean: " + getType().getName(), e.getCause());
+      }
+      catch (Exception e) {
+        throw new RuntimeException("error constructing bean: " + getType().getName(), e);
+      }
+
+      constructed(context, bean);
+
+      for (int i = 0; i < members.injectedMembers.size(); i++) {
+        final InjectedMember injected = members.injectedMembers.get(i);
+        final Object[] values = getValues(memberSites.get(i), context);
+
+        if (injected.field != null) {
+          try {
+            injected.field.set(bean, values[0]);
+          }
+          catch (IllegalAccessException e) {
+            throw new RuntimeException("error injecting bean: " + getType().getName(), e);
+          }
+        }
+        else {
+          invoke(injected.method, bean, values);
+        }
+      }
+
+      if (!members.postConstructMethods.isEmpty()) {
+        context.addInitializationCallback(bean, new InitializationCallback<Object>() {
+          @Override
+          public void init(final Object obj) {
+            for (final Method method : members.postConstructMethods) {
+              invoke(method, obj);
+            }
+          }
+        });
+      }
+
+      if (!members.preDestroyMethods.isEmpty()) {
+        context.addDestructionCallback(bean, new DestructionCallback<Object>() {
+          @Override
+          public void destroy(final Object obj) {
+            for (final Method method : members.preDestroyMethods) {
+              invoke(method, obj);
+            }
+          }
+        });
+      }
+
+      return bean;
+    }
+  }
+
+  /**
+   * A bean produced by a producer method or field of another bean.
+   */
+  private class ProducerBean extends BeanDefinition {
+    private final Injector enclosingInjector;
+    private final Method method;
+    private final Field field;
+    private final InjectionSite[] parameterSites;
+    private final boolean staticMember;
+    private final Method disposer;
+
+    private ProducerBean(final ProducerInjector injector) {
+      super(injector);
+
+      this.enclosingInjector = processedContext.getInjector(injector.getEnclosingType());
+      this.staticMember = injector.getProducerMember().isStatic();
+
+      if (injector.getProducerMember() instanceof MetaMethod) {
+        final MetaMethod producerMethod = (MetaMethod) injector.getProducerMember();
+        this.method = toMethod(producerMethod);
+        this.field = null;
+        this.parameterSites = getSites(producerMethod.getParameters(), method.toString());
+      }
+      else {
+        this.method = null;
+        this.field = toField((MetaField) injector.getProducerMember());
+        this.parameterSites = new InjectionSite[0];
+      }
+
+      this.disposer = injector.getDisposerMethod() == null ? null : toMethod(injector.getDisposerMethod());
+    }
+
+    private Object getEnclosingInstance(final CreationalContext context) {
+      return getDefinition(enclosingInjector).getInstance(context);
+    }
+
+    private Object produce(final CreationalContext context) {
+      final Object enclosing = staticMember ? null : getEnclosingInstance(context);
+
+      final Object bean;
+      if (method != null) {
+        bean = invoke(method, enclosing, getValues(parameterSites, context));
+      }
+      else {
+        try {
+          bean = field.get(enclosing);
+        }
+        catch (IllegalAccessException e) {
+          throw new RuntimeException("error reading producer: " + field, e);
+        }
+      }
+
+      constructed(context, bean);
+
+      if (disposer != null && bean != null) {
+        context.addDestructionCallback(bean, new DestructionCallback<Object>() {
+          @Override
+          public void destroy(final Object obj) {
+            invoke(disposer, getEnclosingInstance(context), obj);
+          }
+        });
+      }
+      return bean;
+    }
+
+    @Override
+    protected Object create(final CreationalContext context) {
+      if (!isSingleton()) {
+        return produce(context);
+      }
+
+      // a singleton produced bean is added to the container as it is first produced, as in the generated bootstrapper.
+      return context.getSingletonInstanceOrNew(injectionContext, new CreationalCallback<Object>() {
+        @Override
+        public Object getInstance(final CreationalContext context) {
+          return produce(context);
+        }
+      }, getType(), getQualifiers());
+    }
+  }
+}
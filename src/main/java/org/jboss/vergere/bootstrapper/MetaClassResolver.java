@@ -0,0 +1,207 @@
+/*
+ * Copyright 2011 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vergere.bootstrapper;
+
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.MetaConstructor;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.codegen.meta.MetaParameter;
+import org.jboss.errai.codegen.meta.MetaParameterizedType;
+import org.jboss.errai.codegen.meta.MetaType;
+import org.jboss.errai.codegen.meta.impl.AbstractMetaClass;
+import org.jboss.errai.codegen.meta.impl.java.JavaReflectionClass;
+import org.jboss.vergere.client.BootstrapperInjectionContext;
+import org.jboss.vergere.client.BootstrapperPartition;
+import org.jboss.vergere.client.container.CreationalContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the {@link MetaClass}es the bean graph reflects on before its partitions are processed in parallel, so the
+ * workers only read what the {@link MetaClassFactory} and the types cache. The factory would otherwise create a type
+ * two workers look up at once twice, and the types fill in their members lazily without synchronization.
+ * <p/>
+ * The types resolved are the roots and, transitively, their superclasses and interfaces, the types of their fields,
+ * methods and constructors, and the arguments of those types. The JDK types are resolved without following their
+ * members. The maps in which each type caches the types it is assignable from and its array types are filled in as
+ * the types are used, so they are replaced by concurrent maps.
+ */
+final class MetaClassResolver {
+  private static final Logger log = LoggerFactory.getLogger(MetaClassResolver.class);
+
+  /**
+   * The types the generated code refers to which the beans need not.
+   */
+  private static final List<Class<?>> CONTAINER_TYPES = Arrays.<Class<?>>asList(Object.class, String.class,
+      Class.class, Annotation.class, void.class, boolean.class, byte.class, char.class, short.class, int.class,
+      long.class, float.class, double.class, BootstrapperInjectionContext.class, BootstrapperPartition.class,
+      CreationalContext.class);
+
+  private static final Field ASSIGNABLE_CACHE = findField(AbstractMetaClass.class, "ASSIGNABLE_CACHE");
+  private static final Field ARRAY_TYPE_CACHE = findField(JavaReflectionClass.class, "_arrayTypeCache");
+
+  private final Set<String> resolved = new HashSet<String>();
+  private final Set<MetaClass> visited = Collections.newSetFromMap(new IdentityHashMap<MetaClass, Boolean>());
+  private final LinkedList<MetaClass> toResolve = new LinkedList<MetaClass>();
+
+  private MetaClassResolver() {
+  }
+
+  /**
+   * Resolves the specified types, the types the generated code refers to, and the types they reflect on.
+   */
+  static void resolve(final Collection<MetaClass> roots) {
+    final MetaClassResolver resolver = new MetaClassResolver();
+    for (final Class<?> type : CONTAINER_TYPES) {
+      resolver.add(MetaClassFactory.get(type));
+    }
+    for (final MetaClass root : roots) {
+      resolver.add(root);
+    }
+
+    MetaClass type;
+    while ((type = resolver.toResolve.poll()) != null) {
+      resolver.resolveType(type);
+    }
+  }
+
+  private void add(final MetaType type) {
+    if (type instanceof MetaParameterizedType) {
+      final MetaParameterizedType parameterizedType = (MetaParameterizedType) type;
+      add(parameterizedType.getRawType());
+      for (final MetaType argument : parameterizedType.getTypeParameters()) {
+        add(argument);
+      }
+    }
+    else if (type instanceof MetaClass && visited.add((MetaClass) type)) {
+      toResolve.add((MetaClass) type);
+    }
+  }
+
+  private void resolveType(final MetaClass type) {
+    makeCachesConcurrent(type);
+
+    type.getFullyQualifiedName();
+    type.getInternalName();
+    type.getAnnotations();
+    type.asClass();
+    type.asBoxed();
+    type.asUnboxed();
+
+    final MetaClass erased = type.getErased();
+    add(erased);
+    add(type.getParameterizedType());
+    add(type.getGenericSuperClass());
+    add(type.getOuterComponentType());
+    if (type.isArray()) {
+      add(type.getComponentType());
+    }
+
+    if (!resolved.add(erased.getFullyQualifiedName())) {
+      return;
+    }
+
+    add(erased.getSuperClass());
+    for (final MetaClass iface : erased.getInterfaces()) {
+      add(iface);
+    }
+
+    // beans are all but never JDK types, so the members of the JDK types are not followed.
+    if (erased.isPrimitive() || erased.isArray() || erased.getFullyQualifiedName().startsWith("java.")) {
+      return;
+    }
+
+    erased.getFields();
+    erased.getMethods();
+    erased.getConstructors();
+
+    for (final MetaField field : erased.getDeclaredFields()) {
+      add(field.getType());
+      field.getAnnotations();
+    }
+    for (final MetaMethod method : erased.getDeclaredMethods()) {
+      add(method.getReturnType());
+      addParameters(method.getParameters());
+      method.getAnnotations();
+    }
+    for (final MetaConstructor constructor : erased.getDeclaredConstructors()) {
+      addParameters(constructor.getParameters());
+      constructor.getAnnotations();
+    }
+  }
+
+  private void addParameters(final MetaParameter[] parameters) {
+    for (final MetaParameter parameter : parameters) {
+      add(parameter.getType());
+      parameter.getAnnotations();
+    }
+  }
+
+  private static void makeCachesConcurrent(final MetaClass type) {
+    if (type instanceof AbstractMetaClass) {
+      makeConcurrent(ASSIGNABLE_CACHE, type);
+    }
+    if (type instanceof JavaReflectionClass) {
+      makeConcurrent(ARRAY_TYPE_CACHE, type);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void makeConcurrent(final Field field, final MetaClass type) {
+    if (field == null) {
+      return;
+    }
+
+    try {
+      final Map<Object, Object> cache = (Map<Object, Object>) field.get(type);
+      if (cache != null && !(cache instanceof ConcurrentHashMap)) {
+        field.set(type, new ConcurrentHashMap<Object, Object>(cache));
+      }
+    }
+    catch (IllegalAccessException e) {
+      throw new RuntimeException("could not replace the " + field.getName() + " of " + type, e);
+    }
+  }
+
+  private static Field findField(final Class<?> type, final String name) {
+    try {
+      final Field field = type.getDeclaredField(name);
+      field.setAccessible(true);
+      return field;
+    }
+    catch (NoSuchFieldException e) {
+      log.warn("the " + name + " of " + type.getName() + " cannot be made concurrent, so the bean graph partitions "
+          + "should not be processed in parallel with this version of errai-codegen");
+      return null;
+    }
+  }
+}
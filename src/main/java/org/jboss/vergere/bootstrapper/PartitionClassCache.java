@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vergere.bootstrapper;
+
+/**
+ * The class files of the partition classes of a bootstrapper compiled in a previous run, by the fingerprints of the
+ * groups of bean graph partitions they were generated from. A partition class found in the cache is neither generated
+ * nor compiled again.
+ */
+public interface PartitionClassCache {
+  /**
+   * Returns true if the class files of the specified partition class, generated from a group of partitions with the
+   * specified fingerprint, are available.
+   *
+   * @param className
+   *     the fully qualified name of the partition class.
+   * @param fingerprint
+   *     the fingerprint of the group of bean graph partitions the class is generated from.
+   */
+  boolean isCached(String className, String fingerprint);
+}
@@ -131,9 +131,11 @@ public class QualifierEqualityFactoryGenerator {
 
     final String csq = builder.toJavaString();
 
-    final File fileCacheDir = VergereUtils.getApplicationCacheDirectory();
-    final File cacheFile = new File(fileCacheDir.getAbsolutePath() + "/" + builder.getClassDefinition().getName() + ".java");
-    VergereUtils.writeStringToFile(cacheFile, csq);
+    if (VergereUtils.isWriteGeneratedSources()) {
+      final File fileCacheDir = VergereUtils.getApplicationCacheDirectory();
+      final File cacheFile = new File(fileCacheDir.getAbsolutePath() + "/" + builder.getClassDefinition().getName() + ".java");
+      VergereUtils.writeStringToFile(cacheFile, csq);
+    }
 
     printWriter.append(csq);
     return printWriter.toString();
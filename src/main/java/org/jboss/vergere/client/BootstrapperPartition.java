@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vergere.client;
+
+/**
+ * The base class of the generated classes which wire one group of independent partitions of the bean graph each. The
+ * generated {@link Bootstrapper} loads the partition classes by name, so it can be compiled independently of them,
+ * creates the beans of all partitions, and then declares the beans of all partitions.
+ */
+public abstract class BootstrapperPartition {
+  private final BootstrapperInjectionContext injectionContext;
+
+  protected BootstrapperPartition(final BootstrapperInjectionContext injectionContext) {
+    this.injectionContext = injectionContext;
+  }
+
+  protected final BootstrapperInjectionContext getInjectionContext() {
+    return injectionContext;
+  }
+
+  /**
+   * Wires the beans of this partition.
+   */
+  public abstract void createBeans();
+
+  /**
+   * Registers the beans of this partition with the bean manager.
+   */
+  public abstract void declareBeans();
+
+  /**
+   * Loads and instantiates a partition class, through the classloader of the bootstrapper which owns it.
+   *
+   * @param bootstrapper
+   *     the bootstrapper the partition class was generated with.
+   * @param className
+   *     the fully qualified name of the partition class.
+   * @param injectionContext
+   *     the injection context of the bootstrapper.
+   *
+   * @return the new partition.
+   */
+  public static BootstrapperPartition load(final Bootstrapper bootstrapper,
+                                           final String className,
+                                           final BootstrapperInjectionContext injectionContext) {
+    try {
+      return Class.forName(className, true, bootstrapper.getClass().getClassLoader())
+          .asSubclass(BootstrapperPartition.class)
+          .getConstructor(BootstrapperInjectionContext.class)
+          .newInstance(injectionContext);
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to load bootstrapper partition: " + className, e);
+    }
+  }
+}
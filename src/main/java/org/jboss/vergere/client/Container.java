@@ -16,34 +16,80 @@
 
 package org.jboss.vergere.client;
 
+import org.jboss.vergere.bootstrapper.InterpretedBootstrapper;
 import org.jboss.vergere.client.container.IOCBeanManagerLifecycle;
+import org.jboss.vergere.util.BootstrapReport;
+import org.jboss.vergere.util.ClassScanner;
+import org.jboss.vergere.util.ClasspathWatcher;
 import org.jboss.vergere.util.IOCBootstrapMaker;
 import org.jboss.vergere.util.ThreadUtil;
+import org.jboss.vergere.util.VergereUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
+import java.util.concurrent.locks.Lock;
 
 public class Container {
+  private static final Logger log = LoggerFactory.getLogger(Container.class);
 
   public void bootstrapContainer() {
+    // a classpath rescan must not replace the scan while this bootstrap reads it.
+    final Lock bootstrapLock = ClasspathWatcher.getBootstrapLock();
+    bootstrapLock.lock();
     try {
       new IOCBeanManagerLifecycle().resetBeanManager();
+      BootstrapReport.get().reset();
 
       System.out.println("Vergere bootstrapper successfully initialized.");
 
       long tm = System.currentTimeMillis();
-      final Class<? extends Bootstrapper> bootstrapperClass = new IOCBootstrapMaker().generate();
+      final Class<? extends Bootstrapper> bootstrapperClass;
+      final Class<? extends Bootstrapper> precompiled
+          = VergereUtils.isPrecompiledBootstrapAllowed() ? IOCBootstrapMaker.loadPrecompiled() : null;
 
+      if (precompiled != null) {
+        bootstrapperClass = precompiled;
+      }
+      else {
+        // the first lookup scans the classpath; later bootstraps in the same JVM report the cost of the lookup alone.
+        final long scanStart = BootstrapReport.begin();
+        ClassScanner.getScanner();
+        BootstrapReport.end(BootstrapReport.Phase.ClassScanning, scanStart);
+
+        if (VergereUtils.isInterpretedBootstrap()) {
+          bootstrapperClass = InterpretedBootstrapper.class;
+        }
+        else {
+          bootstrapperClass = new IOCBootstrapMaker().generate();
+        }
+      }
+
+      final long instantiationStart = BootstrapReport.begin();
       final Bootstrapper bootstrapper = bootstrapperClass.newInstance();
       BootstrapperInjectionContext injectionContext = bootstrapper.bootstrapContainer();
+      BootstrapReport.end(BootstrapReport.Phase.Instantiation, instantiationStart);
+
+      final long finishStart = BootstrapReport.begin();
       injectionContext.getRootContext().finish();
+      BootstrapReport.end(BootstrapReport.Phase.ContextFinish, finishStart);
 
       ThreadUtil.stopExecutor();
 
       System.out.println("Vergere container bootstrapped. (time: " + (System.currentTimeMillis() - tm) +  "ms)");
+      if (VergereUtils.isPrintBootstrapReport()) {
+        System.out.println(BootstrapReport.get());
+      }
+      else if (log.isDebugEnabled()) {
+        log.debug(BootstrapReport.get().toString());
+      }
     }
     catch (Throwable t) {
       t.printStackTrace();
       throw new RuntimeException("critical error in IOC container bootstrap", t);
     }
+    finally {
+      bootstrapLock.unlock();
+    }
   }
 }
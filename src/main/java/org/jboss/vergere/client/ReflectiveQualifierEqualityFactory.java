@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.vergere.client;
+
+import javax.enterprise.util.Nonbinding;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link QualifierEqualityFactory} which compares qualifiers reflectively, rather than through generated
+ * comparators. It follows the same rules as the generated factory: annotations must be of the same type, and all
+ * attributes not marked {@link Nonbinding} must be equal.
+ */
+public class ReflectiveQualifierEqualityFactory implements QualifierEqualityFactory {
+  private final Map<Class<? extends Annotation>, Method[]> attributeCache
+      = new ConcurrentHashMap<Class<? extends Annotation>, Method[]>();
+
+  @Override
+  public boolean isEqual(final Annotation a1, final Annotation a2) {
+    if (!QualifierUtil.isSameType(a1, a2)) {
+      return false;
+    }
+
+    for (final Method method : getBindingAttributes(a1.annotationType())) {
+      if (!valueEquals(invoke(method, a1), invoke(method, a2))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCodeOf(final Annotation a1) {
+    int hash = a1.annotationType().hashCode();
+    for (final Method method : getBindingAttributes(a1.annotationType())) {
+      hash = (31 * hash) + hashValueFor(invoke(method, a1));
+    }
+    return hash;
+  }
+
+  private Method[] getBindingAttributes(final Class<? extends Annotation> annotationType) {
+    Method[] methods = attributeCache.get(annotationType);
+    if (methods == null) {
+      final List<Method> attributes = new ArrayList<Method>();
+      for (final Method method : annotationType.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(Nonbinding.class) || !Modifier.isPublic(method.getModifiers())
+            || method.getParameterTypes().length != 0) continue;
+
+        method.setAccessible(true);
+        attributes.add(method);
+      }
+      attributeCache.put(annotationType, methods = attributes.toArray(new Method[attributes.size()]));
+    }
+    return methods;
+  }
+
+  private static Object invoke(final Method method, final Annotation annotation) {
+    try {
+      return method.invoke(annotation);
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to read qualifier attribute: " + method, e);
+    }
+  }
+
+  private static boolean valueEquals(final Object v1, final Object v2) {
+    if (v1 == null || v2 == null) {
+      return v1 == v2;
+    }
+    if (v1.getClass().isArray()) {
+      return Arrays.deepEquals(new Object[]{v1}, new Object[]{v2});
+    }
+    return v1.equals(v2);
+  }
+
+  private static int hashValueFor(final Object o) {
+    if (o instanceof Integer) {
+      return QualifierUtil.hashValueFor(((Integer) o).intValue());
+    }
+    else if (o instanceof Boolean) {
+      return QualifierUtil.hashValueFor(((Boolean) o).booleanValue());
+    }
+    else if (o instanceof Long) {
+      return QualifierUtil.hashValueFor(((Long) o).longValue());
+    }
+    else if (o instanceof Float) {
+      return QualifierUtil.hashValueFor(((Float) o).floatValue());
+    }
+    else if (o instanceof Double) {
+      return QualifierUtil.hashValueFor(((Double) o).doubleValue());
+    }
+    else if (o instanceof Character) {
+      return QualifierUtil.hashValueFor(((Character) o).charValue());
+    }
+    else if (o instanceof Byte) {
+      return QualifierUtil.hashValueFor(((Byte) o).byteValue());
+    }
+    else if (o instanceof Short) {
+      return QualifierUtil.hashValueFor(((Short) o).shortValue());
+    }
+    else if (o != null && o.getClass().isArray()) {
+      return Arrays.deepHashCode(new Object[]{o});
+    }
+    return QualifierUtil.hashValueFor(o);
+  }
+}
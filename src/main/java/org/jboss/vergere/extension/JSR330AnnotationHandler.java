@@ -99,6 +99,15 @@ public abstract class JSR330AnnotationHandler<T extends Annotation> implements A
     while ((mc = mc.getSuperClass()) != null);
   }
 
+  /**
+   * Returns the public, named implementations of an interface, which an injection point of the interface type is
+   * made to depend on in the bean graph.
+   * <p/>
+   * The scanner used to be configured without a subtype scanner, so this always returned an empty set, and interface
+   * injection points added no edges to the graph. Subtypes are now answered from the scan-time subtype index, so an
+   * interface depends on each of its implementations, and beans injecting an interface are wired after the
+   * implementations they may be given.
+   */
   public static <T> Set<MetaClass> fillInInterface(final MetaClass cls) {
     if (NullType.class.getName().equals(cls.getFullyQualifiedName())) {
       return Collections.emptySet();
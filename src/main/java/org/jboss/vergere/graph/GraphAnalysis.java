@@ -0,0 +1,341 @@
+package org.jboss.vergere.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A single pass over the graph of {@link SortUnit}s reachable from a set of roots. The units are interned to dense
+ * integer ids, and an iterative form of Tarjan's algorithm finds the strongly connected components together with the
+ * topological order, so there is no recursion and the whole analysis takes time linear in the size of the graph.
+ * <p/>
+ * The results are recorded on each unit: the component it is part of, whether a cycle is reachable from it, and its
+ * depth.
+ */
+final class GraphAnalysis {
+  /**
+   * The size of the largest component whose members are given depths of their own. Beyond it, every member of a
+   * component is given the depth of the component, as ordering its members would cost quadratic time.
+   */
+  private static final int MAX_ORDERED_COMPONENT_SIZE = 64;
+
+  private final List<SortUnit> units = new ArrayList<SortUnit>();
+  private final Map<SortUnit, Integer> ids = new HashMap<SortUnit, Integer>();
+  private final List<int[]> edges = new ArrayList<int[]>();
+
+  private int[] componentOf;
+  private int[] depth;
+  private final List<int[]> components = new ArrayList<int[]>();
+  private final List<SortUnit> sorted = new ArrayList<SortUnit>();
+
+  private GraphAnalysis() {
+  }
+
+  /**
+   * Analyzes the graph reachable from the specified units, and records the results on every unit of it.
+   */
+  static GraphAnalysis analyze(final Collection<SortUnit> roots) {
+    final GraphAnalysis analysis = new GraphAnalysis();
+    final int[] rootIds = analysis.intern(roots);
+    analysis.findComponents(rootIds);
+    analysis.computeDepths();
+    analysis.orderComponents();
+    analysis.recordResults();
+    return analysis;
+  }
+
+  /**
+   * Returns all units of the graph in topological order, each unit after the units it depends on. The members of a
+   * cycle are ordered by descending depth.
+   */
+  List<SortUnit> getSortedUnits() {
+    return sorted;
+  }
+
+  /**
+   * Returns the independent subgraphs of the graph, which share no units with each other, each in topological
+   * order. The subgraphs are ordered by their first unit in the topological order of the whole graph.
+   */
+  Set<List<SortUnit>> getPartitions() {
+    final int[] parent = new int[units.size()];
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+    }
+    for (int from = 0; from < parent.length; from++) {
+      for (final int to : edges.get(from)) {
+        final int a = find(parent, from);
+        final int b = find(parent, to);
+        if (a != b) {
+          parent[a] = b;
+        }
+      }
+    }
+
+    final Map<Integer, List<SortUnit>> partitions = new LinkedHashMap<Integer, List<SortUnit>>();
+    for (final SortUnit unit : sorted) {
+      final Integer root = find(parent, ids.get(unit));
+      List<SortUnit> partition = partitions.get(root);
+      if (partition == null) {
+        partitions.put(root, partition = new ArrayList<SortUnit>());
+      }
+      partition.add(unit);
+    }
+    return new LinkedHashSet<List<SortUnit>>(partitions.values());
+  }
+
+  private static int find(final int[] parent, int i) {
+    while (parent[i] != i) {
+      i = parent[i] = parent[parent[i]];
+    }
+    return i;
+  }
+
+  private int idOf(final SortUnit unit, final List<SortUnit> pending) {
+    Integer id = ids.get(unit);
+    if (id == null) {
+      ids.put(unit, id = units.size());
+      units.add(unit);
+      edges.add(null);
+      pending.add(unit);
+    }
+    return id;
+  }
+
+  private int[] intern(final Collection<SortUnit> roots) {
+    final List<SortUnit> pending = new ArrayList<SortUnit>();
+    final int[] rootIds = new int[roots.size()];
+    int r = 0;
+    for (final SortUnit root : roots) {
+      rootIds[r++] = idOf(root, pending);
+    }
+
+    // the edges of each unit keep the iteration order of its dependencies, so the sort visits them in that order.
+    while (!pending.isEmpty()) {
+      final SortUnit unit = pending.remove(pending.size() - 1);
+      final Set<SortUnit> dependencies = unit.getDependencies();
+      final int[] to = new int[dependencies.size()];
+      int i = 0;
+      for (final SortUnit dependency : dependencies) {
+        to[i++] = idOf(dependency, pending);
+      }
+      edges.set(ids.get(unit), to);
+    }
+    return rootIds;
+  }
+
+  /**
+   * Tarjan's algorithm, with an explicit stack in place of recursion. A unit is added to the topological order when
+   * all of its dependencies have been visited, and components are completed dependencies first.
+   */
+  private void findComponents(final int[] rootIds) {
+    final int n = units.size();
+    final int[] index = new int[n];
+    final int[] lowLink = new int[n];
+    final boolean[] onStack = new boolean[n];
+    final int[] componentStack = new int[n];
+    final int[] callStack = new int[n];
+    final int[] nextEdge = new int[n];
+    int componentTop = 0;
+    int nextIndex = 1;
+
+    componentOf = new int[n];
+
+    for (final int root : rootIds) {
+      if (index[root] != 0) continue;
+
+      int callTop = 0;
+      callStack[callTop++] = root;
+      index[root] = lowLink[root] = nextIndex++;
+      componentStack[componentTop++] = root;
+      onStack[root] = true;
+
+      while (callTop > 0) {
+        final int v = callStack[callTop - 1];
+        final int[] out = edges.get(v);
+
+        if (nextEdge[v] < out.length) {
+          final int w = out[nextEdge[v]++];
+          if (index[w] == 0) {
+            index[w] = lowLink[w] = nextIndex++;
+            componentStack[componentTop++] = w;
+            onStack[w] = true;
+            callStack[callTop++] = w;
+          }
+          else if (onStack[w] && index[w] < lowLink[v]) {
+            lowLink[v] = index[w];
+          }
+          continue;
+        }
+
+        callTop--;
+        sorted.add(units.get(v));
+        if (callTop > 0) {
+          final int caller = callStack[callTop - 1];
+          if (lowLink[v] < lowLink[caller]) {
+            lowLink[caller] = lowLink[v];
+          }
+        }
+
+        if (lowLink[v] == index[v]) {
+          int size = 0;
+          while (componentStack[componentTop - 1 - size] != v) {
+            size++;
+          }
+          size++;
+
+          final int[] members = new int[size];
+          System.arraycopy(componentStack, componentTop - size, members, 0, size);
+          componentTop -= size;
+
+          for (final int member : members) {
+            onStack[member] = false;
+            componentOf[member] = components.size();
+          }
+          components.add(members);
+        }
+      }
+    }
+  }
+
+  private boolean isCycle(final int component) {
+    final int[] members = components.get(component);
+    if (members.length > 1) {
+      return true;
+    }
+    for (final int to : edges.get(members[0])) {
+      if (to == members[0]) return true;
+    }
+    return false;
+  }
+
+  /**
+   * The depth of a unit is the length of the longest path outward from it to a leaf or a cycle, where no path
+   * returns to the unit it starts from. As components are completed dependencies first, the depths of all units
+   * outside a component are known by the time it is reached.
+   */
+  private void computeDepths() {
+    depth = new int[units.size()];
+    final int[] outerDepth = new int[units.size()];
+
+    for (int c = 0; c < components.size(); c++) {
+      final int[] members = components.get(c);
+
+      int componentDepth = 0;
+      for (final int member : members) {
+        for (final int to : edges.get(member)) {
+          if (componentOf[to] != c && depth[to] + 1 > outerDepth[member]) {
+            outerDepth[member] = depth[to] + 1;
+          }
+        }
+        componentDepth = Math.max(componentDepth, outerDepth[member]);
+      }
+
+      if (members.length == 1) {
+        depth[members[0]] = outerDepth[members[0]];
+      }
+      else if (members.length > MAX_ORDERED_COMPONENT_SIZE) {
+        for (final int member : members) {
+          depth[member] = componentDepth;
+        }
+      }
+      else {
+        for (final int member : members) {
+          depth[member] = depthWithinComponent(member, c, outerDepth);
+        }
+      }
+    }
+  }
+
+  /**
+   * Walks the component breadth-first from one of its members, taking the longest of the paths found to each other
+   * member and on out of the component.
+   */
+  private int depthWithinComponent(final int start, final int component, final int[] outerDepth) {
+    final Map<Integer, Integer> distance = new HashMap<Integer, Integer>();
+    final List<Integer> queue = new ArrayList<Integer>();
+    distance.put(start, 0);
+    queue.add(start);
+
+    int result = outerDepth[start];
+    for (int head = 0; head < queue.size(); head++) {
+      final int v = queue.get(head);
+      final int d = distance.get(v);
+      for (final int to : edges.get(v)) {
+        if (componentOf[to] != component || distance.containsKey(to)) continue;
+
+        distance.put(to, d + 1);
+        queue.add(to);
+        result = Math.max(result, d + 1 + outerDepth[to]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Orders the members of each cycle by descending depth, keeping the places the cycle takes in the topological
+   * order.
+   */
+  private void orderComponents() {
+    final Map<Integer, List<Integer>> places = new HashMap<Integer, List<Integer>>();
+    for (int i = 0; i < sorted.size(); i++) {
+      final int c = componentOf[ids.get(sorted.get(i))];
+      if (components.get(c).length == 1) continue;
+
+      List<Integer> componentPlaces = places.get(c);
+      if (componentPlaces == null) {
+        places.put(c, componentPlaces = new ArrayList<Integer>());
+      }
+      componentPlaces.add(i);
+    }
+
+    for (final List<Integer> componentPlaces : places.values()) {
+      final List<SortUnit> members = new ArrayList<SortUnit>(componentPlaces.size());
+      for (final int place : componentPlaces) {
+        members.add(sorted.get(place));
+      }
+
+      Collections.sort(members, new Comparator<SortUnit>() {
+        @Override
+        public int compare(final SortUnit a, final SortUnit b) {
+          return depth[ids.get(b)] - depth[ids.get(a)];
+        }
+      });
+
+      for (int i = 0; i < members.size(); i++) {
+        sorted.set(componentPlaces.get(i), members.get(i));
+      }
+    }
+  }
+
+  private void recordResults() {
+    final boolean[] reachesCycle = new boolean[components.size()];
+    final List<List<SortUnit>> componentUnits = new ArrayList<List<SortUnit>>(components.size());
+
+    for (int c = 0; c < components.size(); c++) {
+      final int[] members = components.get(c);
+      boolean cyclic = isCycle(c);
+
+      final List<SortUnit> memberUnits = new ArrayList<SortUnit>(members.length);
+      for (final int member : members) {
+        memberUnits.add(units.get(member));
+        for (final int to : edges.get(member)) {
+          cyclic |= reachesCycle[componentOf[to]];
+        }
+      }
+      reachesCycle[c] = cyclic;
+      componentUnits.add(Collections.unmodifiableList(memberUnits));
+    }
+
+    for (int i = 0; i < units.size(); i++) {
+      final int c = componentOf[i];
+      units.get(i).setGraphPosition(componentUnits.get(c), reachesCycle[c], depth[i]);
+    }
+  }
+}
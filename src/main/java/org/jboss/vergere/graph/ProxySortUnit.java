@@ -50,6 +50,21 @@ public class ProxySortUnit extends SortUnit {
     return delegate.getDepth();
   }
 
+  @Override
+  public boolean isCyclicGraph() {
+    return delegate.isCyclicGraph();
+  }
+
+  @Override
+  public List<SortUnit> getComponent() {
+    return delegate.getComponent();
+  }
+
+  @Override
+  void setGraphPosition(final List<SortUnit> component, final boolean cyclicGraph, final int depth) {
+    delegate.setGraphPosition(component, cyclicGraph, depth);
+  }
+
   @Override
   public int compareTo(SortUnit o) {
     return delegate.compareTo(o);
@@ -17,7 +17,6 @@
 package org.jboss.vergere.graph;
 
 import org.jboss.errai.codegen.meta.MetaClass;
-import org.jboss.vergere.util.IdentityHashSet;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -38,6 +37,10 @@ public class SortUnit implements Comparable<SortUnit> {
   private final List<Object> items;
   private final Set<SortUnit> dependencies;
 
+  private List<SortUnit> component;
+  private boolean cyclicGraph;
+  private int depth;
+
   protected SortUnit(final MetaClass type, final List<Object> items, final Set<SortUnit> dependencies) {
     this.type = type.getErased();
     this.items = Collections.unmodifiableList(items);
@@ -87,32 +90,31 @@ public class SortUnit implements Comparable<SortUnit> {
    * @return true if the specified SortUnit is a direct or indirect dependency of this SortUnit.
    */
   public boolean hasDependency(final SortUnit unit) {
-    return _hasDependency(new HashSet<String>(), this, unit);
-  }
-
-  public boolean isCyclicGraph() {
-    return _hasCycle(new HashSet<SortUnit>());
-  }
-
-  private static boolean _hasDependency(final Set<String> visited,
-                                        final SortUnit from,
-                                        final SortUnit to) {
+    final Set<SortUnit> visited = new HashSet<SortUnit>();
+    final List<SortUnit> toVisit = new ArrayList<SortUnit>();
+    toVisit.add(this);
 
-    final String fromType = from.getType().getFullyQualifiedName();
-    if (visited.contains(fromType)) {
-      return false;
-    }
-    visited.add(fromType);
+    while (!toVisit.isEmpty()) {
+      final SortUnit from = toVisit.remove(toVisit.size() - 1);
+      if (!visited.add(from)) continue;
 
-    if (!from.getDependencies().contains(to)) {
-      for (SortUnit dep : from.getDependencies()) {
-        if (_hasDependency(visited, dep, to)) return true;
+      if (from.getDependencies().contains(unit)) {
+        return true;
       }
-      return false;
-    }
-    else {
-      return true;
+      toVisit.addAll(from.getDependencies());
     }
+    return false;
+  }
+
+  /**
+   * Determines whether or not a cycle can be reached from this SortUnit, either because it is part of one, or because
+   * one of its direct or indirect dependencies is.
+   *
+   * @return true if the graph reachable from this SortUnit has a cycle.
+   */
+  public boolean isCyclicGraph() {
+    ensureAnalyzed();
+    return cyclicGraph;
   }
 
   /**
@@ -121,37 +123,35 @@ public class SortUnit implements Comparable<SortUnit> {
    * @return the outward depth of the graph from this SortUnit.
    */
   public int getDepth() {
-    int depth = 0;
-    for (SortUnit su : getDependencies()) {
-      if (su.equals(this)) continue;
-
-      int d = _getDepth(new IdentityHashSet<SortUnit>(), this, 1, su);
-      if (d > depth) {
-        depth = d;
-      }
-    }
+    ensureAnalyzed();
     return depth;
   }
 
-  private static int _getDepth(final Set<SortUnit> visited,
-                               final SortUnit outer,
-                               int depth,
-                               final SortUnit su) {
-    if (visited.contains(su)) {
-      return 0;
-    }
-
-    visited.add(su);
+  /**
+   * Returns the strongly connected component of the graph this SortUnit is part of: the SortUnits it depends on which
+   * also depend on it, or only itself if it is not part of a cycle. All members of a component share the same list.
+   */
+  public List<SortUnit> getComponent() {
+    ensureAnalyzed();
+    return component;
+  }
 
-    for (SortUnit dep : su.getDependencies()) {
-      if (dep.equals(outer)) continue;
+  /**
+   * Records the results of the {@link GraphAnalysis} of a graph this SortUnit is part of.
+   */
+  void setGraphPosition(final List<SortUnit> component, final boolean cyclicGraph, final int depth) {
+    this.component = component;
+    this.cyclicGraph = cyclicGraph;
+    this.depth = depth;
+  }
 
-      int d = _getDepth(visited, outer, depth + 1, dep);
-      if (d > depth) {
-        depth = d;
-      }
+  /**
+   * Analyzes the graph reachable from this SortUnit, if it has not been analyzed as part of a sort.
+   */
+  private void ensureAnalyzed() {
+    if (component == null) {
+      GraphAnalysis.analyze(Collections.singletonList(this));
     }
-    return depth;
   }
 
   @Override
@@ -166,7 +166,7 @@ public class SortUnit implements Comparable<SortUnit> {
 
   @Override
   public int compareTo(final SortUnit o) {
-    if (o.hasDependency(this) && hasDependency(o)) {
+    if (getComponent() == o.getComponent()) {
       return o.getDepth() - getDepth();
     }
     else {
@@ -207,24 +207,4 @@ public class SortUnit implements Comparable<SortUnit> {
 
     return sb.append("]").toString();
   }
-
-  private boolean _hasCycle(final Set<SortUnit> visited) {
-    return _cycleSearch(visited, this);
-  }
-
-  private static boolean _cycleSearch(final Set<SortUnit> visited,
-                                      final SortUnit visit) {
-
-    if (visited.contains(visit)) {
-      return true;
-    }
-
-    visited.add(visit);
-
-    for (SortUnit sortUnit : visit.getDependencies()) {
-      if (sortUnit._hasCycle(visited)) return true;
-    }
-
-    return false;
-  }
 }
@@ -238,7 +238,7 @@ public abstract class AbstractInjector implements Injector {
       addDisablingCallback(new Runnable() {
         @Override
         public void run() {
-          context.getProcessingContext().getAppendToEnd().remove(statement);
+          context.getProcessingContext().removeFromEnd(statement);
         }
       });
 
@@ -46,6 +46,10 @@ public class ContextualProviderInjector extends TypeInjector {
     setRendered(true);
   }
 
+  public Injector getProviderInjector() {
+    return providerInjector;
+  }
+
   @Override
   public Statement getBeanInstance(final InjectableInstance injectableInstance) {
     final MetaClass type;
@@ -62,7 +62,6 @@ import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -71,6 +70,23 @@ public class InjectUtil {
   private static final AtomicInteger injectorCounter = new AtomicInteger(0);
   private static final AtomicInteger uniqueCounter = new AtomicInteger(0);
 
+  /**
+   * The innermost naming scope of the current thread, if names are generated within one.
+   */
+  private static final ThreadLocal<NameScope> nameScope = new ThreadLocal<NameScope>();
+
+  private static class NameScope {
+    private final String prefix;
+    private final NameScope enclosing;
+    private int injectorCounter;
+    private int uniqueCounter;
+
+    private NameScope(final String prefix, final NameScope enclosing) {
+      this.prefix = prefix;
+      this.enclosing = enclosing;
+    }
+  }
+
   public static ConstructionStrategy getConstructionStrategy(final Injector injector, final InjectionContext ctx) {
     final MetaClass type = injector.getInjectedType();
 
@@ -677,13 +693,43 @@ public class InjectUtil {
   }
 
   public static String getNewInjectorName() {
+    final NameScope scope = nameScope.get();
+    if (scope != null) {
+      return "inj".concat(scope.prefix).concat(String.valueOf(++scope.injectorCounter));
+    }
     return "inj".concat(String.valueOf(injectorCounter.addAndGet(1)));
   }
 
   public static String getUniqueVarName() {
+    final NameScope scope = nameScope.get();
+    if (scope != null) {
+      return "var".concat(scope.prefix).concat(String.valueOf(++scope.uniqueCounter));
+    }
     return "var".concat(String.valueOf(uniqueCounter.addAndGet(1)));
   }
 
+  /**
+   * Makes the names generated on the current thread unique by the specified prefix and counters of their own rather
+   * than by the global counters, until the scope is {@link #endNameScope ended}, so the names given to generated code
+   * do not depend on what was generated before, or on how the work of several threads interleaves. Scopes nest.
+   */
+  public static void beginNameScope(final String prefix) {
+    nameScope.set(new NameScope(prefix, nameScope.get()));
+  }
+
+  /**
+   * Ends the innermost naming scope of the current thread, and returns to the scope enclosing it.
+   */
+  public static void endNameScope() {
+    final NameScope enclosing = nameScope.get().enclosing;
+    if (enclosing != null) {
+      nameScope.set(enclosing);
+    }
+    else {
+      nameScope.remove();
+    }
+  }
+
   public static List<Annotation> extractQualifiers(final InjectableInstance<? extends Annotation> injectableInstance) {
     switch (injectableInstance.getTaskType()) {
       case Field:
@@ -769,30 +815,19 @@ public class InjectUtil {
     };
   }
 
-  private static final String BEAN_INJECTOR_STORE = "InjectorBeanManagerStore";
-
   /**
-   * A utility to get or create the store whereby the code that binds beans to the client
-   * bean manager can keep track of what it has already bound.
+   * Returns the store whereby the code that binds beans to the client bean manager keeps track of what it has
+   * already bound. The store iterates in the order the beans were bound.
    *
    * @return -
    */
   public static Set<Injector> getBeanInjectionTrackStore(final InjectionContext context) {
-    @SuppressWarnings("unchecked") Set<Injector> store = (Set<Injector>) context.getAttribute(BEAN_INJECTOR_STORE);
-    if (store == null) {
-      context.setAttribute(BEAN_INJECTOR_STORE, store = new HashSet<Injector>());
-    }
-    return store;
+    return context.getBoundInjectors();
   }
 
   public static boolean checkIfTypeNeedsAddingToBeanStore(final InjectionContext context,
                                                           final Injector injector) {
-    final Set<Injector> store = getBeanInjectionTrackStore(context);
-    if (store.contains(injector)) {
-      return false;
-    }
-    store.add(injector);
-    return true;
+    return context.markBound(injector);
   }
 
   /**
@@ -391,6 +391,13 @@ public class ProducerInjector extends AbstractInjector {
     return producerMember;
   }
 
+  /**
+   * Returns the method of the enclosing bean which disposes of the produced beans, or null if there is none.
+   */
+  public MetaMethod getDisposerMethod() {
+    return disposerMethod;
+  }
+
   @Override
   public MetaClass getInjectedType() {
     return injectedType;
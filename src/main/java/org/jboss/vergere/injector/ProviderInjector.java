@@ -43,6 +43,10 @@ public class ProviderInjector extends TypeInjector {
     setRendered(true);
   }
 
+  public Injector getProviderInjector() {
+    return providerInjector;
+  }
+
   @Override
   public Statement getBeanInstance(InjectableInstance injectableInstance) {
     if (isSingleton() && provided) {
@@ -56,6 +56,20 @@ public class QualifiedTypeInjectorDelegate extends AbstractInjector {
     );
   }
 
+  /**
+   * Returns the injector of the bean this injector qualifies.
+   */
+  public Injector getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Returns the supertype or interface of the bean under which this injector registers it.
+   */
+  public MetaClass getQualifiedType() {
+    return type;
+  }
+
   @Override
   public boolean isRendered() {
     return delegate.isRendered();
@@ -62,6 +62,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * The injection context is not thread-safe. When the independent partitions of the bean graph are processed in
+ * parallel, each thread {@link #enterPartition enters} a {@link Partition} of its own, which keeps the state the
+ * processing adds, and the partitions are {@link #mergePartition merged} back in order afterwards.
+ */
 public class InjectionContext {
   private final IOCProcessingContext processingContext;
 
@@ -71,8 +76,6 @@ public class InjectionContext {
   // to achieve with a MultiMap
   private final Map<MetaClass, List<Injector>> injectors = new LinkedHashMap<MetaClass, List<Injector>>();
 
-  private final Multimap<MetaClass, Injector> proxiedInjectors = LinkedHashMultimap.create();
-  private final Multimap<MetaClass, MetaClass> cyclingTypes = HashMultimap.create();
   private final Set<String> knownTypesWithCycles = new HashSet<String>();
   private final ReachableTypes reachableTypes;
 
@@ -83,21 +86,74 @@ public class InjectionContext {
 
   private final Set<Object> overridenTypesAndMembers = new HashSet<Object>();
 
-  private final Map<MetaParameter, Statement> inlineBeanReferenceMap = new HashMap<MetaParameter, Statement>();
-
-  private final Map<MetaField, PrivateAccessType> privateFieldsToExpose = new HashMap<MetaField, PrivateAccessType>();
-  private final Collection<MetaMethod> privateMethodsToExpose = new LinkedHashSet<MetaMethod>();
-
-  private final Map<String, Object> attributeMap = new HashMap<String, Object>();
-  private final Set<String> exposedMembers = new HashSet<String>();
-
   private final Multimap<String, InjectorRegistrationListener> injectionRegistrationListener
       = HashMultimap.create();
 
   private final GraphBuilder graphBuilder = new GraphBuilder();
 
-  private boolean allowProxyCapture = false;
-  private boolean openProxy = false;
+  private final Partition sharedState = new Partition();
+
+  /**
+   * The partition of the bean graph the current thread processes, if the partitions are processed in parallel.
+   */
+  private final ThreadLocal<Partition> currentPartition = new ThreadLocal<Partition>();
+
+  /**
+   * The state the processing of the beans adds to the context: the injectors registered, the proxies and cycles found,
+   * the bean references inlined, the private members exposed, the injectors bound to the bean manager and the
+   * attributes set.
+   */
+  public static final class Partition {
+    /**
+     * The injectors of the types the partition registered injectors for, which are those of the whole context and
+     * the ones registered since, and the registrations in the order they were made.
+     */
+    private final Map<MetaClass, List<Injector>> injectors = new HashMap<MetaClass, List<Injector>>();
+    private final List<Registration> registrations = new ArrayList<Registration>();
+
+    private final Multimap<MetaClass, Injector> proxiedInjectors = LinkedHashMultimap.create();
+    private final Multimap<MetaClass, MetaClass> cyclingTypes = HashMultimap.create();
+
+    private final Map<MetaParameter, Statement> inlineBeanReferenceMap = new HashMap<MetaParameter, Statement>();
+
+    private final Map<MetaField, PrivateAccessType> privateFieldsToExpose
+        = new LinkedHashMap<MetaField, PrivateAccessType>();
+    private final Collection<MetaMethod> privateMethodsToExpose = new LinkedHashSet<MetaMethod>();
+    private final Set<String> exposedMembers = new HashSet<String>();
+
+    private final Set<Injector> boundInjectors = new LinkedHashSet<Injector>();
+
+    private final Map<String, Object> attributeMap = new HashMap<String, Object>();
+
+    private boolean allowProxyCapture = false;
+    private boolean openProxy = false;
+
+    private Partition() {
+    }
+
+    private void exposeField(final MetaField field, final PrivateAccessType accessType) {
+      final PrivateAccessType exposed = privateFieldsToExpose.get(field);
+      privateFieldsToExpose.put(field, exposed == null || exposed == accessType ? accessType : PrivateAccessType.Both);
+    }
+
+    private void exposeMethod(final String methodSignature, final MetaMethod method) {
+      if (exposedMembers.add(methodSignature)) {
+        privateMethodsToExpose.add(method);
+      }
+    }
+  }
+
+  private static final class Registration {
+    private final MetaClass type;
+    private final Injector injector;
+    private final boolean allowOverride;
+
+    private Registration(final MetaClass type, final Injector injector, final boolean allowOverride) {
+      this.type = type;
+      this.injector = injector;
+      this.allowOverride = allowOverride;
+    }
+  }
 
   private InjectionContext(final Builder builder) {
     this.processingContext = builder.processingContext;
@@ -141,14 +197,11 @@ public class InjectionContext {
   public Injector getProxiedInjector(final MetaClass type, final QualifyingMetadata metadata) {
     //todo: figure out why I was doing this.
     final MetaClass erased = type.getErased();
-    final Collection<Injector> injs = proxiedInjectors.get(erased);
     final List<Injector> matching = new ArrayList<Injector>();
 
-    if (injs != null) {
-      for (final Injector inj : injs) {
-        if (inj.matches(type.getParameterizedType(), metadata)) {
-          matching.add(inj);
-        }
+    for (final Injector inj : getProxiedInjectors(erased)) {
+      if (inj.matches(type.getParameterizedType(), metadata)) {
+        matching.add(inj);
       }
     }
 
@@ -163,7 +216,7 @@ public class InjectionContext {
 
   public Injector getQualifiedInjector(final MetaClass type, final QualifyingMetadata metadata) {
     final MetaClass erased = type.getErased();
-    final List<Injector> injectors = this.injectors.get(erased);
+    final List<Injector> injectors = getInjectorList(erased);
     final List<Injector> matching = new ArrayList<Injector>();
 
     boolean alternativeBeans = false;
@@ -249,12 +302,12 @@ public class InjectionContext {
   }
 
   public boolean hasInjectorForType(final MetaClass type) {
-    final List<Injector> injectorList = injectors.get(type);
+    final List<Injector> injectorList = getInjectorList(type);
     return injectorList != null && !injectorList.isEmpty();
   }
 
   public boolean isTypeInjectable(final MetaClass type) {
-    final List<Injector> injectorList = injectors.get(type);
+    final List<Injector> injectorList = getInjectorList(type);
     if (injectorList != null) {
       for (final Injector injector : injectorList) {
         if (!injector.isRendered()) {
@@ -270,18 +323,24 @@ public class InjectionContext {
   }
 
   public void recordCycle(final MetaClass from, final MetaClass to) {
-    cyclingTypes.put(from, to);
+    state().cyclingTypes.put(from, to);
   }
 
   public boolean cycles(final MetaClass from, final MetaClass to) {
-    return cyclingTypes.containsEntry(from, to);
+    return sharedState.cyclingTypes.containsEntry(from, to) || state().cyclingTypes.containsEntry(from, to);
   }
 
   public void addProxiedInjector(final ProxyInjector proxyInjector) {
-    proxiedInjectors.put(proxyInjector.getInjectedType(), proxyInjector);
+    state().proxiedInjectors.put(proxyInjector.getInjectedType(), proxyInjector);
   }
 
-  public void markProxyClosedIfNeeded(final MetaClass injectorType, final QualifyingMetadata qualifyingMetadata) {
+  /**
+   * Closes the matching proxies opened by the current partition, or by the whole context if the partitions are not
+   * processed in parallel.
+   */
+  public void markProxyClosedIfNeeded(final MetaClass injectorType,
+                                      final QualifyingMetadata qualifyingMetadata) {
+    final Multimap<MetaClass, Injector> proxiedInjectors = state().proxiedInjectors;
     if (proxiedInjectors.containsKey(injectorType.getErased())) {
       final Collection<Injector> collection = proxiedInjectors.get(injectorType.getErased());
       final Iterator<Injector> iterator = collection.iterator();
@@ -296,20 +355,33 @@ public class InjectionContext {
     }
   }
 
-  public boolean isProxiedInjectorRegistered(final MetaClass injectorType, final QualifyingMetadata qualifyingMetadata) {
-    if (proxiedInjectors.containsKey(injectorType.getErased())) {
-      for (final Injector inj : proxiedInjectors.get(injectorType.getErased())) {
-        if (inj.matches(injectorType.getParameterizedType(), qualifyingMetadata)) {
-          return true;
-        }
+  public boolean isProxiedInjectorRegistered(final MetaClass injectorType,
+                                             final QualifyingMetadata qualifyingMetadata) {
+    for (final Injector inj : getProxiedInjectors(injectorType.getErased())) {
+      if (inj.matches(injectorType.getParameterizedType(), qualifyingMetadata)) {
+        return true;
       }
     }
     return false;
   }
 
-  public boolean isInjectorRegistered(final MetaClass injectorType, final QualifyingMetadata qualifyingMetadata) {
-    if (injectors.containsKey(injectorType.getErased())) {
-      for (final Injector inj : injectors.get(injectorType.getErased())) {
+  /**
+   * Returns the proxied injectors of a type, those of the whole context before those of the current partition.
+   */
+  private List<Injector> getProxiedInjectors(final MetaClass erased) {
+    final List<Injector> injs = new ArrayList<Injector>(sharedState.proxiedInjectors.get(erased));
+    final Partition partition = currentPartition.get();
+    if (partition != null) {
+      injs.addAll(partition.proxiedInjectors.get(erased));
+    }
+    return injs;
+  }
+
+  public boolean isInjectorRegistered(final MetaClass injectorType,
+                                      final QualifyingMetadata qualifyingMetadata) {
+    final List<Injector> injectorList = getInjectorList(injectorType.getErased());
+    if (injectorList != null) {
+      for (final Injector inj : injectorList) {
         if (inj.matches(injectorType.getParameterizedType(), qualifyingMetadata)) {
           return true;
         }
@@ -318,9 +390,11 @@ public class InjectionContext {
     return false;
   }
 
-  public boolean isInjectableQualified(final MetaClass injectorType, final QualifyingMetadata qualifyingMetadata) {
-    if (injectors.containsKey(injectorType.getErased())) {
-      for (final Injector inj : injectors.get(injectorType.getErased())) {
+  public boolean isInjectableQualified(final MetaClass injectorType,
+                                       final QualifyingMetadata qualifyingMetadata) {
+    final List<Injector> injectorList = getInjectorList(injectorType.getErased());
+    if (injectorList != null) {
+      for (final Injector inj : injectorList) {
         if (inj.matches(injectorType.getParameterizedType(), qualifyingMetadata)) {
           return inj.isRendered();
         }
@@ -330,7 +404,7 @@ public class InjectionContext {
   }
 
   public List<Injector> getInjectors(final MetaClass type) {
-    List<Injector> injectorList = injectors.get(type);
+    List<Injector> injectorList = getInjectorList(type);
     if (injectorList == null) {
       injectorList = Collections.emptyList();
     }
@@ -343,11 +417,11 @@ public class InjectionContext {
 
   public Injector getInjector(final MetaClass type) {
     final MetaClass erased = type.getErased();
-    if (!injectors.containsKey(erased)) {
+    if (getInjectorList(erased) == null) {
       throw new InjectionFailure("could not resolve type for injection: " + erased.getFullyQualifiedName());
     }
 
-    final List<Injector> injectorList = new ArrayList<Injector>(injectors.get(erased));
+    final List<Injector> injectorList = new ArrayList<Injector>(getInjectorList(erased));
     final Iterator<Injector> iter = injectorList.iterator();
     Injector inj;
 
@@ -394,27 +468,60 @@ public class InjectionContext {
   }
 
   private void registerInjector(final MetaClass type, final Injector injector, final Set<MetaClass> processedTypes, final boolean allowOverride) {
-    List<Injector> injectorList = injectors.get(type.getErased());
+    final List<Injector> injectorList = getOrCreateInjectorList(type.getErased());
 
-    if (injectorList == null) {
-      injectors.put(type.getErased(), injectorList = new ArrayList<Injector>());
+    if (allowOverride) {
+      removePseudoInjectors(injectorList);
     }
-    else if (allowOverride) {
-      final Iterator<Injector> iter = injectorList.iterator();
 
-      while (iter.hasNext()) {
-        final Injector inj = iter.next();
+    registerInjectorsForSuperTypesAndInterfaces(type, injector, processedTypes);
+    injectorList.add(injector);
 
-        if (inj.isPseudo()) {
-          iter.remove();
-        }
+    final Partition partition = currentPartition.get();
+    if (partition != null) {
+      partition.registrations.add(new Registration(type.getErased(), injector, allowOverride));
+    }
+
+    notifyInjectorRegistered(injector);
+  }
+
+  private static void removePseudoInjectors(final List<Injector> injectorList) {
+    final Iterator<Injector> iter = injectorList.iterator();
+
+    while (iter.hasNext()) {
+      final Injector inj = iter.next();
+
+      if (inj.isPseudo()) {
+        iter.remove();
       }
     }
+  }
+
+  /**
+   * Returns the injectors of a type, as the current partition sees them, or null if there are none.
+   */
+  private List<Injector> getInjectorList(final MetaClass type) {
+    final Partition partition = currentPartition.get();
+    if (partition != null && partition.injectors.containsKey(type)) {
+      return partition.injectors.get(type);
+    }
+    return injectors.get(type);
+  }
 
-    registerInjectorsForSuperTypesAndInterfaces(type, injector, processedTypes);
-    injectorList.add(injector);
+  /**
+   * Returns the list to register the injectors of a type in. A partition registers them in a copy of the list of the
+   * whole context, which is left as it is until the partition is merged.
+   */
+  private List<Injector> getOrCreateInjectorList(final MetaClass type) {
+    final Partition partition = currentPartition.get();
+    final Map<MetaClass, List<Injector>> injectorMap = partition == null ? injectors : partition.injectors;
 
-    notifyInjectorRegistered(injector);
+    List<Injector> injectorList = injectorMap.get(type);
+    if (injectorList == null) {
+      final List<Injector> shared = partition == null ? null : injectors.get(type);
+      injectorMap.put(type, injectorList = shared == null ? new ArrayList<Injector>() : new ArrayList<Injector>(shared));
+    }
+    return injectorList;
   }
 
   private void registerInjectorsForSuperTypesAndInterfaces(final MetaClass type, final Injector injector,
@@ -447,7 +554,15 @@ public class InjectionContext {
   }
 
   public void registerDecorator(final IOCDecoratorExtension<?> iocExtension) {
-    decorators.get(iocExtension.decoratesWith()).add(iocExtension);
+    checkNotInPartition();
+    final Class<? extends Annotation> annotation = iocExtension.decoratesWith();
+    decorators.get(annotation).add(iocExtension);
+
+    if (annotation.isAnnotationPresent(Target.class)) {
+      for (final ElementType type : annotation.getAnnotation(Target.class).value()) {
+        decoratorsByElementType.get(type).add(annotation);
+      }
+    }
   }
 
   public Set<Class<? extends Annotation>> getDecoratorAnnotations() {
@@ -462,9 +577,6 @@ public class InjectionContext {
   }
 
   public Collection<Class<? extends Annotation>> getDecoratorAnnotationsBy(final ElementType type) {
-    if (decoratorsByElementType.size() == 0) {
-      sortDecorators();
-    }
     if (decoratorsByElementType.containsKey(type)) {
       return unmodifiableCollection(decoratorsByElementType.get(type));
     }
@@ -473,42 +585,23 @@ public class InjectionContext {
     }
   }
 
-  private void sortDecorators() {
-    for (final Class<? extends Annotation> a : getDecoratorAnnotations()) {
-      if (a.isAnnotationPresent(Target.class)) {
-        for (final ElementType type : a.getAnnotation(Target.class).value()) {
-          decoratorsByElementType.get(type).add(a);
-        }
-      }
-    }
-  }
-
-  public void addExposedField(final MetaField field, PrivateAccessType accessType) {
-    if (!privateFieldsToExpose.containsKey(field)) {
-      privateFieldsToExpose.put(field, accessType);
-    }
-    else if (privateFieldsToExpose.get(field) != accessType) {
-      accessType = PrivateAccessType.Both;
-    }
-    privateFieldsToExpose.put(field, accessType);
+  public void addExposedField(final MetaField field, final PrivateAccessType accessType) {
+    processingContext.getCurrentClass().exposeField(field, accessType);
+    state().exposeField(field, accessType);
   }
 
   public void addExposedMethod(final MetaMethod method) {
-    final String methodSignature = PrivateAccessUtil.getPrivateMethodName(method);
-    if (!exposedMembers.contains(methodSignature)) {
-      exposedMembers.add(methodSignature);
-    }
-    else {
-      return;
-    }
-    privateMethodsToExpose.add(method);
+    processingContext.getCurrentClass().exposeMethod(method);
+    state().exposeMethod(PrivateAccessUtil.getPrivateMethodName(method), method);
   }
 
   public void declareOverridden(final MetaClass type) {
+    checkNotInPartition();
     overridenTypesAndMembers.add(type);
   }
 
   public void declareOverridden(final MetaMethod method) {
+    checkNotInPartition();
     overridenTypesAndMembers.add(method);
   }
 
@@ -521,15 +614,15 @@ public class InjectionContext {
   }
 
   public Map<MetaField, PrivateAccessType> getPrivateFieldsToExpose() {
-    return Collections.unmodifiableMap(privateFieldsToExpose);
+    return Collections.unmodifiableMap(sharedState.privateFieldsToExpose);
   }
 
   public Collection<MetaMethod> getPrivateMethodsToExpose() {
-    return unmodifiableCollection(privateMethodsToExpose);
+    return unmodifiableCollection(sharedState.privateMethodsToExpose);
   }
 
   public void addType(final MetaClass type) {
-    if (injectors.containsKey(type))
+    if (getInjectorList(type) != null)
       return;
     registerInjector(new TypeInjector(type, this));
   }
@@ -545,14 +638,18 @@ public class InjectionContext {
   }
 
   public void addEnabledAlternative(final String name) {
+    checkNotInPartition();
     enabledAlternatives.add(name);
   }
 
-  public void mapElementType(final WiringElementType type, final Class<? extends Annotation> annotationType) {
+  public void mapElementType(final WiringElementType type,
+                             final Class<? extends Annotation> annotationType) {
+    checkNotInPartition();
     elementBindings.put(type, annotationType);
   }
 
-  public Collection<Class<? extends Annotation>> getAnnotationsForElementType(final WiringElementType type) {
+  public Collection<Class<? extends Annotation>> getAnnotationsForElementType(
+      final WiringElementType type) {
     return unmodifiableCollection(elementBindings.get(type));
   }
 
@@ -560,7 +657,8 @@ public class InjectionContext {
     return isAnyOfElementTypes(hasAnnotations, WiringElementType.values());
   }
 
-  public boolean isAnyOfElementTypes(final HasAnnotations hasAnnotations, final WiringElementType... types) {
+  public boolean isAnyOfElementTypes(final HasAnnotations hasAnnotations,
+                                     final WiringElementType... types) {
     for (final WiringElementType t : types) {
       if (isElementType(t, hasAnnotations))
         return true;
@@ -572,11 +670,13 @@ public class InjectionContext {
     return getMatchingAnnotationForElementType(type, hasAnnotations) != null;
   }
 
-  public boolean isElementType(final WiringElementType type, final Class<? extends Annotation> annotation) {
+  public boolean isElementType(final WiringElementType type,
+                               final Class<? extends Annotation> annotation) {
     return getAnnotationsForElementType(type).contains(annotation);
   }
 
-  public Annotation getMatchingAnnotationForElementType(final WiringElementType type, final HasAnnotations hasAnnotations) {
+  public Annotation getMatchingAnnotationForElementType(final WiringElementType type,
+                                                        final HasAnnotations hasAnnotations) {
     final Collection<Class<? extends Annotation>> annotationsForElementType = getAnnotationsForElementType(type);
     final Set<Annotation> annotationSet
         = new HashSet<Annotation>(Arrays.asList(hasAnnotations.getAnnotations()));
@@ -625,36 +725,46 @@ public class InjectionContext {
   }
 
   public Collection<MetaClass> getAllKnownInjectionTypes() {
-    return unmodifiableCollection(injectors.keySet());
+    final Partition partition = currentPartition.get();
+    if (partition == null) {
+      return unmodifiableCollection(injectors.keySet());
+    }
+    final Set<MetaClass> types = new LinkedHashSet<MetaClass>(injectors.keySet());
+    types.addAll(partition.injectors.keySet());
+    return unmodifiableCollection(types);
   }
 
   public void allowProxyCapture() {
-    allowProxyCapture = true;
+    state().allowProxyCapture = true;
   }
 
   public void markOpenProxy() {
-    if (allowProxyCapture) {
-      openProxy = true;
+    final Partition state = state();
+    if (state.allowProxyCapture) {
+      state.openProxy = true;
     }
   }
 
   public boolean isProxyOpen() {
-    return openProxy;
+    return state().openProxy;
   }
 
   public void closeProxyIfOpen() {
-    if (openProxy) {
+    final Partition state = state();
+    if (state.openProxy) {
       getProcessingContext().popBlockBuilder();
-      openProxy = false;
+      state.openProxy = false;
     }
-    allowProxyCapture = false;
+    state.allowProxyCapture = false;
   }
 
-  public void addInjectorRegistrationListener(final MetaClass clazz, final InjectorRegistrationListener listener) {
+  public void addInjectorRegistrationListener(final MetaClass clazz,
+                                              final InjectorRegistrationListener listener) {
+    checkNotInPartition();
     injectionRegistrationListener.put(clazz.getFullyQualifiedName(), listener);
 
-    if (injectors.containsKey(clazz)) {
-      final List<Injector> injectors = this.injectors.get(clazz);
+    final List<Injector> injectors = getInjectorList(clazz);
+    if (injectors != null) {
       for (final Injector injector : injectors) {
         listener.onRegister(clazz, injector);
       }
@@ -685,18 +795,36 @@ public class InjectionContext {
   }
 
   public void setAttribute(final String name, final Object value) {
-    attributeMap.put(name, value);
+    state().attributeMap.put(name, value);
   }
 
   public Object getAttribute(final String name) {
-    return attributeMap.get(name);
+    final Map<String, Object> attributeMap = state().attributeMap;
+    return attributeMap.containsKey(name) ? attributeMap.get(name) : sharedState.attributeMap.get(name);
   }
 
   public boolean hasAttribute(final String name) {
-    return attributeMap.containsKey(name);
+    return state().attributeMap.containsKey(name) || sharedState.attributeMap.containsKey(name);
+  }
+
+  /**
+   * Records that the code which binds the bean of an injector to the bean manager has been generated.
+   *
+   * @return true if it had not been generated before.
+   */
+  public boolean markBound(final Injector injector) {
+    return !sharedState.boundInjectors.contains(injector) && state().boundInjectors.add(injector);
+  }
+
+  /**
+   * Returns the injectors whose beans are bound to the bean manager, in the order they were bound.
+   */
+  public Set<Injector> getBoundInjectors() {
+    return Collections.unmodifiableSet(sharedState.boundInjectors);
   }
 
   public void addKnownTypesWithCycles(final Collection<String> types) {
+    checkNotInPartition();
     knownTypesWithCycles.addAll(types);
   }
 
@@ -705,14 +833,75 @@ public class InjectionContext {
   }
 
   public void addInlineBeanReference(final MetaParameter ref, final Statement statement) {
-    inlineBeanReferenceMap.put(ref, statement);
+    state().inlineBeanReferenceMap.put(ref, statement);
   }
 
   public Statement getInlineBeanReference(final MetaParameter ref) {
-    return inlineBeanReferenceMap.get(ref);
+    final Statement statement = state().inlineBeanReferenceMap.get(ref);
+    return statement != null ? statement : sharedState.inlineBeanReferenceMap.get(ref);
   }
 
   public GraphBuilder getGraphBuilder() {
     return graphBuilder;
   }
+
+  /**
+   * Starts processing a partition of the bean graph on the current thread. Until the thread
+   * {@link #exitPartition exits} it, the state the processing adds to the context, including the injectors it
+   * registers, is kept in the partition, and the decorators, the element types and the other settings of the context
+   * cannot be changed. Each thread must process a partition of its own.
+   *
+   * @return the partition, to be {@link #mergePartition merged} into the context once processed.
+   */
+  public Partition enterPartition() {
+    final Partition partition = new Partition();
+    currentPartition.set(partition);
+    return partition;
+  }
+
+  /**
+   * Stops keeping the state added on the current thread in the partition it entered.
+   */
+  public void exitPartition() {
+    currentPartition.remove();
+  }
+
+  /**
+   * Adds the state of a partition processed on another thread to the context. The partitions must be merged in the
+   * order they would be processed one after the other, so the context ends up in the same state.
+   */
+  public void mergePartition(final Partition partition) {
+    checkNotInPartition();
+
+    for (final Registration registration : partition.registrations) {
+      final List<Injector> injectorList = getOrCreateInjectorList(registration.type);
+      if (registration.allowOverride) {
+        removePseudoInjectors(injectorList);
+      }
+      injectorList.add(registration.injector);
+    }
+    sharedState.proxiedInjectors.putAll(partition.proxiedInjectors);
+    sharedState.cyclingTypes.putAll(partition.cyclingTypes);
+    sharedState.inlineBeanReferenceMap.putAll(partition.inlineBeanReferenceMap);
+    for (final Map.Entry<MetaField, PrivateAccessType> entry : partition.privateFieldsToExpose.entrySet()) {
+      sharedState.exposeField(entry.getKey(), entry.getValue());
+    }
+    for (final MetaMethod method : partition.privateMethodsToExpose) {
+      sharedState.exposeMethod(PrivateAccessUtil.getPrivateMethodName(method), method);
+    }
+    sharedState.boundInjectors.addAll(partition.boundInjectors);
+    sharedState.attributeMap.putAll(partition.attributeMap);
+  }
+
+  private Partition state() {
+    final Partition partition = currentPartition.get();
+    return partition == null ? sharedState : partition;
+  }
+
+  private void checkNotInPartition() {
+    if (currentPartition.get() != null) {
+      throw new IllegalStateException("the injection context cannot be changed while a partition of the bean graph "
+          + "is processed");
+    }
+  }
 }
@@ -0,0 +1,78 @@
+package org.jboss.vergere.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Generates and compiles the bootstrap classes at build time, and writes them into a class output directory so they
+ * are packaged into the application's artifact. At runtime, {@link IOCBootstrapMaker#loadPrecompiled()} picks up the
+ * precompiled classes, and the container starts without scanning the classpath or compiling anything, unless the
+ * classes of the output directory changed after they were precompiled against.
+ * <p/>
+ * Usage: <tt>BootstrapPrecompiler &lt;class output directory&gt;</tt>. The application's classes and dependencies
+ * must be on the classpath of the JVM running the precompiler.
+ */
+public class BootstrapPrecompiler {
+  public static void main(final String[] args) {
+    if (args.length == 0) {
+      throw new IllegalArgumentException("usage: BootstrapPrecompiler <class output directory>");
+    }
+
+    final File outputDirectory = new File(args[0]).getAbsoluteFile();
+    final long tm = System.currentTimeMillis();
+
+    precompile(outputDirectory);
+
+    System.out.println("Vergere bootstrapper precompiled into: " + outputDirectory
+        + " (time: " + (System.currentTimeMillis() - tm) + "ms)");
+
+    ThreadUtil.stopExecutor();
+  }
+
+  /**
+   * Generates and compiles the bootstrap classes, and writes them below the specified output directory together with
+   * the {@link IOCBootstrapMaker#PRECOMPILED_RESOURCE} which identifies them.
+   *
+   * @param outputDirectory
+   *     the root of the class output directory.
+   */
+  public static void precompile(final File outputDirectory) {
+    final Map<String, String> sources = new IOCBootstrapMaker().generateSources();
+
+    // taken before the bootstrap classes are written, though they are left out of the digest anyway.
+    final String classOutputDigest = IOCBootstrapMaker.digestClassOutput(outputDirectory);
+
+    final Map<String, byte[]> classDefinitions = CompileUtil.compileIndependently(sources);
+    if (classDefinitions == null) {
+      throw new RuntimeException("failed to compile bootstrapper");
+    }
+
+    CompileUtil.writeClassDefinitions(classDefinitions, sources.keySet(), outputDirectory.getAbsolutePath());
+
+    final Properties properties = new Properties();
+    properties.setProperty("bootstrapper", IOCBootstrapMaker.getBootstrapperClassName());
+    properties.setProperty("qualifierEqualityFactory", IOCBootstrapMaker.getQualifierEqualityFactoryClassName());
+    properties.setProperty("fingerprint", VergereUtils.getClasspathHash());
+    properties.setProperty("classOutputDigest", classOutputDigest);
+
+    final File resourceFile = new File(outputDirectory, IOCBootstrapMaker.PRECOMPILED_RESOURCE);
+    resourceFile.getParentFile().mkdirs();
+
+    try {
+      final OutputStream outputStream = new FileOutputStream(resourceFile);
+      try {
+        properties.store(outputStream, "precompiled vergere bootstrapper");
+      }
+      finally {
+        outputStream.close();
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException("could not write precompiled bootstrapper descriptor: " + resourceFile, e);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.jboss.vergere.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records how long each phase of the container bootstrap took. The timings of the current bootstrap are available
+ * through {@link #get()}, and every completed phase is also passed to the registered {@link PhaseListener}s.
+ * <p/>
+ * Phases measure wall-clock time, and may nest: {@link Phase#CodeGeneration} includes the scanning, reachability,
+ * extension and graph phases it triggers. A phase which runs more than once accumulates its durations.
+ */
+public final class BootstrapReport {
+  public static enum Phase {
+    ClasspathHashing,
+    ClassScanning,
+    Reachability,
+    ExtensionProcessing,
+    GraphSort,
+    CodeGeneration,
+    Compilation,
+    ClassLoading,
+    Instantiation,
+    ContextFinish
+  }
+
+  /**
+   * Receives the timing of every completed bootstrap phase, for example to forward it to a profiler or a flight
+   * recorder. Listeners may be registered with {@link #addListener(PhaseListener)}, or as a
+   * {@link ServiceLoader} service.
+   */
+  public static interface PhaseListener {
+    public void onPhase(Phase phase, long startNanos, long durationNanos);
+  }
+
+  private static final BootstrapReport report = new BootstrapReport();
+  private static final List<PhaseListener> listeners = new CopyOnWriteArrayList<PhaseListener>();
+
+  static {
+    final Iterator<PhaseListener> serviceListeners = ServiceLoader.load(PhaseListener.class).iterator();
+    while (serviceListeners.hasNext()) {
+      listeners.add(serviceListeners.next());
+    }
+  }
+
+  private final Map<Phase, Long> durations = new EnumMap<Phase, Long>(Phase.class);
+
+  private BootstrapReport() {
+  }
+
+  /**
+   * Returns the report of the bootstrap in this JVM.
+   */
+  public static BootstrapReport get() {
+    return report;
+  }
+
+  public static void addListener(final PhaseListener listener) {
+    listeners.add(listener);
+  }
+
+  public static void removeListener(final PhaseListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Marks the start of a phase.
+   *
+   * @return the start time, to be passed to {@link #end(Phase, long)}.
+   */
+  public static long begin() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Marks the end of a phase.
+   *
+   * @param phase
+   *     the phase which ended.
+   * @param startNanos
+   *     the start time returned by {@link #begin()}.
+   */
+  public static void end(final Phase phase, final long startNanos) {
+    final long duration = System.nanoTime() - startNanos;
+    report.add(phase, duration);
+
+    for (final PhaseListener listener : listeners) {
+      listener.onPhase(phase, startNanos, duration);
+    }
+  }
+
+  private synchronized void add(final Phase phase, final long durationNanos) {
+    final Long previous = durations.get(phase);
+    durations.put(phase, previous == null ? durationNanos : previous + durationNanos);
+  }
+
+  /**
+   * Returns the time spent in the specified phase, in milliseconds, or -1 if the phase did not run.
+   */
+  public synchronized long getDuration(final Phase phase) {
+    final Long duration = durations.get(phase);
+    return duration == null ? -1 : duration / 1000000;
+  }
+
+  /**
+   * Returns the phases which ran, in the order they are declared in.
+   */
+  public synchronized List<Phase> getPhases() {
+    return Collections.unmodifiableList(new ArrayList<Phase>(durations.keySet()));
+  }
+
+  /**
+   * Discards all recorded timings.
+   */
+  public synchronized void reset() {
+    durations.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    final StringBuilder sb = new StringBuilder("bootstrap phases:");
+    for (final Map.Entry<Phase, Long> entry : durations.entrySet()) {
+      sb.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue() / 1000000).append("ms");
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,458 @@
+package org.jboss.vergere.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the types a class refers to from its class file. Every type a class uses appears in its constant pool, either
+ * as a class constant or within a descriptor or generic signature, so no source code is needed.
+ * <p/>
+ * Descriptors and signatures are only read from the places the class file format puts them: name-and-type and method
+ * type constants, the descriptors of fields and methods, and the <tt>Signature</tt>, local variable, annotation and
+ * record attributes. Other strings in the constant pool, such as names and annotation values, are never mistaken for
+ * descriptors, however they start.
+ * <p/>
+ * Type names are returned both in binary form (<tt>com.foo.Outer$Inner</tt>) and, for nested types, in source form
+ * (<tt>com.foo.Outer.Inner</tt>).
+ */
+public final class ClassFileDependencies {
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_Utf8 = 1;
+  private static final int CONSTANT_Integer = 3;
+  private static final int CONSTANT_Float = 4;
+  private static final int CONSTANT_Long = 5;
+  private static final int CONSTANT_Double = 6;
+  private static final int CONSTANT_Class = 7;
+  private static final int CONSTANT_String = 8;
+  private static final int CONSTANT_Fieldref = 9;
+  private static final int CONSTANT_Methodref = 10;
+  private static final int CONSTANT_InterfaceMethodref = 11;
+  private static final int CONSTANT_NameAndType = 12;
+  private static final int CONSTANT_MethodHandle = 15;
+  private static final int CONSTANT_MethodType = 16;
+  private static final int CONSTANT_Dynamic = 17;
+  private static final int CONSTANT_InvokeDynamic = 18;
+  private static final int CONSTANT_Module = 19;
+  private static final int CONSTANT_Package = 20;
+
+  private final DataInputStream in;
+  private String[] utf8;
+  private final BitSet classNames = new BitSet();
+  private final BitSet descriptors = new BitSet();
+
+  private ClassFileDependencies(final DataInputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Returns the names of all types referred to by the specified class file, including the class itself.
+   */
+  public static Set<String> getReferencedTypes(final byte[] classFile) {
+    try {
+      return new ClassFileDependencies(new DataInputStream(new ByteArrayInputStream(classFile))).read();
+    }
+    catch (IOException e) {
+      throw new RuntimeException("malformed class file", e);
+    }
+  }
+
+  private Set<String> read() throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not a class file");
+    }
+    in.readUnsignedShort(); // minor version
+    in.readUnsignedShort(); // major version
+
+    readConstantPool();
+
+    in.readUnsignedShort(); // access flags
+    in.readUnsignedShort(); // this class
+    in.readUnsignedShort(); // super class
+    skip(in.readUnsignedShort() * 2); // interfaces, which are class constants.
+
+    final int fieldCount = in.readUnsignedShort();
+    for (int i = 0; i < fieldCount; i++) {
+      readMember();
+    }
+    final int methodCount = in.readUnsignedShort();
+    for (int i = 0; i < methodCount; i++) {
+      readMember();
+    }
+    readAttributes();
+
+    final Set<String> types = new HashSet<String>();
+    for (int i = classNames.nextSetBit(0); i >= 0; i = classNames.nextSetBit(i + 1)) {
+      final String name = utf8At(i);
+      if (name.startsWith("[")) {
+        addDescriptorTypes(name, types);
+      }
+      else {
+        addInternalName(name, types);
+      }
+    }
+    for (int i = descriptors.nextSetBit(0); i >= 0; i = descriptors.nextSetBit(i + 1)) {
+      addDescriptorTypes(utf8At(i), types);
+    }
+    return types;
+  }
+
+  private void readConstantPool() throws IOException {
+    final int count = in.readUnsignedShort();
+    utf8 = new String[count];
+
+    for (int i = 1; i < count; i++) {
+      final int tag = in.readUnsignedByte();
+      switch (tag) {
+        case CONSTANT_Utf8:
+          utf8[i] = in.readUTF();
+          break;
+        case CONSTANT_Class:
+          classNames.set(in.readUnsignedShort());
+          break;
+        case CONSTANT_NameAndType:
+          in.readUnsignedShort(); // name
+          descriptors.set(in.readUnsignedShort());
+          break;
+        case CONSTANT_MethodType:
+          descriptors.set(in.readUnsignedShort());
+          break;
+        case CONSTANT_String:
+        case CONSTANT_Module:
+        case CONSTANT_Package:
+          in.readUnsignedShort();
+          break;
+        case CONSTANT_MethodHandle:
+          in.readUnsignedByte();
+          in.readUnsignedShort();
+          break;
+        case CONSTANT_Integer:
+        case CONSTANT_Float:
+        case CONSTANT_Fieldref:
+        case CONSTANT_Methodref:
+        case CONSTANT_InterfaceMethodref:
+        case CONSTANT_Dynamic:
+        case CONSTANT_InvokeDynamic:
+          // references to name-and-type constants, which are read on their own.
+          in.readInt();
+          break;
+        case CONSTANT_Long:
+        case CONSTANT_Double:
+          in.readLong();
+          i++; // eight byte constants take up two entries.
+          break;
+        default:
+          throw new IOException("unknown constant pool tag: " + tag);
+      }
+    }
+  }
+
+  private String utf8At(final int index) throws IOException {
+    if (index >= utf8.length || utf8[index] == null) {
+      throw new IOException("not a utf8 constant: " + index);
+    }
+    return utf8[index];
+  }
+
+  private void skip(final int length) throws IOException {
+    if (in.skipBytes(length) != length) {
+      throw new EOFException();
+    }
+  }
+
+  /**
+   * Reads a field or a method.
+   */
+  private void readMember() throws IOException {
+    in.readUnsignedShort(); // access flags
+    in.readUnsignedShort(); // name
+    descriptors.set(in.readUnsignedShort());
+    readAttributes();
+  }
+
+  private void readAttributes() throws IOException {
+    final int count = in.readUnsignedShort();
+    for (int i = 0; i < count; i++) {
+      final String name = utf8At(in.readUnsignedShort());
+      final int length = in.readInt();
+
+      if ("Signature".equals(name)) {
+        descriptors.set(in.readUnsignedShort());
+      }
+      else if ("Code".equals(name)) {
+        in.readUnsignedShort(); // max stack
+        in.readUnsignedShort(); // max locals
+        skip(in.readInt());
+        skip(in.readUnsignedShort() * 8); // exception table, whose catch types are class constants.
+        readAttributes();
+      }
+      else if ("LocalVariableTable".equals(name) || "LocalVariableTypeTable".equals(name)) {
+        final int variables = in.readUnsignedShort();
+        for (int v = 0; v < variables; v++) {
+          in.readUnsignedShort(); // start
+          in.readUnsignedShort(); // length
+          in.readUnsignedShort(); // name
+          descriptors.set(in.readUnsignedShort());
+          in.readUnsignedShort(); // slot
+        }
+      }
+      else if ("RuntimeVisibleAnnotations".equals(name) || "RuntimeInvisibleAnnotations".equals(name)) {
+        readAnnotations();
+      }
+      else if ("RuntimeVisibleParameterAnnotations".equals(name)
+          || "RuntimeInvisibleParameterAnnotations".equals(name)) {
+        final int parameters = in.readUnsignedByte();
+        for (int p = 0; p < parameters; p++) {
+          readAnnotations();
+        }
+      }
+      else if ("RuntimeVisibleTypeAnnotations".equals(name) || "RuntimeInvisibleTypeAnnotations".equals(name)) {
+        final int annotations = in.readUnsignedShort();
+        for (int a = 0; a < annotations; a++) {
+          readTypeAnnotationTarget();
+          readAnnotation();
+        }
+      }
+      else if ("AnnotationDefault".equals(name)) {
+        readElementValue();
+      }
+      else if ("Record".equals(name)) {
+        final int components = in.readUnsignedShort();
+        for (int c = 0; c < components; c++) {
+          in.readUnsignedShort(); // name
+          descriptors.set(in.readUnsignedShort());
+          readAttributes();
+        }
+      }
+      else {
+        skip(length);
+      }
+    }
+  }
+
+  private void readAnnotations() throws IOException {
+    final int annotations = in.readUnsignedShort();
+    for (int a = 0; a < annotations; a++) {
+      readAnnotation();
+    }
+  }
+
+  private void readAnnotation() throws IOException {
+    descriptors.set(in.readUnsignedShort());
+    final int pairs = in.readUnsignedShort();
+    for (int p = 0; p < pairs; p++) {
+      in.readUnsignedShort(); // element name
+      readElementValue();
+    }
+  }
+
+  private void readElementValue() throws IOException {
+    final int tag = in.readUnsignedByte();
+    switch (tag) {
+      case 'B':
+      case 'C':
+      case 'D':
+      case 'F':
+      case 'I':
+      case 'J':
+      case 'S':
+      case 'Z':
+      case 's':
+        // a constant, which is never a descriptor, even if it is a string which looks like one.
+        in.readUnsignedShort();
+        break;
+      case 'e':
+        descriptors.set(in.readUnsignedShort());
+        in.readUnsignedShort(); // constant name
+        break;
+      case 'c':
+        descriptors.set(in.readUnsignedShort());
+        break;
+      case '@':
+        readAnnotation();
+        break;
+      case '[':
+        final int values = in.readUnsignedShort();
+        for (int v = 0; v < values; v++) {
+          readElementValue();
+        }
+        break;
+      default:
+        throw new IOException("unknown element value tag: " + (char) tag);
+    }
+  }
+
+  /**
+   * Skips the target and the type path of a type annotation, neither of which refers to a type.
+   */
+  private void readTypeAnnotationTarget() throws IOException {
+    final int targetType = in.readUnsignedByte();
+    switch (targetType) {
+      case 0x00:
+      case 0x01:
+      case 0x16:
+        skip(1);
+        break;
+      case 0x10:
+      case 0x11:
+      case 0x12:
+      case 0x17:
+      case 0x42:
+      case 0x43:
+      case 0x44:
+      case 0x45:
+      case 0x46:
+        skip(2);
+        break;
+      case 0x13:
+      case 0x14:
+      case 0x15:
+        break;
+      case 0x40:
+      case 0x41:
+        skip(in.readUnsignedShort() * 6);
+        break;
+      case 0x47:
+      case 0x48:
+      case 0x49:
+      case 0x4A:
+      case 0x4B:
+        skip(3);
+        break;
+      default:
+        throw new IOException("unknown type annotation target: " + targetType);
+    }
+    skip(in.readUnsignedByte() * 2);
+  }
+
+  /**
+   * Adds every class type in a field or method descriptor, or in a generic signature, including those in type
+   * arguments and in the bounds of type parameters.
+   */
+  private static void addDescriptorTypes(final String descriptor, final Set<String> types) throws IOException {
+    try {
+      int i = 0;
+      if (descriptor.charAt(0) == '<') {
+        i = parseTypeParameters(descriptor, i, types);
+      }
+      while (i < descriptor.length()) {
+        i = parseType(descriptor, i, types);
+      }
+    }
+    catch (IndexOutOfBoundsException e) {
+      throw new IOException("malformed descriptor: " + descriptor);
+    }
+  }
+
+  private static int parseTypeParameters(final String signature, int i, final Set<String> types) {
+    i++;
+    while (signature.charAt(i) != '>') {
+      i = signature.indexOf(':', i);
+      if (i == -1) throw new IndexOutOfBoundsException();
+
+      while (signature.charAt(i) == ':') {
+        i++;
+        if (signature.charAt(i) != ':') {
+          i = parseType(signature, i, types);
+        }
+      }
+    }
+    return i + 1;
+  }
+
+  private static int parseType(final String signature, int i, final Set<String> types) {
+    switch (signature.charAt(i)) {
+      case 'L':
+        return parseClassType(signature, i, types);
+      case 'T':
+        final int end = signature.indexOf(';', i);
+        if (end == -1) throw new IndexOutOfBoundsException();
+        return end + 1;
+      default:
+        // a primitive type, an array, or the punctuation of a method descriptor.
+        return i + 1;
+    }
+  }
+
+  private static int parseClassType(final String signature, int i, final Set<String> types) {
+    int start = ++i;
+    String name = null;
+    while (true) {
+      final char c = signature.charAt(i);
+      if (c == ';' || c == '<' || c == '.') {
+        final String simpleName = signature.substring(start, i);
+        name = name == null ? simpleName : name + '$' + simpleName;
+        addInternalName(name, types);
+
+        if (c == '<') {
+          i = parseTypeArguments(signature, i, types);
+        }
+        if (signature.charAt(i) == ';') {
+          return i + 1;
+        }
+        // the inner class of a parameterized outer class.
+        start = ++i;
+      }
+      else {
+        i++;
+      }
+    }
+  }
+
+  private static int parseTypeArguments(final String signature, int i, final Set<String> types) {
+    i++;
+    while (signature.charAt(i) != '>') {
+      final char c = signature.charAt(i);
+      if (c == '*') {
+        i++;
+      }
+      else {
+        if (c == '+' || c == '-') {
+          i++;
+        }
+        while (signature.charAt(i) == '[') {
+          i++;
+        }
+        i = parseType(signature, i, types);
+      }
+    }
+    return i + 1;
+  }
+
+  private static void addInternalName(final String internalName, final Set<String> types) {
+    if (internalName.length() == 0) return;
+
+    final String binaryName = internalName.replace('/', '.');
+    types.add(binaryName);
+    if (binaryName.indexOf('$') != -1) {
+      types.add(binaryName.replace('$', '.'));
+    }
+  }
+
+  /**
+   * Reads the whole stream.
+   */
+  static byte[] readFully(final InputStream stream) throws IOException {
+    byte[] buffer = new byte[4096];
+    int length = 0;
+    int read;
+    while ((read = stream.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+      if (length == buffer.length) {
+        final byte[] larger = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, larger, 0, length);
+        buffer = larger;
+      }
+    }
+
+    final byte[] result = new byte[length];
+    System.arraycopy(buffer, 0, result, 0, length);
+    return result;
+  }
+}
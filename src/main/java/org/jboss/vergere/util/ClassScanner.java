@@ -8,13 +8,16 @@ import org.jboss.errai.codegen.meta.MetaParameter;
 import org.mvel2.util.NullType;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 
@@ -22,17 +25,35 @@ import java.util.regex.Pattern;
  * @author Mike Brock
  */
 public final class ClassScanner {
-  private static final MetaDataScanner scanner;
+  private static volatile MetaDataScanner scanner;
+  private static final MemberAnnotationIndex memberIndex = new MemberAnnotationIndex();
 
   static {
-    if (!VergereUtils.hasClasspathChanged() && VergereUtils.cacheFileExists("reflections.cache")) {
+    final boolean useCache
+        = !VergereUtils.hasClasspathChanged() && VergereUtils.cacheFileExists(MetaDataScanner.SCAN_CACHE_FILE);
+
+    if (useCache) {
       System.out.println("Classpath hasn't changed.");
-      scanner = new MetaDataScanner(MetaDataScanner.getConfigUrls(), VergereUtils.getCacheFile("reflections.cache"));
+      scanner = new MetaDataScanner(MetaDataScanner.getConfigUrls(),
+          VergereUtils.getCacheFile(MetaDataScanner.SCAN_CACHE_FILE));
     }
     else {
       System.out.println("Classpath has changed.");
       scanner = new MetaDataScanner(MetaDataScanner.getConfigUrls(), null);
     }
+
+    if (ClasspathWatcher.isEnabled()) {
+      ClasspathWatcher.start(MetaDataScanner.getConfigUrls());
+    }
+  }
+
+  /**
+   * Replaces the scanner with a new scan of the classpath. Classpath URLs which have not changed are read from their
+   * cached scan partitions.
+   */
+  static synchronized void rescan() {
+    scanner = new MetaDataScanner(MetaDataScanner.getConfigUrls(), null);
+    memberIndex.clear();
   }
 
   private ClassScanner() {
@@ -41,16 +62,7 @@ public final class ClassScanner {
   public static Collection<MetaParameter> getParametersAnnotatedWith(final Class<? extends Annotation> annotation,
                                                                      final Set<String> packages) {
 
-    final Collection<MetaParameter> result = new HashSet<MetaParameter>();
-    for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
-      for (final MetaMethod method : metaClass.getDeclaredMethods()) {
-        for (final MetaParameter parameter : method.getParameters()) {
-          if (parameter.isAnnotationPresent(annotation)) {
-            result.add(parameter);
-          }
-        }
-      }
-    }
+    final Collection<MetaParameter> result = memberIndex.getParametersAnnotatedWith(annotation);
 
     filterResultsParameter(result, packages, null);
 
@@ -79,24 +91,12 @@ public final class ClassScanner {
 //      }
 //    });
 
-    final Future<?> reflectionsFuture = ThreadUtil.submit(new Runnable() {
-      @Override
-      public void run() {
-        for (final Class<?> cls : scanner.getTypesAnnotatedWith(annotation)) {
-          result.add(MetaClassFactory.get(cls));
-        }
-      }
-    });
-
-    try {
-//      factoryFuture.get();
-      reflectionsFuture.get();
-    }
-    catch (Exception ignored) {
+    // filter by name first, so only the classes which are returned get loaded.
+    final Set<String> classNames = scanner.getTypeNamesAnnotatedWith(annotation, packages, excludeRegEx);
+    for (final Class<?> cls : scanner.getTypesNamed(classNames)) {
+      result.add(MetaClassFactory.get(cls));
     }
 
-    filterResultsClass(result, packages, excludeRegEx);
-
     return Collections.unmodifiableCollection(result);
   }
 
@@ -120,14 +120,7 @@ public final class ClassScanner {
 
   public static Collection<MetaMethod> getMethodsAnnotatedWith(final Class<? extends Annotation> annotation,
                                                                final Set<String> packages) {
-    final Collection<MetaMethod> result = new HashSet<MetaMethod>(50);
-    for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
-      for (final MetaMethod metaMethod : metaClass.getDeclaredMethods()) {
-        if (metaMethod.isAnnotationPresent(annotation)) {
-          result.add(metaMethod);
-        }
-      }
-    }
+    final Collection<MetaMethod> result = memberIndex.getMethodsAnnotatedWith(annotation);
 
     filterResultsMethod(result, packages, null);
 
@@ -140,21 +133,29 @@ public final class ClassScanner {
 
   public static Collection<MetaField> getFieldsAnnotatedWith(final Class<? extends Annotation> annotation,
                                                              final Set<String> packages) {
-    final Collection<MetaField> result = new HashSet<MetaField>(50);
-
-    for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
-      for (final MetaField metaField : metaClass.getDeclaredFields()) {
-        if (metaField.isAnnotationPresent(annotation)) {
-          result.add(metaField);
-        }
-      }
-    }
+    final Collection<MetaField> result = memberIndex.getFieldsAnnotatedWith(annotation);
 
     filterResultsField(result, packages, null);
 
     return Collections.unmodifiableCollection(result);
   }
 
+  /**
+   * Returns the specified types which may be inferred to be dependent beans: public, concrete classes with a public
+   * default constructor and no scope annotation. The types are checked against the flags recorded at scan time, so
+   * only the types which qualify are loaded. Types outside the scan are outside the scan scope, and are never
+   * inferred to be beans.
+   */
+  public static Collection<MetaClass> getInferredDependentTypes(final Collection<String> typeNames) {
+    final Set<String> candidates = scanner.getDependentCandidateNames(typeNames);
+
+    final List<MetaClass> result = new ArrayList<MetaClass>(candidates.size());
+    for (final Class<?> cls : scanner.getTypesNamed(candidates)) {
+      result.add(MetaClassFactory.get(cls));
+    }
+    return result;
+  }
+
   public static Collection<MetaClass> getSubTypesOf(final MetaClass metaClass) {
     final MetaClass root = metaClass.getErased();
     final Set<MetaClass> result = Collections.newSetFromMap(new ConcurrentHashMap<MetaClass, Boolean>());
@@ -172,52 +173,19 @@ public final class ClassScanner {
 //      }
 //    });
 
-    final Future<?> reflectionsFuture = ThreadUtil.submit(new Runnable() {
-      @Override
-      public void run() {
-        final Class<?> cls = root.asClass();
-        if (cls != null && !cls.equals(NullType.class)) {
-          for (final Class<?> c : ClassScanner.getScanner().getSubTypesOf(cls)) {
-            if (!c.isAnonymousClass() && !c.isSynthetic()) {
-              result.add(MetaClassFactory.get(c));
-            }
-          }
+    // answered from the subtype index built at scan time, so there is nothing left to hand off to another thread.
+    final Class<?> cls = root.asClass();
+    if (cls != null && !cls.equals(NullType.class)) {
+      for (final Class<?> c : ClassScanner.getScanner().getSubTypesOf(cls)) {
+        if (!c.isAnonymousClass() && !c.isSynthetic()) {
+          result.add(MetaClassFactory.get(c));
         }
       }
-    });
-    try {
-      reflectionsFuture.get();
-    }
-    catch (Exception ignored) {
-    }
-
-    try {
-//      factoryFuture.get();
-    }
-    catch (Exception ignored) {
     }
 
     return result;
   }
 
-  private static void filterResultsClass(final Collection<MetaClass> result,
-                                         final Set<String> packages,
-                                         final String excludeRegEx) {
-
-    final Pattern excludePattern;
-    if (excludeRegEx != null) {
-      excludePattern = Pattern.compile(excludeRegEx);
-    }
-    else {
-      excludePattern = null;
-    }
-
-    final Iterator<MetaClass> filterIterator = result.iterator();
-    while (filterIterator.hasNext()) {
-      _removeIfNotMatches(filterIterator, filterIterator.next(), packages, excludePattern);
-    }
-  }
-
   private static void filterResultsMethod(final Collection<MetaMethod> result,
                                           final Set<String> packages,
                                           final String excludeRegEx) {
@@ -291,4 +259,96 @@ public final class ClassScanner {
   public static MetaDataScanner getScanner() {
     return scanner;
   }
+
+  /**
+   * An index of the annotated methods, fields and method parameters of all classes in the {@link MetaClassFactory}
+   * cache. Each cached class is indexed once, by name, the first time a query is made after it was added to the
+   * cache. The cache only grows between rescans, so a query made while the cache holds as many classes as at the last
+   * query reads the index alone; otherwise only the classes not indexed yet are indexed. The index is rebuilt after a
+   * {@link ClassScanner#rescan() rescan}, or if the cache was emptied.
+   */
+  private static final class MemberAnnotationIndex {
+    private final Set<String> indexedClasses = new HashSet<String>();
+    private int cachedClassCount = -1;
+
+    private final Map<Class<? extends Annotation>, List<MetaMethod>> methods
+        = new HashMap<Class<? extends Annotation>, List<MetaMethod>>();
+    private final Map<Class<? extends Annotation>, List<MetaField>> fields
+        = new HashMap<Class<? extends Annotation>, List<MetaField>>();
+    private final Map<Class<? extends Annotation>, List<MetaParameter>> parameters
+        = new HashMap<Class<? extends Annotation>, List<MetaParameter>>();
+
+    public synchronized Collection<MetaMethod> getMethodsAnnotatedWith(final Class<? extends Annotation> annotation) {
+      update();
+      return copyOf(methods.get(annotation));
+    }
+
+    public synchronized Collection<MetaField> getFieldsAnnotatedWith(final Class<? extends Annotation> annotation) {
+      update();
+      return copyOf(fields.get(annotation));
+    }
+
+    public synchronized Collection<MetaParameter> getParametersAnnotatedWith(
+        final Class<? extends Annotation> annotation) {
+      update();
+      return copyOf(parameters.get(annotation));
+    }
+
+    public synchronized void clear() {
+      indexedClasses.clear();
+      cachedClassCount = -1;
+      methods.clear();
+      fields.clear();
+      parameters.clear();
+    }
+
+    private void update() {
+      final Collection<MetaClass> cachedClasses = MetaClassFactory.getAllCachedClasses();
+      final int count = cachedClasses.size();
+      if (count == cachedClassCount) return;
+      if (count < cachedClassCount) {
+        clear();
+      }
+      cachedClassCount = count;
+
+      for (final MetaClass metaClass : cachedClasses) {
+        if (!indexedClasses.add(metaClass.getFullyQualifiedName())) continue;
+
+        for (final MetaMethod metaMethod : metaClass.getDeclaredMethods()) {
+          for (final Annotation a : metaMethod.getAnnotations()) {
+            put(methods, a.annotationType(), metaMethod);
+          }
+
+          for (final MetaParameter parameter : metaMethod.getParameters()) {
+            for (final Annotation a : parameter.getAnnotations()) {
+              put(parameters, a.annotationType(), parameter);
+            }
+          }
+        }
+
+        for (final MetaField metaField : metaClass.getDeclaredFields()) {
+          for (final Annotation a : metaField.getAnnotations()) {
+            put(fields, a.annotationType(), metaField);
+          }
+        }
+      }
+    }
+
+    private static <T> void put(final Map<Class<? extends Annotation>, List<T>> index,
+                                final Class<? extends Annotation> annotation,
+                                final T member) {
+      List<T> members = index.get(annotation);
+      if (members == null) {
+        index.put(annotation, members = new ArrayList<T>());
+      }
+      members.add(member);
+    }
+
+    private static <T> Collection<T> copyOf(final List<T> members) {
+      if (members == null) {
+        return new HashSet<T>();
+      }
+      return new HashSet<T>(members);
+    }
+  }
 }
@@ -0,0 +1,206 @@
+package org.jboss.vergere.util;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Computes a fingerprint of the classpath from the names, sizes and modification times of the files on it.
+ * <p/>
+ * Jar files, and any other plain files on the classpath, are fingerprinted with a single stat. Exploded directories
+ * are walked, and large directory trees are split into subtrees which are walked in parallel. The fingerprint of each
+ * classpath entry is kept too, so the parts of the scan which depend on a single entry can be cached by it.
+ */
+public final class ClasspathFingerprint {
+  /**
+   * The directory tree is expanded breadth-first until there are at least this many subtrees to walk in parallel.
+   */
+  private static final int PARALLEL_SUBTREES = 64;
+  private static final int MAX_SPLIT_DEPTH = 6;
+
+  private static final Comparator<File> FILE_NAME_ORDER = new Comparator<File>() {
+    @Override
+    public int compare(final File f1, final File f2) {
+      return f1.getName().compareTo(f2.getName());
+    }
+  };
+
+  private final String fingerprint;
+  private final Map<String, String> entryDigests;
+
+  private ClasspathFingerprint(final String fingerprint, final Map<String, String> entryDigests) {
+    this.fingerprint = fingerprint;
+    this.entryDigests = entryDigests;
+  }
+
+  /**
+   * Fingerprints the specified classpath entries.
+   *
+   * @param seed
+   *     a seed to mix into the fingerprint.
+   * @param classPathEntries
+   *     the classpath entries, in the order they should be hashed.
+   *
+   * @return the classpath fingerprint.
+   */
+  public static ClasspathFingerprint compute(final String seed, final List<String> classPathEntries) {
+    try {
+      final Map<String, Future<byte[]>> directoryDigests = new HashMap<String, Future<byte[]>>();
+      for (final String entry : classPathEntries) {
+        final File file = new File(entry);
+        if (file.isDirectory()) {
+          directoryDigests.put(entry, ThreadUtil.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+              return digestDirectory(file);
+            }
+          }));
+        }
+      }
+
+      final MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(seed.getBytes("UTF-8"));
+
+      final Map<String, String> entryDigests = new LinkedHashMap<String, String>();
+      for (final String entry : classPathEntries) {
+        final byte[] digest;
+        if (directoryDigests.containsKey(entry)) {
+          digest = directoryDigests.get(entry).get();
+        }
+        else {
+          final MessageDigest entryMd = MessageDigest.getInstance("SHA-256");
+          updateWithFile(entryMd, entry, new File(entry));
+          digest = entryMd.digest();
+        }
+
+        md.update(entry.getBytes("UTF-8"));
+        md.update(digest);
+        entryDigests.put(entry, VergereUtils.hashToHexString(digest));
+      }
+
+      return new ClasspathFingerprint(VergereUtils.hashToHexString(md.digest()),
+          Collections.unmodifiableMap(entryDigests));
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to generate hash for classpath fingerprint", e);
+    }
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Returns the fingerprint of each classpath entry, keyed by the classpath entry.
+   */
+  public Map<String, String> getEntryDigests() {
+    return entryDigests;
+  }
+
+  /**
+   * Fingerprints a single classpath entry, in the same way as {@link #compute(String, List)} does.
+   *
+   * @return the fingerprint of the entry, as a hex string.
+   */
+  public static String computeEntry(final File entry) {
+    try {
+      if (entry.isDirectory()) {
+        return VergereUtils.hashToHexString(digestDirectory(entry));
+      }
+      else {
+        final MessageDigest md = MessageDigest.getInstance("SHA-256");
+        updateWithFile(md, entry.getPath(), entry);
+        return VergereUtils.hashToHexString(md.digest());
+      }
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to generate hash for classpath entry: " + entry, e);
+    }
+  }
+
+  private static byte[] digestDirectory(final File root) throws Exception {
+    final MessageDigest md = MessageDigest.getInstance("SHA-256");
+
+    // expand the tree breadth-first until there are enough independent subtrees to keep several threads busy. the
+    // split does not depend on the number of processors, so the fingerprint is the same on every machine.
+    List<File> level = Collections.singletonList(root);
+    for (int depth = 0; !level.isEmpty() && level.size() < PARALLEL_SUBTREES && depth < MAX_SPLIT_DEPTH; depth++) {
+      final List<File> nextLevel = new ArrayList<File>();
+      for (final File dir : level) {
+        for (final File child : listSorted(dir)) {
+          if (child.isDirectory()) {
+            nextLevel.add(child);
+          }
+          else {
+            updateWithFile(md, relativePath(root, child), child);
+          }
+        }
+      }
+      level = nextLevel;
+    }
+
+    final List<Future<byte[]>> subtreeDigests = new ArrayList<Future<byte[]>>(level.size());
+    for (final File subtree : level) {
+      subtreeDigests.add(ThreadUtil.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws Exception {
+          final MessageDigest subtreeMd = MessageDigest.getInstance("SHA-256");
+          walkTree(subtreeMd, root, subtree);
+          return subtreeMd.digest();
+        }
+      }));
+    }
+
+    for (int i = 0; i < level.size(); i++) {
+      md.update(relativePath(root, level.get(i)).getBytes("UTF-8"));
+      md.update(subtreeDigests.get(i).get());
+    }
+
+    return md.digest();
+  }
+
+  private static void walkTree(final MessageDigest md, final File root, final File dir) throws Exception {
+    for (final File child : listSorted(dir)) {
+      if (child.isDirectory()) {
+        walkTree(md, root, child);
+      }
+      else {
+        updateWithFile(md, relativePath(root, child), child);
+      }
+    }
+  }
+
+  private static void updateWithFile(final MessageDigest md, final String name, final File file) throws Exception {
+    md.update(name.getBytes("UTF-8"));
+    updateWithLong(md, file.lastModified());
+    updateWithLong(md, file.length());
+  }
+
+  private static void updateWithLong(final MessageDigest md, final long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      md.update((byte) (value >>> shift));
+    }
+  }
+
+  private static List<File> listSorted(final File dir) {
+    final File[] children = dir.listFiles();
+    if (children == null) {
+      return Collections.emptyList();
+    }
+    Arrays.sort(children, FILE_NAME_ORDER);
+    return Arrays.asList(children);
+  }
+
+  private static String relativePath(final File root, final File file) {
+    return file.getPath().substring(root.getPath().length());
+  }
+}
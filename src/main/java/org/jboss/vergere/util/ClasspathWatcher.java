@@ -0,0 +1,150 @@
+package org.jboss.vergere.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A development mode in which the directories on the classpath are watched for changes on a background thread, so
+ * the next container bootstrap in the same JVM starts from a current scan instead of rescanning and rehashing the
+ * classpath itself. Enabled by setting <tt>vergere.scan.watch=true</tt>; the directories are polled every
+ * <tt>vergere.scan.watch.interval</tt> milliseconds, 500 by default. While nothing changes, the interval doubles
+ * after every poll, up to <tt>vergere.scan.watch.maxInterval</tt> milliseconds, 8000 by default, and it drops back
+ * after a change.
+ * <p/>
+ * When a directory changes, the classpath fingerprint is recomputed and the classpath is rescanned. Since the scan is
+ * cached per classpath URL, only the changed directories are actually scanned again; everything else is read from
+ * its cached partition. A rescan takes the write side of the {@link #getBootstrapLock() bootstrap lock}, so it never
+ * replaces the classpath state while a bootstrap is reading it.
+ */
+public final class ClasspathWatcher implements Runnable {
+  private static final Logger log = LoggerFactory.getLogger(ClasspathWatcher.class);
+
+  private static final boolean enabled = Boolean.getBoolean("vergere.scan.watch");
+  private static final long interval = Long.getLong("vergere.scan.watch.interval", 500);
+  private static final long maxInterval = Math.max(interval, Long.getLong("vergere.scan.watch.maxInterval", 8000));
+
+  private static final ReentrantReadWriteLock bootstrapLock = new ReentrantReadWriteLock();
+
+  private static Thread watcherThread;
+
+  private final Map<File, String> fingerprints = new LinkedHashMap<File, String>();
+
+  ClasspathWatcher(final List<URL> urls) {
+    for (final URL url : urls) {
+      final File file = ScanPartitions.toFile(url);
+      if (file != null && file.isDirectory()) {
+        fingerprints.put(file.getAbsoluteFile(), null);
+      }
+    }
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the lock held by container bootstraps. Any number of bootstraps may hold it at once, but a rescan waits
+   * for all of them to finish, and bootstraps wait for a rescan to finish.
+   */
+  public static Lock getBootstrapLock() {
+    return bootstrapLock.readLock();
+  }
+
+  /**
+   * Starts watching the directories among the specified classpath URLs, unless a watcher is already running.
+   */
+  static synchronized void start(final List<URL> urls) {
+    if (watcherThread != null) return;
+
+    final ClasspathWatcher watcher = new ClasspathWatcher(urls);
+    if (watcher.fingerprints.isEmpty()) return;
+
+    watcherThread = new Thread(watcher, "vergere-classpath-watcher");
+    watcherThread.setDaemon(true);
+    watcherThread.start();
+  }
+
+  /**
+   * Stops the watcher, if one is running.
+   */
+  public static synchronized void stop() {
+    if (watcherThread != null) {
+      watcherThread.interrupt();
+      watcherThread = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    // start from the fingerprints the scan was based on, so changes made since the scan are not missed.
+    final Map<String, String> entryDigests = VergereUtils.getClasspathFingerprint().getEntryDigests();
+    for (final Map.Entry<String, String> entry : entryDigests.entrySet()) {
+      final File file = new File(entry.getKey()).getAbsoluteFile();
+      if (fingerprints.containsKey(file)) {
+        fingerprints.put(file, entry.getValue());
+      }
+    }
+
+    try {
+      long delay = interval;
+      while (!Thread.currentThread().isInterrupted()) {
+        Thread.sleep(delay);
+
+        try {
+          if (updateFingerprints()) {
+            rescan();
+            delay = interval;
+          }
+          else {
+            delay = Math.min(delay * 2, maxInterval);
+          }
+        }
+        catch (RuntimeException e) {
+          log.warn("failed to rescan changed classpath", e);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      // stopped.
+    }
+  }
+
+  private static void rescan() throws InterruptedException {
+    final Lock lock = bootstrapLock.writeLock();
+    lock.lockInterruptibly();
+    try {
+      final long tm = System.currentTimeMillis();
+      VergereUtils.refreshClasspathFingerprint();
+      ClassScanner.rescan();
+      log.info("classpath changed, rescanned in " + (System.currentTimeMillis() - tm) + "ms");
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Fingerprints each watched directory again.
+   *
+   * @return true if any directory has changed since it was last fingerprinted.
+   */
+  boolean updateFingerprints() {
+    boolean changed = false;
+    for (final Map.Entry<File, String> entry : fingerprints.entrySet()) {
+      final String fingerprint = ClasspathFingerprint.computeEntry(entry.getKey());
+      if (!fingerprint.equals(entry.getValue())) {
+        entry.setValue(fingerprint);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+}
@@ -4,6 +4,7 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import org.eclipse.jdt.core.compiler.CompilationProgress;
 import org.eclipse.jdt.core.compiler.batch.BatchCompiler;
+import org.eclipse.jdt.internal.compiler.tool.EclipseCompiler;
 import org.jboss.errai.common.metadata.MetaDataScanner;
 import org.jboss.errai.common.metadata.RebindUtils;
 import org.slf4j.Logger;
@@ -13,16 +14,25 @@ import javax.tools.ToolProvider;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
@@ -35,8 +45,12 @@ public class CompileUtil {
 
   private static final String classLoadingMode;
   private static final boolean useNativeJavac = Boolean.getBoolean(USE_NATIVE_JAVA_COMPILER);
+  private static final int PARALLEL_COMPILE_THRESHOLD = 3;
   private static Logger log = getLogger("ErraiMarshalling");
 
+  private static String cachedClassPath;
+  private static CompilerAdapter cachedAdapter;
+
   static {
     if (System.getProperty(CLASSLOADING_MODE_PROPERTY) != null) {
       classLoadingMode = System.getProperty(CLASSLOADING_MODE_PROPERTY);
@@ -141,15 +155,7 @@ public class CompileUtil {
     try {
 
       final ByteArrayOutputStream errorOutputStream = new ByteArrayOutputStream();
-      final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-      final CompilerAdapter adapter;
-
-      if (compiler == null || !useNativeJavac) {
-        adapter = new JDTCompiler();
-      }
-      else {
-        adapter = new JDKCompiler(compiler);
-      }
+      final CompilerAdapter adapter = getCompilerAdapter();
 
       final File classOutputDir = new File(outputPath
           + File.separatorChar + RebindUtils.packageNameToDirName(packageName)
@@ -169,28 +175,7 @@ public class CompileUtil {
       }
 
 
-      final StringBuilder sb = new StringBuilder(4096);
-      final List<URL> configUrls = MetaDataScanner.getConfigUrls();
-      final List<File> classpathElements = new ArrayList<File>(configUrls.size());
-      classpathElements.add(new File(outputPath));
-
-      log.debug(">>> Searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
-      for (final URL url : configUrls) {
-        final File file = getFileIfExists(url.getFile());
-        if (file != null) {
-          classpathElements.add(file);
-        }
-      }
-      log.debug("<<< Done searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
-
-      for (final File file : classpathElements) {
-        sb.append(file.getAbsolutePath()).append(File.pathSeparator);
-      }
-
-      sb.append(System.getProperty("java.class.path"));
-      sb.append(findAllJarsByManifest());
-
-      final String classPath = sb.toString();
+      final String classPath = new File(outputPath).getAbsolutePath() + File.pathSeparator + getClassPath();
 
       /**
        * Attempt to run the compiler without any classpath specified.
@@ -200,7 +185,7 @@ public class CompileUtil {
       if (compile != 0) {
 
         System.out.println("*** FAILED TO COMPILE CLASS ***");
-        System.out.println("*** Classpath Used: " + sb.toString());
+        System.out.println("*** Classpath Used: " + classPath);
 
         for (final byte b : errorOutputStream.toByteArray()) {
           System.out.print((char) b);
@@ -215,6 +200,296 @@ public class CompileUtil {
     }
   }
 
+  /**
+   * Compiles the specified sources in a single compiler invocation, without loading them.
+   *
+   * @param sources
+   *     a map of fully qualified class names to Java sources.
+   *
+   * @return a map of binary class names to class definitions, including all inner classes. Returns null if the
+   *         compilation failed.
+   */
+  public static Map<String, byte[]> compileAll(final Map<String, String> sources) {
+    final long start = BootstrapReport.begin();
+    try {
+      return getCompilerSession().compile(sources);
+    }
+    finally {
+      BootstrapReport.end(BootstrapReport.Phase.Compilation, start);
+    }
+  }
+
+  /**
+   * Compiles sources which do not reference each other, such as the generated bootstrapper and its partition classes.
+   * Three or more sources are split into batches which are compiled concurrently, each on a compiler session of its
+   * own, as a compiler session can only run one compile at a time.
+   *
+   * @param sources
+   *     a map of fully qualified class names to Java sources.
+   *
+   * @return a map of binary class names to class definitions, including all inner classes. Returns null if the
+   *         compilation of any of the sources failed.
+   */
+  public static Map<String, byte[]> compileIndependently(final Map<String, String> sources) {
+    final int parallelism = Math.min(sources.size(), Runtime.getRuntime().availableProcessors());
+
+    // the qualifier factory and a bootstrapper generated as a single class are not worth a second compiler session.
+    if (sources.size() < PARALLEL_COMPILE_THRESHOLD || parallelism < 2) {
+      return compileAll(sources);
+    }
+
+    final long start = BootstrapReport.begin();
+    try {
+      final List<CompilerSession> sessions
+          = CompilerSession.getSessions(getInMemoryCompiler(), getClassPath(), parallelism);
+      return compileInParallel(sources, sessions);
+    }
+    finally {
+      BootstrapReport.end(BootstrapReport.Phase.Compilation, start);
+    }
+  }
+
+  /**
+   * Deals the sources out largest first, each to the batch with the least source so far, so the batches take about
+   * as long as each other to compile, and compiles one batch per session.
+   */
+  private static Map<String, byte[]> compileInParallel(final Map<String, String> sources,
+                                                       final List<CompilerSession> sessions) {
+    final List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>(sources.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, String>>() {
+      @Override
+      public int compare(final Map.Entry<String, String> a, final Map.Entry<String, String> b) {
+        return b.getValue().length() - a.getValue().length();
+      }
+    });
+
+    final List<Map<String, String>> batches = new ArrayList<Map<String, String>>(sessions.size());
+    final long[] batchSizes = new long[sessions.size()];
+    for (int i = 0; i < sessions.size(); i++) {
+      batches.add(new LinkedHashMap<String, String>());
+    }
+
+    for (final Map.Entry<String, String> entry : entries) {
+      int smallest = 0;
+      for (int i = 1; i < batchSizes.length; i++) {
+        if (batchSizes[i] < batchSizes[smallest]) {
+          smallest = i;
+        }
+      }
+      batches.get(smallest).put(entry.getKey(), entry.getValue());
+      batchSizes[smallest] += entry.getValue().length();
+    }
+
+    final List<Future<Map<String, byte[]>>> futures = new ArrayList<Future<Map<String, byte[]>>>(batches.size());
+    for (int i = 0; i < batches.size(); i++) {
+      final CompilerSession session = sessions.get(i);
+      final Map<String, String> batch = batches.get(i);
+      futures.add(ThreadUtil.submit(new Callable<Map<String, byte[]>>() {
+        @Override
+        public Map<String, byte[]> call() {
+          return session.compile(batch);
+        }
+      }));
+    }
+
+    final Map<String, byte[]> classDefinitions = new LinkedHashMap<String, byte[]>();
+    boolean failed = false;
+    try {
+      for (final Future<Map<String, byte[]>> future : futures) {
+        final Map<String, byte[]> compiled = future.get();
+        if (compiled == null) {
+          failed = true;
+        }
+        else {
+          classDefinitions.putAll(compiled);
+        }
+      }
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException("failed to compile generated classes", e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while compiling generated classes", e);
+    }
+    return failed ? null : classDefinitions;
+  }
+
+  /**
+   * Defines already compiled classes through a single shared classloader. No compiler is involved.
+   *
+   * @param classDefinitions
+   *     a map of binary class names to class definitions, including all inner classes.
+   * @param fullyQualifiedNames
+   *     the names of the classes to load.
+   *
+   * @return a map of fully qualified class names to the loaded classes.
+   */
+  public static Map<String, Class> defineClasses(final Map<String, byte[]> classDefinitions,
+                                                 final Collection<String> fullyQualifiedNames) {
+    final long start = BootstrapReport.begin();
+    try {
+      return defineAll(classDefinitions, fullyQualifiedNames);
+    }
+    finally {
+      BootstrapReport.end(BootstrapReport.Phase.ClassLoading, start);
+    }
+  }
+
+  private static Map<String, Class> defineAll(final Map<String, byte[]> classDefinitions,
+                                              final Collection<String> fullyQualifiedNames) {
+    final BootstrapClassloader clsLoader = new BootstrapClassloader(classDefinitions, getParentClassLoader());
+    final Map<String, Class> classes = new LinkedHashMap<String, Class>();
+
+    for (final String fqcn : fullyQualifiedNames) {
+      try {
+        classes.put(fqcn, clsLoader.loadClass(fqcn));
+      }
+      catch (ClassNotFoundException e) {
+        throw new RuntimeException("compiled class was not produced by the compiler: " + fqcn, e);
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Writes compiled classes out as class files below the specified output directory. Any stale class files for the
+   * specified classes, and their inner classes, are deleted first.
+   *
+   * @param classDefinitions
+   *     a map of binary class names to class definitions.
+   * @param fullyQualifiedNames
+   *     the names of the top-level classes being written.
+   * @param outputPath
+   *     the root of the output directory.
+   */
+  @SuppressWarnings({"ConstantConditions", "ResultOfMethodCallIgnored"})
+  public static void writeClassDefinitions(final Map<String, byte[]> classDefinitions,
+                                           final Collection<String> fullyQualifiedNames,
+                                           final String outputPath) {
+    try {
+      // delete any stale classes already there
+      for (final String fqcn : fullyQualifiedNames) {
+        final File classOutputDir = getClassOutputDir(outputPath, getPackageFromFQCN(fqcn));
+        final Pattern matcher = Pattern.compile("^" + getNameFromFQCN(fqcn) + "(\\.|\\$).*class$");
+        if (classOutputDir.exists()) {
+          for (final File file : classOutputDir.listFiles()) {
+            if (matcher.matcher(file.getName()).matches()) {
+              file.delete();
+            }
+          }
+        }
+        else {
+          classOutputDir.mkdirs();
+        }
+      }
+
+      for (final Map.Entry<String, byte[]> entry : classDefinitions.entrySet()) {
+        final String binaryName = entry.getKey();
+        final File classFile = new File(getClassOutputDir(outputPath, getPackageFromFQCN(binaryName)),
+            getNameFromFQCN(binaryName) + ".class");
+
+        final FileOutputStream outputStream = new FileOutputStream(classFile);
+        try {
+          outputStream.write(entry.getValue());
+        }
+        finally {
+          outputStream.close();
+        }
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException("failed to write class definitions to: " + outputPath, e);
+    }
+  }
+
+  private static File getClassOutputDir(final String outputPath, final String packageName) {
+    return new File(outputPath
+        + File.separatorChar + RebindUtils.packageNameToDirName(packageName)
+        + File.separatorChar).getAbsoluteFile();
+  }
+
+  /**
+   * Returns the compiler session shared by all in-memory compiles in this JVM. The session caches the resolved
+   * classpath and keeps the classpath jars open and indexed between compiles.
+   */
+  public static CompilerSession getCompilerSession() {
+    return CompilerSession.getSession(getInMemoryCompiler(), getClassPath());
+  }
+
+  /**
+   * Discards the cached classpath, compiler adapter and compiler session. Called whenever the classpath fingerprint
+   * changes, as the session caches the classes it has read from the classpath.
+   */
+  public static synchronized void resetCompilerSession() {
+    cachedClassPath = null;
+    cachedAdapter = null;
+    CompilerSession.resetSession();
+  }
+
+  private static JavaCompiler getInMemoryCompiler() {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null || !useNativeJavac) {
+      return new EclipseCompiler();
+    }
+    return compiler;
+  }
+
+  private static ClassLoader getParentClassLoader() {
+    return "system".equals(classLoadingMode) ?
+        ClassLoader.getSystemClassLoader() :
+        Thread.currentThread().getContextClassLoader();
+  }
+
+  private static synchronized String getClassPath() {
+    if (cachedClassPath == null) {
+      final long tm = System.currentTimeMillis();
+      cachedClassPath = buildClassPath(null);
+      log.debug("resolved compiler classpath in " + (System.currentTimeMillis() - tm) + "ms");
+    }
+    return cachedClassPath;
+  }
+
+  private static synchronized CompilerAdapter getCompilerAdapter() {
+    if (cachedAdapter == null) {
+      final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      if (compiler == null || !useNativeJavac) {
+        cachedAdapter = new JDTCompiler();
+      }
+      else {
+        cachedAdapter = new JDKCompiler(compiler);
+      }
+    }
+    return cachedAdapter;
+  }
+
+  private static String buildClassPath(final String outputPath) {
+    final StringBuilder sb = new StringBuilder(4096);
+    final List<URL> configUrls = MetaDataScanner.getConfigUrls();
+    final List<File> classpathElements = new ArrayList<File>(configUrls.size());
+    if (outputPath != null) {
+      classpathElements.add(new File(outputPath));
+    }
+
+    log.debug(">>> Searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
+    for (final URL url : configUrls) {
+      final File file = getFileIfExists(url.getFile());
+      if (file != null) {
+        classpathElements.add(file);
+      }
+    }
+    log.debug("<<< Done searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
+
+    for (final File file : classpathElements) {
+      sb.append(file.getAbsolutePath()).append(File.pathSeparator);
+    }
+
+    sb.append(System.getProperty("java.class.path"));
+    sb.append(findAllJarsByManifest());
+
+    return sb.toString();
+  }
+
   @SuppressWarnings({"ResultOfMethodCallIgnored", "ConstantConditions"})
   public static Class loadClassDefinition(final String path,
                                           final String packageName,
@@ -327,10 +602,17 @@ public class CompileUtil {
 
   private static class BootstrapClassloader extends ClassLoader {
     private String searchPath;
+    private final Map<String, byte[]> classDefinitions;
 
     private BootstrapClassloader(final String searchPath, final ClassLoader classLoader) {
       super(classLoader);
       this.searchPath = searchPath;
+      this.classDefinitions = Collections.emptyMap();
+    }
+
+    private BootstrapClassloader(final Map<String, byte[]> classDefinitions, final ClassLoader classLoader) {
+      super(classLoader);
+      this.classDefinitions = new HashMap<String, byte[]>(classDefinitions);
     }
 
     public Class<?> defineClassX(final String className, final byte[] b, final int off, final int len) {
@@ -340,6 +622,15 @@ public class CompileUtil {
     @SuppressWarnings("ResultOfMethodCallIgnored")
     @Override
     protected Class<?> findClass(final String name) throws ClassNotFoundException {
+      final byte[] definition = classDefinitions.get(name);
+      if (definition != null) {
+        return defineClassX(name, definition, 0, definition.length);
+      }
+
+      if (searchPath == null) {
+        throw new ClassNotFoundException(name);
+      }
+
       try {
         return super.findClass(name);
       }
@@ -0,0 +1,463 @@
+package org.jboss.vergere.util;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.eclipse.jdt.internal.compiler.tool.EclipseCompiler;
+import org.slf4j.Logger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A long-lived, in-memory compiler session. The session resolves the compilation classpath once, and keeps a single
+ * file manager open for the lifetime of the session, so the jars on the classpath are opened and indexed only once
+ * per JVM, no matter how many times generated classes are compiled. The packages listed by the compiler, and the
+ * bytes of the classpath classes it reads, are cached by the session too, so a binary type is located and read from
+ * its jar only once.
+ * <p/>
+ * A session belongs to one compiler and one classpath. Asking for a session with a different compiler or classpath
+ * replaces the current one.
+ * <p/>
+ * All output produced by the compiler is captured in memory. Nothing is written to the disk.
+ *
+ */
+public class CompilerSession {
+  private static final Logger log = getLogger(CompilerSession.class);
+
+  private static final Object sessionLock = new Object();
+  private static volatile CompilerSession session;
+  private static final List<CompilerSession> workerSessions = new ArrayList<CompilerSession>();
+
+  private final JavaCompiler compiler;
+  private final StandardJavaFileManager fileManager;
+  private final String classPath;
+  private final String key;
+  private final List<String> options;
+
+  private final Map<String, List<JavaFileObject>> listings = new HashMap<String, List<JavaFileObject>>();
+  private final Map<JavaFileObject, String> binaryNames = new HashMap<JavaFileObject, String>();
+
+  private CompilerSession(final JavaCompiler compiler, final String classPath) {
+    this.compiler = compiler;
+    this.classPath = classPath;
+    this.key = keyOf(compiler, classPath);
+    this.fileManager = compiler.getStandardFileManager(null, null, Charset.forName("UTF-8"));
+
+    final List<File> classPathElements = new ArrayList<File>();
+    for (final String element : classPath.split(File.pathSeparator)) {
+      if (element.length() == 0) continue;
+
+      final File file = new File(element);
+      if (file.exists()) {
+        classPathElements.add(file);
+      }
+    }
+
+    try {
+      fileManager.setLocation(StandardLocation.CLASS_PATH, classPathElements);
+    }
+    catch (IOException e) {
+      throw new RuntimeException("failed to configure compiler classpath", e);
+    }
+
+    this.options = new ArrayList<String>();
+    options.add("-classpath");
+    options.add(classPath);
+    if (compiler instanceof EclipseCompiler) {
+      options.add("-source");
+      options.add("1.6");
+    }
+  }
+
+  private static String keyOf(final JavaCompiler compiler, final String classPath) {
+    // compilers are compared by class, as a new instance is created for every request.
+    return compiler.getClass().getName() + File.pathSeparator + classPath;
+  }
+
+  /**
+   * Returns the compiler session for the specified compiler and classpath, creating it on first use. If the current
+   * session was created for a different compiler or classpath, it is closed and replaced.
+   *
+   * @param compiler
+   *     the compiler to use if a new session must be created.
+   * @param classPath
+   *     the classpath to use if a new session must be created.
+   *
+   * @return the shared compiler session.
+   */
+  public static CompilerSession getSession(final JavaCompiler compiler, final String classPath) {
+    final String key = keyOf(compiler, classPath);
+    final CompilerSession current = session;
+    if (current != null && current.key.equals(key)) {
+      return current;
+    }
+
+    synchronized (sessionLock) {
+      if (session != null && !session.key.equals(key)) {
+        log.debug("compiler or classpath changed: replacing compiler session");
+        closeSession();
+      }
+      if (session == null) {
+        final long tm = System.currentTimeMillis();
+        session = new CompilerSession(compiler, classPath);
+        log.debug("created compiler session in " + (System.currentTimeMillis() - tm) + "ms");
+      }
+      return session;
+    }
+  }
+
+  /**
+   * Returns the specified number of sessions for the specified compiler and classpath, the shared session first. Every
+   * session has a file manager and caches of its own, so the sessions can compile concurrently. The sessions beyond
+   * the shared one are kept for later parallel compiles, and are replaced together with it.
+   *
+   * @param compiler
+   *     the compiler to use if new sessions must be created.
+   * @param classPath
+   *     the classpath to use if new sessions must be created.
+   * @param count
+   *     the number of sessions.
+   *
+   * @return the sessions.
+   */
+  public static List<CompilerSession> getSessions(final JavaCompiler compiler,
+                                                  final String classPath,
+                                                  final int count) {
+    final CompilerSession shared = getSession(compiler, classPath);
+
+    synchronized (sessionLock) {
+      final String key = keyOf(compiler, classPath);
+      if (!workerSessions.isEmpty() && !workerSessions.get(0).key.equals(key)) {
+        closeWorkerSessions();
+      }
+      while (workerSessions.size() < count - 1) {
+        workerSessions.add(new CompilerSession(compiler, classPath));
+      }
+
+      final List<CompilerSession> sessions = new ArrayList<CompilerSession>(count);
+      sessions.add(shared);
+      sessions.addAll(workerSessions.subList(0, count - 1));
+      return sessions;
+    }
+  }
+
+  /**
+   * Closes the current sessions, if any. The next compile will resolve the classpath and index it again.
+   */
+  public static void resetSession() {
+    synchronized (sessionLock) {
+      closeSession();
+    }
+  }
+
+  private static void closeSession() {
+    if (session != null) {
+      session.close();
+      session = null;
+    }
+    closeWorkerSessions();
+  }
+
+  private static void closeWorkerSessions() {
+    for (final CompilerSession workerSession : workerSessions) {
+      workerSession.close();
+    }
+    workerSessions.clear();
+  }
+
+  private synchronized void close() {
+    try {
+      fileManager.close();
+    }
+    catch (IOException e) {
+      log.warn("failed to close compiler file manager", e);
+    }
+  }
+
+  /**
+   * Compiles the specified sources in a single compiler invocation.
+   *
+   * @param sources
+   *     a map of fully qualified class names to Java sources.
+   *
+   * @return a map of binary class names to class definitions, including all inner classes. Returns null if the
+   *         compilation failed.
+   */
+  public synchronized Map<String, byte[]> compile(final Map<String, String> sources) {
+    final List<JavaFileObject> compilationUnits = new ArrayList<JavaFileObject>(sources.size());
+    for (final Map.Entry<String, String> entry : sources.entrySet()) {
+      compilationUnits.add(new MemorySourceFile(entry.getKey(), entry.getValue()));
+    }
+
+    final MemoryFileManager memoryFileManager = new MemoryFileManager(this);
+    final StringWriter errorWriter = new StringWriter();
+
+    final Boolean success = compiler.getTask(errorWriter, memoryFileManager, null, options, null, compilationUnits)
+        .call();
+
+    if (success == null || !success) {
+      System.out.println("*** FAILED TO COMPILE CLASS ***");
+      System.out.println("*** Classpath Used: " + classPath);
+      System.out.println(errorWriter.toString());
+      return null;
+    }
+
+    return memoryFileManager.getClassDefinitions();
+  }
+
+  public String getClassPath() {
+    return classPath;
+  }
+
+  /**
+   * Lists the files of a package. The class files of a package on the classpath are cached for the lifetime of the
+   * session. Sources and the other locations are not cached, as they may change between compiles.
+   */
+  private List<JavaFileObject> list(final JavaFileManager.Location location,
+                                    final String packageName,
+                                    final Set<JavaFileObject.Kind> kinds,
+                                    final boolean recurse) throws IOException {
+    if (!isCacheable(location) || !kinds.contains(JavaFileObject.Kind.CLASS)) {
+      return listUncached(location, packageName, kinds, recurse);
+    }
+
+    // javac asks for the sources on the classpath together with the classes, so only the classes are cached.
+    final List<JavaFileObject> listing = new ArrayList<JavaFileObject>(listClasses(location, packageName, recurse));
+    if (kinds.size() > 1) {
+      final Set<JavaFileObject.Kind> otherKinds = EnumSet.copyOf(kinds);
+      otherKinds.remove(JavaFileObject.Kind.CLASS);
+      listing.addAll(listUncached(location, packageName, otherKinds, recurse));
+    }
+    return listing;
+  }
+
+  private List<JavaFileObject> listClasses(final JavaFileManager.Location location,
+                                           final String packageName,
+                                           final boolean recurse) throws IOException {
+    final String listingKey = location.getName() + ":" + packageName + ":" + recurse;
+    List<JavaFileObject> listing = listings.get(listingKey);
+    if (listing == null) {
+      listing = new ArrayList<JavaFileObject>();
+      for (final JavaFileObject file
+          : fileManager.list(location, packageName, EnumSet.of(JavaFileObject.Kind.CLASS), recurse)) {
+        final CachedClassFile cached = new CachedClassFile(file);
+        binaryNames.put(cached, fileManager.inferBinaryName(location, file));
+        listing.add(cached);
+      }
+      listings.put(listingKey, listing = Collections.unmodifiableList(listing));
+    }
+    return listing;
+  }
+
+  private List<JavaFileObject> listUncached(final JavaFileManager.Location location,
+                                            final String packageName,
+                                            final Set<JavaFileObject.Kind> kinds,
+                                            final boolean recurse) throws IOException {
+    final List<JavaFileObject> listing = new ArrayList<JavaFileObject>();
+    for (final JavaFileObject file : fileManager.list(location, packageName, kinds, recurse)) {
+      listing.add(file);
+    }
+    return listing;
+  }
+
+  private static boolean isCacheable(final JavaFileManager.Location location) {
+    return location == StandardLocation.CLASS_PATH || location == StandardLocation.PLATFORM_CLASS_PATH;
+  }
+
+  private static class MemorySourceFile extends SimpleJavaFileObject {
+    private final String source;
+
+    private MemorySourceFile(final String fullyQualifiedName, final String source) {
+      // ECJ turns the URI of every compilation unit into a file name, so a file URI is used. The source is never read
+      // from it.
+      super(URI.create("file:///" + fullyQualifiedName.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+      this.source = source;
+    }
+
+    @Override
+    public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+      return source;
+    }
+  }
+
+  /**
+   * A class file on the classpath whose bytes are read once, and then served from memory to every later compile.
+   */
+  private static class CachedClassFile extends ForwardingJavaFileObject<JavaFileObject> {
+    private byte[] classDefinition;
+
+    private CachedClassFile(final JavaFileObject fileObject) {
+      super(fileObject);
+    }
+
+    private JavaFileObject getDelegate() {
+      return fileObject;
+    }
+
+    @Override
+    public synchronized InputStream openInputStream() throws IOException {
+      if (classDefinition == null) {
+        final InputStream inputStream = fileObject.openInputStream();
+        try {
+          final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+          final byte[] buf = new byte[4096];
+          int read;
+          while ((read = inputStream.read(buf)) != -1) {
+            out.write(buf, 0, read);
+          }
+          classDefinition = out.toByteArray();
+        }
+        finally {
+          inputStream.close();
+        }
+      }
+      return new ByteArrayInputStream(classDefinition);
+    }
+  }
+
+  private static class MemoryClassFile extends SimpleJavaFileObject {
+    private final ByteArrayOutputStream classDefinition = new ByteArrayOutputStream(4096);
+
+    private MemoryClassFile(final String className) {
+      super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+      classDefinition.reset();
+      return classDefinition;
+    }
+
+    public byte[] getClassDefinition() {
+      return classDefinition.toByteArray();
+    }
+  }
+
+  /**
+   * A file manager which captures all class output in memory rather than writing it to the disk, and answers
+   * classpath listings from the session's cache. Everything else is delegated to the session's shared file manager,
+   * which is deliberately never closed by a compile.
+   * <p/>
+   * It is a standard file manager, as ECJ only takes the classpath from the file manager if it is one, and otherwise
+   * compiles against the classpath of the JVM.
+   */
+  private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+      implements StandardJavaFileManager {
+    private final CompilerSession session;
+    private final Map<String, MemoryClassFile> classFiles = new LinkedHashMap<String, MemoryClassFile>();
+
+    private MemoryFileManager(final CompilerSession session) {
+      super(session.fileManager);
+      this.session = session;
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(final Location location,
+                                         final String packageName,
+                                         final Set<JavaFileObject.Kind> kinds,
+                                         final boolean recurse) throws IOException {
+      return session.list(location, packageName, kinds, recurse);
+    }
+
+    @Override
+    public String inferBinaryName(final Location location, final JavaFileObject file) {
+      if (file instanceof CachedClassFile) {
+        final String binaryName = session.binaryNames.get(file);
+        if (binaryName != null) {
+          return binaryName;
+        }
+        return super.inferBinaryName(location, ((CachedClassFile) file).getDelegate());
+      }
+      return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(final FileObject a, final FileObject b) {
+      return super.isSameFile(unwrap(a), unwrap(b));
+    }
+
+    private static FileObject unwrap(final FileObject file) {
+      return file instanceof CachedClassFile ? ((CachedClassFile) file).getDelegate() : file;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(final Location location,
+                                               final String className,
+                                               final JavaFileObject.Kind kind,
+                                               final FileObject sibling) throws IOException {
+      if (kind == JavaFileObject.Kind.CLASS) {
+        final MemoryClassFile classFile = new MemoryClassFile(className);
+        classFiles.put(className.replace('/', '.'), classFile);
+        return classFile;
+      }
+      return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjectsFromFiles(final Iterable<? extends File> files) {
+      return fileManager.getJavaFileObjectsFromFiles(files);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjects(final File... files) {
+      return fileManager.getJavaFileObjects(files);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjectsFromStrings(final Iterable<String> names) {
+      return fileManager.getJavaFileObjectsFromStrings(names);
+    }
+
+    @Override
+    public Iterable<? extends JavaFileObject> getJavaFileObjects(final String... names) {
+      return fileManager.getJavaFileObjects(names);
+    }
+
+    @Override
+    public void setLocation(final Location location, final Iterable<? extends File> path) throws IOException {
+      fileManager.setLocation(location, path);
+    }
+
+    @Override
+    public Iterable<? extends File> getLocation(final Location location) {
+      return fileManager.getLocation(location);
+    }
+
+    @Override
+    public void close() {
+      // the underlying file manager is owned by the session.
+    }
+
+    public Map<String, byte[]> getClassDefinitions() {
+      final Map<String, byte[]> definitions = new LinkedHashMap<String, byte[]>();
+      for (final Map.Entry<String, MemoryClassFile> entry : classFiles.entrySet()) {
+        definitions.put(entry.getKey(), entry.getValue().getClassDefinition());
+      }
+      return definitions;
+    }
+  }
+}
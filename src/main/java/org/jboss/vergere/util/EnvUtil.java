@@ -1,22 +1,33 @@
 package org.jboss.vergere.util;
 
-import org.jboss.errai.codegen.meta.MetaClass;
-import org.jboss.errai.codegen.meta.MetaClassFactory;
-import org.jboss.errai.codegen.util.QuickDeps;
+import org.jboss.vergere.client.api.IOCBootstrapTask;
+import org.jboss.vergere.client.api.IOCProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Dependent;
+import javax.enterprise.inject.Stereotype;
+import javax.inject.Singleton;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.annotation.Annotation;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 /**
  * @author Mike Brock
@@ -26,6 +37,13 @@ public class EnvUtil {
 
   private static final Logger log = LoggerFactory.getLogger("Env");
 
+  /**
+   * The cache of the direct dependencies of each class, in the application cache directory.
+   */
+  private static final String REACHABILITY_CACHE_FILE = "reachability.cache";
+
+  public static final String REACHABILITY_ROOTS_PROPERTY = "vergere.reachability.roots";
+
 
   public static ReachableTypes getAllReachableClasses() {
 
@@ -43,48 +61,60 @@ public class EnvUtil {
     long time = System.currentTimeMillis();
 
 
-    final Set<String> allDeps = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(100));
-    final Collection<MetaClass> allCachedClasses = MetaClassFactory.getAllCachedClasses();
+    final Collection<String> roots = getReachabilityRoots();
+    final ScanScope scope = ScanScope.load();
     final ClassLoader classLoader = EnvUtil.class.getClassLoader();
+    final File cacheFile = VergereUtils.getCacheFile(REACHABILITY_CACHE_FILE);
+    final ReachabilityCache cache = ReachabilityCache.read(cacheFile);
+
+    final ReachabilityGraph graph = new ReachabilityGraph();
+    final Set<String> analyzedClassFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 
     try {
-      for (final MetaClass mc : allCachedClasses) {
-        final URL resource = classLoader.getResource(mc.getFullyQualifiedName().replaceAll("\\.", "/") + ".java");
+      // explore the graph breadth-first, analyzing each level of types in parallel. the class files are read on the
+      // worker threads as well, so the reads overlap with each other and with parsing.
+      final Set<String> visited = new HashSet<String>(roots);
+      List<String> level = new ArrayList<String>(visited);
+
+      while (!level.isEmpty()) {
+        final List<Future<Collection<String>>> futures = new ArrayList<Future<Collection<String>>>(level.size());
+        for (final String className : level) {
+          futures.add(executor.submit(new DependencyTask(className, classLoader, scope, cache, analyzedClassFiles)));
+        }
 
-        if (resource != null) {
-          InputStream stream = null;
-          try {
-            stream = new BufferedInputStream(resource.openStream());
-            final byte[] readBuffer = new byte[stream.available()];
-            stream.read(readBuffer);
+        final List<String> nextLevel = new ArrayList<String>();
+        for (int i = 0; i < level.size(); i++) {
+          final Collection<String> dependencies = futures.get(i).get();
+          graph.addEdges(level.get(i), dependencies);
 
-            executor.execute(new ReachabilityRunnable(readBuffer, allDeps));
-          }
-          catch (IOException e) {
-            log.warn("could not open resource: " + resource.getFile());
-          }
-          finally {
-            if (stream != null) {
-              stream.close();
+          for (final String dependency : dependencies) {
+            // the platform classes cannot refer to application classes, so there is no need to look inside them, and
+            // classes outside the scan scope cannot be beans. both are reachable, but are not expanded any further.
+            if (!dependency.startsWith("java.") && scope.isClassInScope(dependency) && visited.add(dependency)) {
+              nextLevel.add(dependency);
             }
           }
         }
+        level = nextLevel;
       }
-    }
-    catch (Throwable e) {
-      e.printStackTrace();
-    }
 
-    try {
-      executor.shutdown();
-      executor.awaitTermination(60, TimeUnit.MINUTES);
+      cache.write(cacheFile);
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException("reachability analysis failed", e.getCause());
     }
     catch (InterruptedException e) {
-      e.printStackTrace();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted during reachability analysis", e);
+    }
+    finally {
+      executor.shutdown();
     }
 
+    final Set<String> allDeps = graph.getReachableFrom(roots);
+
     if (log.isDebugEnabled()) {
       log.debug("*** REACHABILITY ANALYSIS ***");
       for (final String s : allDeps) {
@@ -99,18 +129,125 @@ public class EnvUtil {
     return new ReachableTypes(allDeps, true);
   }
 
-  private static class ReachabilityRunnable implements Runnable {
-    private final byte[] sourceBuffer;
-    private final Set<String> results;
+  /**
+   * The annotations of the scanned types the reachability analysis starts from, unless roots are configured: the
+   * beans of every scope, the providers, and the bootstrap tasks.
+   */
+  private static final List<Class<? extends Annotation>> ROOT_ANNOTATIONS = Arrays.asList(
+      Singleton.class, ApplicationScoped.class, Dependent.class, IOCProvider.class, IOCBootstrapTask.class);
+
+  /**
+   * Returns the types the reachability analysis starts from: the classes named by the
+   * <tt>vergere.reachability.roots</tt> property, separated by whitespace or commas, or the scanned beans and entry
+   * points if the property is not set. The scanned roots are the types annotated with one of the
+   * {@link #ROOT_ANNOTATIONS} or with a stereotype.
+   */
+  private static Collection<String> getReachabilityRoots() {
+    final Set<String> roots = new LinkedHashSet<String>();
+
+    final String configuredRoots = System.getProperty(REACHABILITY_ROOTS_PROPERTY);
+    if (configuredRoots != null) {
+      for (final String root : configuredRoots.trim().split("[\\s,]+")) {
+        if (root.length() != 0) {
+          roots.add(root);
+        }
+      }
+    }
+
+    if (roots.isEmpty()) {
+      final MetaDataScanner scanner = ClassScanner.getScanner();
+      for (final Class<? extends Annotation> annotation : ROOT_ANNOTATIONS) {
+        roots.addAll(scanner.getTypeNamesAnnotatedWith(annotation));
+      }
+      for (final String stereotype : scanner.getTypeNamesAnnotatedWith(Stereotype.class)) {
+        roots.addAll(scanner.getStore().getTypesAnnotatedWith(stereotype));
+      }
+    }
+    return roots;
+  }
 
-    private ReachabilityRunnable(final byte[] sourceBuffer, final Set<String> results) {
-      this.sourceBuffer = sourceBuffer;
-      this.results = results;
+  /**
+   * Finds the direct dependencies of a class, from the reachability cache or from its class file.
+   */
+  private static class DependencyTask implements Callable<Collection<String>> {
+    private final String className;
+    private final ClassLoader classLoader;
+    private final ScanScope scope;
+    private final ReachabilityCache cache;
+    private final Set<String> analyzedClassFiles;
+
+    private DependencyTask(final String className,
+                           final ClassLoader classLoader,
+                           final ScanScope scope,
+                           final ReachabilityCache cache,
+                           final Set<String> analyzedClassFiles) {
+      this.className = className;
+      this.classLoader = classLoader;
+      this.scope = scope;
+      this.cache = cache;
+      this.analyzedClassFiles = analyzedClassFiles;
     }
 
     @Override
-    public void run() {
-      results.addAll(QuickDeps.getQuickTypeDependencyList(new String(sourceBuffer), null));
+    public Collection<String> call() {
+      final URL resource = findClassFile(className, classLoader);
+
+      // a nested class is known by its binary and its source name, but only needs to be analyzed once.
+      if (resource == null || !analyzedClassFiles.add(resource.toExternalForm())) {
+        return Collections.emptySet();
+      }
+
+      // the classes of excluded archives are not scanned, so they cannot be beans either.
+      final File archive = "jar".equals(resource.getProtocol()) ? ScanPartitions.toFile(resource) : null;
+      if (archive != null && scope.isArchiveExcluded(archive.getName())) {
+        return Collections.emptySet();
+      }
+
+      final String fingerprint = ReachabilityCache.fingerprintOf(resource);
+      final Collection<String> cached = cache.get(className, fingerprint);
+      if (cached != null) {
+        return cached;
+      }
+
+      try {
+        final InputStream stream = resource.openStream();
+        try {
+          final Set<String> dependencies
+              = ClassFileDependencies.getReferencedTypes(ClassFileDependencies.readFully(stream));
+          cache.put(className, fingerprint, dependencies);
+          return dependencies;
+        }
+        finally {
+          stream.close();
+        }
+      }
+      catch (IOException e) {
+        log.warn("could not read class file: " + resource, e);
+      }
+      catch (RuntimeException e) {
+        log.warn("could not analyze class file: " + resource, e);
+      }
+      return Collections.emptySet();
+    }
+  }
+
+  /**
+   * Finds the class file of the named class. For nested classes, the name may be in source form, so the dots are
+   * turned into '$' separators from the right until a class file is found.
+   */
+  private static URL findClassFile(final String className, final ClassLoader classLoader) {
+    String name = className;
+    while (true) {
+      final URL resource = classLoader.getResource(name.replace('.', '/') + ".class");
+      if (resource != null) {
+        return resource;
+      }
+
+      final int lastDot = name.lastIndexOf('.');
+      if (lastDot == -1) {
+        return null;
+      }
+      name = name.substring(0, lastDot) + '$' + name.substring(lastDot + 1);
     }
   }
 }
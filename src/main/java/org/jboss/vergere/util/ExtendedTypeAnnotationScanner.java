@@ -1,24 +1,104 @@
 package org.jboss.vergere.util;
 
+import com.google.common.io.ByteStreams;
+import javassist.bytecode.AccessFlag;
 import javassist.bytecode.ClassFile;
+import javassist.bytecode.MethodInfo;
 import org.jboss.errai.reflections.adapters.MetadataAdapter;
 import org.jboss.errai.reflections.scanners.TypeAnnotationsScanner;
+import org.jboss.errai.reflections.vfs.Vfs;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.annotation.Inherited;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 
 /**
 * @author Mike Brock
 */
 public class ExtendedTypeAnnotationScanner extends TypeAnnotationsScanner {
+  private static final OutputStream NULL_OUTPUT = new OutputStream() {
+    @Override
+    public void write(final int b) {
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+    }
+  };
+
+  private final ScanRecord scanRecord;
+
+  public ExtendedTypeAnnotationScanner() {
+    this(MetaDataScanner.scanRecord);
+  }
+
+  /**
+   * @param scanRecord
+   *     the record to add the digests and supertypes of scanned types to. Parallel scans give each worker its own.
+   */
+  ExtendedTypeAnnotationScanner(final ScanRecord scanRecord) {
+    this.scanRecord = scanRecord;
+  }
+
+  /**
+   * Reads the class file into memory before parsing it, so its digest can be taken over the bytes as they were read.
+   */
+  @Override
+  public void scan(final Vfs.File file) {
+    final byte[] bytes;
+    final Object cls;
+    try {
+      final InputStream inputStream = file.openInputStream();
+      try {
+        bytes = ByteStreams.toByteArray(inputStream);
+      }
+      finally {
+        inputStream.close();
+      }
+      cls = getMetadataAdapter().createClassObject(new ByteArrayInputStream(bytes));
+    }
+    catch (IOException e) {
+      throw new RuntimeException("could not read class file: " + file.getRelativePath(), e);
+    }
+    scan(cls, bytes);
+  }
+
   @Override
   public void scan(final Object cls) {
+    scan(cls, null);
+  }
+
+  /**
+   * @param classBytes
+   *     the bytes the class was read from, or null if they are not available, in which case the digest is taken over
+   *     the class file written back out.
+   */
+  private void scan(final Object cls, final byte[] classBytes) {
     @SuppressWarnings("unchecked") final
     MetadataAdapter adapter = getMetadataAdapter();
 
     final String className = adapter.getClassName(cls);
+    String digest = null;
+
+    final String superclassName = adapter.getSuperclassName(cls);
+    if (superclassName != null && !superclassName.equals(Object.class.getName())) {
+      scanRecord.addSubType(superclassName, className);
+    }
+    // noinspection unchecked
+    for (final String interfaceName : (List<String>) adapter.getInterfacesNames(cls)) {
+      scanRecord.addSubType(interfaceName, className);
+    }
+
+    if (cls instanceof ClassFile) {
+      scanRecord.addTypeFlags(className, flagsOf((ClassFile) cls));
+    }
 
     // noinspection unchecked
     for (final String annotationType : (List<String>) adapter.getClassAnnotationNames(cls)) {
@@ -28,14 +108,60 @@ public class ExtendedTypeAnnotationScanner extends TypeAnnotationsScanner {
         getStore().put(annotationType, className);
 
         if (cls instanceof ClassFile) {
-          Set<MetaDataScanner.SortableClassFileWrapper> classes = MetaDataScanner.annotationsToClassFile.get(annotationType);
-          if (classes == null) {
-            MetaDataScanner.annotationsToClassFile.put(annotationType, classes =
-                new TreeSet<MetaDataScanner.SortableClassFileWrapper>());
+          if (digest == null) {
+            digest = classBytes != null ? digestOf(classBytes) : digestOf((ClassFile) cls);
           }
-          classes.add(new MetaDataScanner.SortableClassFileWrapper(className, (ClassFile) cls));
+          scanRecord.addAnnotatedClass(annotationType, className, digest);
         }
       }
     }
   }
+
+  private static int flagsOf(final ClassFile classFile) {
+    final int accessFlags = classFile.getAccessFlags();
+
+    int flags = 0;
+    if ((accessFlags & AccessFlag.PUBLIC) != 0) {
+      flags |= ScanRecord.FLAG_PUBLIC;
+    }
+    if ((accessFlags & (AccessFlag.INTERFACE | AccessFlag.ANNOTATION | AccessFlag.ENUM | AccessFlag.ABSTRACT
+        | AccessFlag.SYNTHETIC)) == 0) {
+      flags |= ScanRecord.FLAG_CONCRETE;
+    }
+
+    // noinspection unchecked
+    for (final MethodInfo method : (List<MethodInfo>) classFile.getMethods()) {
+      if (method.isConstructor() && "()V".equals(method.getDescriptor())
+          && (method.getAccessFlags() & AccessFlag.PUBLIC) != 0) {
+        flags |= ScanRecord.FLAG_DEFAULT_CONSTRUCTOR;
+        break;
+      }
+    }
+    return flags;
+  }
+
+  private static String digestOf(final byte[] classBytes) {
+    try {
+      return VergereUtils.hashToHexString(MessageDigest.getInstance("SHA-256").digest(classBytes));
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("could not generate hash for class", e);
+    }
+  }
+
+  /**
+   * Streams the bytecode of the class straight into a digest, so the parsed class file need not be kept.
+   */
+  private static String digestOf(final ClassFile classFile) {
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-256");
+      final DataOutputStream out = new DataOutputStream(new DigestOutputStream(NULL_OUTPUT, md));
+      classFile.write(out);
+      out.flush();
+      return VergereUtils.hashToHexString(md.digest());
+    }
+    catch (Exception e) {
+      throw new RuntimeException("could not generate hash for class: " + classFile.getName(), e);
+    }
+  }
 }
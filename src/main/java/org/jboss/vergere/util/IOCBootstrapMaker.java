@@ -17,35 +17,241 @@
 package org.jboss.vergere.util;
 
 
+import com.google.common.io.Files;
 import org.jboss.errai.common.metadata.RebindUtils;
 import org.jboss.vergere.bootstrapper.IOCBootstrapGenerator;
+import org.jboss.vergere.bootstrapper.PartitionClassCache;
 import org.jboss.vergere.bootstrapper.QualifierEqualityFactoryGenerator;
 import org.jboss.vergere.client.Bootstrapper;
 import org.jboss.vergere.client.QualifierEqualityFactory;
 import org.jboss.vergere.client.QualifierEqualityFactoryProvider;
 import org.jboss.vergere.client.QualifierUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
 
 /**
  * @author Mike Brock <cbrock@redhat.com>
  */
 public class IOCBootstrapMaker {
+  private static final Logger log = LoggerFactory.getLogger(IOCBootstrapMaker.class);
+
+  /**
+   * The resource written by {@link BootstrapPrecompiler} alongside the precompiled bootstrap classes.
+   */
+  public static final String PRECOMPILED_RESOURCE = "META-INF/vergere/precompiled.properties";
+
+  private static final String qualifierFactoryPackageName = QualifierEqualityFactory.class.getPackage().getName();
+  private static final String qualifierFactoryClassName = "QualifierEqualityFactoryImpl";
+  private static final String qualifierFactoryFQCN = qualifierFactoryPackageName + "." + qualifierFactoryClassName;
+
+  private static final String bootstrapperPackageName = Bootstrapper.class.getPackage().getName();
+  private static final String bootstrapperClassName = "BootstrapperImpl";
+  private static final String bootstrapperFQCN = bootstrapperPackageName + "." + bootstrapperClassName;
+
   public IOCBootstrapMaker() {
   }
 
-  public Class<? extends Bootstrapper> generate() {
-    final String qualifierFactoryPackageName = QualifierEqualityFactory.class.getPackage().getName();
-    final String qualifierFactoryClassName = "QualifierEqualityFactoryImpl";
+  /**
+   * Generates the sources of the bootstrap classes, without compiling them.
+   *
+   * @return a map of fully qualified class names to Java sources.
+   */
+  public Map<String, String> generateSources() {
+    return generateSources(new IOCBootstrapGenerator(), null);
+  }
+
+  private static Map<String, String> generateSources(final IOCBootstrapGenerator generator,
+                                                     final PartitionClassCache partitionClassCache) {
+    final long start = BootstrapReport.begin();
+    final Map<String, String> sources = new LinkedHashMap<String, String>();
+    sources.put(qualifierFactoryFQCN, new QualifierEqualityFactoryGenerator().generate());
+    sources.putAll(generator.generateSources(bootstrapperPackageName, bootstrapperClassName, partitionClassCache));
+    BootstrapReport.end(BootstrapReport.Phase.CodeGeneration, start);
+    return sources;
+  }
+
+  /**
+   * Returns the fully qualified name of the generated bootstrapper class.
+   */
+  public static String getBootstrapperClassName() {
+    return bootstrapperFQCN;
+  }
+
+  /**
+   * Returns the fully qualified name of the generated qualifier equality factory class.
+   */
+  public static String getQualifierEqualityFactoryClassName() {
+    return qualifierFactoryFQCN;
+  }
+
+  /**
+   * Loads the bootstrapper precompiled at build time by {@link BootstrapPrecompiler}, if there is one on the
+   * classpath. No scanning, code generation or compilation takes place.
+   *
+   * @return the precompiled bootstrapper class, or null if no precompiled bootstrapper was found, or the classes it
+   *         was precompiled into changed since.
+   */
+  @SuppressWarnings("unchecked")
+  public static Class<? extends Bootstrapper> loadPrecompiled() {
+    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    final URL resource = classLoader.getResource(PRECOMPILED_RESOURCE);
+    if (resource == null) {
+      return null;
+    }
+
+    try {
+      final Properties properties = new Properties();
+      final InputStream inputStream = resource.openStream();
+      try {
+        properties.load(inputStream);
+      }
+      finally {
+        inputStream.close();
+      }
+
+      final String classOutputDigest = properties.getProperty("classOutputDigest");
+      final File classOutputRoot = getClassOutputRoot(resource);
+      if (classOutputRoot == null) {
+        log.warn("cannot verify bootstrapper precompiled into: " + resource + ", using it as it is");
+      }
+      else if (classOutputDigest == null || !classOutputDigest.equals(digestClassOutput(classOutputRoot))) {
+        log.warn("the classes in " + classOutputRoot + " changed since the bootstrapper was precompiled into them;"
+            + " generating the bootstrapper at runtime instead");
+        return null;
+      }
+
+      log.info("using bootstrapper precompiled against classpath fingerprint: "
+          + properties.getProperty("fingerprint"));
+
+      final long start = BootstrapReport.begin();
+      initQualifierEqualityFactory(classLoader.loadClass(properties.getProperty("qualifierEqualityFactory")));
+      final Class<?> bootstrapperClass = classLoader.loadClass(properties.getProperty("bootstrapper"));
+      BootstrapReport.end(BootstrapReport.Phase.ClassLoading, start);
+
+      return (Class<? extends Bootstrapper>) bootstrapperClass;
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to load precompiled bootstrapper from: " + resource, e);
+    }
+  }
+
+  /**
+   * Returns the classpath root a resource was loaded from: a class directory or a jar file.
+   *
+   * @return the root, or null if the resource was not loaded from a directory or jar on the file system.
+   */
+  private static File getClassOutputRoot(final URL resource) throws Exception {
+    if ("file".equals(resource.getProtocol())) {
+      File root = new File(resource.toURI());
+      for (int i = PRECOMPILED_RESOURCE.split("/").length; i > 0 && root != null; i--) {
+        root = root.getParentFile();
+      }
+      return root;
+    }
+    else if ("jar".equals(resource.getProtocol())) {
+      final String path = resource.getPath();
+      final int separator = path.indexOf("!/");
+      if (separator != -1 && path.startsWith("file:")) {
+        return new File(new URL(path.substring(0, separator)).toURI());
+      }
+    }
+    return null;
+  }
 
-    final String bootstrapperPackageName = Bootstrapper.class.getPackage().getName();
-    final String bootstrapperClassName = "BootstrapperImpl";
+  /**
+   * Digests the names and CRC-32 checksums of the class files in a class directory or jar file, leaving out the
+   * bootstrap classes themselves. A jar records the checksum of every entry, so a packaged application is verified
+   * without reading any of its classes.
+   *
+   * @param root
+   *     the class directory or jar file.
+   *
+   * @return the digest, as a hex string.
+   */
+  public static String digestClassOutput(final File root) {
+    final SortedMap<String, Long> checksums = new TreeMap<String, Long>();
+    try {
+      if (root.isDirectory()) {
+        collectChecksums(root, "", checksums);
+      }
+      else {
+        final JarFile jarFile = new JarFile(root);
+        try {
+          final Enumeration<JarEntry> entries = jarFile.entries();
+          while (entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+            if (isApplicationClassFile(entry.getName())) {
+              checksums.put(entry.getName(), entry.getCrc());
+            }
+          }
+        }
+        finally {
+          jarFile.close();
+        }
+      }
 
-    final IOCBootstrapGenerator bootstrapGenerator = new IOCBootstrapGenerator();
+      final MessageDigest md = MessageDigest.getInstance("SHA-256");
+      for (final Map.Entry<String, Long> entry : checksums.entrySet()) {
+        md.update(entry.getKey().getBytes("UTF-8"));
+        md.update(Long.toHexString(entry.getValue()).getBytes("UTF-8"));
+      }
+      return VergereUtils.hashToHexString(md.digest());
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to digest class output: " + root, e);
+    }
+  }
 
-    final String qualifierFactoryClassString = new QualifierEqualityFactoryGenerator().generate();
+  private static void collectChecksums(final File directory, final String path, final Map<String, Long> checksums)
+      throws IOException {
+    final File[] files = directory.listFiles();
+    if (files == null) return;
 
+    for (final File file : files) {
+      final String name = path + file.getName();
+      if (file.isDirectory()) {
+        collectChecksums(file, name + "/", checksums);
+      }
+      else if (isApplicationClassFile(name)) {
+        final CRC32 crc = new CRC32();
+        crc.update(Files.toByteArray(file));
+        checksums.put(name, crc.getValue());
+      }
+    }
+  }
+
+  private static boolean isApplicationClassFile(final String path) {
+    if (!path.endsWith(".class")) return false;
+
+    final String className = path.substring(0, path.length() - ".class".length()).replace('/', '.');
+    return !className.startsWith(bootstrapperFQCN) && !className.startsWith(qualifierFactoryFQCN);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Class<? extends Bootstrapper> generate() {
     final File fileCacheDir = VergereUtils.getApplicationCacheDirectory();
     final File cacheFile = new File(fileCacheDir.getAbsolutePath() + "/" + bootstrapperClassName + ".java");
 
@@ -55,96 +261,281 @@ public class IOCBootstrapMaker {
 
       final File outputDirectory = new File(VergereUtils.getApplicationCacheDirectory(), "generated");
 
-      final File qualifierFactorySourceFile = new File(directory.getAbsolutePath(), qualifierFactoryClassName + ".java")
-          .getAbsoluteFile();
-      final File qualifierFactoryOutFile = new File(directory.getAbsolutePath(), qualifierFactoryClassName + ".class")
-          .getAbsoluteFile();
-
-      final File bootstrapperSourceFile = new File(directory.getAbsolutePath(), bootstrapperClassName + ".java")
-          .getAbsoluteFile();
-      final File bootstrapperOutFile = new File(directory.getAbsolutePath(), bootstrapperClassName + ".class")
-          .getAbsoluteFile();
+      final File unitsFile = new File(directory, bootstrapperClassName + ".units");
 
-      if (!VergereUtils.hasClasspathChanged() && qualifierFactoryOutFile.exists() && bootstrapperOutFile.exists()) {
-        final Class aClass = CompileUtil.loadClassDefinition(qualifierFactoryOutFile.getAbsolutePath(), qualifierFactoryPackageName, qualifierFactoryClassName);
+      if (!VergereUtils.isInMemoryCompile() && !VergereUtils.hasClasspathChanged() && unitsFile.exists()) {
+        final List<String> classNames = Arrays.asList(VergereUtils.readFileToString(unitsFile).trim().split("\n"));
+        final Map<String, byte[]> cached = readClassDefinitions(directory, classNames);
+        if (cached != null) {
+          final Map<String, Class> classes = CompileUtil.defineClasses(cached, classNames);
+          initQualifierEqualityFactory(classes.get(qualifierFactoryFQCN));
+          return classes.get(bootstrapperFQCN);
+        }
+      }
 
-        QualifierUtil.initFromFactoryProvider(new QualifierEqualityFactoryProvider() {
-          @Override
-          public QualifierEqualityFactory provide() {
-            try {
-              return (QualifierEqualityFactory) aClass.newInstance();
-            }
-            catch (Throwable e) {
-              throw new RuntimeException("failed to load qualifer equality factory", e);
+      // the partition classes of the previous run whose fingerprints are unchanged are neither generated nor
+      // compiled: their class files are read as the generator looks them up.
+      final Map<String, byte[]> classDefinitions = new LinkedHashMap<String, byte[]>();
+      final Map<String, String> typeDigests = new HashMap<String, String>();
+      final IOCBootstrapGenerator generator = new IOCBootstrapGenerator();
+      final Map<String, String> sources = generateSources(generator, VergereUtils.isInMemoryCompile()
+          ? null : new PartitionClassCache() {
+        @Override
+        public boolean isCached(final String className, final String fingerprint) {
+          try {
+            final Map<String, byte[]> reusable = readReusableClassDefinitions(directory, className, fingerprint,
+                typeDigests);
+            if (reusable == null) {
+              return false;
             }
+            classDefinitions.putAll(reusable);
+            return true;
+          }
+          catch (IOException e) {
+            log.warn("could not read class files of partition class: " + className, e);
+            return false;
           }
-        });
+        }
+      });
 
-        final Class aClass1 = CompileUtil.loadClassDefinition(bootstrapperOutFile.getAbsolutePath(), bootstrapperPackageName, bootstrapperClassName);
-        return aClass1;
+      final Map<String, String> partitionFingerprints = generator.getPartitionFingerprints();
+      final List<String> classNames = new ArrayList<String>(sources.keySet());
+      for (final String partitionClassName : partitionFingerprints.keySet()) {
+        if (!classNames.contains(partitionClassName)) {
+          classNames.add(partitionClassName);
+        }
       }
-      else {
-        if (qualifierFactorySourceFile.exists()) {
-          qualifierFactorySourceFile.delete();
-          qualifierFactoryOutFile.delete();
+
+      if (!VergereUtils.isInMemoryCompile()) {
+        RebindUtils.writeStringToFile(cacheFile, sources.get(bootstrapperFQCN));
+
+        directory.mkdirs();
+        for (final Map.Entry<String, String> entry : sources.entrySet()) {
+          final String className = entry.getKey().substring(entry.getKey().lastIndexOf('.') + 1);
+          RebindUtils.writeStringToFile(new File(directory, className + ".java").getAbsoluteFile(), entry.getValue());
         }
+      }
+
+      // the generated units do not reference each other. a partition class generated again has a new fingerprint,
+      // and is compiled. any other unit which regenerated to the same source as before, against the same versions
+      // of the classes it references, is reused from the class files of the previous run.
+      final Map<String, String> sourceDigests = new LinkedHashMap<String, String>();
+      final Map<String, String> toCompile = new LinkedHashMap<String, String>();
 
-        if (bootstrapperSourceFile.exists()) {
-          bootstrapperSourceFile.delete();
-          bootstrapperOutFile.delete();
+      for (final Map.Entry<String, String> entry : sources.entrySet()) {
+        final String fingerprint = partitionFingerprints.get(entry.getKey());
+        final String digest = fingerprint != null ? fingerprint : digestOf(entry.getValue());
+        sourceDigests.put(entry.getKey(), digest);
+
+        final Map<String, byte[]> reusable = VergereUtils.isInMemoryCompile() || fingerprint != null
+            ? null : readReusableClassDefinitions(directory, entry.getKey(), digest, typeDigests);
+        if (reusable != null) {
+          classDefinitions.putAll(reusable);
+        }
+        else {
+          toCompile.put(entry.getKey(), entry.getValue());
         }
+      }
 
-        final String bootstrapperClassString = bootstrapGenerator.generate(bootstrapperPackageName, bootstrapperClassName);
-        RebindUtils.writeStringToFile(cacheFile, bootstrapperClassString);
+      if (!toCompile.isEmpty()) {
+        final Map<String, byte[]> compiled = CompileUtil.compileIndependently(toCompile);
+        if (compiled == null) {
+          throw new RuntimeException("failed to compile bootstrapper");
+        }
+        classDefinitions.putAll(compiled);
 
-        directory.mkdirs();
+        if (!VergereUtils.isInMemoryCompile()) {
+          CompileUtil.writeClassDefinitions(compiled, toCompile.keySet(), outputDirectory.getAbsolutePath());
+          for (final String fqcn : toCompile.keySet()) {
+            final Set<String> referencedTypes = getReferencedTypes(compiled, fqcn);
+            final StringBuilder dependencies = new StringBuilder();
+            for (final String type : referencedTypes) {
+              dependencies.append(type).append('\n');
+            }
+            RebindUtils.writeStringToFile(dependenciesFileOf(directory, fqcn), dependencies.toString());
+            RebindUtils.writeStringToFile(digestFileOf(directory, fqcn),
+                sourceDigests.get(fqcn) + ":" + digestOfTypes(referencedTypes, typeDigests));
+          }
+        }
+      }
 
-        FileOutputStream outputStream = new FileOutputStream(qualifierFactorySourceFile);
+      if (!VergereUtils.isInMemoryCompile()) {
+        // the units generated for this classpath, which a later run with an unchanged classpath loads as they are.
+        final StringBuilder units = new StringBuilder();
+        for (final String fqcn : classNames) {
+          units.append(fqcn).append('\n');
+        }
+        RebindUtils.writeStringToFile(unitsFile, units.toString());
+      }
 
-        outputStream.write(qualifierFactoryClassString.getBytes("UTF-8"));
-        outputStream.flush();
-        outputStream.close();
+      log.info("compiled " + toCompile.size() + " of " + classNames.size() + " bootstrap classes, reused the rest");
 
-        outputStream = new FileOutputStream(bootstrapperSourceFile);
+      final Map<String, Class> loaded = CompileUtil.defineClasses(classDefinitions, classNames);
+      initQualifierEqualityFactory(loaded.get(qualifierFactoryFQCN));
+      return loaded.get(bootstrapperFQCN);
+    }
+    catch (RuntimeException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
 
-        outputStream.write(bootstrapperClassString.getBytes("UTF-8"));
-        outputStream.flush();
-        outputStream.close();
+  /**
+   * Reads the class files of the specified unit, if they were compiled from a source with the specified digest, or,
+   * for a partition class, from partitions with the specified fingerprint, and none of the classes the unit references
+   * has changed since.
+   *
+   * @return a map of binary class names to class definitions, or null if the unit must be compiled again.
+   */
+  private static Map<String, byte[]> readReusableClassDefinitions(final File directory,
+                                                                  final String fullyQualifiedName,
+                                                                  final String sourceDigest,
+                                                                  final Map<String, String> typeDigests)
+      throws IOException {
+    final File digestFile = digestFileOf(directory, fullyQualifiedName);
+    final File dependenciesFile = dependenciesFileOf(directory, fullyQualifiedName);
+    if (!digestFile.exists() || !dependenciesFile.exists()) {
+      return null;
+    }
 
-        final String factoryPath = qualifierFactorySourceFile.getParentFile().getAbsolutePath();
-        final Class qualifierEqualityImplClass
-            = CompileUtil.compileAndLoad(factoryPath, qualifierFactoryPackageName, qualifierFactoryClassName,
-            outputDirectory.getAbsolutePath());
+    final String digest = VergereUtils.readFileToString(digestFile);
+    if (!digest.startsWith(sourceDigest + ":")) {
+      return null;
+    }
 
-        QualifierUtil.initFromFactoryProvider(new QualifierEqualityFactoryProvider() {
-          @Override
-          public QualifierEqualityFactory provide() {
+    final Set<String> referencedTypes = new TreeSet<String>();
+    for (final String type : VergereUtils.readFileToString(dependenciesFile).split("\n")) {
+      if (type.length() != 0) {
+        referencedTypes.add(type);
+      }
+    }
+    if (!digest.equals(sourceDigest + ":" + digestOfTypes(referencedTypes, typeDigests))) {
+      return null;
+    }
+    return readClassDefinitions(directory, Collections.singletonList(fullyQualifiedName));
+  }
+
+  /**
+   * Returns the classes referenced by the class files compiled for the specified unit, other than the classes of the
+   * unit itself and of the JDK, sorted by name.
+   */
+  private static Set<String> getReferencedTypes(final Map<String, byte[]> compiled, final String fullyQualifiedName) {
+    final Set<String> referencedTypes = new TreeSet<String>();
+    for (final Map.Entry<String, byte[]> entry : compiled.entrySet()) {
+      if (!entry.getKey().equals(fullyQualifiedName) && !entry.getKey().startsWith(fullyQualifiedName + "$")) continue;
+
+      for (final String type : ClassFileDependencies.getReferencedTypes(entry.getValue())) {
+        if (type.startsWith("java.") || type.equals(fullyQualifiedName) || type.startsWith(fullyQualifiedName + "$")
+            || type.startsWith(fullyQualifiedName + ".")) continue;
+
+        referencedTypes.add(type);
+      }
+    }
+    return referencedTypes;
+  }
+
+  /**
+   * Digests the current class files of the specified classes, as found by the context classloader. A class which is
+   * not found contributes its name only, so it changes the digest once it appears.
+   *
+   * @param typeDigests
+   *     the digests of the single classes computed so far, which are shared between the units of one run.
+   */
+  private static String digestOfTypes(final Set<String> referencedTypes, final Map<String, String> typeDigests) {
+    final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-256");
+      for (final String type : referencedTypes) {
+        String typeDigest = typeDigests.get(type);
+        if (typeDigest == null) {
+          final URL resource = classLoader.getResource(type.replace('.', '/') + ".class");
+          if (resource == null) {
+            typeDigest = "none";
+          }
+          else {
+            final InputStream inputStream = resource.openStream();
             try {
-              return (QualifierEqualityFactory) qualifierEqualityImplClass.newInstance();
+              typeDigest = VergereUtils.hashToHexString(
+                  MessageDigest.getInstance("SHA-256").digest(ClassFileDependencies.readFully(inputStream)));
             }
-            catch (Throwable e) {
-              throw new RuntimeException("failed to load qualifer equality factory", e);
+            finally {
+              inputStream.close();
             }
           }
-        });
-
-        final String bootstrapperPath = bootstrapperSourceFile.getParentFile().getAbsolutePath();
-        return CompileUtil.compileAndLoad(bootstrapperPath, bootstrapperPackageName, bootstrapperClassName,
-            outputDirectory.getAbsolutePath());
+          typeDigests.put(type, typeDigest);
+        }
+        md.update(type.getBytes("UTF-8"));
+        md.update(typeDigest.getBytes("UTF-8"));
       }
+      return VergereUtils.hashToHexString(md.digest());
     }
     catch (Exception e) {
-      throw new RuntimeException(e);
+      throw new RuntimeException("failed to generate digest for referenced classes", e);
     }
   }
 
-  private static class BootstrapClassloader extends ClassLoader {
-    private BootstrapClassloader(final ClassLoader classLoader) {
-      super(classLoader);
+  /**
+   * Reads the class files of the specified top-level classes, and of all of their inner classes.
+   *
+   * @return a map of binary class names to class definitions, or null if any of the class files are missing.
+   */
+  private static Map<String, byte[]> readClassDefinitions(final File directory,
+                                                          final Collection<String> fullyQualifiedNames)
+      throws IOException {
+    final Map<String, byte[]> classDefinitions = new LinkedHashMap<String, byte[]>();
+    for (final String fqcn : fullyQualifiedNames) {
+      final String className = fqcn.substring(fqcn.lastIndexOf('.') + 1);
+      final File classFile = new File(directory, className + ".class");
+      if (!classFile.exists()) {
+        return null;
+      }
+      classDefinitions.put(fqcn, Files.toByteArray(classFile));
+
+      final File[] files = directory.listFiles();
+      if (files == null) continue;
+
+      for (final File file : files) {
+        final String name = file.getName();
+        if (name.startsWith(className + "$") && name.endsWith(".class")) {
+          classDefinitions.put(fqcn + name.substring(className.length(), name.length() - ".class".length()),
+              Files.toByteArray(file));
+        }
+      }
     }
+    return classDefinitions;
+  }
+
+  private static File digestFileOf(final File directory, final String fullyQualifiedName) {
+    return new File(directory, fullyQualifiedName.substring(fullyQualifiedName.lastIndexOf('.') + 1) + ".sha");
+  }
+
+  private static File dependenciesFileOf(final File directory, final String fullyQualifiedName) {
+    return new File(directory, fullyQualifiedName.substring(fullyQualifiedName.lastIndexOf('.') + 1) + ".deps");
+  }
 
-    public Class<?> defineClassX(final String className, final byte[] b, final int off, final int len) {
-      return super.defineClass(className, b, off, len);
+  private static String digestOf(final String source) {
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return VergereUtils.hashToHexString(md.digest(source.getBytes("UTF-8")));
     }
+    catch (Exception e) {
+      throw new RuntimeException("failed to generate digest for generated source", e);
+    }
+  }
+
+  private static void initQualifierEqualityFactory(final Class qualifierEqualityImplClass) {
+    QualifierUtil.initFromFactoryProvider(new QualifierEqualityFactoryProvider() {
+      @Override
+      public QualifierEqualityFactory provide() {
+        try {
+          return (QualifierEqualityFactory) qualifierEqualityImplClass.newInstance();
+        }
+        catch (Throwable e) {
+          throw new RuntimeException("failed to load qualifer equality factory", e);
+        }
+      }
+    });
   }
 }
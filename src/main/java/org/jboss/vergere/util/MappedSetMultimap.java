@@ -0,0 +1,369 @@
+package org.jboss.vergere.util;
+
+import com.google.common.collect.ForwardingSetMultimap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * One index of a memory-mapped {@link ScanCacheFile}, read in place. Lookups binary search the sorted keys of the
+ * index and walk its posting list, and strings are decoded from the shared {@link StringTable} the first time they
+ * are accessed, so an index costs nothing until it is queried, and only the parts which are queried are decoded.
+ * <p/>
+ * The first modification copies the whole index into a {@link HashMultimap}, which backs the multimap from then on.
+ * Views returned before the copy read through to it.
+ */
+final class MappedSetMultimap extends ForwardingSetMultimap<String, String> {
+  private final StringTable strings;
+  private final ByteBuffer buffer;
+  private final int keyCount;
+  private final int keyIdsPosition;
+  private final int postingOffsetsPosition;
+  private final int valueIdsPosition;
+
+  private volatile SetMultimap<String, String> copy;
+
+  /**
+   * @param strings
+   *     the string table of the file.
+   * @param buffer
+   *     the mapped file. It is only read with absolute gets, so it may be shared.
+   * @param keyCount
+   *     the number of keys in the index.
+   * @param keyIdsPosition
+   *     the position of the sorted key ids.
+   * @param postingOffsetsPosition
+   *     the position of the <tt>keyCount + 1</tt> posting offsets.
+   * @param valueIdsPosition
+   *     the position of the value ids.
+   */
+  MappedSetMultimap(final StringTable strings,
+                    final ByteBuffer buffer,
+                    final int keyCount,
+                    final int keyIdsPosition,
+                    final int postingOffsetsPosition,
+                    final int valueIdsPosition) {
+    this.strings = strings;
+    this.buffer = buffer;
+    this.keyCount = keyCount;
+    this.keyIdsPosition = keyIdsPosition;
+    this.postingOffsetsPosition = postingOffsetsPosition;
+    this.valueIdsPosition = valueIdsPosition;
+  }
+
+  @Override
+  protected SetMultimap<String, String> delegate() {
+    SetMultimap<String, String> multimap = copy;
+    if (multimap == null) {
+      synchronized (this) {
+        if ((multimap = copy) == null) {
+          multimap = HashMultimap.create(keyCount, 4);
+          for (int k = 0; k < keyCount; k++) {
+            final String key = keyAt(k);
+            for (int v = postingOffset(k); v < postingOffset(k + 1); v++) {
+              multimap.put(key, valueAt(v));
+            }
+          }
+          copy = multimap;
+        }
+      }
+    }
+    return multimap;
+  }
+
+  private String keyAt(final int k) {
+    return strings.get(buffer.getInt(keyIdsPosition + k * 4));
+  }
+
+  private int postingOffset(final int k) {
+    return buffer.getInt(postingOffsetsPosition + k * 4);
+  }
+
+  private String valueAt(final int v) {
+    return strings.get(buffer.getInt(valueIdsPosition + v * 4));
+  }
+
+  /**
+   * Returns the position of the key among the keys of the index, or -1 if it is not a key of the index. The keys
+   * were written in ascending order.
+   */
+  private int indexOf(final Object key) {
+    if (!(key instanceof String)) {
+      return -1;
+    }
+
+    int low = 0;
+    int high = keyCount - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int cmp = keyAt(mid).compareTo((String) key);
+      if (cmp < 0) {
+        low = mid + 1;
+      }
+      else if (cmp > 0) {
+        high = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return copy != null ? copy.size() : postingOffset(keyCount);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return copy != null ? copy.containsKey(key) : indexOf(key) != -1;
+  }
+
+  @Override
+  public boolean containsEntry(final Object key, final Object value) {
+    if (copy != null) {
+      return copy.containsEntry(key, value);
+    }
+    return key instanceof String && get((String) key).contains(value);
+  }
+
+  @Override
+  public Set<String> get(final String key) {
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        if (copy != null) {
+          return copy.get(key).iterator();
+        }
+
+        final int k = indexOf(key);
+        return k == -1 ? new Postings(0, 0) : new Postings(postingOffset(k), postingOffset(k + 1));
+      }
+
+      @Override
+      public int size() {
+        if (copy != null) {
+          return copy.get(key).size();
+        }
+
+        final int k = indexOf(key);
+        return k == -1 ? 0 : postingOffset(k + 1) - postingOffset(k);
+      }
+
+      @Override
+      public boolean add(final String value) {
+        return delegate().put(key, value);
+      }
+
+      @Override
+      public boolean remove(final Object value) {
+        return delegate().remove(key, value);
+      }
+    };
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        if (copy != null) {
+          return copy.keySet().iterator();
+        }
+        return new Strings(keyCount) {
+          @Override
+          String get(final int k) {
+            return keyAt(k);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return copy != null ? copy.keySet().size() : keyCount;
+      }
+
+      @Override
+      public boolean contains(final Object key) {
+        return containsKey(key);
+      }
+    };
+  }
+
+  @Override
+  public Collection<String> values() {
+    return new AbstractCollection<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        return copy != null ? copy.values().iterator() : new Postings(0, postingOffset(keyCount));
+      }
+
+      @Override
+      public int size() {
+        return MappedSetMultimap.this.size();
+      }
+    };
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entries() {
+    return new AbstractSet<Map.Entry<String, String>>() {
+      @Override
+      public Iterator<Map.Entry<String, String>> iterator() {
+        if (copy != null) {
+          return copy.entries().iterator();
+        }
+        return new Iterator<Map.Entry<String, String>>() {
+          private int k;
+          private int v;
+
+          @Override
+          public boolean hasNext() {
+            return v < postingOffset(keyCount);
+          }
+
+          @Override
+          public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            while (postingOffset(k + 1) <= v) {
+              k++;
+            }
+            return Maps.immutableEntry(keyAt(k), valueAt(v++));
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return MappedSetMultimap.this.size();
+      }
+
+      @Override
+      public boolean contains(final Object o) {
+        if (!(o instanceof Map.Entry)) {
+          return false;
+        }
+        final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+        return containsEntry(entry.getKey(), entry.getValue());
+      }
+    };
+  }
+
+  /**
+   * Iterates over the values of a range of the posting list.
+   */
+  private final class Postings extends Strings {
+    private final int start;
+
+    private Postings(final int start, final int end) {
+      super(end - start);
+      this.start = start;
+    }
+
+    @Override
+    String get(final int i) {
+      return valueAt(start + i);
+    }
+  }
+
+  private abstract static class Strings implements Iterator<String> {
+    private final int count;
+    private int next;
+
+    Strings(final int count) {
+      this.count = count;
+    }
+
+    abstract String get(int i);
+
+    @Override
+    public boolean hasNext() {
+      return next < count;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return get(next++);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * The string table of a mapped scan cache file. Each string is decoded the first time it is accessed, and the same
+   * instance is returned from then on.
+   */
+  static final class StringTable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int offsetsPosition;
+    private final int bytesPosition;
+    private final String[] strings;
+
+    /**
+     * @param buffer
+     *     the mapped file.
+     * @param offsetsPosition
+     *     the position of the <tt>count + 1</tt> string offsets.
+     * @param bytesPosition
+     *     the position of the UTF-8 bytes of the strings.
+     * @param count
+     *     the number of strings.
+     */
+    StringTable(final ByteBuffer buffer, final int offsetsPosition, final int bytesPosition, final int count) {
+      this.buffer = buffer;
+      this.offsetsPosition = offsetsPosition;
+      this.bytesPosition = bytesPosition;
+      this.strings = new String[count];
+    }
+
+    /**
+     * Returns the string with the specified id. Strings are immutable, so a string decoded on one thread is safely
+     * seen by others; at worst two threads decode the same string.
+     */
+    String get(final int id) {
+      String s = strings[id];
+      if (s == null) {
+        final int start = buffer.getInt(offsetsPosition + id * 4);
+        final byte[] bytes = new byte[buffer.getInt(offsetsPosition + id * 4 + 4) - start];
+
+        final ByteBuffer view = buffer.duplicate();
+        view.position(bytesPosition + start);
+        view.get(bytes);
+
+        strings[id] = s = new String(bytes, UTF_8);
+      }
+      return s;
+    }
+  }
+}
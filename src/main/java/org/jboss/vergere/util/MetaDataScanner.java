@@ -2,7 +2,7 @@ package org.jboss.vergere.util;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
-import javassist.bytecode.ClassFile;
+import com.google.common.collect.Multimap;
 import org.jboss.errai.common.client.framework.ErraiAppAttribs;
 import org.jboss.errai.common.metadata.DeploymentContext;
 import org.jboss.errai.common.metadata.PropertyScanner;
@@ -11,6 +11,7 @@ import org.jboss.errai.common.metadata.VfsUrlType;
 import org.jboss.errai.common.metadata.WarUrlType;
 import org.jboss.errai.reflections.Configuration;
 import org.jboss.errai.reflections.Reflections;
+import org.jboss.errai.reflections.Store;
 import org.jboss.errai.reflections.adapters.MetadataAdapter;
 import org.jboss.errai.reflections.scanners.FieldAnnotationsScanner;
 import org.jboss.errai.reflections.scanners.MethodAnnotationsScanner;
@@ -18,8 +19,14 @@ import org.jboss.errai.reflections.scanners.TypeAnnotationsScanner;
 import org.jboss.errai.reflections.util.ConfigurationBuilder;
 import org.jboss.errai.reflections.vfs.Vfs;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.ConversationScoped;
+import javax.enterprise.context.Dependent;
+import javax.enterprise.context.NormalScope;
+import javax.enterprise.context.RequestScoped;
+import javax.enterprise.context.SessionScoped;
+import javax.inject.Scope;
+import javax.inject.Singleton;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,14 +39,20 @@ import java.net.URLDecoder;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 /**
@@ -56,53 +69,212 @@ import java.util.regex.Pattern;
  */
 public class MetaDataScanner extends Reflections {
   public static final String CLASSPATH_ANCHOR_FILE = "vergere.properties";
+  public static final String SCAN_CACHE_FILE = "reflections.idx";
+
+  /**
+   * The properties files of this scan. Each scanner has its own, so a rescan merges its partitions into a scanner
+   * which is not yet visible to anyone, and replaces the previous scanner only once it is complete.
+   */
+  private final PropertyScanner propScanner;
+
+  private static PropertyScanner newPropertyScanner() {
+    return new PropertyScanner(
+        new Predicate<String>() {
+          public boolean apply(String file) {
+            return file.endsWith(".properties");
+          }
+        }
+    );
+  }
+
+  /**
+   * Set <tt>vergere.scan.parallel=true</tt> to scan each classpath URL on its own thread.
+   */
+  private static final boolean parallelScan = Boolean.getBoolean("vergere.scan.parallel");
+
+  MetaDataScanner(final List<URL> urls, File cacheFile) {
+    this(urls, cacheFile, ScanScope.load(), parallelScan);
+  }
+
+  MetaDataScanner(final List<URL> urls, File cacheFile, final ScanScope scope, final boolean parallel) {
+    this(urls, cacheFile, scope, parallel, newPropertyScanner());
+  }
+
+  private MetaDataScanner(final List<URL> urls,
+                          final File cacheFile,
+                          final ScanScope scope,
+                          final boolean parallel,
+                          final PropertyScanner propScanner) {
+    super(getConfiguration(scope.filterUrls(urls), scope, propScanner));
+    this.propScanner = propScanner;
+
+    if (cacheFile != null && ScanCacheFile.read(getStore(), cacheFile)) {
+      readProperties(getStore(), propScanner.getProperties());
+    }
+    else {
+      final List<URL> scopedUrls = scope.filterUrls(urls);
+      final ScanPartitions partitions = new ScanPartitions(scope);
 
-  private static final PropertyScanner propScanner = new PropertyScanner(
-      new Predicate<String>() {
-        public boolean apply(String file) {
-          return file.endsWith(".properties");
+      if (parallel && scopedUrls.size() > 1) {
+        scanInParallel(scopedUrls, scope, partitions);
+      }
+      else {
+        for (final URL url : scopedUrls) {
+          mergePartition(scanPartition(url, scope, partitions));
         }
       }
-  );
+      partitions.removeStalePartitions();
 
-  MetaDataScanner(final List<URL> urls, File cacheFile) {
-    super(getConfiguration(urls));
+      // the merged properties index would union the properties files of all partitions, so replace it with the
+      // properties as merged by the property scanner.
+      getStore().getStoreMap().remove(PROPERTIES_INDEX);
+      writeProperties(propScanner.getProperties(), getStore());
+
+      ScanCacheFile.write(getStore(), VergereUtils.getCacheFile(SCAN_CACHE_FILE));
+    }
+  }
+
+  /**
+   * The store index holding the scanned properties files, so they are restored from the scan cache along with
+   * everything else. Each value is a property key and its value, keyed by the name of the properties file.
+   */
+  private static final String PROPERTIES_INDEX = "ScannedProperties";
+
+  /**
+   * Returns the scan of a single URL, read from its cached partition if the URL has not changed since the partition
+   * was written, or scanned and written to a new partition otherwise.
+   */
+  private static UrlScanner scanPartition(final URL url, final ScanScope scope, final ScanPartitions partitions) {
+    final UrlScanner urlScanner = new UrlScanner(url, scope);
 
-    if (cacheFile != null) {
-      collect(cacheFile);
+    final String tag = partitions.getTag(url);
+    final File partitionFile = tag == null ? null : partitions.getFile(url);
+
+    if (partitionFile != null && ScanCacheFile.read(urlScanner.getStore(), partitionFile, tag)) {
+      readProperties(urlScanner.getStore(), urlScanner.propertyScanner.getProperties());
     }
     else {
-      scan();
-      save(VergereUtils.getCacheFile("reflections.cache").getAbsolutePath());
+      urlScanner.scanUrl();
+      urlScanner.scanRecord.moveTo(urlScanner.getStore());
+      writeProperties(urlScanner.propertyScanner.getProperties(), urlScanner.getStore());
+
+      if (partitionFile != null) {
+        ScanCacheFile.write(urlScanner.getStore(), partitionFile, tag);
+      }
+    }
+    return urlScanner;
+  }
+
+  private void mergePartition(final UrlScanner urlScanner) {
+    merge(urlScanner);
+    propScanner.getProperties().putAll(urlScanner.propertyScanner.getProperties());
+  }
+
+  private static void writeProperties(final Map<String, Properties> properties, final Store store) {
+    final Multimap<String, String> index = store.getOrCreate(PROPERTIES_INDEX);
+    for (final Map.Entry<String, Properties> entry : properties.entrySet()) {
+      for (final String key : entry.getValue().stringPropertyNames()) {
+        index.put(entry.getKey(), key + '\t' + entry.getValue().getProperty(key));
+      }
+    }
+  }
+
+  private static void readProperties(final Store store, final Map<String, Properties> properties) {
+    final Multimap<String, String> index = store.getOrCreate(PROPERTIES_INDEX);
+    for (final String name : index.keySet()) {
+      final Properties props = new Properties();
+      for (final String property : index.get(name)) {
+        final int tab = property.indexOf('\t');
+        props.setProperty(property.substring(0, tab), property.substring(tab + 1));
+      }
+      properties.put(name, props);
     }
   }
 
-  static final Map<String, Set<SortableClassFileWrapper>> annotationsToClassFile =
-      new TreeMap<String, Set<SortableClassFileWrapper>>();
+  /**
+   * Scans each URL with its own set of scanners on a pool of worker threads. The stores of the workers are merged
+   * into this scanner in URL order once all of them have finished, so the merged result is the same as that of a
+   * sequential scan.
+   */
+  private void scanInParallel(final List<URL> urls, final ScanScope scope, final ScanPartitions partitions) {
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(urls.size(), Runtime.getRuntime().availableProcessors()));
+
+    try {
+      final List<Future<UrlScanner>> futures = new ArrayList<Future<UrlScanner>>(urls.size());
+      for (final URL url : urls) {
+        futures.add(executor.submit(new Callable<UrlScanner>() {
+          @Override
+          public UrlScanner call() {
+            return scanPartition(url, scope, partitions);
+          }
+        }));
+      }
+
+      for (final Future<UrlScanner> future : futures) {
+        mergePartition(future.get());
+      }
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException("failed to scan classpath", e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while scanning classpath", e);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
 
-  static class SortableClassFileWrapper implements Comparable<SortableClassFileWrapper> {
-    private String name;
-    private ClassFile classFile;
+  /**
+   * Scans a single URL into its own stores, so it can be cached as a partition of its own, and run concurrently with
+   * the scans of other URLs.
+   */
+  private static class UrlScanner extends Reflections {
+    private final ScanRecord scanRecord;
+    private final PropertyScanner propertyScanner;
 
-    SortableClassFileWrapper(String name, ClassFile classFile) {
-      this.name = name;
-      this.classFile = classFile;
+    private UrlScanner(final URL url, final ScanScope scope) {
+      this(url, scope, new ScanRecord(), newPropertyScanner());
     }
 
-    public ClassFile getClassFile() {
-      return classFile;
+    private UrlScanner(final URL url,
+                       final ScanScope scope,
+                       final ScanRecord scanRecord,
+                       final PropertyScanner propertyScanner) {
+      super(new ConfigurationBuilder()
+          .setUrls(Collections.singletonList(url))
+          .filterInputsBy(scope.getInputsFilter())
+          .setScanners(
+              new FieldAnnotationsScanner(),
+              new MethodAnnotationsScanner(),
+              new ExtendedTypeAnnotationScanner(scanRecord),
+              propertyScanner
+          ));
+
+      this.scanRecord = scanRecord;
+      this.propertyScanner = propertyScanner;
     }
 
-    @Override
-    public int compareTo(SortableClassFileWrapper o) {
-      return name.compareTo(o.name);
+    private void scanUrl() {
+      scan();
     }
   }
 
-  private static Configuration getConfiguration(List<URL> urls) {
+  /**
+   * The record of type annotation scanners created without one of their own. Partitions are scanned with a record
+   * each, which is moved into the partition's store once its scan is complete.
+   */
+  static final ScanRecord scanRecord = new ScanRecord();
+
+  private volatile SubtypeIndex subtypeIndex;
+
+  private static Configuration getConfiguration(List<URL> urls, ScanScope scope, PropertyScanner propScanner) {
 
     return new ConfigurationBuilder()
         .setUrls(urls)
+        .filterInputsBy(scope.getInputsFilter())
         .setScanners(
             new FieldAnnotationsScanner(),
             new MethodAnnotationsScanner(),
@@ -138,71 +310,286 @@ public class MetaDataScanner extends Reflections {
 
   public Set<Class<?>> getTypesAnnotatedWithExcluding(
       Class<? extends Annotation> annotation, String excludeRegex) {
-    Pattern p = Pattern.compile(excludeRegex);
-
-    final Set<String> result = new java.util.HashSet<String>();
     final Set<String> types = getStore().getTypesAnnotatedWith(annotation.getName());
-    for (String className : types) {
-      if (!p.matcher(className).matches())
-        result.add(className);
-    }
-
-    return ImmutableSet.copyOf(forNames(result));
+    return ImmutableSet.copyOf(forNamesLoadable(filterClassNames(types, null, excludeRegex)));
   }
 
   public Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation, Collection<String> packages) {
-    final Set<Class<?>> results = new java.util.HashSet<Class<?>>();
-    for (Class<?> cls : getTypesAnnotatedWith(annotation)) {
-      if (packages.contains(cls.getPackage().getName())) {
-        results.add(cls);
-      }
-    }
-    return results;
+    return forNamesLoadable(getTypeNamesAnnotatedWith(annotation, packages, null));
   }
 
   public Set<Method> getMethodsAnnotatedWith(Class<? extends Annotation> annotation, Collection<String> packages) {
+    final Collection<String> methods
+        = getStore().getOrCreate(MethodAnnotationsScanner.class.getSimpleName()).get(annotation.getName());
+
+    final Set<String> declaringClasses = new java.util.HashSet<String>();
+    for (String method : methods) {
+      declaringClasses.add(method.substring(0, method.lastIndexOf('.', method.indexOf('('))));
+    }
+
     final Set<Method> results = new java.util.HashSet<Method>();
-    for (Method method : getMethodsAnnotatedWith(annotation)) {
-      if (packages.contains(method.getDeclaringClass().getPackage().getName())) {
-        results.add(method);
+    for (Class<?> cls : forNamesLoadable(filterClassNames(declaringClasses, packages, null))) {
+      for (Method method : cls.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(annotation)) {
+          results.add(method);
+        }
       }
     }
     return results;
   }
 
   public Set<Field> getFieldsAnnotatedWith(Class<? extends Annotation> annotation, Collection<String> packages) {
+    final Collection<String> fields
+        = getStore().getOrCreate(FieldAnnotationsScanner.class.getSimpleName()).get(annotation.getName());
+
+    final Set<String> declaringClasses = new java.util.HashSet<String>();
+    for (String field : fields) {
+      declaringClasses.add(field.substring(0, field.lastIndexOf('.')));
+    }
+
     final Set<Field> results = new java.util.HashSet<Field>();
-    for (Field field : getFieldsAnnotatedWith(annotation)) {
-      if (packages.contains(field.getDeclaringClass().getPackage().getName())) {
-        results.add(field);
+    for (Class<?> cls : forNamesLoadable(filterClassNames(declaringClasses, packages, null))) {
+      for (Field field : cls.getDeclaredFields()) {
+        if (field.isAnnotationPresent(annotation)) {
+          results.add(field);
+        }
       }
     }
     return results;
   }
 
-  private Map<Class<? extends Annotation>, Set<Class<?>>> _annotationCache =
-      new HashMap<Class<? extends Annotation>, Set<Class<?>>>();
+  private final ConcurrentMap<Class<? extends Annotation>, Set<String>> _annotationCache =
+      new ConcurrentHashMap<Class<? extends Annotation>, Set<String>>();
+
+  /**
+   * Returns the names of the types annotated with the specified annotation, including the subtypes of annotated
+   * types if the annotation is {@link Inherited}. No class is loaded.
+   */
+  public Set<String> getTypeNamesAnnotatedWith(Class<? extends Annotation> annotation) {
+    Set<String> types = _annotationCache.get(annotation);
+    if (types == null) {
+      final Set<String> annotated = getStore().getTypesAnnotatedWith(annotation.getName());
+      if (annotation.isAnnotationPresent(Inherited.class)) {
+        types = Collections.unmodifiableSet(getSubtypeIndex().getTypesAndSubTypesOf(annotated));
+      }
+      else {
+        types = Collections.unmodifiableSet(new java.util.HashSet<String>(annotated));
+      }
+
+      final Set<String> previous = _annotationCache.putIfAbsent(annotation, types);
+      if (previous != null) {
+        types = previous;
+      }
+    }
+
+    return types;
+  }
+
+  /**
+   * Returns the names of the types annotated with the specified annotation, filtered by package and exclusion
+   * pattern before any class is loaded.
+   *
+   * @param packages
+   *     the packages the types must be declared in, or null for any package.
+   * @param excludeRegex
+   *     a pattern matching the names of the types to exclude, or null to exclude none.
+   */
+  public Set<String> getTypeNamesAnnotatedWith(Class<? extends Annotation> annotation,
+                                               Collection<String> packages,
+                                               String excludeRegex) {
+    return filterClassNames(getTypeNamesAnnotatedWith(annotation), packages, excludeRegex);
+  }
 
   @Override
   public Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation) {
-    Set<Class<?>> types = _annotationCache.get(annotation);
-    if (types == null) {
-      types = new java.util.HashSet<Class<?>>(super.getTypesAnnotatedWith(annotation));
+    return forNamesLoadable(getTypeNamesAnnotatedWith(annotation));
+  }
 
-      if (annotation.isAnnotationPresent(Inherited.class)) {
-        for (Class<?> cls : new ArrayList<Class<?>>(types)) {
-          types.addAll(getSubTypesOf(cls));
+  /**
+   * Loads the named classes, without initializing them.
+   */
+  public Set<Class<?>> getTypesNamed(Collection<String> classNames) {
+    return forNamesLoadable(classNames);
+  }
+
+  private static Set<String> filterClassNames(final Collection<String> classNames,
+                                              final Collection<String> packages,
+                                              final String excludeRegex) {
+    final Pattern excludePattern = excludeRegex == null ? null : Pattern.compile(excludeRegex);
+
+    final Set<String> result = new java.util.HashSet<String>();
+    for (final String className : classNames) {
+      if (packages != null && !packages.contains(getPackageName(className))) continue;
+      if (excludePattern != null && excludePattern.matcher(className).matches()) continue;
+
+      result.add(className);
+    }
+    return result;
+  }
+
+  private static String getPackageName(final String className) {
+    final int lastDot = className.lastIndexOf('.');
+    return lastDot == -1 ? "" : className.substring(0, lastDot);
+  }
+
+  /**
+   * Returns all direct and indirect subtypes of the specified type, from the subtype index built at scan time.
+   */
+  @Override
+  public <T> Set<Class<? extends T>> getSubTypesOf(final Class<T> type) {
+    final Set<Class<? extends T>> result = new java.util.HashSet<Class<? extends T>>();
+    for (final Class<?> cls : forNamesLoadable(getSubtypeIndex().getSubTypesOf(type.getName()))) {
+      if (type.isAssignableFrom(cls)) {
+        result.add(cls.asSubclass(type));
+      }
+    }
+    return result;
+  }
+
+  private SubtypeIndex getSubtypeIndex() {
+    SubtypeIndex index = subtypeIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = subtypeIndex;
+        if (index == null) {
+          subtypeIndex = index = new SubtypeIndex(getStore().getOrCreate(ScanRecord.SUBTYPE_INDEX));
         }
       }
+    }
+    return index;
+  }
 
-      _annotationCache.put(annotation, types);
+  /**
+   * The number of types above which {@link #getDependentCandidateNames} splits its work across threads.
+   */
+  private static final int PARALLEL_CANDIDATE_THRESHOLD = 1024;
+
+  private volatile Set<String> scopedTypeNames;
+
+  /**
+   * Returns the names of the specified types which may be inferred to be dependent beans: public, concrete classes
+   * with a public default constructor and no scope annotation. The types are checked against the flags recorded at
+   * scan time and against the scope annotation index, so no class is loaded. Types which were not scanned are outside
+   * the scan scope, and are never candidates. Large sets of types are checked in parallel.
+   */
+  public Set<String> getDependentCandidateNames(final Collection<String> typeNames) {
+    final List<String> names = new ArrayList<String>(typeNames);
+    final Multimap<String, String> flagsIndex = getStore().getOrCreate(ScanRecord.TYPE_FLAGS_INDEX);
+    final Set<String> scoped = getScopedTypeNames();
+
+    if (names.size() <= PARALLEL_CANDIDATE_THRESHOLD) {
+      return filterDependentCandidates(names, flagsIndex, scoped);
     }
 
-    return types;
+    final int chunkSize = names.size() / Runtime.getRuntime().availableProcessors() + 1;
+    final List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+    for (int start = 0; start < names.size(); start += chunkSize) {
+      final List<String> chunk = names.subList(start, Math.min(start + chunkSize, names.size()));
+      futures.add(ThreadUtil.submit(new Callable<Set<String>>() {
+        @Override
+        public Set<String> call() {
+          return filterDependentCandidates(chunk, flagsIndex, scoped);
+        }
+      }));
+    }
+
+    final Set<String> candidates = new java.util.HashSet<String>();
+    try {
+      for (final Future<Set<String>> future : futures) {
+        candidates.addAll(future.get());
+      }
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException("failed to infer dependent types", e.getCause());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while inferring dependent types", e);
+    }
+    return candidates;
+  }
+
+  private static Set<String> filterDependentCandidates(final Collection<String> typeNames,
+                                                       final Multimap<String, String> flagsIndex,
+                                                       final Set<String> scoped) {
+    final int required = ScanRecord.FLAG_PUBLIC | ScanRecord.FLAG_CONCRETE | ScanRecord.FLAG_DEFAULT_CONSTRUCTOR;
+
+    final Set<String> candidates = new java.util.HashSet<String>();
+    for (final String typeName : typeNames) {
+      final Collection<String> flags = flagsIndex.get(typeName);
+      if (!flags.isEmpty() && (Integer.parseInt(flags.iterator().next()) & required) == required
+          && !scoped.contains(typeName)) {
+        candidates.add(typeName);
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Returns the names of all types carrying a scope annotation, directly or inherited. The scope annotations are the
+   * scanned annotations annotated with {@link Scope} or {@link NormalScope}, and the standard scopes, which are
+   * included even if their archives are excluded from the scan.
+   */
+  private Set<String> getScopedTypeNames() {
+    Set<String> scoped = scopedTypeNames;
+    if (scoped == null) {
+      final Set<Class<?>> scopeAnnotations = new java.util.HashSet<Class<?>>();
+      scopeAnnotations.addAll(getTypesAnnotatedWith(Scope.class));
+      scopeAnnotations.addAll(getTypesAnnotatedWith(NormalScope.class));
+      Collections.<Class<?>>addAll(scopeAnnotations, Singleton.class, Dependent.class, ApplicationScoped.class,
+          RequestScoped.class, SessionScoped.class, ConversationScoped.class);
+
+      scoped = new java.util.HashSet<String>();
+      for (final Class<?> scopeAnnotation : scopeAnnotations) {
+        if (scopeAnnotation.isAnnotation()) {
+          scoped.addAll(getTypeNamesAnnotatedWith(scopeAnnotation.asSubclass(Annotation.class)));
+        }
+      }
+      scopedTypeNames = scoped = Collections.unmodifiableSet(scoped);
+    }
+    return scoped;
+  }
+
+  /**
+   * Loads the named classes without initializing them, skipping those which cannot be loaded or linked, as not every
+   * scanned type need be loadable by the current class loader.
+   */
+  private static Set<Class<?>> forNamesLoadable(final Collection<String> classNames) {
+    final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+    final ClassLoader scannerLoader = MetaDataScanner.class.getClassLoader();
+
+    final Set<Class<?>> classes = new java.util.HashSet<Class<?>>(classNames.size() * 2);
+    for (final String className : classNames) {
+      Class<?> cls = loadClass(className, contextLoader);
+      if (cls == null && scannerLoader != contextLoader) {
+        cls = loadClass(className, scannerLoader);
+      }
+      if (cls != null) {
+        classes.add(cls);
+      }
+    }
+    return classes;
+  }
+
+  private static Class<?> loadClass(final String className, final ClassLoader classLoader) {
+    if (classLoader == null) {
+      return null;
+    }
+    try {
+      return Class.forName(className, false, classLoader);
+    }
+    catch (ClassNotFoundException e) {
+      return null;
+    }
+    catch (LinkageError e) {
+      return null;
+    }
   }
 
   public String getHashForTypesAnnotatedWith(String seed, Class<? extends Annotation> annotation) {
-    if (!annotationsToClassFile.containsKey(annotation.getName())) {
+    final Collection<String> classDigests
+        = getStore().getOrCreate(ScanRecord.CLASS_DIGEST_INDEX).get(annotation.getName());
+    if (classDigests.isEmpty()) {
       return "0";
     }
     else {
@@ -213,17 +600,12 @@ public class MetaDataScanner extends Reflections {
           md.update(seed.getBytes());
         }
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        for (SortableClassFileWrapper classFileWrapper : annotationsToClassFile.get(annotation.getName())) {
-          byteArrayOutputStream.reset();
-          DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
-          classFileWrapper.getClassFile().write(dataOutputStream);
-          dataOutputStream.flush();
-          md.update(byteArrayOutputStream.toByteArray());
+        // sorted by class name, since each entry starts with the class name.
+        for (String classDigest : new TreeSet<String>(classDigests)) {
+          md.update(classDigest.getBytes("UTF-8"));
         }
 
         return RebindUtils.hashToHexString(md.digest());
-
       }
       catch (Exception e) {
         throw new RuntimeException("could not generate hash", e);
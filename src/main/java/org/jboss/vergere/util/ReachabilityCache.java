@@ -0,0 +1,208 @@
+package org.jboss.vergere.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the direct dependencies of each class found by the reachability analysis, so they need not be read from the
+ * class file again as long as the class file is unchanged. Each entry is tagged with a fingerprint of the class file,
+ * taken from the size and modification time of the file, or of the archive it is in.
+ * <p/>
+ * The cache only retains the classes which were looked up since it was read, so classes which are gone are dropped
+ * the next time it is written.
+ */
+final class ReachabilityCache {
+  private static final Logger log = LoggerFactory.getLogger(ReachabilityCache.class);
+
+  private static final int MAGIC = 0x56524348;
+  private static final int VERSION = 2;
+
+  private static class Entry {
+    private final String fingerprint;
+    private final Collection<String> dependencies;
+
+    private Entry(final String fingerprint, final Collection<String> dependencies) {
+      this.fingerprint = fingerprint;
+      this.dependencies = dependencies;
+    }
+  }
+
+  private final Map<String, Entry> previous;
+  private final ConcurrentMap<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+  private volatile boolean modified;
+
+  private ReachabilityCache(final Map<String, Entry> previous) {
+    this.previous = previous;
+  }
+
+  /**
+   * Returns the dependencies of the class, if they were cached for a class file with the specified fingerprint.
+   *
+   * @return the dependencies, or null if they must be read from the class file.
+   */
+  Collection<String> get(final String className, final String fingerprint) {
+    if (fingerprint == null) {
+      return null;
+    }
+
+    final Entry entry = previous.get(className);
+    if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+      return null;
+    }
+    current.put(className, entry);
+    return entry.dependencies;
+  }
+
+  void put(final String className, final String fingerprint, final Collection<String> dependencies) {
+    if (fingerprint == null) {
+      return;
+    }
+    current.put(className, new Entry(fingerprint, dependencies));
+    modified = true;
+  }
+
+  /**
+   * Returns a fingerprint of the class file at the specified URL, or null if the URL is neither a file nor an entry of
+   * a local archive.
+   */
+  static String fingerprintOf(final URL resource) {
+    final File file = ScanPartitions.toFile(resource);
+    if (file == null || !file.exists()) {
+      return null;
+    }
+    return file.length() + ":" + file.lastModified();
+  }
+
+  /**
+   * Reads the cache from the specified file. If the file does not exist or cannot be read, an empty cache is returned.
+   */
+  static ReachabilityCache read(final File file) {
+    final Map<String, Entry> entries = new HashMap<String, Entry>();
+    if (!file.exists()) {
+      return new ReachabilityCache(entries);
+    }
+
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          return new ReachabilityCache(entries);
+        }
+
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+          strings[i] = in.readUTF();
+        }
+
+        final int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+          final String className = strings[in.readInt()];
+          final String fingerprint = strings[in.readInt()];
+
+          final String[] dependencies = new String[in.readInt()];
+          for (int d = 0; d < dependencies.length; d++) {
+            dependencies[d] = strings[in.readInt()];
+          }
+          entries.put(className, new Entry(fingerprint, Collections.unmodifiableList(Arrays.asList(dependencies))));
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (Exception e) {
+      log.warn("ignoring unreadable reachability cache: " + file.getAbsolutePath(), e);
+      entries.clear();
+    }
+    return new ReachabilityCache(entries);
+  }
+
+  /**
+   * Writes the classes looked up since the cache was read to the specified file, if anything changed. The cache is
+   * written to a temporary file which then replaces the previous one, so a failed or interrupted write never leaves a
+   * truncated cache behind. A cache which cannot be written is only a lost optimization, so failures are logged.
+   */
+  void write(final File file) {
+    if (!modified && current.keySet().equals(previous.keySet())) {
+      return;
+    }
+
+    // every string is written once, and referred to by its index everywhere else.
+    final Map<String, Integer> ids = new LinkedHashMap<String, Integer>();
+    final List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(current.entrySet());
+    for (final Map.Entry<String, Entry> entry : entries) {
+      idOf(ids, entry.getKey());
+      idOf(ids, entry.getValue().fingerprint);
+      for (final String dependency : entry.getValue().dependencies) {
+        idOf(ids, dependency);
+      }
+    }
+
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      final DataOutputStream out
+          = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(ids.size());
+        for (final String s : ids.keySet()) {
+          out.writeUTF(s);
+        }
+
+        out.writeInt(entries.size());
+        for (final Map.Entry<String, Entry> entry : entries) {
+          out.writeInt(ids.get(entry.getKey()));
+          out.writeInt(ids.get(entry.getValue().fingerprint));
+          out.writeInt(entry.getValue().dependencies.size());
+          for (final String dependency : entry.getValue().dependencies) {
+            out.writeInt(ids.get(dependency));
+          }
+        }
+      }
+      finally {
+        out.close();
+      }
+
+      if (!VergereUtils.replaceFile(tempFile, file)) {
+        log.warn("could not replace reachability cache: " + file.getAbsolutePath());
+      }
+    }
+    catch (IOException e) {
+      log.warn("failed to write reachability cache: " + file.getAbsolutePath(), e);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private static int idOf(final Map<String, Integer> ids, final String s) {
+    Integer id = ids.get(s);
+    if (id == null) {
+      ids.put(s, id = ids.size());
+    }
+    return id;
+  }
+}
@@ -0,0 +1,173 @@
+package org.jboss.vergere.util;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The type dependency graph explored by the reachability analysis. Type names are interned to dense integer ids, the
+ * edges of each type are kept in an int array, and the types reachable from a set of roots are computed with a
+ * breadth-first search over a bitset.
+ */
+final class ReachabilityGraph {
+  private final Map<String, Integer> ids = new HashMap<String, Integer>();
+  private final List<String> names = new ArrayList<String>();
+  private final List<int[]> edges = new ArrayList<int[]>();
+
+  private static final int[] NO_EDGES = new int[0];
+
+  private int idOf(final String name) {
+    Integer id = ids.get(name);
+    if (id == null) {
+      ids.put(name, id = names.size());
+      names.add(name);
+      edges.add(NO_EDGES);
+    }
+    return id;
+  }
+
+  /**
+   * Adds edges from a type to each of the types it depends on.
+   */
+  void addEdges(final String from, final Collection<String> to) {
+    final int fromId = idOf(from);
+    final int[] previous = edges.get(fromId);
+
+    final int[] toIds = new int[previous.length + to.size()];
+    System.arraycopy(previous, 0, toIds, 0, previous.length);
+
+    int i = previous.length;
+    for (final String name : to) {
+      toIds[i++] = idOf(name);
+    }
+    edges.set(fromId, toIds);
+  }
+
+  /**
+   * Returns the set of types reachable from the specified roots, including the roots themselves. The set is backed by
+   * a bitset over the ids of this graph, so the graph must not be modified afterwards.
+   */
+  Set<String> getReachableFrom(final Collection<String> roots) {
+    final int[] rootIds = new int[roots.size()];
+    int r = 0;
+    for (final String root : roots) {
+      rootIds[r++] = idOf(root);
+    }
+
+    // every type is queued at most once.
+    final BitSet reachable = new BitSet(names.size());
+    final int[] queue = new int[names.size()];
+    int head = 0;
+    int tail = 0;
+
+    for (final int id : rootIds) {
+      if (!reachable.get(id)) {
+        reachable.set(id);
+        queue[tail++] = id;
+      }
+    }
+
+    while (head < tail) {
+      for (final int next : edges.get(queue[head++])) {
+        if (!reachable.get(next)) {
+          reachable.set(next);
+          queue[tail++] = next;
+        }
+      }
+    }
+
+    return new ReachableSet(reachable);
+  }
+
+  /**
+   * A set of type names backed by a bitset of ids. Names unknown to the graph, which may only be added after the
+   * analysis, are kept separately.
+   */
+  private class ReachableSet extends AbstractSet<String> {
+    private final BitSet bits;
+    private final Set<String> others = new HashSet<String>();
+
+    private ReachableSet(final BitSet bits) {
+      this.bits = bits;
+    }
+
+    @Override
+    public synchronized boolean contains(final Object o) {
+      final Integer id = ids.get(o);
+      return id != null ? bits.get(id) : others.contains(o);
+    }
+
+    @Override
+    public synchronized boolean add(final String name) {
+      final Integer id = ids.get(name);
+      if (id == null) {
+        return others.add(name);
+      }
+      if (bits.get(id)) {
+        return false;
+      }
+      bits.set(id);
+      return true;
+    }
+
+    @Override
+    public synchronized boolean remove(final Object o) {
+      final Integer id = ids.get(o);
+      if (id == null) {
+        return others.remove(o);
+      }
+      if (!bits.get(id)) {
+        return false;
+      }
+      bits.clear(id);
+      return true;
+    }
+
+    @Override
+    public synchronized int size() {
+      return bits.cardinality() + others.size();
+    }
+
+    @Override
+    public synchronized Iterator<String> iterator() {
+      // iterate over a snapshot, so the set may be modified while it is iterated.
+      final BitSet snapshot = (BitSet) bits.clone();
+      final Iterator<String> otherNames = new ArrayList<String>(others).iterator();
+
+      return new Iterator<String>() {
+        private int next = snapshot.nextSetBit(0);
+
+        @Override
+        public boolean hasNext() {
+          return next >= 0 || otherNames.hasNext();
+        }
+
+        @Override
+        public String next() {
+          if (next >= 0) {
+            final String name = names.get(next);
+            next = snapshot.nextSetBit(next + 1);
+            return name;
+          }
+          if (otherNames.hasNext()) {
+            return otherNames.next();
+          }
+          throw new NoSuchElementException();
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package org.jboss.vergere.util;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.google.common.collect.Multimap;
+import org.jboss.errai.reflections.Store;
+import org.slf4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A compact binary format for the scanner's store, used for the <tt>reflections.idx</tt> scan cache and the
+ * per-URL scan partitions.
+ * <p/>
+ * Every distinct string is stored once in a string table, and is referred to everywhere else by its index in the
+ * table. Each store index is a list of keys sorted by name, each with an offset into a posting list of value ids. The
+ * file is memory-mapped when read, and each index of the store is backed by a {@link MappedSetMultimap} view of its
+ * keys and postings, so loading the cache only reads the headers of the indexes, and strings are decoded on first
+ * access, once each.
+ * <p/>
+ * Files are written to a temporary file which then replaces the previous file, so a reader never sees a partially
+ * written file, and a file which is still mapped is never written to.
+ * <p/>
+ * Layout, all integers big-endian:
+ * <pre>
+ *   int magic, int version, int tagLength, byte[tagLength] utf8Tag
+ *   int stringCount, int[stringCount + 1] stringOffsets, byte[] utf8Strings
+ *   int indexCount
+ *   per index: int nameId, int keyCount, int[keyCount] keyIds, int[keyCount + 1] postingOffsets,
+ *              int[postingOffsets[keyCount]] valueIds
+ * </pre>
+ */
+public final class ScanCacheFile {
+  private static final Logger log = getLogger(ScanCacheFile.class);
+
+  private static final int MAGIC = 0x56524749;
+  private static final int VERSION = 4;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private ScanCacheFile() {
+  }
+
+  /**
+   * Writes the contents of the store to the specified file.
+   */
+  public static void write(final Store store, final File file) {
+    write(store, file, "");
+  }
+
+  /**
+   * Writes the contents of the store to the specified file, tagged with the specified string. The tag is typically a
+   * fingerprint of whatever the store was scanned from.
+   */
+  public static void write(final Store store, final File file, final String tag) {
+    final Map<String, Multimap<String, String>> storeMap = store.getStoreMap();
+
+    // intern every string in sorted order, so the ids of the keys of each index are sorted as well.
+    final TreeSet<String> allStrings = new TreeSet<String>();
+    for (final Map.Entry<String, Multimap<String, String>> index : storeMap.entrySet()) {
+      allStrings.add(index.getKey());
+      allStrings.addAll(index.getValue().keySet());
+      allStrings.addAll(index.getValue().values());
+    }
+
+    final Map<String, Integer> ids = new HashMap<String, Integer>(allStrings.size() * 2);
+    final List<byte[]> encoded = new ArrayList<byte[]>(allStrings.size());
+    for (final String s : allStrings) {
+      ids.put(s, ids.size());
+      encoded.add(s.getBytes(UTF_8));
+    }
+
+    try {
+      final File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      final DataOutputStream out
+          = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        final byte[] tagBytes = tag.getBytes(UTF_8);
+        out.writeInt(tagBytes.length);
+        out.write(tagBytes);
+
+        out.writeInt(encoded.size());
+        int offset = 0;
+        out.writeInt(offset);
+        for (final byte[] bytes : encoded) {
+          out.writeInt(offset += bytes.length);
+        }
+        for (final byte[] bytes : encoded) {
+          out.write(bytes);
+        }
+
+        out.writeInt(storeMap.size());
+        for (final Map.Entry<String, Multimap<String, String>> index : storeMap.entrySet()) {
+          final Multimap<String, String> multimap = index.getValue();
+          final List<String> keys = new ArrayList<String>(new TreeSet<String>(multimap.keySet()));
+          final List<TreeSet<String>> postings = new ArrayList<TreeSet<String>>(keys.size());
+
+          out.writeInt(ids.get(index.getKey()));
+          out.writeInt(keys.size());
+          for (final String key : keys) {
+            out.writeInt(ids.get(key));
+            postings.add(new TreeSet<String>(multimap.get(key)));
+          }
+
+          int postingOffset = 0;
+          out.writeInt(postingOffset);
+          for (final TreeSet<String> values : postings) {
+            out.writeInt(postingOffset += values.size());
+          }
+          for (final TreeSet<String> values : postings) {
+            for (final String value : values) {
+              out.writeInt(ids.get(value));
+            }
+          }
+        }
+      }
+      finally {
+        out.close();
+      }
+
+      if (!VergereUtils.replaceFile(tempFile, file)) {
+        log.warn("could not replace scan cache, it will be rescanned next time: " + file.getAbsolutePath());
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException("failed to write scan cache: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Reads the specified file into the store.
+   *
+   * @return true if the cache was read, or false if the file is not a scan cache of a supported version, or is
+   *         unreadable. The store is left untouched if false is returned.
+   */
+  public static boolean read(final Store store, final File file) {
+    return read(store, file, "");
+  }
+
+  /**
+   * Reads the specified file into the store, if it was written with the specified tag.
+   *
+   * @return true if the cache was read, or false if the file does not exist, was written with a different tag, is not
+   *         a scan cache of a supported version, or is unreadable. The store is left untouched if false is returned.
+   */
+  public static boolean read(final Store store, final File file, final String tag) {
+    if (!file.exists()) {
+      return false;
+    }
+
+    try {
+      final FileInputStream inputStream = new FileInputStream(file);
+      try {
+        final FileChannel channel = inputStream.getChannel();
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+          return false;
+        }
+
+        final byte[] tagBytes = new byte[buffer.getInt()];
+        buffer.get(tagBytes);
+        if (!tag.equals(new String(tagBytes, UTF_8))) {
+          return false;
+        }
+
+        final MappedSetMultimap.StringTable strings = readStringTable(buffer);
+
+        final int indexCount = buffer.getInt();
+        final List<String> indexNames = new ArrayList<String>(indexCount);
+        final List<Multimap<String, String>> indexes = new ArrayList<Multimap<String, String>>(indexCount);
+
+        for (int i = 0; i < indexCount; i++) {
+          final String indexName = strings.get(buffer.getInt());
+          final int keyCount = buffer.getInt();
+
+          final int keyIdsPosition = skipInts(buffer, keyCount);
+          final int valueCount = buffer.getInt(buffer.position() + keyCount * 4);
+          final int postingOffsetsPosition = skipInts(buffer, keyCount + 1);
+          final int valueIdsPosition = skipInts(buffer, valueCount);
+
+          indexNames.add(indexName);
+          indexes.add(new MappedSetMultimap(strings, buffer, keyCount, keyIdsPosition, postingOffsetsPosition,
+              valueIdsPosition));
+        }
+
+        // only populate the store once the whole file has been read successfully.
+        for (int i = 0; i < indexCount; i++) {
+          final Multimap<String, String> existing = store.getStoreMap().get(indexNames.get(i));
+          if (existing == null || existing.isEmpty()) {
+            store.getStoreMap().put(indexNames.get(i), indexes.get(i));
+          }
+          else {
+            existing.putAll(indexes.get(i));
+          }
+        }
+        return true;
+      }
+      finally {
+        inputStream.close();
+      }
+    }
+    catch (Exception e) {
+      log.warn("ignoring unreadable scan cache: " + file.getAbsolutePath(), e);
+      return false;
+    }
+  }
+
+  private static MappedSetMultimap.StringTable readStringTable(final ByteBuffer buffer) {
+    final int count = buffer.getInt();
+    final int offsetsPosition = skipInts(buffer, count);
+    final int byteCount = buffer.getInt();
+    final int bytesPosition = buffer.position();
+    buffer.position(bytesPosition + byteCount);
+    return new MappedSetMultimap.StringTable(buffer, offsetsPosition, bytesPosition, count);
+  }
+
+  /**
+   * Skips over an array of ints, checking that it lies within the buffer.
+   *
+   * @return the position of the array.
+   */
+  private static int skipInts(final ByteBuffer buffer, final int count) {
+    final int position = buffer.position();
+    if (count < 0 || count > buffer.remaining() / 4) {
+      throw new IllegalStateException("truncated scan cache");
+    }
+    buffer.position(position + count * 4);
+    return position;
+  }
+}
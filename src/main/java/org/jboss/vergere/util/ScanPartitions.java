@@ -0,0 +1,117 @@
+package org.jboss.vergere.util;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Locates the cached scan partition of each classpath URL. Every URL is scanned into a partition of its own, which is
+ * kept in the <tt>scan</tt> directory of the application cache, tagged with the fingerprint of the URL's contents and
+ * the {@link ScanScope} it was scanned in. A partition is reused for as long as its tag matches, so only the
+ * directories and archives which changed are scanned again.
+ * <p/>
+ * Only <tt>file:</tt> and <tt>jar:file:</tt> URLs can be fingerprinted. Other URLs have no partition, and are scanned
+ * every time.
+ */
+final class ScanPartitions {
+  private static final String PARTITION_DIRECTORY = "scan";
+
+  private final File directory;
+  private final String scopeKey;
+  private final Map<String, String> entryDigests = new HashMap<String, String>();
+  private final Set<String> usedFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  ScanPartitions(final ScanScope scope) {
+    this.directory = VergereUtils.getCacheFile(PARTITION_DIRECTORY);
+    this.directory.mkdirs();
+    this.scopeKey = scope.getKey();
+
+    // the classpath fingerprint has already fingerprinted every entry of the system classpath.
+    for (final Map.Entry<String, String> entry : VergereUtils.getClasspathFingerprint().getEntryDigests().entrySet()) {
+      entryDigests.put(new File(entry.getKey()).getAbsolutePath(), entry.getValue());
+    }
+  }
+
+  /**
+   * Returns the file the partition of the specified URL is kept in.
+   */
+  File getFile(final URL url) {
+    final String fileName = digestOf(url.toExternalForm()) + ".idx";
+    usedFiles.add(fileName);
+    return new File(directory, fileName);
+  }
+
+  /**
+   * Returns the tag identifying the current contents of the specified URL, or null if the URL cannot be fingerprinted.
+   */
+  String getTag(final URL url) {
+    final File file = toFile(url);
+    if (file == null || !file.exists()) {
+      return null;
+    }
+
+    String digest = entryDigests.get(file.getAbsolutePath());
+    if (digest == null) {
+      digest = ClasspathFingerprint.computeEntry(file);
+    }
+    return digest + "|" + scopeKey;
+  }
+
+  /**
+   * Deletes the partitions which were not looked up through {@link #getFile(URL)}, as their URLs are no longer
+   * scanned.
+   */
+  void removeStalePartitions() {
+    final File[] files = directory.listFiles();
+    if (files == null) return;
+
+    for (final File file : files) {
+      if (!usedFiles.contains(file.getName())) {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the file or directory the specified URL refers to, or null if it does not refer to a local file.
+   */
+  static File toFile(final URL url) {
+    String path;
+    if ("file".equals(url.getProtocol())) {
+      path = url.getPath();
+    }
+    else if ("jar".equals(url.getProtocol()) && url.getPath().startsWith("file:")) {
+      path = url.getPath().substring("file:".length());
+      final int separator = path.indexOf("!/");
+      if (separator != -1) {
+        path = path.substring(0, separator);
+      }
+    }
+    else {
+      return null;
+    }
+
+    try {
+      return new File(URLDecoder.decode(path.replaceAll("\\+", "%2b"), "UTF-8"));
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static String digestOf(final String s) {
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return VergereUtils.hashToHexString(md.digest(s.getBytes("UTF-8")));
+    }
+    catch (Exception e) {
+      throw new RuntimeException("could not generate hash", e);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package org.jboss.vergere.util;
+
+import com.google.common.collect.Multimap;
+import org.jboss.errai.reflections.Store;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Information recorded by {@link ExtendedTypeAnnotationScanner} beyond what the Reflections store keeps: the bytecode
+ * digests of annotated types, the direct supertypes of every scanned type, and flags describing each scanned class.
+ * Once a scan is complete, the record is moved into indexes of the store, so it is persisted in the scan cache along
+ * with everything else.
+ */
+class ScanRecord {
+  /**
+   * The store index holding the bytecode digests of annotated types. Each value is a class name and its digest,
+   * keyed by annotation name.
+   */
+  static final String CLASS_DIGEST_INDEX = "ClassDigests";
+
+  /**
+   * The store index holding the direct subtypes of every scanned type, keyed by the supertype.
+   */
+  static final String SUBTYPE_INDEX = "DirectSubTypes";
+
+  /**
+   * The store index holding the {@link #FLAG_PUBLIC type flags} of every scanned class, keyed by class name.
+   */
+  static final String TYPE_FLAGS_INDEX = "TypeFlags";
+
+  /**
+   * The class is public.
+   */
+  static final int FLAG_PUBLIC = 1;
+
+  /**
+   * The class is neither an interface, an annotation, an enum, abstract nor synthetic.
+   */
+  static final int FLAG_CONCRETE = 2;
+
+  /**
+   * The class has a public constructor without parameters.
+   */
+  static final int FLAG_DEFAULT_CONSTRUCTOR = 4;
+
+  private final Map<String, Map<String, String>> annotatedClassDigests = new TreeMap<String, Map<String, String>>();
+  private final Map<String, Set<String>> directSubTypes = new TreeMap<String, Set<String>>();
+  private final Map<String, Integer> typeFlags = new TreeMap<String, Integer>();
+
+  /**
+   * Records the digest of a type carrying the specified annotation. The first digest recorded for a type wins, as
+   * with the type itself in a sequential scan.
+   */
+  synchronized void addAnnotatedClass(final String annotationType, final String className, final String digest) {
+    Map<String, String> classes = annotatedClassDigests.get(annotationType);
+    if (classes == null) {
+      annotatedClassDigests.put(annotationType, classes = new TreeMap<String, String>());
+    }
+    if (!classes.containsKey(className)) {
+      classes.put(className, digest);
+    }
+  }
+
+  synchronized void addSubType(final String superType, final String className) {
+    Set<String> subTypes = directSubTypes.get(superType);
+    if (subTypes == null) {
+      directSubTypes.put(superType, subTypes = new TreeSet<String>());
+    }
+    subTypes.add(className);
+  }
+
+  /**
+   * Records the flags of a class. The first flags recorded for a class win, as with its digest.
+   */
+  synchronized void addTypeFlags(final String className, final int flags) {
+    if (!typeFlags.containsKey(className)) {
+      typeFlags.put(className, flags);
+    }
+  }
+
+  /**
+   * Moves the record into the indexes of the specified store, and clears it.
+   */
+  synchronized void moveTo(final Store store) {
+    final Multimap<String, String> digestIndex = store.getOrCreate(CLASS_DIGEST_INDEX);
+    for (final Map.Entry<String, Map<String, String>> entry : annotatedClassDigests.entrySet()) {
+      for (final Map.Entry<String, String> classDigest : entry.getValue().entrySet()) {
+        digestIndex.put(entry.getKey(), classDigest.getKey() + '\t' + classDigest.getValue());
+      }
+    }
+
+    final Multimap<String, String> subTypeIndex = store.getOrCreate(SUBTYPE_INDEX);
+    for (final Map.Entry<String, Set<String>> entry : directSubTypes.entrySet()) {
+      subTypeIndex.putAll(entry.getKey(), entry.getValue());
+    }
+
+    final Multimap<String, String> flagsIndex = store.getOrCreate(TYPE_FLAGS_INDEX);
+    for (final Map.Entry<String, Integer> entry : typeFlags.entrySet()) {
+      flagsIndex.put(entry.getKey(), entry.getValue().toString());
+    }
+
+    annotatedClassDigests.clear();
+    directSubTypes.clear();
+    typeFlags.clear();
+  }
+}
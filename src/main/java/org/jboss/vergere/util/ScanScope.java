@@ -0,0 +1,249 @@
+package org.jboss.vergere.util;
+
+import com.google.common.base.Predicate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Restricts the classpath scan to the packages and archives which may contain beans. The scope is configured in the
+ * <tt>vergere.properties</tt> files that mark the classpath roots, and the settings of all of them are combined:
+ * <ul>
+ * <li><tt>vergere.scan.include</tt>: package globs to scan. If none are given, every package is scanned.</li>
+ * <li><tt>vergere.scan.exclude</tt>: package globs not to scan, taking precedence over the includes.</li>
+ * <li><tt>vergere.scan.excludeJars</tt>: file name globs of archives not to scan at all.</li>
+ * </ul>
+ * Globs are separated by whitespace or commas. In package globs, <tt>*</tt> matches within a single package name and
+ * <tt>**</tt> matches any number of nested packages, so <tt>com.google.**</tt> matches <tt>com.google</tt> and all of
+ * its subpackages. In archive globs, <tt>*</tt> matches any part of the file name, as in <tt>guava-*.jar</tt>.
+ * <p/>
+ * Excluded archives are dropped from the list of URLs before scanning, and excluded packages are filtered by path
+ * before any class file is opened. Resources other than class files are always scanned.
+ */
+public final class ScanScope {
+  public static final String INCLUDE_PROPERTY = "vergere.scan.include";
+  public static final String EXCLUDE_PROPERTY = "vergere.scan.exclude";
+  public static final String EXCLUDE_JARS_PROPERTY = "vergere.scan.excludeJars";
+
+  private static final ScanScope unrestricted
+      = new ScanScope(Collections.<String>emptySet(), Collections.<String>emptySet(), Collections.<String>emptySet());
+
+  private final String key;
+  private final List<Pattern> includes;
+  private final List<Pattern> excludes;
+  private final List<Pattern> excludedJars;
+
+  private final Predicate<String> inputsFilter = new Predicate<String>() {
+    @Override
+    public boolean apply(final String path) {
+      return !path.endsWith(".class") || isPackageInScope(packageOfPath(path));
+    }
+  };
+
+  ScanScope(final Set<String> includes, final Set<String> excludes, final Set<String> excludedJars) {
+    this.key = "include=" + includes + ";exclude=" + excludes + ";excludeJars=" + excludedJars;
+    this.includes = compilePackageGlobs(includes);
+    this.excludes = compilePackageGlobs(excludes);
+    this.excludedJars = compileFileGlobs(excludedJars);
+  }
+
+  /**
+   * Returns a scope which scans everything.
+   */
+  public static ScanScope unrestricted() {
+    return unrestricted;
+  }
+
+  /**
+   * Reads the scope from all <tt>vergere.properties</tt> files visible to the context class loader.
+   */
+  public static ScanScope load() {
+    final Set<String> includes = new LinkedHashSet<String>();
+    final Set<String> excludes = new LinkedHashSet<String>();
+    final Set<String> excludedJars = new LinkedHashSet<String>();
+
+    final ClassLoader loader = Thread.currentThread().getContextClassLoader() != null
+        ? Thread.currentThread().getContextClassLoader() : ScanScope.class.getClassLoader();
+
+    for (final String targetRoot : new String[]{"", "META-INF/"}) {
+      try {
+        final Enumeration<URL> configTargets = loader.getResources(targetRoot + MetaDataScanner.CLASSPATH_ANCHOR_FILE);
+        while (configTargets.hasMoreElements()) {
+          final Properties properties = new Properties();
+          final InputStream stream = configTargets.nextElement().openStream();
+          try {
+            properties.load(stream);
+          }
+          finally {
+            stream.close();
+          }
+
+          addGlobs(includes, properties.getProperty(INCLUDE_PROPERTY));
+          addGlobs(excludes, properties.getProperty(EXCLUDE_PROPERTY));
+          addGlobs(excludedJars, properties.getProperty(EXCLUDE_JARS_PROPERTY));
+        }
+      }
+      catch (IOException e) {
+        throw new RuntimeException("could not read scan scope configuration", e);
+      }
+    }
+
+    if (includes.isEmpty() && excludes.isEmpty() && excludedJars.isEmpty()) {
+      return unrestricted;
+    }
+    return new ScanScope(includes, excludes, excludedJars);
+  }
+
+  private static void addGlobs(final Set<String> globs, final String value) {
+    if (value == null) return;
+
+    for (final String glob : value.trim().split("[\\s,]+")) {
+      if (glob.length() != 0) {
+        globs.add(glob);
+      }
+    }
+  }
+
+  /**
+   * Returns a string which identifies the configuration of this scope, so results scanned in one scope are not
+   * mistaken for those of another.
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Returns the URLs which are not excluded archives, in their original order.
+   */
+  public List<URL> filterUrls(final List<URL> urls) {
+    if (excludedJars.isEmpty()) {
+      return urls;
+    }
+
+    final List<URL> result = new ArrayList<URL>(urls.size());
+    for (final URL url : urls) {
+      if (!isJarExcluded(url)) {
+        result.add(url);
+      }
+    }
+    return result;
+  }
+
+  private boolean isJarExcluded(final URL url) {
+    String path = url.getPath();
+    if (path.endsWith("!/")) {
+      path = path.substring(0, path.length() - 2);
+    }
+    if (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    return isArchiveExcluded(path.substring(path.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * Returns true if archives with the specified file name are not scanned.
+   */
+  boolean isArchiveExcluded(final String fileName) {
+    for (final Pattern pattern : excludedJars) {
+      if (pattern.matcher(fileName).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns a filter for the relative paths of scanned resources, which rejects the class files of packages out of
+   * scope.
+   */
+  public Predicate<String> getInputsFilter() {
+    return inputsFilter;
+  }
+
+  public boolean isPackageInScope(final String packageName) {
+    for (final Pattern pattern : excludes) {
+      if (pattern.matcher(packageName).matches()) {
+        return false;
+      }
+    }
+    if (includes.isEmpty()) {
+      return true;
+    }
+    for (final Pattern pattern : includes) {
+      if (pattern.matcher(packageName).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the package of the specified class is in scope.
+   */
+  public boolean isClassInScope(final String className) {
+    final int lastDot = className.lastIndexOf('.');
+    return isPackageInScope(lastDot == -1 ? "" : className.substring(0, lastDot));
+  }
+
+  private static String packageOfPath(final String path) {
+    final int lastSlash = path.lastIndexOf('/');
+    return lastSlash == -1 ? "" : path.substring(0, lastSlash).replace('/', '.');
+  }
+
+  private static List<Pattern> compilePackageGlobs(final Set<String> globs) {
+    final List<Pattern> patterns = new ArrayList<Pattern>(globs.size());
+    for (final String glob : globs) {
+      final StringBuilder regex = new StringBuilder();
+      for (int i = 0; i < glob.length(); i++) {
+        final char c = glob.charAt(i);
+        if (c == '.' && glob.startsWith(".**", i) && i + 3 == glob.length()) {
+          // a trailing ".**" also matches the package itself.
+          regex.append("(\\..*)?");
+          break;
+        }
+        else if (c == '*' && glob.startsWith("**", i)) {
+          regex.append(".*");
+          i++;
+        }
+        else if (c == '*') {
+          regex.append("[^.]*");
+        }
+        else {
+          regex.append(Pattern.quote(String.valueOf(c)));
+        }
+      }
+      patterns.add(Pattern.compile(regex.toString()));
+    }
+    return patterns;
+  }
+
+  private static List<Pattern> compileFileGlobs(final Set<String> globs) {
+    final List<Pattern> patterns = new ArrayList<Pattern>(globs.size());
+    for (final String glob : globs) {
+      final StringBuilder regex = new StringBuilder();
+      for (int i = 0; i < glob.length(); i++) {
+        final char c = glob.charAt(i);
+        if (c == '*') {
+          regex.append(".*");
+        }
+        else if (c == '?') {
+          regex.append('.');
+        }
+        else {
+          regex.append(Pattern.quote(String.valueOf(c)));
+        }
+      }
+      patterns.add(Pattern.compile(regex.toString()));
+    }
+    return patterns;
+  }
+}
@@ -0,0 +1,135 @@
+package org.jboss.vergere.util;
+
+import com.google.common.collect.Multimap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The transitive subtype relation of all scanned types. Every type is given an integer id, and the set of all
+ * subtypes of a type is kept as a bitset of ids. The closure of a type is computed the first time it is asked for,
+ * reusing the closures already computed for its subtypes, and is a constant-time lookup from then on.
+ * <p/>
+ * The index is immutable once built, and safe to query from multiple threads.
+ */
+final class SubtypeIndex {
+  private final Map<String, Integer> ids = new HashMap<String, Integer>();
+  private final List<String> names = new ArrayList<String>();
+  private final int[][] directSubTypes;
+
+  private final ConcurrentMap<Integer, BitSet> closures = new ConcurrentHashMap<Integer, BitSet>();
+
+  /**
+   * @param subTypeIndex
+   *     the direct subtypes of every type, keyed by the supertype.
+   */
+  SubtypeIndex(final Multimap<String, String> subTypeIndex) {
+    for (final Map.Entry<String, String> entry : subTypeIndex.entries()) {
+      idOf(entry.getKey());
+      idOf(entry.getValue());
+    }
+
+    directSubTypes = new int[names.size()][];
+    for (int id = 0; id < names.size(); id++) {
+      final Collection<String> subTypes = subTypeIndex.get(names.get(id));
+      final int[] subTypeIds = new int[subTypes.size()];
+
+      int i = 0;
+      for (final String subType : subTypes) {
+        subTypeIds[i++] = ids.get(subType);
+      }
+      directSubTypes[id] = subTypeIds;
+    }
+  }
+
+  private int idOf(final String name) {
+    Integer id = ids.get(name);
+    if (id == null) {
+      ids.put(name, id = names.size());
+      names.add(name);
+    }
+    return id;
+  }
+
+  /**
+   * Returns the names of all direct and indirect subtypes of the specified type.
+   */
+  Set<String> getSubTypesOf(final String type) {
+    final Integer id = ids.get(type);
+    if (id == null) {
+      return new LinkedHashSet<String>();
+    }
+    return toNames(closureOf(id));
+  }
+
+  /**
+   * Returns the names of the specified types, together with all of their direct and indirect subtypes.
+   */
+  Set<String> getTypesAndSubTypesOf(final Collection<String> types) {
+    final BitSet result = new BitSet(names.size());
+    final Set<String> unknown = new LinkedHashSet<String>();
+
+    for (final String type : types) {
+      final Integer id = ids.get(type);
+      if (id == null) {
+        unknown.add(type);
+      }
+      else {
+        result.set(id);
+        result.or(closureOf(id));
+      }
+    }
+
+    final Set<String> names = toNames(result);
+    names.addAll(unknown);
+    return names;
+  }
+
+  private BitSet closureOf(final int id) {
+    final BitSet known = closures.get(id);
+    if (known != null) {
+      return known;
+    }
+
+    final BitSet closure = new BitSet(names.size());
+    final List<Integer> stack = new ArrayList<Integer>();
+    for (final int subType : directSubTypes[id]) {
+      stack.add(subType);
+    }
+
+    while (!stack.isEmpty()) {
+      final int subType = stack.remove(stack.size() - 1);
+      if (closure.get(subType)) continue;
+      closure.set(subType);
+
+      final BitSet subTypeClosure = closures.get(subType);
+      if (subTypeClosure != null) {
+        closure.or(subTypeClosure);
+        continue;
+      }
+
+      for (final int next : directSubTypes[subType]) {
+        stack.add(next);
+      }
+    }
+
+    final BitSet previous = closures.putIfAbsent(id, closure);
+    return previous != null ? previous : closure;
+  }
+
+  private Set<String> toNames(final BitSet bits) {
+    final Set<String> result = new LinkedHashSet<String>(bits.cardinality() * 2);
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      result.add(names.get(i));
+    }
+    return result;
+  }
+}
@@ -20,27 +20,50 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * @author Mike Brock
  */
 public class ThreadUtil {
-  private static final ExecutorService executorService
-      = Executors.newCachedThreadPool();
+  private static ExecutorService executorService;
+
+  /**
+   * Returns the executor, creating a new one if it has been stopped, so the container can be bootstrapped again in
+   * the same JVM. The worker threads are daemon threads, so an executor which is not stopped does not keep the JVM
+   * alive.
+   */
+  private static synchronized ExecutorService getExecutor() {
+    if (executorService == null || executorService.isShutdown()) {
+      executorService = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+          final Thread thread = defaultFactory.newThread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executorService;
+  }
 
   public static void execute(final Runnable runnable) {
-    executorService.execute(runnable);
+    getExecutor().execute(runnable);
   }
 
   public static <T> Future<T> submit(final Callable<T> runnable) {
-    return executorService.submit(runnable);
+    return getExecutor().submit(runnable);
   }
 
   public static Future<?> submit(final Runnable runnable) {
-    return executorService.submit(runnable);
+    return getExecutor().submit(runnable);
   }
 
-  public static void stopExecutor() {
-    executorService.shutdown();
+  public static synchronized void stopExecutor() {
+    if (executorService != null) {
+      executorService.shutdown();
+    }
   }
 }
@@ -8,14 +8,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.nio.charset.Charset;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Mike Brock
@@ -41,39 +40,59 @@ public class VergereUtils {
     return _tempDirectory = file.getAbsolutePath();
   }
 
-  private static volatile String _classpathHashCache;
+  private static volatile ClasspathFingerprint _classpathFingerprint;
 
   public static String getClasspathHash() {
-    if (_hasClasspathChanged != null) {
-      return _classpathHashCache;
-    }
-
-    try {
-      final MessageDigest md = MessageDigest.getInstance("SHA-256");
-      final String classPath = System.getProperty("java.class.path");
+    return getClasspathFingerprint().getFingerprint();
+  }
 
-      md.update(hashSeed.getBytes());
+  /**
+   * Returns the fingerprint of the classpath, computing it on first use.
+   */
+  public static ClasspathFingerprint getClasspathFingerprint() {
+    if (_classpathFingerprint != null) {
+      return _classpathFingerprint;
+    }
 
-      final String[] split = classPath.split(System.getProperty("path.separator"));
+    synchronized (VergereUtils.class) {
+      if (_classpathFingerprint == null) {
+        _classpathFingerprint = computeClasspathFingerprint();
+      }
+      return _classpathFingerprint;
+    }
+  }
 
-      final List<String> sortList = new ArrayList<String>(Arrays.asList(split));
-      Collections.sort(sortList);
+  private static ClasspathFingerprint computeClasspathFingerprint() {
+    final String classPath = System.getProperty("java.class.path");
+    final List<String> sortList
+        = new ArrayList<String>(Arrays.asList(classPath.split(System.getProperty("path.separator"))));
+    Collections.sort(sortList);
 
-      for (final String p : sortList) {
-        _recurseDir(new File(p), new FileVisitor() {
-          @Override
-          public void visit(final File f) {
-            md.update(f.getName().getBytes());
-            md.update((byte) f.lastModified());
-            md.update((byte) f.length());
-          }
-        });
-      }
+    final long start = BootstrapReport.begin();
+    final ClasspathFingerprint fingerprint = ClasspathFingerprint.compute(hashSeed, sortList);
+    BootstrapReport.end(BootstrapReport.Phase.ClasspathHashing, start);
+    return fingerprint;
+  }
 
-      return _classpathHashCache = hashToHexString(md.digest());
+  /**
+   * Recomputes the classpath fingerprint, and forgets the changes detected against the previous one, so they are
+   * detected anew against the current classpath. If the fingerprint changed, the compiler session is discarded too, as
+   * the classes it has cached may be stale.
+   * <p/>
+   * The new fingerprint is computed before any state is replaced, and the fingerprint and the change state are then
+   * replaced together, so concurrent readers see either the previous or the current classpath.
+   */
+  public static void refreshClasspathFingerprint() {
+    final ClasspathFingerprint current = computeClasspathFingerprint();
+    final ClasspathFingerprint previous;
+    synchronized (VergereUtils.class) {
+      previous = _classpathFingerprint;
+      _classpathFingerprint = current;
+      _hasClasspathChanged = null;
+      _changeMapForAnnotationScope = new ConcurrentHashMap<Class<? extends Annotation>, Boolean>();
     }
-    catch (Exception e) {
-      throw new RuntimeException("failed to generate hash for classpath fingerprint", e);
+    if (previous == null || !previous.getFingerprint().equals(current.getFingerprint())) {
+      CompileUtil.resetCompilerSession();
     }
   }
 
@@ -104,11 +123,60 @@ public class VergereUtils {
   }
 
   private static boolean nocache = Boolean.getBoolean("vergere.nocache");
-  private static Boolean _hasClasspathChanged;
+  private static boolean inMemoryCompile = Boolean.getBoolean("vergere.inMemoryCompile");
+  private static boolean writeGeneratedSources = Boolean.getBoolean("vergere.writeGeneratedSources");
+  private static boolean interpretedBootstrap
+      = "interpreted".equalsIgnoreCase(System.getProperty("vergere.bootstrap.mode"));
+  private static boolean generatedBootstrap
+      = "generated".equalsIgnoreCase(System.getProperty("vergere.bootstrap.mode"));
+  private static boolean printBootstrapReport = Boolean.getBoolean("vergere.bootstrap.report");
+
+  /**
+   * Returns true if generated classes should be compiled and defined entirely in memory, without writing sources or
+   * class files to the application cache directory.
+   */
+  public static boolean isInMemoryCompile() {
+    return inMemoryCompile;
+  }
+
+  /**
+   * Returns true if generated sources should be written out to the application cache directory. When compiling in
+   * memory, the sources are only written out as a debugging aid if explicitly requested.
+   */
+  public static boolean isWriteGeneratedSources() {
+    return !inMemoryCompile || writeGeneratedSources;
+  }
+
+  /**
+   * Returns true if the container should be wired reflectively at runtime, rather than by generating and compiling
+   * a bootstrapper class. Enabled by setting <tt>vergere.bootstrap.mode=interpreted</tt>.
+   */
+  public static boolean isInterpretedBootstrap() {
+    return interpretedBootstrap;
+  }
+
+  /**
+   * Returns true if a bootstrapper precompiled at build time may be used, if one is found on the classpath. Setting
+   * <tt>vergere.bootstrap.mode=generated</tt> forces the bootstrapper to be generated at runtime instead.
+   */
+  public static boolean isPrecompiledBootstrapAllowed() {
+    return !interpretedBootstrap && !generatedBootstrap;
+  }
+
+  /**
+   * Returns true if the per-phase timings of each bootstrap should be printed to the console. Enabled by setting
+   * <tt>vergere.bootstrap.report=true</tt>; otherwise they are only logged at debug level.
+   */
+  public static boolean isPrintBootstrapReport() {
+    return printBootstrapReport;
+  }
+
+  private static volatile Boolean _hasClasspathChanged;
 
   public static boolean hasClasspathChanged() {
     if (nocache) return true;
-    if (_hasClasspathChanged != null) return _hasClasspathChanged;
+    final Boolean hasClasspathChanged = _hasClasspathChanged;
+    if (hasClasspathChanged != null) return hasClasspathChanged;
     final File hashFile = new File(getApplicationCacheDirectory().getAbsolutePath() + "/classpath.sha");
     final String hashValue = VergereUtils.getClasspathHash();
 
@@ -128,8 +196,8 @@ public class VergereUtils {
     return _hasClasspathChanged = false;
   }
 
-  private static Map<Class<? extends Annotation>, Boolean> _changeMapForAnnotationScope
-      = new HashMap<Class<? extends Annotation>, Boolean>();
+  private static volatile Map<Class<? extends Annotation>, Boolean> _changeMapForAnnotationScope
+      = new ConcurrentHashMap<Class<? extends Annotation>, Boolean>();
 
   public static boolean hasClasspathChangedForAnnotatedWith(final Set<Class<? extends Annotation>> annotations) {
     if (Boolean.getBoolean("vergere.forcecache")) return true;
@@ -147,7 +215,8 @@ public class VergereUtils {
 
   public static boolean hasClasspathChangedForAnnotatedWith(final Class<? extends Annotation> annoClass) {
     if (nocache) return true;
-    Boolean changed = _changeMapForAnnotationScope.get(annoClass);
+    final Map<Class<? extends Annotation>, Boolean> changeMap = _changeMapForAnnotationScope;
+    Boolean changed = changeMap.get(annoClass);
     if (changed == null) {
       final File hashFile = new File(getApplicationCacheDirectory().getAbsolutePath() + "/"
           + annoClass.getName().replaceAll("\\.", "_") + ".sha");
@@ -162,11 +231,11 @@ public class VergereUtils {
       else {
         final String fileHashValue = readFileToString(hashFile);
         if (fileHashValue.equals(hash)) {
-          _changeMapForAnnotationScope.put(annoClass, changed = Boolean.FALSE);
+          changeMap.put(annoClass, changed = Boolean.FALSE);
         }
         else {
           writeStringToFile(hashFile, hash);
-          _changeMapForAnnotationScope.put(annoClass, changed = Boolean.TRUE);
+          changeMap.put(annoClass, changed = Boolean.TRUE);
         }
       }
 
@@ -185,6 +254,22 @@ public class VergereUtils {
     }
   }
 
+  /**
+   * Replaces the target file with the specified file, which is typically a temporary file written next to it, so the
+   * target is never seen partially written.
+   *
+   * @return true if the file was replaced, or false if the target could not be replaced, for example because it is
+   *         still open or memory-mapped on Windows. The specified file is deleted in that case.
+   */
+  public static boolean replaceFile(final File file, final File target) {
+    // renameTo does not replace an existing file on every platform.
+    if (file.renameTo(target) || (target.delete() && file.renameTo(target))) {
+      return true;
+    }
+    file.delete();
+    return false;
+  }
+
   public static String readFileToString(final File file) {
     try {
       return Files.toString(file, Charset.forName("UTF-8"));
@@ -206,19 +291,4 @@ public class VergereUtils {
     }
     return sb.toString();
   }
-
-  private interface FileVisitor {
-    public void visit(File f);
-  }
-
-  private static void _recurseDir(final File f, final FileVisitor visitor) {
-    if (f.isDirectory()) {
-      for (final File file : f.listFiles()) {
-        _recurseDir(file, visitor);
-      }
-    }
-    else {
-      visitor.visit(f);
-    }
-  }
 }
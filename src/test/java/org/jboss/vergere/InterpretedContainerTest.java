@@ -0,0 +1,139 @@
+package org.jboss.vergere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.vergere.bootstrapper.InterpretedBootstrapper;
+import org.jboss.vergere.client.Container;
+import org.jboss.vergere.client.container.IOC;
+import org.jboss.vergere.client.container.IOCBeanDef;
+import org.jboss.vergere.client.container.IOCBeanManagerLifecycle;
+import org.jboss.vergere.res.Bar;
+import org.jboss.vergere.res.Foo;
+import org.jboss.vergere.res.GreetingService;
+import org.jboss.vergere.res.PlainGreeter;
+import org.jboss.vergere.res.PoliteGreeter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class InterpretedContainerTest {
+  @Before
+  public void setupContainer() {
+    bootstrapInterpreted();
+  }
+
+  private static void bootstrapInterpreted() {
+    new IOCBeanManagerLifecycle().resetBeanManager();
+    new InterpretedBootstrapper().bootstrapContainer().getRootContext().finish();
+  }
+
+  @Test
+  public void testSimpleBean() {
+    final Foo foo = IOC.getBeanManager().lookupBean(Foo.class).getInstance();
+    assertNotNull(foo);
+  }
+
+  @Test
+  public void testSingletonCycle() {
+    final Bar bar = IOC.getBeanManager().lookupBean(Bar.class).getInstance();
+    assertSame(bar, bar.getBar());
+  }
+
+  @Test
+  public void testSimpleBeanDestroy() {
+    final Foo foo = IOC.getBeanManager().lookupBean(Foo.class).getInstance();
+    IOC.getBeanManager().destroyBean(foo);
+  }
+
+  @Test
+  public void testScopes() {
+    assertNotSame(IOC.getBeanManager().lookupBean(Foo.class).getInstance(),
+        IOC.getBeanManager().lookupBean(Foo.class).getInstance());
+    assertSame(IOC.getBeanManager().lookupBean(Bar.class).getInstance(),
+        IOC.getBeanManager().lookupBean(Bar.class).getInstance());
+  }
+
+  @Test
+  public void testQualifiedInjection() {
+    final GreetingService service = IOC.getBeanManager().lookupBean(GreetingService.class).getInstance();
+    assertTrue(service.getGreeter() instanceof PlainGreeter);
+    assertTrue(service.getPoliteGreeter() instanceof PoliteGreeter);
+  }
+
+  @Test
+  public void testTopLevelProviderInjection() {
+    final GreetingService service = IOC.getBeanManager().lookupBean(GreetingService.class).getInstance();
+    assertNotNull(service.getClock());
+  }
+
+  @Test
+  public void testProviderInjection() {
+    final GreetingService service = IOC.getBeanManager().lookupBean(GreetingService.class).getInstance();
+    final Foo foo = service.getFooProvider().get();
+    assertNotNull(foo);
+    assertNotSame(foo, service.getFooProvider().get());
+  }
+
+  @Test
+  public void testPostConstruct() {
+    final GreetingService service = IOC.getBeanManager().lookupBean(GreetingService.class).getInstance();
+    assertTrue(service.isInitialized());
+  }
+
+  /**
+   * The interpreted container must declare the beans of the generated container, with the same qualifiers, names and
+   * scopes, and wire the test beans exactly as the generated container does.
+   */
+  @Test
+  public void testSameWiringAsGeneratedContainer() {
+    final List<String> interpretedBeans = describeBeans();
+    final List<String> interpreted = describeWiring();
+
+    new Container().bootstrapContainer();
+    final List<String> generatedBeans = describeBeans();
+    final List<String> generated = describeWiring();
+
+    bootstrapInterpreted();
+    assertEquals(generatedBeans, interpretedBeans);
+    assertEquals(generated, interpreted);
+  }
+
+  private static List<String> describeBeans() {
+    final List<String> beans = new ArrayList<String>();
+    for (final IOCBeanDef<Object> bean : IOC.getBeanManager().lookupBeans(Object.class)) {
+      final List<String> qualifiers = new ArrayList<String>();
+      for (final Annotation qualifier : bean.getQualifiers()) {
+        qualifiers.add(qualifier.annotationType().getName());
+      }
+      Collections.sort(qualifiers);
+
+      beans.add(bean.getType().getName() + " bean: " + bean.getBeanClass().getName()
+          + " scope: " + (bean.getScope() == null ? null : bean.getScope().getName())
+          + " qualifiers: " + qualifiers
+          + " name: " + bean.getName()
+          + " concrete: " + bean.isConcrete());
+    }
+    Collections.sort(beans);
+    return beans;
+  }
+
+  private static List<String> describeWiring() {
+    final List<String> wiring = new ArrayList<String>();
+
+    final GreetingService service = IOC.getBeanManager().lookupBean(GreetingService.class).getInstance();
+    wiring.add("greeter: " + service.getGreeter().getClass().getName());
+    wiring.add("politeGreeter: " + service.getPoliteGreeter().getClass().getName());
+    wiring.add("clock: " + service.getClock().getClass().getName());
+    wiring.add("fooProvider: " + service.getFooProvider().get().getClass().getName());
+    wiring.add("initialized: " + service.isInitialized());
+    return wiring;
+  }
+}
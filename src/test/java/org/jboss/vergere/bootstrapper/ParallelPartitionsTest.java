@@ -0,0 +1,62 @@
+package org.jboss.vergere.bootstrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.vergere.client.Bootstrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+public class ParallelPartitionsTest {
+  private static final String PACKAGE_NAME = Bootstrapper.class.getPackage().getName();
+  private static final String CLASS_NAME = "ParallelPartitionsTestBootstrapper";
+
+  @Before
+  public void splitIntoPartitionClasses() {
+    // one unit per partition class, so each independent partition of the test beans gets a class, and a thread.
+    System.setProperty(IOCBootstrapGenerator.PARTITION_CLASS_SIZE_PROPERTY, "1");
+    IOCBootstrapGenerator.clearCache();
+  }
+
+  @After
+  public void restoreDefaults() {
+    System.clearProperty(IOCBootstrapGenerator.PARTITION_CLASS_SIZE_PROPERTY);
+    System.clearProperty(IOCBootstrapGenerator.EXPERIMENTAL_PARALLEL_PARTITIONS);
+    IOCBootstrapGenerator.clearCache();
+  }
+
+  private static Map<String, String> generate(final boolean parallel) {
+    System.setProperty(IOCBootstrapGenerator.EXPERIMENTAL_PARALLEL_PARTITIONS, String.valueOf(parallel));
+    IOCBootstrapGenerator.clearCache();
+    return new IOCBootstrapGenerator().generateSources(PACKAGE_NAME, CLASS_NAME);
+  }
+
+  /**
+   * Generating the partition classes in parallel must give the same sources, byte for byte, as generating them one
+   * after the other.
+   */
+  @Test
+  public void testParallelSourcesAreSameAsSequential() {
+    final Map<String, String> sequential = generate(false);
+    assertTrue("expected the bootstrapper and at least two partition classes", sequential.size() > 2);
+
+    final Map<String, String> parallel = generate(true);
+    assertEquals(new ArrayList<String>(sequential.keySet()), new ArrayList<String>(parallel.keySet()));
+    for (final Map.Entry<String, String> entry : sequential.entrySet()) {
+      assertEquals(entry.getKey(), entry.getValue(), parallel.get(entry.getKey()));
+    }
+  }
+
+  /**
+   * Generating the same bootstrapper twice must give the same sources, as the names of the generated code start over
+   * for every bootstrapper.
+   */
+  @Test
+  public void testGeneratingAgainGivesSameSources() {
+    assertEquals(generate(false), generate(false));
+  }
+}
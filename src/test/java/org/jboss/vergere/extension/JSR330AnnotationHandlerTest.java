@@ -0,0 +1,140 @@
+package org.jboss.vergere.extension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import org.jboss.errai.codegen.builder.ClassStructureBuilder;
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.impl.build.BuildMetaClass;
+import org.jboss.errai.codegen.util.Implementations;
+import org.jboss.vergere.bootstrapper.IOCProcessingContext;
+import org.jboss.vergere.client.Bootstrapper;
+import org.jboss.vergere.client.BootstrapperInjectionContext;
+import org.jboss.vergere.graph.Dependency;
+import org.jboss.vergere.graph.GraphBuilder;
+import org.jboss.vergere.graph.GraphSort;
+import org.jboss.vergere.graph.SortUnit;
+import org.jboss.vergere.injector.api.InjectionContext;
+import org.jboss.vergere.injector.api.WiringElementType;
+import org.jboss.vergere.res.Clock;
+import org.jboss.vergere.res.Foo;
+import org.jboss.vergere.res.Greeter;
+import org.jboss.vergere.res.GreetingService;
+import org.jboss.vergere.res.PlainGreeter;
+import org.jboss.vergere.res.PoliteGreeter;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class JSR330AnnotationHandlerTest {
+  @Test
+  public void testInterfaceIsFilledInWithImplementations() {
+    assertEquals(ImmutableSet.of(MetaClassFactory.get(PlainGreeter.class), MetaClassFactory.get(PoliteGreeter.class)),
+        JSR330AnnotationHandler.fillInInterface(MetaClassFactory.get(Greeter.class)));
+  }
+
+  @Test
+  public void testClassIsNotFilledIn() {
+    assertTrue(JSR330AnnotationHandler.fillInInterface(MetaClassFactory.get(Foo.class)).isEmpty());
+  }
+
+  private static InjectionContext createInjectionContext() {
+    final ClassStructureBuilder<?> classStructureBuilder
+        = Implementations.implement(Bootstrapper.class, "org.jboss.vergere.extension", "EdgeTestBootstrapper");
+    final BuildMetaClass bootstrapClass = classStructureBuilder.getClassDefinition();
+
+    final IOCProcessingContext processingContext = IOCProcessingContext.Builder.create()
+        .blockBuilder(classStructureBuilder.publicMethod(BootstrapperInjectionContext.class, "bootstrapContainer"))
+        .context(bootstrapClass.getContext())
+        .bootstrapClassInstance(bootstrapClass)
+        .bootstrapBuilder(classStructureBuilder)
+        .build();
+
+    final InjectionContext injectionContext
+        = InjectionContext.Builder.create().processingContext(processingContext).build();
+    injectionContext.mapElementType(WiringElementType.InjectionPoint, Inject.class);
+    return injectionContext;
+  }
+
+  private static Set<MetaClass> getDependencyTypes(final List<SortUnit> graph, final MetaClass type) {
+    for (final SortUnit unit : graph) {
+      if (unit.getType().equals(type)) {
+        final Set<MetaClass> dependencies = new HashSet<MetaClass>();
+        for (final SortUnit dependency : unit.getDependencies()) {
+          dependencies.add(dependency.getType());
+        }
+        return dependencies;
+      }
+    }
+    throw new AssertionError("no sort unit for " + type.getFullyQualifiedName());
+  }
+
+  /**
+   * Each injection point of an interface type makes the interface depend on its public, named implementations, so
+   * the bean injecting it is sorted after them. An interface implemented only by an anonymous class gets no edges.
+   */
+  @Test
+  public void testInterfaceInjectionPointAddsEdgesToImplementations() {
+    final MetaClass service = MetaClassFactory.get(GreetingService.class);
+    final MetaClass greeter = MetaClassFactory.get(Greeter.class);
+    final MetaClass clock = MetaClassFactory.get(Clock.class);
+    final MetaClass plainGreeter = MetaClassFactory.get(PlainGreeter.class);
+    final MetaClass politeGreeter = MetaClassFactory.get(PoliteGreeter.class);
+
+    final InjectionContext injectionContext = createInjectionContext();
+    final GraphBuilder graphBuilder = injectionContext.getGraphBuilder();
+    final List<String> notified = new ArrayList<String>();
+
+    JSR330AnnotationHandler.processDependencies(new DependencyControl() {
+      @Override
+      public void masqueradeAs(final MetaClass clazz) {
+      }
+
+      @Override
+      public void notifyDependency(final MetaClass clazz) {
+        notified.add(clazz.getErased().getFullyQualifiedName());
+        graphBuilder.addDependency(service, Dependency.on(clazz));
+      }
+
+      @Override
+      public void notifyDependencies(final Collection<MetaClass> classes) {
+        for (final MetaClass clazz : classes) {
+          notifyDependency(clazz);
+        }
+      }
+    }, service, injectionContext);
+
+    Collections.sort(notified);
+    assertEquals(Arrays.asList(Provider.class.getName(), Clock.class.getName(), Greeter.class.getName(),
+        Greeter.class.getName()), notified);
+
+    assertEquals(2, graphBuilder.getDependencyCount(greeter));
+    assertEquals(0, graphBuilder.getDependencyCount(clock));
+
+    for (final MetaClass type : Arrays.asList(service, greeter, plainGreeter, politeGreeter)) {
+      graphBuilder.addItem(type, type);
+    }
+    final List<SortUnit> graph = graphBuilder.build();
+    assertEquals(ImmutableSet.of(plainGreeter, politeGreeter), getDependencyTypes(graph, greeter));
+    assertTrue(getDependencyTypes(graph, service).contains(greeter));
+
+    final List<String> order = new ArrayList<String>();
+    for (final SortUnit unit : GraphSort.sortGraph(graph)) {
+      order.add(unit.getType().getFullyQualifiedName());
+    }
+    final int serviceIndex = order.indexOf(GreetingService.class.getName());
+    assertTrue(order.indexOf(PlainGreeter.class.getName()) < serviceIndex);
+    assertTrue(order.indexOf(PoliteGreeter.class.getName()) < serviceIndex);
+    assertTrue(order.indexOf(Greeter.class.getName()) < serviceIndex);
+  }
+}
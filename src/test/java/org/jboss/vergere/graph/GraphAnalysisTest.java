@@ -0,0 +1,183 @@
+package org.jboss.vergere.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class GraphAnalysisTest {
+  static class A {}
+  static class B {}
+  static class C {}
+  static class D {}
+  static class E {}
+
+  private final GraphBuilder graphBuilder = new GraphBuilder();
+
+  private void edge(final Class<?> from, final Class<?> to) {
+    node(from);
+    node(to);
+    graphBuilder.addDependency(MetaClassFactory.get(from), Dependency.on(to));
+  }
+
+  private void node(final Class<?> type) {
+    final MetaClass metaClass = MetaClassFactory.get(type);
+    graphBuilder.addItem(metaClass, metaClass);
+  }
+
+  private GraphAnalysis analyze() {
+    return GraphAnalysis.analyze(graphBuilder.build());
+  }
+
+  private static SortUnit unitOf(final GraphAnalysis analysis, final Class<?> type) {
+    for (final SortUnit unit : analysis.getSortedUnits()) {
+      if (unit.getType().getFullyQualifiedName().equals(MetaClassFactory.get(type).getFullyQualifiedName())) {
+        return unit;
+      }
+    }
+    throw new AssertionError("no unit for " + type);
+  }
+
+  private static int positionOf(final List<SortUnit> sorted, final Class<?> type) {
+    for (int i = 0; i < sorted.size(); i++) {
+      if (sorted.get(i).getType().getFullyQualifiedName().equals(MetaClassFactory.get(type).getFullyQualifiedName())) {
+        return i;
+      }
+    }
+    throw new AssertionError("no unit for " + type);
+  }
+
+  /**
+   * Two paths to the same unit make a diamond, which is not a cycle: no unit is given a component of its own, and no
+   * unit reaches a cycle.
+   */
+  @Test
+  public void testDiamondIsNotACycle() {
+    edge(A.class, B.class);
+    edge(A.class, C.class);
+    edge(B.class, D.class);
+    edge(C.class, D.class);
+
+    final GraphAnalysis analysis = analyze();
+    assertEquals(4, analysis.getSortedUnits().size());
+    for (final SortUnit unit : analysis.getSortedUnits()) {
+      assertEquals(1, unit.getComponent().size());
+      assertFalse(unit.isCyclicGraph());
+    }
+  }
+
+  @Test
+  public void testDependenciesAreSortedFirst() {
+    edge(A.class, B.class);
+    edge(A.class, C.class);
+    edge(B.class, D.class);
+    edge(C.class, D.class);
+
+    final List<SortUnit> sorted = analyze().getSortedUnits();
+    assertTrue(positionOf(sorted, D.class) < positionOf(sorted, B.class));
+    assertTrue(positionOf(sorted, D.class) < positionOf(sorted, C.class));
+    assertTrue(positionOf(sorted, B.class) < positionOf(sorted, A.class));
+    assertTrue(positionOf(sorted, C.class) < positionOf(sorted, A.class));
+  }
+
+  @Test
+  public void testCycleIsOneComponent() {
+    edge(A.class, B.class);
+    edge(B.class, C.class);
+    edge(C.class, A.class);
+
+    final GraphAnalysis analysis = analyze();
+    final List<SortUnit> component = unitOf(analysis, A.class).getComponent();
+    assertEquals(3, component.size());
+    assertSame(component, unitOf(analysis, B.class).getComponent());
+    assertSame(component, unitOf(analysis, C.class).getComponent());
+    for (final SortUnit unit : analysis.getSortedUnits()) {
+      assertTrue(unit.isCyclicGraph());
+    }
+  }
+
+  @Test
+  public void testSelfDependencyIsACycle() {
+    edge(A.class, A.class);
+
+    final SortUnit unit = unitOf(analyze(), A.class);
+    assertEquals(1, unit.getComponent().size());
+    assertTrue(unit.isCyclicGraph());
+  }
+
+  /**
+   * A unit which depends on a cycle reaches a cycle, but is not part of it.
+   */
+  @Test
+  public void testUnitReachingCycleIsNotPartOfIt() {
+    edge(E.class, A.class);
+    edge(A.class, B.class);
+    edge(B.class, A.class);
+
+    final GraphAnalysis analysis = analyze();
+    final SortUnit unit = unitOf(analysis, E.class);
+    assertEquals(1, unit.getComponent().size());
+    assertTrue(unit.isCyclicGraph());
+    assertEquals(2, unitOf(analysis, A.class).getComponent().size());
+
+    final List<SortUnit> sorted = analysis.getSortedUnits();
+    assertTrue(positionOf(sorted, A.class) < positionOf(sorted, E.class));
+    assertTrue(positionOf(sorted, B.class) < positionOf(sorted, E.class));
+  }
+
+  @Test
+  public void testDepthIsLongestPathToLeaf() {
+    edge(A.class, B.class);
+    edge(B.class, C.class);
+    edge(A.class, C.class);
+
+    final GraphAnalysis analysis = analyze();
+    assertEquals(2, unitOf(analysis, A.class).getDepth());
+    assertEquals(1, unitOf(analysis, B.class).getDepth());
+    assertEquals(0, unitOf(analysis, C.class).getDepth());
+  }
+
+  @Test
+  public void testIndependentSubgraphsArePartitions() {
+    edge(A.class, B.class);
+    edge(C.class, D.class);
+    node(E.class);
+
+    final GraphAnalysis analysis = analyze();
+    final Set<List<SortUnit>> partitions = analysis.getPartitions();
+    assertEquals(3, partitions.size());
+
+    final Set<SortUnit> seen = new HashSet<SortUnit>();
+    final List<SortUnit> all = new ArrayList<SortUnit>();
+    for (final List<SortUnit> partition : partitions) {
+      for (final SortUnit unit : partition) {
+        assertTrue(seen.add(unit));
+      }
+      all.addAll(partition);
+    }
+    assertEquals(5, all.size());
+    assertTrue(positionOf(all, B.class) < positionOf(all, A.class));
+    assertTrue(positionOf(all, D.class) < positionOf(all, C.class));
+  }
+
+  @Test
+  public void testDiamondIsOnePartition() {
+    edge(A.class, B.class);
+    edge(A.class, C.class);
+    edge(B.class, D.class);
+    edge(C.class, D.class);
+
+    final Set<List<SortUnit>> partitions = analyze().getPartitions();
+    assertEquals(1, partitions.size());
+    assertEquals(4, partitions.iterator().next().size());
+  }
+}
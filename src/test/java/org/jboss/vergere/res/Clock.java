@@ -0,0 +1,8 @@
+package org.jboss.vergere.res;
+
+/**
+ * Not a bean itself: only available through {@link ClockProvider}.
+ */
+public interface Clock {
+  public long now();
+}
@@ -0,0 +1,20 @@
+package org.jboss.vergere.res;
+
+import org.jboss.vergere.client.api.IOCProvider;
+
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+@IOCProvider
+@Singleton
+public class ClockProvider implements Provider<Clock> {
+  @Override
+  public Clock get() {
+    return new Clock() {
+      @Override
+      public long now() {
+        return System.currentTimeMillis();
+      }
+    };
+  }
+}
@@ -0,0 +1,5 @@
+package org.jboss.vergere.res;
+
+public interface Greeter {
+  public String greet(String name);
+}
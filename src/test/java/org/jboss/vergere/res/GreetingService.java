@@ -0,0 +1,47 @@
+package org.jboss.vergere.res;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+@ApplicationScoped
+public class GreetingService {
+  private final Greeter greeter;
+
+  @Inject @Polite Greeter politeGreeter;
+  @Inject Provider<Foo> fooProvider;
+  @Inject Clock clock;
+
+  private boolean initialized;
+
+  @Inject
+  public GreetingService(@Plain final Greeter greeter) {
+    this.greeter = greeter;
+  }
+
+  @PostConstruct
+  private void init() {
+    initialized = true;
+  }
+
+  public Greeter getGreeter() {
+    return greeter;
+  }
+
+  public Greeter getPoliteGreeter() {
+    return politeGreeter;
+  }
+
+  public Provider<Foo> getFooProvider() {
+    return fooProvider;
+  }
+
+  public Clock getClock() {
+    return clock;
+  }
+
+  public boolean isInitialized() {
+    return initialized;
+  }
+}
@@ -0,0 +1,12 @@
+package org.jboss.vergere.res;
+
+import javax.enterprise.context.Dependent;
+
+@Plain
+@Dependent
+public class PlainGreeter implements Greeter {
+  @Override
+  public String greet(final String name) {
+    return "Hi " + name;
+  }
+}
@@ -0,0 +1,12 @@
+package org.jboss.vergere.res;
+
+import javax.enterprise.context.Dependent;
+
+@Polite
+@Dependent
+public class PoliteGreeter implements Greeter {
+  @Override
+  public String greet(final String name) {
+    return "Good day, " + name;
+  }
+}
@@ -0,0 +1,69 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+public class BatchCompileTest {
+  private static final String PACKAGE_NAME = "org.jboss.vergere.test";
+
+  private static String greetingSource(final String className, final String greeting) {
+    return "package " + PACKAGE_NAME + ";\n"
+        + "public class " + className + " implements java.util.concurrent.Callable<String> {\n"
+        + "  public String call() { return \"" + greeting + "\"; }\n"
+        + "}\n";
+  }
+
+  /**
+   * Sources compiled in one batch can reference each other, and are loaded by one class loader.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testBatchIsCompiledAndLoadedTogether() throws Exception {
+    final Map<String, String> sources = new LinkedHashMap<String, String>();
+    sources.put(PACKAGE_NAME + ".BatchGreeting", greetingSource("BatchGreeting", "hello"));
+    sources.put(PACKAGE_NAME + ".BatchGreeter", "package " + PACKAGE_NAME + ";\n"
+        + "public class BatchGreeter implements java.util.concurrent.Callable<String> {\n"
+        + "  public String call() { return new BatchGreeting().call() + \", world\"; }\n"
+        + "}\n");
+
+    final Map<String, byte[]> classDefinitions = CompileUtil.compileAll(sources);
+    assertNotNull(classDefinitions);
+
+    final Map<String, Class> classes = CompileUtil.defineClasses(classDefinitions, sources.keySet());
+    assertEquals(sources.keySet(), classes.keySet());
+
+    final Class<?> greeter = classes.get(PACKAGE_NAME + ".BatchGreeter");
+    final Class<?> greeting = classes.get(PACKAGE_NAME + ".BatchGreeting");
+    assertSame(greeter.getClassLoader(), greeting.getClassLoader());
+    assertEquals("hello, world", ((Callable<String>) greeter.newInstance()).call());
+  }
+
+  /**
+   * Independent sources are compiled in batches of their own, and give the same classes as a single batch.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testIndependentSourcesAreAllCompiled() throws Exception {
+    final Map<String, String> sources = new LinkedHashMap<String, String>();
+    for (int i = 0; i < 4; i++) {
+      sources.put(PACKAGE_NAME + ".IndependentGreeting" + i, greetingSource("IndependentGreeting" + i, "hello " + i));
+    }
+
+    final Map<String, byte[]> classDefinitions = CompileUtil.compileIndependently(sources);
+    assertNotNull(classDefinitions);
+    assertEquals(sources.keySet(), classDefinitions.keySet());
+
+    final Map<String, Class> classes = CompileUtil.defineClasses(classDefinitions, sources.keySet());
+    for (int i = 0; i < 4; i++) {
+      final Class<?> greeting = classes.get(PACKAGE_NAME + ".IndependentGreeting" + i);
+      assertEquals("hello " + i, ((Callable<String>) greeting.newInstance()).call());
+    }
+  }
+}
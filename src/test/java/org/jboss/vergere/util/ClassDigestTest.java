@@ -0,0 +1,119 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+
+public class ClassDigestTest {
+  private String previousCacheDir;
+  private File cacheDir;
+  private File classesDir;
+
+  @Before
+  public void createDirectories() {
+    previousCacheDir = System.getProperty("vergere.debugCacheDir");
+    cacheDir = Files.createTempDir();
+    classesDir = Files.createTempDir();
+    System.setProperty("vergere.debugCacheDir", cacheDir.getAbsolutePath());
+  }
+
+  @After
+  public void deleteDirectories() {
+    if (previousCacheDir == null) {
+      System.clearProperty("vergere.debugCacheDir");
+    }
+    else {
+      System.setProperty("vergere.debugCacheDir", previousCacheDir);
+    }
+    delete(cacheDir);
+    delete(classesDir);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Singleton
+  public static class DigestedSingleton {
+  }
+
+  @Named("digested")
+  public static class DigestedNamed {
+  }
+
+  /**
+   * Copies the class file of the specified class into the class directory scanned by the test.
+   */
+  private File copyClassFile(final Class<?> type) throws IOException {
+    final String path = type.getName().replace('.', '/') + ".class";
+    final File file = new File(classesDir, path);
+    file.getParentFile().mkdirs();
+    Files.write(Resources.toByteArray(type.getClassLoader().getResource(path)), file);
+    return file;
+  }
+
+  private MetaDataScanner scan() throws IOException {
+    final List<URL> urls = Collections.singletonList(classesDir.toURI().toURL());
+    return new MetaDataScanner(urls, null, ScanScope.unrestricted(), false);
+  }
+
+  private static String sha256(final byte[] bytes) throws Exception {
+    return VergereUtils.hashToHexString(MessageDigest.getInstance("SHA-256").digest(bytes));
+  }
+
+  /**
+   * The digest of an annotated class is taken over its class file as it was read, and is kept in the scan index
+   * keyed by the annotation.
+   */
+  @Test
+  public void testDigestIsTakenOverClassBytes() throws Exception {
+    final File classFile = copyClassFile(DigestedSingleton.class);
+
+    final MetaDataScanner scanner = scan();
+    final String digest = sha256(Files.toByteArray(classFile));
+    assertEquals(Collections.singleton(DigestedSingleton.class.getName() + '\t' + digest),
+        scanner.getStore().getOrCreate(ScanRecord.CLASS_DIGEST_INDEX).get(Singleton.class.getName()));
+  }
+
+  /**
+   * A change to the bytes of a class changes the hash of the types carrying its annotations, and of those only.
+   */
+  @Test
+  public void testChangedClassChangesOnlyTheHashOfItsAnnotations() throws Exception {
+    copyClassFile(DigestedSingleton.class);
+    final File namedFile = copyClassFile(DigestedNamed.class);
+
+    final MetaDataScanner before = scan();
+    final String singletonHash = before.getHashForTypesAnnotatedWith("seed", Singleton.class);
+    final String namedHash = before.getHashForTypesAnnotatedWith("seed", Named.class);
+    assertFalse(singletonHash.equals(namedHash));
+    assertEquals("0", before.getHashForTypesAnnotatedWith("seed", Deprecated.class));
+
+    // trailing bytes are not parsed, so the class still scans the same, but its class file has changed.
+    Files.append("changed", namedFile, Charset.forName("UTF-8"));
+    final MetaDataScanner after = scan();
+    assertEquals(singletonHash, after.getHashForTypesAnnotatedWith("seed", Singleton.class));
+    assertFalse(namedHash.equals(after.getHashForTypesAnnotatedWith("seed", Named.class)));
+  }
+}
@@ -0,0 +1,135 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+public class ClassFileDependenciesTest {
+  private static Set<String> referencedTypesOf(final Class<?> cls) throws IOException {
+    final InputStream stream = cls.getClassLoader().getResourceAsStream(cls.getName().replace('.', '/') + ".class");
+    try {
+      return ClassFileDependencies.getReferencedTypes(ClassFileDependencies.readFully(stream));
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @interface Note {
+    String value();
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    Class<?> type() default Object.class;
+  }
+
+  static class Generic<T extends Comparable<T> & Serializable> {
+    Map<String, List<Integer>> map;
+
+    <E extends Number> E first(final Collection<? extends E> values, final Callable<? super BigInteger> callable) {
+      return values.iterator().next();
+    }
+  }
+
+  static class Outer<T> {
+    class Inner {
+    }
+
+    Outer<BigDecimal>.Inner inner;
+  }
+
+  static class Constants {
+    long big() {
+      return 1234567890123L;
+    }
+
+    double huge() {
+      return 2.5e300;
+    }
+
+    String describe(final UUID uuid) {
+      return uuid.toString() + big() + huge();
+    }
+  }
+
+  @Note(value = "Ljava/util/concurrent/Future;", unit = TimeUnit.MINUTES, type = StringBuilder.class)
+  static class Annotated {
+    final String descriptorLike = "Ljava/util/concurrent/Executor;";
+  }
+
+  @Test
+  public void testGenericSignatures() throws IOException {
+    final Set<String> types = referencedTypesOf(Generic.class);
+    assertTrue(types.contains("java.util.Map"));
+    assertTrue(types.contains("java.lang.String"));
+    assertTrue(types.contains("java.util.List"));
+    assertTrue(types.contains("java.lang.Integer"));
+    assertTrue(types.contains("java.lang.Comparable"));
+    assertTrue(types.contains("java.io.Serializable"));
+    assertTrue(types.contains("java.lang.Number"));
+    assertTrue(types.contains("java.util.Collection"));
+    assertTrue(types.contains("java.math.BigInteger"));
+    assertTrue(types.contains("java.util.concurrent.Callable"));
+  }
+
+  @Test
+  public void testInnerClasses() throws IOException {
+    final Set<String> types = referencedTypesOf(Outer.class);
+    final String inner = Outer.class.getName() + "$Inner";
+    assertTrue(types.contains(inner));
+    assertTrue(types.contains(inner.replace('$', '.')));
+    assertTrue(types.contains("java.math.BigDecimal"));
+  }
+
+  /**
+   * Long and double constants take up two constant pool entries each, so the entries after them must keep their
+   * indices.
+   */
+  @Test
+  public void testLongAndDoubleConstants() throws IOException {
+    final Set<String> types = referencedTypesOf(Constants.class);
+    assertTrue(types.contains("java.util.UUID"));
+    assertTrue(types.contains("java.lang.StringBuilder") || types.contains("java.lang.invoke.StringConcatFactory"));
+    assertTrue(types.contains(Constants.class.getName()));
+  }
+
+  @Test
+  public void testAnnotations() throws IOException {
+    final Set<String> types = referencedTypesOf(Annotated.class);
+    assertTrue(types.contains(Note.class.getName()));
+    assertTrue(types.contains("java.util.concurrent.TimeUnit"));
+    assertTrue(types.contains("java.lang.StringBuilder"));
+  }
+
+  /**
+   * Strings which start like descriptors are constants, not descriptors.
+   */
+  @Test
+  public void testStringsAreNotDescriptors() throws IOException {
+    final Set<String> types = referencedTypesOf(Annotated.class);
+    assertFalse(types.contains("java.util.concurrent.Future"));
+    assertFalse(types.contains("java.util.concurrent.Executor"));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testNotAClassFile() {
+    ClassFileDependencies.getReferencedTypes(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+  }
+}
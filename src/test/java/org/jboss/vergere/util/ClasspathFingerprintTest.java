@@ -0,0 +1,134 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class ClasspathFingerprintTest {
+  private static final long MODIFIED = 1300000000000L;
+
+  private File root;
+
+  @Before
+  public void createRoot() {
+    root = Files.createTempDir();
+  }
+
+  @After
+  public void deleteRoot() {
+    delete(root);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static File write(final File file, final String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(content.getBytes("UTF-8"), file);
+    assertTrue(file.setLastModified(MODIFIED));
+    return file;
+  }
+
+  /**
+   * Creates a class directory with enough packages to be split into subtrees which are walked in parallel.
+   */
+  private static File classDirectory(final File parent, final String name) throws IOException {
+    final File directory = new File(parent, name);
+    for (int i = 0; i < 80; i++) {
+      write(new File(directory, "org/example/p" + i + "/Bean.class"), "bean " + i);
+      write(new File(directory, "org/example/p" + i + "/sub/Other.class"), "other " + i);
+    }
+    write(new File(directory, "Top.class"), "top");
+    return directory;
+  }
+
+  private static List<String> entries(final File... files) {
+    final String[] paths = new String[files.length];
+    for (int i = 0; i < files.length; i++) {
+      paths[i] = files[i].getPath();
+    }
+    return Arrays.asList(paths);
+  }
+
+  @Test
+  public void testUnchangedClasspathHasSameFingerprint() throws IOException {
+    final File classes = classDirectory(root, "classes");
+    final File jar = write(new File(root, "lib.jar"), "jar");
+
+    final ClasspathFingerprint first = ClasspathFingerprint.compute("seed", entries(classes, jar));
+    final ClasspathFingerprint second = ClasspathFingerprint.compute("seed", entries(classes, jar));
+    assertEquals(first.getFingerprint(), second.getFingerprint());
+    assertEquals(first.getEntryDigests(), second.getEntryDigests());
+
+    assertFalse(first.getFingerprint().equals(ClasspathFingerprint.compute("other", entries(classes, jar))
+        .getFingerprint()));
+  }
+
+  /**
+   * A directory is fingerprinted by the paths, sizes and modification times of its files relative to the directory,
+   * however it is split into subtrees.
+   */
+  @Test
+  public void testDirectoryDigestIsRelativeToTheDirectory() throws IOException {
+    final File classes = classDirectory(root, "classes");
+    final File copy = classDirectory(root, "copy");
+
+    assertEquals(ClasspathFingerprint.computeEntry(classes), ClasspathFingerprint.computeEntry(copy));
+    assertEquals(ClasspathFingerprint.computeEntry(classes),
+        ClasspathFingerprint.compute("seed", entries(classes)).getEntryDigests().get(classes.getPath()));
+  }
+
+  /**
+   * A change to a single file deep in a directory changes the digest of that entry only. The time and the size of a
+   * file are hashed in full, so changes which would collide in their lowest byte are told apart.
+   */
+  @Test
+  public void testChangedFileChangesOnlyItsEntry() throws IOException {
+    final File classes = classDirectory(root, "classes");
+    final File jar = write(new File(root, "lib.jar"), "jar");
+    final ClasspathFingerprint before = ClasspathFingerprint.compute("seed", entries(classes, jar));
+
+    final File changed = new File(classes, "org/example/p42/sub/Other.class");
+    assertTrue(changed.setLastModified(MODIFIED + 256000L));
+    final ClasspathFingerprint after = ClasspathFingerprint.compute("seed", entries(classes, jar));
+
+    assertFalse(before.getFingerprint().equals(after.getFingerprint()));
+    assertFalse(before.getEntryDigests().get(classes.getPath()).equals(after.getEntryDigests().get(classes.getPath())));
+    assertEquals(before.getEntryDigests().get(jar.getPath()), after.getEntryDigests().get(jar.getPath()));
+
+    write(changed, "other 42" + new String(new char[256]).replace('\0', ' '));
+    assertFalse(before.getEntryDigests().get(classes.getPath()).equals(ClasspathFingerprint.computeEntry(classes)));
+  }
+
+  /**
+   * A jar is fingerprinted with a single stat: its size and modification time.
+   */
+  @Test
+  public void testJarIsFingerprintedByItsStat() throws IOException {
+    final File jar = write(new File(root, "lib.jar"), "jar");
+    final String digest = ClasspathFingerprint.computeEntry(jar);
+
+    write(jar, "JAR");
+    assertEquals(digest, ClasspathFingerprint.computeEntry(jar));
+
+    assertTrue(jar.setLastModified(MODIFIED + 1000L));
+    assertFalse(digest.equals(ClasspathFingerprint.computeEntry(jar)));
+  }
+}
@@ -0,0 +1,124 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+public class ClasspathRescanTest {
+  private static final long MODIFIED = 1300000000000L;
+
+  @Singleton
+  public static class FirstSingleton {
+  }
+
+  @Singleton
+  public static class SecondSingleton {
+  }
+
+  @Singleton
+  public static class AddedSingleton {
+  }
+
+  private String previousCacheDir;
+  private File cacheDir;
+  private File firstDir;
+  private File secondDir;
+
+  @Before
+  public void createDirectories() throws IOException {
+    previousCacheDir = System.getProperty("vergere.debugCacheDir");
+    cacheDir = Files.createTempDir();
+    firstDir = Files.createTempDir();
+    secondDir = Files.createTempDir();
+    System.setProperty("vergere.debugCacheDir", cacheDir.getAbsolutePath());
+
+    copyClassFile(FirstSingleton.class, firstDir);
+    copyClassFile(SecondSingleton.class, secondDir);
+  }
+
+  @After
+  public void deleteDirectories() {
+    if (previousCacheDir == null) {
+      System.clearProperty("vergere.debugCacheDir");
+    }
+    else {
+      System.setProperty("vergere.debugCacheDir", previousCacheDir);
+    }
+    delete(cacheDir);
+    delete(firstDir);
+    delete(secondDir);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static void copyClassFile(final Class<?> type, final File directory) throws IOException {
+    final String path = type.getName().replace('.', '/') + ".class";
+    final File file = new File(directory, path);
+    file.getParentFile().mkdirs();
+    Files.write(Resources.toByteArray(type.getClassLoader().getResource(path)), file);
+  }
+
+  private List<URL> urls() throws IOException {
+    return Arrays.asList(firstDir.toURI().toURL(), secondDir.toURI().toURL());
+  }
+
+  private MetaDataScanner scan() throws IOException {
+    return new MetaDataScanner(urls(), null, ScanScope.unrestricted(), false);
+  }
+
+  @Test
+  public void testWatcherDetectsChangedDirectory() throws IOException {
+    final ClasspathWatcher watcher = new ClasspathWatcher(urls());
+    assertTrue(watcher.updateFingerprints());
+    assertFalse(watcher.updateFingerprints());
+
+    copyClassFile(AddedSingleton.class, secondDir);
+    assertTrue(watcher.updateFingerprints());
+    assertFalse(watcher.updateFingerprints());
+  }
+
+  /**
+   * A rescan reads the directories which have not changed from their cached partitions, and scans only the changed
+   * directories again.
+   */
+  @Test
+  public void testRescanScansOnlyChangedDirectories() throws IOException {
+    assertEquals(ImmutableSet.of(FirstSingleton.class.getName(), SecondSingleton.class.getName()),
+        scan().getTypeNamesAnnotatedWith(Singleton.class));
+
+    final ScanPartitions partitions = new ScanPartitions(ScanScope.unrestricted());
+    final File firstPartition = partitions.getFile(firstDir.toURI().toURL());
+    final File secondPartition = partitions.getFile(secondDir.toURI().toURL());
+    assertTrue(firstPartition.setLastModified(MODIFIED));
+    assertTrue(secondPartition.setLastModified(MODIFIED));
+
+    copyClassFile(AddedSingleton.class, secondDir);
+    assertEquals(ImmutableSet.of(FirstSingleton.class.getName(), SecondSingleton.class.getName(),
+        AddedSingleton.class.getName()), scan().getTypeNamesAnnotatedWith(Singleton.class));
+
+    assertEquals(MODIFIED, firstPartition.lastModified());
+    assertFalse(secondPartition.lastModified() == MODIFIED);
+  }
+}
@@ -0,0 +1,245 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.DiagnosticListener;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public class CompilerSessionTest {
+  private static final String CLASS_PATH = new File(Strings.class.getProtectionDomain().getCodeSource().getLocation()
+      .getPath()).getAbsolutePath();
+
+  @After
+  public void closeSession() {
+    CompilerSession.resetSession();
+  }
+
+  private static String unit(final String className) {
+    return "package org.jboss.vergere.test;\n"
+        + "public class " + className + " {\n"
+        + "  public String value() { return com.google.common.base.Strings.nullToEmpty(null); }\n"
+        + "}\n";
+  }
+
+  /**
+   * The second unit compiled in a session must be compiled against the classpath listed and read by the first one:
+   * the packages of the classpath are listed from the disk only once.
+   */
+  @Test
+  public void testSecondCompileReusesCachedClasspath() {
+    final CountingCompiler compiler = new CountingCompiler(ToolProvider.getSystemJavaCompiler());
+    final CompilerSession session = CompilerSession.getSession(compiler, CLASS_PATH);
+
+    final Map<String, byte[]> first = session.compile(ImmutableMap.of("org.jboss.vergere.test.First", unit("First")));
+    assertNotNull(first);
+    assertTrue(first.containsKey("org.jboss.vergere.test.First"));
+
+    final int listed = compiler.getClassListings("com.google.common.base");
+    assertEquals(1, listed);
+    final int read = compiler.getClassReads();
+    assertTrue(read > 0);
+
+    assertSame(session, CompilerSession.getSession(compiler, CLASS_PATH));
+    final Map<String, byte[]> second
+        = session.compile(ImmutableMap.of("org.jboss.vergere.test.Second", unit("Second")));
+    assertNotNull(second);
+    assertTrue(second.containsKey("org.jboss.vergere.test.Second"));
+
+    assertEquals(listed, compiler.getClassListings("com.google.common.base"));
+    assertEquals(read, compiler.getClassReads());
+  }
+
+  @Test
+  public void testDifferentClasspathReplacesSession() {
+    final CountingCompiler compiler = new CountingCompiler(ToolProvider.getSystemJavaCompiler());
+    final CompilerSession session = CompilerSession.getSession(compiler, CLASS_PATH);
+    final CompilerSession other = CompilerSession.getSession(compiler, CLASS_PATH + File.pathSeparator + ".");
+
+    assertTrue(session != other);
+    assertEquals(CLASS_PATH + File.pathSeparator + ".", other.getClassPath());
+  }
+
+  /**
+   * A compiler which counts the class files its file manager lists and reads from the classpath.
+   */
+  private static class CountingCompiler implements JavaCompiler {
+    private final JavaCompiler compiler;
+    private final Map<String, Integer> classListings = new HashMap<String, Integer>();
+    private int classReads;
+
+    private CountingCompiler(final JavaCompiler compiler) {
+      this.compiler = compiler;
+    }
+
+    private synchronized int getClassListings(final String packageName) {
+      final Integer count = classListings.get(packageName);
+      return count == null ? 0 : count;
+    }
+
+    private synchronized int getClassReads() {
+      return classReads;
+    }
+
+    private synchronized void listed(final String packageName) {
+      classListings.put(packageName, getClassListings(packageName) + 1);
+    }
+
+    private synchronized void read() {
+      classReads++;
+    }
+
+    @Override
+    public CompilationTask getTask(final Writer out,
+                                   final JavaFileManager fileManager,
+                                   final DiagnosticListener<? super JavaFileObject> diagnosticListener,
+                                   final Iterable<String> options,
+                                   final Iterable<String> classes,
+                                   final Iterable<? extends JavaFileObject> compilationUnits) {
+      return compiler.getTask(out, fileManager, diagnosticListener, options, classes, compilationUnits);
+    }
+
+    @Override
+    public StandardJavaFileManager getStandardFileManager(final DiagnosticListener<? super JavaFileObject> listener,
+                                                          final Locale locale,
+                                                          final Charset charset) {
+      return new CountingFileManager(compiler.getStandardFileManager(listener, locale, charset));
+    }
+
+    @Override
+    public int isSupportedOption(final String option) {
+      return compiler.isSupportedOption(option);
+    }
+
+    @Override
+    public int run(final InputStream in, final OutputStream out, final OutputStream err, final String... arguments) {
+      return compiler.run(in, out, err, arguments);
+    }
+
+    @Override
+    public Set<SourceVersion> getSourceVersions() {
+      return compiler.getSourceVersions();
+    }
+
+    private class CountingFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+        implements StandardJavaFileManager {
+
+      private CountingFileManager(final StandardJavaFileManager fileManager) {
+        super(fileManager);
+      }
+
+      @Override
+      public Iterable<JavaFileObject> list(final Location location,
+                                           final String packageName,
+                                           final Set<JavaFileObject.Kind> kinds,
+                                           final boolean recurse) throws IOException {
+        final Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+        if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS)) {
+          return files;
+        }
+
+        listed(packageName);
+        return new Iterable<JavaFileObject>() {
+          @Override
+          public Iterator<JavaFileObject> iterator() {
+            final Iterator<JavaFileObject> iterator = files.iterator();
+            return new Iterator<JavaFileObject>() {
+              @Override
+              public boolean hasNext() {
+                return iterator.hasNext();
+              }
+
+              @Override
+              public JavaFileObject next() {
+                return new CountingFileObject(iterator.next());
+              }
+
+              @Override
+              public void remove() {
+                throw new UnsupportedOperationException();
+              }
+            };
+          }
+        };
+      }
+
+      @Override
+      public String inferBinaryName(final Location location, final JavaFileObject file) {
+        return super.inferBinaryName(location, file instanceof CountingFileObject
+            ? ((CountingFileObject) file).getDelegate() : file);
+      }
+
+      @Override
+      public Iterable<? extends JavaFileObject> getJavaFileObjectsFromFiles(final Iterable<? extends File> files) {
+        return fileManager.getJavaFileObjectsFromFiles(files);
+      }
+
+      @Override
+      public Iterable<? extends JavaFileObject> getJavaFileObjects(final File... files) {
+        return fileManager.getJavaFileObjects(files);
+      }
+
+      @Override
+      public Iterable<? extends JavaFileObject> getJavaFileObjectsFromStrings(final Iterable<String> names) {
+        return fileManager.getJavaFileObjectsFromStrings(names);
+      }
+
+      @Override
+      public Iterable<? extends JavaFileObject> getJavaFileObjects(final String... names) {
+        return fileManager.getJavaFileObjects(names);
+      }
+
+      @Override
+      public void setLocation(final Location location, final Iterable<? extends File> path) throws IOException {
+        fileManager.setLocation(location, path);
+      }
+
+      @Override
+      public Iterable<? extends File> getLocation(final Location location) {
+        return fileManager.getLocation(location);
+      }
+    }
+
+    private class CountingFileObject extends ForwardingJavaFileObject<JavaFileObject> {
+      private CountingFileObject(final JavaFileObject fileObject) {
+        super(fileObject);
+      }
+
+      private JavaFileObject getDelegate() {
+        return fileObject;
+      }
+
+      @Override
+      public InputStream openInputStream() throws IOException {
+        read();
+        return super.openInputStream();
+      }
+    }
+  }
+}
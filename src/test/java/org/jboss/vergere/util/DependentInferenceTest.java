@@ -0,0 +1,138 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DependentInferenceTest {
+  public static class UnscopedBean {
+  }
+
+  @Singleton
+  public static class SingletonBean {
+  }
+
+  @ApplicationScoped
+  public static class ApplicationScopedBean {
+  }
+
+  public abstract static class AbstractBean {
+  }
+
+  public interface InterfaceBean {
+  }
+
+  static class NonPublicBean {
+  }
+
+  public static class BeanWithoutDefaultConstructor {
+    public BeanWithoutDefaultConstructor(final String name) {
+    }
+  }
+
+  public static class BeanWithPrivateConstructor {
+    private BeanWithPrivateConstructor() {
+    }
+  }
+
+  private static final List<Class<?>> SCANNED = Arrays.<Class<?>>asList(UnscopedBean.class, SingletonBean.class,
+      ApplicationScopedBean.class, AbstractBean.class, InterfaceBean.class, NonPublicBean.class,
+      BeanWithoutDefaultConstructor.class, BeanWithPrivateConstructor.class);
+
+  private String previousCacheDir;
+  private File cacheDir;
+  private File classesDir;
+  private MetaDataScanner scanner;
+
+  @Before
+  public void scanClasses() throws IOException {
+    previousCacheDir = System.getProperty("vergere.debugCacheDir");
+    cacheDir = Files.createTempDir();
+    classesDir = Files.createTempDir();
+    System.setProperty("vergere.debugCacheDir", cacheDir.getAbsolutePath());
+
+    for (final Class<?> type : SCANNED) {
+      copyClassFile(type);
+    }
+
+    final List<URL> urls = Collections.singletonList(classesDir.toURI().toURL());
+    scanner = new MetaDataScanner(urls, null, ScanScope.unrestricted(), false);
+  }
+
+  @After
+  public void deleteDirectories() {
+    if (previousCacheDir == null) {
+      System.clearProperty("vergere.debugCacheDir");
+    }
+    else {
+      System.setProperty("vergere.debugCacheDir", previousCacheDir);
+    }
+    delete(cacheDir);
+    delete(classesDir);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private void copyClassFile(final Class<?> type) throws IOException {
+    final String path = type.getName().replace('.', '/') + ".class";
+    final File file = new File(classesDir, path);
+    file.getParentFile().mkdirs();
+    Files.write(Resources.toByteArray(type.getClassLoader().getResource(path)), file);
+  }
+
+  private static List<String> namesOf(final List<Class<?>> types) {
+    final List<String> names = new ArrayList<String>();
+    for (final Class<?> type : types) {
+      names.add(type.getName());
+    }
+    return names;
+  }
+
+  /**
+   * Only public, concrete, unscoped classes with a public default constructor are inferred to be dependent. Types
+   * which were not scanned are never inferred.
+   */
+  @Test
+  public void testOnlyUnscopedConcreteTypesAreCandidates() {
+    final List<String> typeNames = namesOf(SCANNED);
+    typeNames.add("org.example.Unscanned");
+
+    assertEquals(Collections.singleton(UnscopedBean.class.getName()), scanner.getDependentCandidateNames(typeNames));
+  }
+
+  /**
+   * Large sets of types are split across threads, with the same result.
+   */
+  @Test
+  public void testLargeSetsOfTypesAreCheckedInParallel() {
+    final List<String> typeNames = new ArrayList<String>();
+    for (int i = 0; i < 4096; i++) {
+      typeNames.add("org.example.Unscanned" + i);
+    }
+    typeNames.addAll(namesOf(SCANNED));
+
+    assertEquals(Collections.singleton(UnscopedBean.class.getName()), scanner.getDependentCandidateNames(typeNames));
+  }
+}
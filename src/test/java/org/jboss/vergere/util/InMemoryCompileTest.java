@@ -0,0 +1,58 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+public class InMemoryCompileTest {
+  private static final String CLASS_NAME = "org.jboss.vergere.test.InMemoryGreeting";
+
+  private static final String SOURCE = "package org.jboss.vergere.test;\n"
+      + "import java.util.concurrent.Callable;\n"
+      + "public class InMemoryGreeting implements Callable<String> {\n"
+      + "  private final Callable<String> greeting = new Callable<String>() {\n"
+      + "    public String call() { return new Holder().greeting; }\n"
+      + "  };\n"
+      + "  public String call() throws Exception { return greeting.call(); }\n"
+      + "  static class Holder { final String greeting = \"hello\"; }\n"
+      + "}\n";
+
+  /**
+   * A class compiled in memory is defined with its inner classes straight from the compiled bytes, without writing
+   * a class file.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCompileAndDefineInMemory() throws Exception {
+    final Map<String, byte[]> classDefinitions = CompileUtil.compileAll(ImmutableMap.of(CLASS_NAME, SOURCE));
+    assertNotNull(classDefinitions);
+    assertTrue(classDefinitions.containsKey(CLASS_NAME));
+    assertTrue(classDefinitions.containsKey(CLASS_NAME + "$1"));
+    assertTrue(classDefinitions.containsKey(CLASS_NAME + "$Holder"));
+
+    final Map<String, Class> classes = CompileUtil.defineClasses(classDefinitions, Collections.singleton(CLASS_NAME));
+    final Class<?> greetingClass = classes.get(CLASS_NAME);
+    assertEquals(CLASS_NAME, greetingClass.getName());
+    assertEquals("hello", ((Callable<String>) greetingClass.newInstance()).call());
+
+    final String classFile = CLASS_NAME.replace('.', File.separatorChar) + ".class";
+    assertFalse(new File(VergereUtils.getApplicationCacheDirectory(), "generated/" + classFile).exists());
+    assertFalse(new File(VergereUtils.getTempDirectory(), classFile).exists());
+  }
+
+  @Test
+  public void testFailedCompileReturnsNull() {
+    assertNull(CompileUtil.compileAll(ImmutableMap.of(CLASS_NAME, "package org.jboss.vergere.test;\n"
+        + "public class InMemoryGreeting { NoSuchType field; }\n")));
+  }
+}
@@ -0,0 +1,104 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.codegen.meta.MetaParameter;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Collection;
+import java.util.Collections;
+
+public class MemberAnnotationIndexTest {
+  public static class IndexedBean {
+    @Inject
+    private Object injectedField;
+
+    @Inject
+    public void setInjected(@Named("indexed") final Object value) {
+    }
+  }
+
+  public static class LaterIndexedBean {
+    @Inject
+    private Object laterInjectedField;
+
+    @Inject
+    public void setLaterInjected(@Named("laterIndexed") final Object value) {
+    }
+  }
+
+  private static boolean containsMethod(final Collection<MetaMethod> methods, final String name) {
+    for (final MetaMethod method : methods) {
+      if (method.getName().equals(name)) return true;
+    }
+    return false;
+  }
+
+  private static boolean containsField(final Collection<MetaField> fields, final String name) {
+    for (final MetaField field : fields) {
+      if (field.getName().equals(name)) return true;
+    }
+    return false;
+  }
+
+  private static boolean containsParameterOf(final Collection<MetaParameter> parameters, final String methodName) {
+    for (final MetaParameter parameter : parameters) {
+      if (((MetaMethod) parameter.getDeclaringMember()).getName().equals(methodName)) return true;
+    }
+    return false;
+  }
+
+  @Test
+  public void testMethodFieldAndParameterLookups() {
+    MetaClassFactory.get(IndexedBean.class);
+
+    assertTrue(containsMethod(ClassScanner.getMethodsAnnotatedWith(Inject.class), "setInjected"));
+    assertTrue(containsField(ClassScanner.getFieldsAnnotatedWith(Inject.class), "injectedField"));
+    assertTrue(containsParameterOf(ClassScanner.getParametersAnnotatedWith(Named.class), "setInjected"));
+
+    assertFalse(containsMethod(ClassScanner.getMethodsAnnotatedWith(Named.class), "setInjected"));
+    assertFalse(containsField(ClassScanner.getFieldsAnnotatedWith(Named.class), "injectedField"));
+  }
+
+  @Test
+  public void testPackageFilter() {
+    MetaClassFactory.get(IndexedBean.class);
+
+    assertTrue(containsMethod(ClassScanner.getMethodsAnnotatedWith(Inject.class,
+        Collections.singleton(IndexedBean.class.getPackage().getName())), "setInjected"));
+    assertFalse(containsMethod(ClassScanner.getMethodsAnnotatedWith(Inject.class,
+        Collections.singleton("org.example")), "setInjected"));
+  }
+
+  /**
+   * A class added to the {@link MetaClassFactory} cache after a query is indexed by the next one.
+   */
+  @Test
+  public void testClassesCachedLaterAreIndexed() {
+    ClassScanner.getMethodsAnnotatedWith(Inject.class);
+
+    MetaClassFactory.get(LaterIndexedBean.class);
+    assertTrue(containsMethod(ClassScanner.getMethodsAnnotatedWith(Inject.class), "setLaterInjected"));
+    assertTrue(containsField(ClassScanner.getFieldsAnnotatedWith(Inject.class), "laterInjectedField"));
+    assertTrue(containsParameterOf(ClassScanner.getParametersAnnotatedWith(Named.class), "setLaterInjected"));
+  }
+
+  /**
+   * The index is rebuilt from the classes in the cache after a rescan.
+   */
+  @Test
+  public void testIndexIsRebuiltAfterRescan() {
+    MetaClassFactory.get(IndexedBean.class);
+    assertTrue(containsMethod(ClassScanner.getMethodsAnnotatedWith(Inject.class), "setInjected"));
+
+    ClassScanner.rescan();
+    assertTrue(containsMethod(ClassScanner.getMethodsAnnotatedWith(Inject.class), "setInjected"));
+    assertTrue(containsField(ClassScanner.getFieldsAnnotatedWith(Inject.class), "injectedField"));
+  }
+}
@@ -0,0 +1,117 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class NameFilteringTest {
+  private static final String PACKAGE = NameFilteringTest.class.getPackage().getName();
+
+  static volatile boolean initialized;
+
+  @Singleton
+  public static class FilteredSingleton {
+    static {
+      initialized = true;
+    }
+  }
+
+  @Singleton
+  public static class ExcludedSingleton {
+    static {
+      initialized = true;
+    }
+  }
+
+  private String previousCacheDir;
+  private File cacheDir;
+  private File classesDir;
+  private MetaDataScanner scanner;
+
+  @Before
+  public void scanClasses() throws IOException {
+    previousCacheDir = System.getProperty("vergere.debugCacheDir");
+    cacheDir = Files.createTempDir();
+    classesDir = Files.createTempDir();
+    System.setProperty("vergere.debugCacheDir", cacheDir.getAbsolutePath());
+
+    copyClassFile(FilteredSingleton.class);
+    copyClassFile(ExcludedSingleton.class);
+
+    final List<URL> urls = Collections.singletonList(classesDir.toURI().toURL());
+    scanner = new MetaDataScanner(urls, null, ScanScope.unrestricted(), false);
+  }
+
+  @After
+  public void deleteDirectories() {
+    if (previousCacheDir == null) {
+      System.clearProperty("vergere.debugCacheDir");
+    }
+    else {
+      System.setProperty("vergere.debugCacheDir", previousCacheDir);
+    }
+    delete(cacheDir);
+    delete(classesDir);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private void copyClassFile(final Class<?> type) throws IOException {
+    final String path = type.getName().replace('.', '/') + ".class";
+    final File file = new File(classesDir, path);
+    file.getParentFile().mkdirs();
+    Files.write(Resources.toByteArray(type.getClassLoader().getResource(path)), file);
+  }
+
+  @Test
+  public void testFiltersNamesByPackageAndExclusion() {
+    final String filtered = FilteredSingleton.class.getName();
+    final String excluded = ExcludedSingleton.class.getName();
+
+    assertEquals(ImmutableSet.of(filtered, excluded), scanner.getTypeNamesAnnotatedWith(Singleton.class, null, null));
+    assertEquals(ImmutableSet.of(filtered, excluded),
+        scanner.getTypeNamesAnnotatedWith(Singleton.class, Collections.singleton(PACKAGE), null));
+    assertTrue(scanner.getTypeNamesAnnotatedWith(Singleton.class, Collections.singleton("org.example"), null)
+        .isEmpty());
+    assertTrue(scanner.getTypeNamesAnnotatedWith(Singleton.class, Collections.singleton("org.jboss.vergere"), null)
+        .isEmpty());
+    assertEquals(Collections.singleton(filtered),
+        scanner.getTypeNamesAnnotatedWith(Singleton.class, null, ".*\\$Excluded.*"));
+  }
+
+  /**
+   * Only the types passing the filters are loaded, and none of them is initialized.
+   */
+  @Test
+  public void testLoadsFilteredTypesWithoutInitializingThem() {
+    final Set<Class<?>> types = scanner.getTypesAnnotatedWithExcluding(Singleton.class, ".*\\$Excluded.*");
+    assertEquals(Collections.<Class<?>>singleton(FilteredSingleton.class), types);
+
+    assertTrue(scanner.getTypesAnnotatedWith(Singleton.class, Collections.singleton("org.example")).isEmpty());
+    assertEquals(2, scanner.getTypesAnnotatedWith(Singleton.class, Collections.singleton(PACKAGE)).size());
+    assertFalse(initialized);
+  }
+}
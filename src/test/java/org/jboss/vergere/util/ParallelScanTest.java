@@ -0,0 +1,116 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Multimap;
+import com.google.common.io.Files;
+import org.jboss.errai.reflections.Store;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ParallelScanTest {
+  private String previousCacheDir;
+  private File cacheDir;
+
+  @Before
+  public void createCacheDirectory() {
+    previousCacheDir = System.getProperty("vergere.debugCacheDir");
+    cacheDir = Files.createTempDir();
+  }
+
+  @After
+  public void deleteCacheDirectory() {
+    if (previousCacheDir == null) {
+      System.clearProperty("vergere.debugCacheDir");
+    }
+    else {
+      System.setProperty("vergere.debugCacheDir", previousCacheDir);
+    }
+    delete(cacheDir);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * The class output directories and a couple of jars, so the scan is split into several partitions.
+   */
+  private static List<URL> urls() {
+    return Arrays.asList(
+        ParallelScanTest.class.getProtectionDomain().getCodeSource().getLocation(),
+        MetaDataScanner.class.getProtectionDomain().getCodeSource().getLocation(),
+        Inject.class.getProtectionDomain().getCodeSource().getLocation(),
+        Test.class.getProtectionDomain().getCodeSource().getLocation());
+  }
+
+  /**
+   * Scans the URLs with a cache directory of their own, so neither scan reads the partitions written by the other.
+   */
+  private MetaDataScanner scan(final boolean parallel) {
+    final File dir = new File(cacheDir, parallel ? "parallel" : "serial");
+    dir.mkdirs();
+    System.setProperty("vergere.debugCacheDir", dir.getAbsolutePath());
+    return new MetaDataScanner(urls(), null, ScanScope.unrestricted(), parallel);
+  }
+
+  /**
+   * Describes each index of the store as its entries in iteration order, so a difference in the order in which the
+   * partitions were merged shows up as well as a difference in content.
+   */
+  private static Map<String, List<String>> describe(final Store store) {
+    final Map<String, List<String>> description = new TreeMap<String, List<String>>();
+    for (final Map.Entry<String, Multimap<String, String>> index : store.getStoreMap().entrySet()) {
+      final List<String> entries = new ArrayList<String>();
+      for (final Map.Entry<String, String> entry : index.getValue().entries()) {
+        entries.add(entry.getKey() + " -> " + entry.getValue());
+      }
+      description.put(index.getKey(), entries);
+    }
+    return description;
+  }
+
+  /**
+   * A parallel scan merges the stores of its workers in URL order, so it indexes the same entries in the same order
+   * as a serial scan of the same URLs.
+   */
+  @Test
+  public void testParallelScanMatchesSerialScan() {
+    final MetaDataScanner serial = scan(false);
+    final MetaDataScanner parallel = scan(true);
+
+    final Map<String, List<String>> serialIndexes = describe(serial.getStore());
+    assertFalse(serialIndexes.get(ScanRecord.CLASS_DIGEST_INDEX).isEmpty());
+    assertEquals(serialIndexes, describe(parallel.getStore()));
+
+    assertTrue(serial.getTypeNamesAnnotatedWith(Singleton.class).contains(
+        "org.jboss.vergere.util.ParallelScanTest$ScannedSingleton"));
+    assertEquals(serial.getTypeNamesAnnotatedWith(Singleton.class),
+        parallel.getTypeNamesAnnotatedWith(Singleton.class));
+    assertEquals(serial.getHashForTypesAnnotatedWith("seed", Singleton.class),
+        parallel.getHashForTypesAnnotatedWith("seed", Singleton.class));
+  }
+
+  @Singleton
+  public static class ScannedSingleton {
+  }
+}
@@ -0,0 +1,123 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.vergere.bootstrapper.IOCBootstrapGenerator;
+import org.jboss.vergere.bootstrapper.PartitionClassCache;
+import org.jboss.vergere.client.Bootstrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PartitionClassReuseTest {
+  private static final String PACKAGE_NAME = Bootstrapper.class.getPackage().getName();
+  private static final String CLASS_NAME = "PartitionClassReuseTestBootstrapper";
+
+  @Before
+  public void splitIntoPartitionClasses() {
+    System.setProperty(IOCBootstrapGenerator.PARTITION_CLASS_SIZE_PROPERTY, "1");
+  }
+
+  @After
+  public void restoreDefaults() {
+    System.clearProperty(IOCBootstrapGenerator.PARTITION_CLASS_SIZE_PROPERTY);
+  }
+
+  /**
+   * A cache which reuses the partition classes generated with the specified fingerprints.
+   */
+  private static PartitionClassCache cacheOf(final Map<String, String> fingerprints) {
+    return new PartitionClassCache() {
+      @Override
+      public boolean isCached(final String className, final String fingerprint) {
+        return fingerprint.equals(fingerprints.get(className));
+      }
+    };
+  }
+
+  /**
+   * The partitions are fingerprinted before they are generated, the same way on every run, and a partition class
+   * whose fingerprint is found in the cache is not generated again.
+   */
+  @Test
+  public void testUnchangedPartitionsAreNotGenerated() {
+    final IOCBootstrapGenerator first = new IOCBootstrapGenerator();
+    final Map<String, String> firstSources
+        = first.generateSources(PACKAGE_NAME, CLASS_NAME, cacheOf(Collections.<String, String>emptyMap()));
+    final Map<String, String> fingerprints = first.getPartitionFingerprints();
+    assertTrue("expected at least two partition classes", fingerprints.size() > 1);
+    assertEquals(fingerprints.size() + 1, firstSources.size());
+    assertTrue(firstSources.keySet().containsAll(fingerprints.keySet()));
+
+    final IOCBootstrapGenerator second = new IOCBootstrapGenerator();
+    final Map<String, String> secondSources = second.generateSources(PACKAGE_NAME, CLASS_NAME, cacheOf(fingerprints));
+    assertEquals(fingerprints, second.getPartitionFingerprints());
+    assertEquals(1, secondSources.size());
+    assertTrue(secondSources.containsKey(PACKAGE_NAME + "." + CLASS_NAME));
+  }
+
+  /**
+   * Only the partition classes missing from the cache are generated.
+   */
+  @Test
+  public void testOnlyMissingPartitionsAreGenerated() {
+    final IOCBootstrapGenerator first = new IOCBootstrapGenerator();
+    first.generateSources(PACKAGE_NAME, CLASS_NAME, cacheOf(Collections.<String, String>emptyMap()));
+    final Map<String, String> fingerprints = new HashMap<String, String>(first.getPartitionFingerprints());
+
+    final String missing = fingerprints.keySet().iterator().next();
+    fingerprints.remove(missing);
+
+    final Map<String, String> sources
+        = new IOCBootstrapGenerator().generateSources(PACKAGE_NAME, CLASS_NAME, cacheOf(fingerprints));
+    assertEquals(2, sources.size());
+    assertTrue(sources.containsKey(missing));
+  }
+
+  /**
+   * Bootstrapping again with the classpath changed regenerates the bootstrapper, but reads the partition classes of
+   * the previous run from their class files rather than writing them again.
+   */
+  @Test
+  public void testMakerReusesPartitionClassFiles() throws Exception {
+    final File directory = new File(VergereUtils.getApplicationCacheDirectory(),
+        "generated/" + PACKAGE_NAME.replace('.', '/'));
+    final File unitsFile = new File(directory, "BootstrapperImpl.units");
+
+    // without the units of a previous run, the bootstrapper is generated, split into partition classes.
+    unitsFile.delete();
+    assertNotNull(new IOCBootstrapMaker().generate());
+
+    final List<File> partitionClassFiles = new ArrayList<File>();
+    final File[] files = directory.listFiles();
+    assertNotNull(files);
+    for (final File file : files) {
+      if (file.getName().startsWith(IOCBootstrapMaker.getBootstrapperClassName()
+          .substring(PACKAGE_NAME.length() + 1) + "_Partition") && file.getName().endsWith(".class")) {
+        partitionClassFiles.add(file);
+      }
+    }
+    assertTrue("expected class files of at least two partition classes", partitionClassFiles.size() > 1);
+
+    // the second run generates the bootstrapper again, and reuses the partition classes unit by unit.
+    final long written = System.currentTimeMillis() - 60000L;
+    for (final File file : partitionClassFiles) {
+      assertTrue(file.setLastModified(written));
+    }
+    assertTrue(unitsFile.delete());
+
+    assertNotNull(new IOCBootstrapMaker().generate());
+    for (final File file : partitionClassFiles) {
+      assertEquals(file.getName(), written / 1000, file.lastModified() / 1000);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import org.jboss.vergere.client.Bootstrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+public class PrecompiledBootstrapTest {
+  private File outputDirectory;
+  private ClassLoader contextClassLoader;
+
+  @Before
+  public void createOutputDirectory() {
+    outputDirectory = Files.createTempDir();
+    contextClassLoader = Thread.currentThread().getContextClassLoader();
+  }
+
+  @After
+  public void deleteOutputDirectory() {
+    Thread.currentThread().setContextClassLoader(contextClassLoader);
+    delete(outputDirectory);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Makes the class output directory visible to the code loading the precompiled bootstrapper, as if it was on the
+   * classpath of the application.
+   */
+  private ClassLoader onClasspath() throws Exception {
+    final ClassLoader classLoader = new URLClassLoader(new URL[]{outputDirectory.toURI().toURL()}, contextClassLoader);
+    Thread.currentThread().setContextClassLoader(classLoader);
+    return classLoader;
+  }
+
+  @Test
+  public void testNoPrecompiledBootstrapper() {
+    assertNull(IOCBootstrapMaker.loadPrecompiled());
+  }
+
+  /**
+   * The precompiled bootstrapper is loaded from the class output directory it was written to, without generating or
+   * compiling anything.
+   */
+  @Test
+  public void testLoadsPrecompiledBootstrapper() throws Exception {
+    BootstrapPrecompiler.precompile(outputDirectory);
+    assertTrue(new File(outputDirectory, IOCBootstrapMaker.PRECOMPILED_RESOURCE).isFile());
+
+    final ClassLoader classLoader = onClasspath();
+    final Class<? extends Bootstrapper> bootstrapper = IOCBootstrapMaker.loadPrecompiled();
+    assertNotNull(bootstrapper);
+    assertEquals(IOCBootstrapMaker.getBootstrapperClassName(), bootstrapper.getName());
+    assertSame(classLoader, bootstrapper.getClassLoader());
+  }
+
+  /**
+   * A class added to the class output directory after the bootstrapper was precompiled into it makes the precompiled
+   * bootstrapper stale, so it is not loaded.
+   */
+  @Test
+  public void testChangedClassOutputIsNotLoaded() throws Exception {
+    BootstrapPrecompiler.precompile(outputDirectory);
+
+    final File added = new File(outputDirectory, "org/example/Added.class");
+    added.getParentFile().mkdirs();
+    Files.write(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}, added);
+
+    onClasspath();
+    assertNull(IOCBootstrapMaker.loadPrecompiled());
+  }
+}
@@ -0,0 +1,104 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ReachabilityCacheTest {
+  private File directory;
+  private File file;
+
+  @Before
+  public void createDirectory() {
+    directory = Files.createTempDir();
+    file = new File(directory, "reachability.idx");
+  }
+
+  @After
+  public void deleteDirectory() {
+    final File[] children = directory.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        child.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void testRoundTrip() {
+    final ReachabilityCache written = ReachabilityCache.read(file);
+    written.put("org.example.Foo", "10:1000", Arrays.asList("org.example.Bar", "java.lang.String"));
+    written.put("org.example.Bar", "20:2000", Collections.<String>emptyList());
+    written.write(file);
+    assertTrue(file.isFile());
+
+    final ReachabilityCache read = ReachabilityCache.read(file);
+    assertEquals(Arrays.asList("org.example.Bar", "java.lang.String"), read.get("org.example.Foo", "10:1000"));
+    assertEquals(Collections.<String>emptyList(), read.get("org.example.Bar", "20:2000"));
+    assertNull(read.get("org.example.Baz", "30:3000"));
+    assertNull(read.get("org.example.Foo", null));
+  }
+
+  /**
+   * Dependencies cached for a class file which has since changed are not returned.
+   */
+  @Test
+  public void testChangedFingerprintMisses() {
+    final ReachabilityCache written = ReachabilityCache.read(file);
+    written.put("org.example.Foo", "10:1000", Collections.singletonList("org.example.Bar"));
+    written.write(file);
+
+    assertNull(ReachabilityCache.read(file).get("org.example.Foo", "10:2000"));
+  }
+
+  /**
+   * Only the classes looked up since the cache was read are written back, so classes which are gone are dropped.
+   */
+  @Test
+  public void testUnusedEntriesAreDropped() {
+    final ReachabilityCache written = ReachabilityCache.read(file);
+    written.put("org.example.Foo", "10:1000", Collections.singletonList("org.example.Bar"));
+    written.put("org.example.Gone", "20:2000", Collections.<String>emptyList());
+    written.write(file);
+
+    final ReachabilityCache used = ReachabilityCache.read(file);
+    assertEquals(Collections.singletonList("org.example.Bar"), used.get("org.example.Foo", "10:1000"));
+    used.write(file);
+
+    final ReachabilityCache read = ReachabilityCache.read(file);
+    assertEquals(Collections.singletonList("org.example.Bar"), read.get("org.example.Foo", "10:1000"));
+    assertNull(read.get("org.example.Gone", "20:2000"));
+  }
+
+  @Test
+  public void testUnreadableFileIsIgnored() throws IOException {
+    Files.write("not a reachability cache", file, Charset.forName("UTF-8"));
+    assertNull(ReachabilityCache.read(file).get("org.example.Foo", "10:1000"));
+
+    Files.write(new byte[]{0x56, 0x52, 0x43, 0x48, 0, 0, 0, 2, 0, 0}, file);
+    assertNull(ReachabilityCache.read(file).get("org.example.Foo", "10:1000"));
+  }
+
+  @Test
+  public void testFingerprintOf() throws IOException {
+    Files.write("class", file, Charset.forName("UTF-8"));
+    assertTrue(file.setLastModified(1300000000000L));
+
+    assertEquals("5:1300000000000", ReachabilityCache.fingerprintOf(file.toURI().toURL()));
+    assertNull(ReachabilityCache.fingerprintOf(new File(directory, "missing.class").toURI().toURL()));
+    assertNull(ReachabilityCache.fingerprintOf(new URL("http://example.com/Foo.class")));
+  }
+}
@@ -0,0 +1,125 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ReachabilityTest {
+  private String previousCacheDir;
+  private String previousRoots;
+  private File cacheDir;
+
+  @Before
+  public void createCacheDirectory() {
+    previousCacheDir = System.getProperty("vergere.debugCacheDir");
+    previousRoots = System.getProperty(EnvUtil.REACHABILITY_ROOTS_PROPERTY);
+    cacheDir = Files.createTempDir();
+    System.setProperty("vergere.debugCacheDir", cacheDir.getAbsolutePath());
+  }
+
+  @After
+  public void deleteCacheDirectory() {
+    restoreProperty("vergere.debugCacheDir", previousCacheDir);
+    restoreProperty(EnvUtil.REACHABILITY_ROOTS_PROPERTY, previousRoots);
+
+    final File[] children = cacheDir.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        child.delete();
+      }
+    }
+    cacheDir.delete();
+  }
+
+  private static void restoreProperty(final String name, final String value) {
+    if (value == null) {
+      System.clearProperty(name);
+    }
+    else {
+      System.setProperty(name, value);
+    }
+  }
+
+  @Test
+  public void testGraphReachesTransitivelyFromRoots() {
+    final ReachabilityGraph graph = new ReachabilityGraph();
+    graph.addEdges("a", Arrays.asList("b"));
+    graph.addEdges("b", Arrays.asList("c", "a"));
+    graph.addEdges("c", Collections.<String>emptyList());
+    graph.addEdges("d", Arrays.asList("a"));
+
+    final Set<String> reachable = graph.getReachableFrom(Collections.singleton("a"));
+    assertEquals(ImmutableSet.of("a", "b", "c"), new HashSet<String>(reachable));
+    assertFalse(reachable.contains("d"));
+
+    assertEquals(ImmutableSet.of("e"), new HashSet<String>(graph.getReachableFrom(Collections.singleton("e"))));
+  }
+
+  /**
+   * Types may be added to the result of the analysis afterwards, whether the graph knows them or not.
+   */
+  @Test
+  public void testReachableSetIsModifiable() {
+    final ReachabilityGraph graph = new ReachabilityGraph();
+    graph.addEdges("a", Arrays.asList("b"));
+    graph.addEdges("c", Collections.<String>emptyList());
+
+    final Set<String> reachable = graph.getReachableFrom(Collections.singleton("a"));
+    assertTrue(reachable.add("c"));
+    assertFalse(reachable.add("c"));
+    assertTrue(reachable.add("unknown"));
+    assertTrue(reachable.remove("b"));
+    assertFalse(reachable.remove("b"));
+
+    assertEquals(3, reachable.size());
+    assertEquals(ImmutableSet.of("a", "c", "unknown"), new HashSet<String>(reachable));
+  }
+
+  /**
+   * The analysis starts from the configured roots, follows the types they depend on, and includes platform types
+   * without looking inside them.
+   */
+  @Test
+  public void testReachableFromConfiguredRoots() {
+    System.setProperty(EnvUtil.REACHABILITY_ROOTS_PROPERTY, ReachabilityRoot.class.getName());
+
+    final ReachableTypes reachable = EnvUtil.getAllReachableClasses();
+    assertTrue(reachable.isBasedOnReachabilityAnalysis());
+    assertTrue(reachable.contains(ReachabilityRoot.class.getName()));
+    assertTrue(reachable.contains(ReachedFromRoot.class.getName()));
+    assertTrue(reachable.contains(ReachedTransitively.class.getName()));
+    assertTrue(reachable.contains(String.class.getName()));
+
+    assertFalse(reachable.contains(NotReachable.class.getName()));
+    assertFalse(reachable.contains(CharSequence.class.getName()));
+  }
+}
+
+class ReachabilityRoot {
+  ReachedFromRoot reached;
+  String name;
+}
+
+class ReachedFromRoot {
+  ReachedTransitively reached;
+}
+
+class ReachedTransitively {
+  ReachedFromRoot cycle;
+}
+
+class NotReachable {
+  ReachabilityRoot root;
+}
@@ -0,0 +1,165 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import org.jboss.errai.reflections.Store;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+
+public class ScanCacheFileTest {
+  private File file;
+
+  @Before
+  public void createFile() throws IOException {
+    file = File.createTempFile("scan-cache", ".idx");
+  }
+
+  @After
+  public void deleteFile() {
+    file.delete();
+  }
+
+  private static Store createStore() {
+    final Store store = new Store();
+    final Multimap<String, String> subTypes = store.getOrCreate("SubTypesScanner");
+    subTypes.put("java.lang.Object", "org.example.Foo");
+    subTypes.put("java.lang.Object", "org.example.Bar");
+    subTypes.put("org.example.Foo", "org.example.FooImpl");
+
+    final Multimap<String, String> annotations = store.getOrCreate("TypeAnnotationsScanner");
+    annotations.put("javax.inject.Singleton", "org.example.Bar");
+    annotations.put("\u00e9t\u00e9.Annotation", "org.example.\u00c9t\u00e9");
+    return store;
+  }
+
+  private static SetMultimap<String, String> copyOf(final Multimap<String, String> multimap) {
+    final SetMultimap<String, String> copy = HashMultimap.create();
+    copy.putAll(multimap);
+    return copy;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    final Store written = createStore();
+    ScanCacheFile.write(written, file);
+
+    final Store read = new Store();
+    assertTrue(ScanCacheFile.read(read, file));
+
+    assertEquals(written.getStoreMap().keySet(), read.getStoreMap().keySet());
+    for (final String index : written.getStoreMap().keySet()) {
+      assertEquals(copyOf(written.getOrCreate(index)), copyOf(read.getOrCreate(index)));
+    }
+  }
+
+  @Test
+  public void testLookups() {
+    ScanCacheFile.write(createStore(), file);
+
+    final Store read = new Store();
+    assertTrue(ScanCacheFile.read(read, file));
+
+    final Multimap<String, String> subTypes = read.getOrCreate("SubTypesScanner");
+    assertEquals(3, subTypes.size());
+    assertEquals(ImmutableSet.of("org.example.Foo", "org.example.Bar"), subTypes.get("java.lang.Object"));
+    assertEquals(2, subTypes.get("java.lang.Object").size());
+    assertTrue(subTypes.containsKey("org.example.Foo"));
+    assertFalse(subTypes.containsKey("org.example.Bar"));
+    assertTrue(subTypes.get("org.example.Bar").isEmpty());
+    assertTrue(subTypes.containsEntry("org.example.Foo", "org.example.FooImpl"));
+    assertEquals(ImmutableSet.of("java.lang.Object", "org.example.Foo"), subTypes.keySet());
+    assertEquals(3, subTypes.entries().size());
+
+    assertEquals(ImmutableSet.of("org.example.\u00c9t\u00e9"),
+        read.getOrCreate("TypeAnnotationsScanner").get("\u00e9t\u00e9.Annotation"));
+  }
+
+  @Test
+  public void testModificationAfterRead() {
+    ScanCacheFile.write(createStore(), file);
+
+    final Store read = new Store();
+    assertTrue(ScanCacheFile.read(read, file));
+
+    final Multimap<String, String> subTypes = read.getOrCreate("SubTypesScanner");
+    final Collection<String> objectSubTypes = subTypes.get("java.lang.Object");
+
+    subTypes.put("org.example.Foo", "org.example.OtherFooImpl");
+    objectSubTypes.add("org.example.Baz");
+
+    assertEquals(5, subTypes.size());
+    assertEquals(ImmutableSet.of("org.example.FooImpl", "org.example.OtherFooImpl"), subTypes.get("org.example.Foo"));
+    assertEquals(ImmutableSet.of("org.example.Foo", "org.example.Bar", "org.example.Baz"),
+        ImmutableSet.copyOf(objectSubTypes));
+  }
+
+  @Test
+  public void testReadMergesIntoExistingIndex() {
+    ScanCacheFile.write(createStore(), file);
+
+    final Store read = new Store();
+    read.getOrCreate("SubTypesScanner").put("java.lang.Object", "org.example.Baz");
+    assertTrue(ScanCacheFile.read(read, file));
+
+    assertEquals(ImmutableSet.of("org.example.Foo", "org.example.Bar", "org.example.Baz"),
+        read.getOrCreate("SubTypesScanner").get("java.lang.Object"));
+  }
+
+  @Test
+  public void testTagMismatch() {
+    ScanCacheFile.write(createStore(), file, "a");
+
+    final Store read = new Store();
+    assertFalse(ScanCacheFile.read(read, file, "b"));
+    assertTrue(read.getStoreMap().isEmpty());
+    assertTrue(ScanCacheFile.read(read, file, "a"));
+  }
+
+  @Test
+  public void testTruncatedFile() throws IOException {
+    ScanCacheFile.write(createStore(), file);
+
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(randomAccessFile.length() - 6);
+    }
+    finally {
+      randomAccessFile.close();
+    }
+
+    final Store read = new Store();
+    assertFalse(ScanCacheFile.read(read, file));
+    assertTrue(read.getStoreMap().isEmpty());
+  }
+
+  /**
+   * A partition which failed its tag check is still mapped when it is rewritten.
+   */
+  @Test
+  public void testRewriteWhileMapped() {
+    ScanCacheFile.write(createStore(), file, "old");
+    final Store old = new Store();
+    assertTrue(ScanCacheFile.read(old, file, "old"));
+
+    final Store store = new Store();
+    store.getOrCreate("SubTypesScanner").put("java.lang.Object", "org.example.New");
+    ScanCacheFile.write(store, file, "new");
+
+    final Store read = new Store();
+    assertTrue(ScanCacheFile.read(read, file, "new"));
+    assertEquals(ImmutableSet.of("org.example.New"), read.getOrCreate("SubTypesScanner").get("java.lang.Object"));
+    assertEquals(3, old.getOrCreate("SubTypesScanner").size());
+  }
+}
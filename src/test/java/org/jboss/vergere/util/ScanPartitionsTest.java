@@ -0,0 +1,134 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import org.jboss.errai.reflections.Store;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+
+public class ScanPartitionsTest {
+  private String previousCacheDir;
+  private File cacheDir;
+  private File classesDir;
+
+  @Before
+  public void createDirectories() throws IOException {
+    previousCacheDir = System.getProperty("vergere.debugCacheDir");
+    cacheDir = createTempDirectory("cache");
+    classesDir = createTempDirectory("classes");
+    System.setProperty("vergere.debugCacheDir", cacheDir.getAbsolutePath());
+
+    VergereUtils.writeStringToFile(new File(classesDir, "Foo.class"), "foo");
+  }
+
+  @After
+  public void deleteDirectories() {
+    if (previousCacheDir == null) {
+      System.clearProperty("vergere.debugCacheDir");
+    }
+    else {
+      System.setProperty("vergere.debugCacheDir", previousCacheDir);
+    }
+    delete(cacheDir);
+    delete(classesDir);
+  }
+
+  private static File createTempDirectory(final String prefix) throws IOException {
+    final File dir = File.createTempFile(prefix, "");
+    dir.delete();
+    dir.mkdirs();
+    return dir;
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Test
+  public void testToFile() throws Exception {
+    assertEquals(new File("/repo/guava-12.0.jar"), ScanPartitions.toFile(new URL("file:/repo/guava-12.0.jar")));
+    assertEquals(new File("/repo/guava-12.0.jar"),
+        ScanPartitions.toFile(new URL("jar:file:/repo/guava-12.0.jar!/")));
+    assertEquals(new File("/my repo/a+b.jar"), ScanPartitions.toFile(new URL("file:/my%20repo/a+b.jar")));
+    assertNull(ScanPartitions.toFile(new URL("http://example.com/a.jar")));
+  }
+
+  @Test
+  public void testTagOfUnfingerprintableUrl() throws Exception {
+    final ScanPartitions partitions = new ScanPartitions(ScanScope.unrestricted());
+    assertNull(partitions.getTag(new URL("http://example.com/a.jar")));
+    assertNull(partitions.getTag(new File(classesDir, "missing").toURI().toURL()));
+  }
+
+  @Test
+  public void testTagFollowsContents() throws Exception {
+    final URL url = classesDir.toURI().toURL();
+    final String tag = new ScanPartitions(ScanScope.unrestricted()).getTag(url);
+    assertNotNull(tag);
+    assertEquals(tag, new ScanPartitions(ScanScope.unrestricted()).getTag(url));
+
+    VergereUtils.writeStringToFile(new File(classesDir, "Foo.class"), "changed");
+    assertFalse(tag.equals(new ScanPartitions(ScanScope.unrestricted()).getTag(url)));
+  }
+
+  @Test
+  public void testTagFollowsScope() throws Exception {
+    final URL url = classesDir.toURI().toURL();
+    final ScanScope scope = new ScanScope(ImmutableSet.of("com.example.**"), Collections.<String>emptySet(),
+        Collections.<String>emptySet());
+    assertFalse(new ScanPartitions(ScanScope.unrestricted()).getTag(url)
+        .equals(new ScanPartitions(scope).getTag(url)));
+  }
+
+  @Test
+  public void testPartitionIsReusedUntilUrlChanges() throws Exception {
+    final URL url = classesDir.toURI().toURL();
+    final ScanPartitions partitions = new ScanPartitions(ScanScope.unrestricted());
+
+    final Store store = new Store();
+    store.getOrCreate("SubTypesScanner").put("java.lang.Object", "Foo");
+    ScanCacheFile.write(store, partitions.getFile(url), partitions.getTag(url));
+
+    final ScanPartitions unchanged = new ScanPartitions(ScanScope.unrestricted());
+    assertEquals(partitions.getFile(url), unchanged.getFile(url));
+    assertTrue(ScanCacheFile.read(new Store(), unchanged.getFile(url), unchanged.getTag(url)));
+
+    VergereUtils.writeStringToFile(new File(classesDir, "Bar.class"), "bar");
+    final ScanPartitions changed = new ScanPartitions(ScanScope.unrestricted());
+    assertFalse(ScanCacheFile.read(new Store(), changed.getFile(url), changed.getTag(url)));
+  }
+
+  @Test
+  public void testStalePartitionsAreRemoved() throws Exception {
+    final URL kept = classesDir.toURI().toURL();
+    final URL dropped = new URL("file:/no/longer/on/the/classpath/");
+
+    final ScanPartitions previous = new ScanPartitions(ScanScope.unrestricted());
+    VergereUtils.writeStringToFile(previous.getFile(kept), "kept");
+    VergereUtils.writeStringToFile(previous.getFile(dropped), "dropped");
+
+    final ScanPartitions current = new ScanPartitions(ScanScope.unrestricted());
+    final File keptFile = current.getFile(kept);
+    current.removeStalePartitions();
+
+    assertTrue(keptFile.exists());
+    assertFalse(previous.getFile(dropped).exists());
+  }
+}
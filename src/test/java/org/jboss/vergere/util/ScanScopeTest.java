@@ -0,0 +1,115 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class ScanScopeTest {
+  private static final Set<String> NONE = Collections.emptySet();
+
+  private static ScanScope includes(final String... globs) {
+    return new ScanScope(ImmutableSet.copyOf(globs), NONE, NONE);
+  }
+
+  @Test
+  public void testUnrestricted() {
+    final ScanScope scope = ScanScope.unrestricted();
+    assertTrue(scope.isPackageInScope("com.example"));
+    assertTrue(scope.isPackageInScope(""));
+    assertTrue(scope.getInputsFilter().apply("com/example/Foo.class"));
+  }
+
+  @Test
+  public void testSingleStarMatchesWithinOnePackageName() {
+    final ScanScope scope = includes("com.*.service");
+    assertTrue(scope.isPackageInScope("com.example.service"));
+    assertFalse(scope.isPackageInScope("com.example.impl.service"));
+    assertFalse(scope.isPackageInScope("com.service"));
+  }
+
+  @Test
+  public void testDoubleStarMatchesNestedPackages() {
+    final ScanScope scope = includes("com.**.service");
+    assertTrue(scope.isPackageInScope("com.example.service"));
+    assertTrue(scope.isPackageInScope("com.example.impl.service"));
+    assertFalse(scope.isPackageInScope("org.example.service"));
+  }
+
+  @Test
+  public void testTrailingDoubleStarMatchesPackageAndSubpackages() {
+    final ScanScope scope = includes("com.example.**");
+    assertTrue(scope.isPackageInScope("com.example"));
+    assertTrue(scope.isPackageInScope("com.example.impl"));
+    assertTrue(scope.isPackageInScope("com.example.impl.deep"));
+    assertFalse(scope.isPackageInScope("com.examples"));
+    assertFalse(scope.isPackageInScope("com"));
+  }
+
+  @Test
+  public void testDotsAreLiteral() {
+    final ScanScope scope = includes("com.example");
+    assertTrue(scope.isPackageInScope("com.example"));
+    assertFalse(scope.isPackageInScope("comXexample"));
+    assertFalse(scope.isPackageInScope("com.example.impl"));
+  }
+
+  @Test
+  public void testExcludesTakePrecedence() {
+    final ScanScope scope = new ScanScope(ImmutableSet.of("com.example.**"), ImmutableSet.of("com.example.internal.**"),
+        NONE);
+    assertTrue(scope.isPackageInScope("com.example.api"));
+    assertFalse(scope.isPackageInScope("com.example.internal"));
+    assertFalse(scope.isPackageInScope("com.example.internal.impl"));
+  }
+
+  @Test
+  public void testExcludesWithoutIncludes() {
+    final ScanScope scope = new ScanScope(NONE, ImmutableSet.of("com.google.**"), NONE);
+    assertFalse(scope.isPackageInScope("com.google.common"));
+    assertTrue(scope.isPackageInScope("com.example"));
+  }
+
+  @Test
+  public void testInputsFilter() {
+    final ScanScope scope = includes("com.example.**");
+    assertTrue(scope.getInputsFilter().apply("com/example/Foo.class"));
+    assertTrue(scope.getInputsFilter().apply("com/example/impl/Foo$Inner.class"));
+    assertFalse(scope.getInputsFilter().apply("org/example/Foo.class"));
+    assertFalse(scope.getInputsFilter().apply("Foo.class"));
+
+    // resources other than class files are always scanned.
+    assertTrue(scope.getInputsFilter().apply("org/example/vergere.properties"));
+  }
+
+  @Test
+  public void testExcludedJars() throws Exception {
+    final ScanScope scope = new ScanScope(NONE, NONE, ImmutableSet.of("guava-*.jar", "ab?.jar"));
+
+    final URL guava = new URL("file:/repo/guava-12.0.jar");
+    final URL guavaJar = new URL("jar:file:/repo/guava-12.0.jar!/");
+    final URL abc = new URL("file:/repo/abc.jar");
+    final URL abcd = new URL("file:/repo/abcd.jar");
+    final URL classes = new URL("file:/project/target/classes/");
+    final URL guavaDirectory = new URL("file:/repo/guava-src/");
+
+    final List<URL> filtered = scope.filterUrls(Arrays.asList(guava, classes, guavaJar, abc, abcd, guavaDirectory));
+    assertEquals(Arrays.asList(classes, abcd, guavaDirectory), filtered);
+  }
+
+  @Test
+  public void testKeyDistinguishesScopes() {
+    assertEquals(includes("com.example.**").getKey(), includes("com.example.**").getKey());
+    assertFalse(includes("com.example.**").getKey().equals(includes("com.example.*").getKey()));
+    assertFalse(includes("com.example.**").getKey()
+        .equals(new ScanScope(NONE, ImmutableSet.of("com.example.**"), NONE).getKey()));
+  }
+}
@@ -0,0 +1,71 @@
+package org.jboss.vergere.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class SubtypeIndexTest {
+  /**
+   * Square extends Polygon, which extends Shape along with Circle. NamedSizedShape implements Named and Sized, which
+   * both extend Base, forming a diamond.
+   */
+  private static SubtypeIndex createIndex() {
+    final Multimap<String, String> subTypes = HashMultimap.create();
+    subTypes.put("Shape", "Polygon");
+    subTypes.put("Shape", "Circle");
+    subTypes.put("Polygon", "Square");
+    subTypes.put("Named", "NamedSizedShape");
+    subTypes.put("Sized", "NamedSizedShape");
+    subTypes.put("Base", "Named");
+    subTypes.put("Base", "Sized");
+    return new SubtypeIndex(subTypes);
+  }
+
+  @Test
+  public void testDirectAndIndirectSubTypes() {
+    final SubtypeIndex index = createIndex();
+    assertEquals(ImmutableSet.of("Polygon", "Circle", "Square"), new HashSet<String>(index.getSubTypesOf("Shape")));
+    assertEquals(ImmutableSet.of("Square"), new HashSet<String>(index.getSubTypesOf("Polygon")));
+  }
+
+  @Test
+  public void testLeafAndUnknownTypes() {
+    final SubtypeIndex index = createIndex();
+    assertTrue(index.getSubTypesOf("Square").isEmpty());
+    assertTrue(index.getSubTypesOf("Unknown").isEmpty());
+  }
+
+  @Test
+  public void testDiamondIsReportedOnce() {
+    final SubtypeIndex index = createIndex();
+    assertEquals(ImmutableSet.of("Named", "Sized", "NamedSizedShape"),
+        new HashSet<String>(index.getSubTypesOf("Base")));
+    assertEquals(3, index.getSubTypesOf("Base").size());
+  }
+
+  /**
+   * Closures computed for one type are reused by the closures of its supertypes, which must not change either.
+   */
+  @Test
+  public void testClosuresAreIndependentOfQueryOrder() {
+    final SubtypeIndex index = createIndex();
+    assertEquals(ImmutableSet.of("NamedSizedShape"), new HashSet<String>(index.getSubTypesOf("Named")));
+    assertEquals(ImmutableSet.of("Named", "Sized", "NamedSizedShape"),
+        new HashSet<String>(index.getSubTypesOf("Base")));
+    assertEquals(ImmutableSet.of("NamedSizedShape"), new HashSet<String>(index.getSubTypesOf("Named")));
+  }
+
+  @Test
+  public void testTypesAndSubTypes() {
+    final SubtypeIndex index = createIndex();
+    assertEquals(ImmutableSet.of("Polygon", "Square", "Named", "NamedSizedShape", "Unknown"),
+        new HashSet<String>(index.getTypesAndSubTypesOf(Arrays.asList("Polygon", "Named", "Unknown"))));
+  }
+}